@@ -15,11 +15,16 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 
+import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
+import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.Adaptor;
+import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.FileSystemAdaptorDescription;
@@ -28,6 +33,16 @@ public abstract class FileAdaptor extends Adaptor implements FileSystemAdaptorDe
 
     public static final String ADAPTORS_PREFIX = "xenon.adaptors.filesystems.";
 
+    // The names of the properties that all file adaptors support, relative to the prefix of the adaptor.
+    private static final String BUFFER_SIZE = "bufferSize";
+    private static final String COPY_PARALLELISM = "copy.parallelism";
+    private static final String COPY_PIPELINED = "copy.pipelined";
+    private static final String DELETE_PARALLELISM = "delete.parallelism";
+    private static final String LIST_PARALLELISM = "list.parallelism";
+    private static final String CACHE_TTL = "cache.ttl";
+    private static final String CACHE_SIZE = "cache.size";
+    private static final String OPTIMISTIC = "optimistic";
+
     protected FileAdaptor(String name, String description, String[] locations, XenonPropertyDescription[] properties) {
         super(name, description, locations, properties);
     }
@@ -81,6 +96,116 @@ public abstract class FileAdaptor extends Adaptor implements FileSystemAdaptorDe
         return false;
     }
 
+    /**
+     * Get the descriptions of the properties that all file adaptors support, followed by the properties of a specific adaptor.
+     *
+     * @param prefix
+     *            the property prefix of the adaptor, ending with a dot.
+     * @param properties
+     *            the properties of the specific adaptor.
+     * @return the descriptions of all properties of the adaptor.
+     */
+    protected static XenonPropertyDescription[] withCommonProperties(String prefix, XenonPropertyDescription... properties) {
+
+        ArrayList<XenonPropertyDescription> result = new ArrayList<>(Arrays.asList(
+                new XenonPropertyDescription(prefix + BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes)."),
+                new XenonPropertyDescription(prefix + COPY_PARALLELISM, Type.INTEGER, "1",
+                        "The number of files to transfer concurrently when copying recursively."),
+                new XenonPropertyDescription(prefix + COPY_PIPELINED, Type.BOOLEAN, "false",
+                        "Start transferring files while a recursive copy is still listing the source. The number of bytes to copy is then a running estimate."),
+                new XenonPropertyDescription(prefix + DELETE_PARALLELISM, Type.INTEGER, "1",
+                        "The number of directories to delete concurrently when deleting recursively."),
+                new XenonPropertyDescription(prefix + LIST_PARALLELISM, Type.INTEGER, "1",
+                        "The number of directories to read concurrently when listing recursively."),
+                new XenonPropertyDescription(prefix + CACHE_TTL, Type.LONG, "0",
+                        "The time in milliseconds for which the attributes of a path are cached, or 0 to disable the cache. "
+                                + "Changes by others are seen after it."),
+                new XenonPropertyDescription(prefix + CACHE_SIZE, Type.INTEGER, "10000", "The maximum number of paths of which the attributes are cached.")));
+
+        result.addAll(Arrays.asList(properties));
+        return result.toArray(new XenonPropertyDescription[result.size()]);
+    }
+
+    private static long checkMinimum(String adaptorName, String name, long value, long min) throws InvalidPropertyException {
+        if (value < min) {
+            throw new InvalidPropertyException(adaptorName, "Invalid value for " + name + ": " + value + " (must be " + min + " or larger)");
+        }
+        return value;
+    }
+
+    /**
+     * Read and validate the settings that all file systems share from the properties of an adaptor.
+     *
+     * Properties that the adaptor does not support keep their default value.
+     *
+     * @param adaptorName
+     *            the name of the adaptor.
+     * @param properties
+     *            the properties of the file system, or <code>null</code> to use the defaults.
+     * @return the settings.
+     * @throws XenonException
+     *             If a property has an invalid value.
+     */
+    public static FileSystemSettings getFileSystemSettings(String adaptorName, XenonProperties properties) throws XenonException {
+
+        FileSystemSettings result = FileSystemSettings.defaults();
+
+        if (properties == null) {
+            return result;
+        }
+
+        String prefix = ADAPTORS_PREFIX + adaptorName + ".";
+
+        if (properties.supportsProperty(prefix + BUFFER_SIZE)) {
+            long bufferSize = properties.getSizeProperty(prefix + BUFFER_SIZE);
+
+            if (bufferSize <= 0 || bufferSize >= Integer.MAX_VALUE) {
+                throw new InvalidPropertyException(adaptorName,
+                        "Invalid value for " + prefix + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+            }
+
+            result = result.withBufferSize((int) bufferSize);
+        }
+
+        if (properties.supportsProperty(prefix + COPY_PARALLELISM)) {
+            int copyParallelism = properties.getIntegerProperty(prefix + COPY_PARALLELISM);
+            result = result.withCopyParallelism((int) checkMinimum(adaptorName, prefix + COPY_PARALLELISM, copyParallelism, 1));
+        }
+
+        if (properties.supportsProperty(prefix + COPY_PIPELINED)) {
+            result = result.withCopyPipelined(properties.getBooleanProperty(prefix + COPY_PIPELINED));
+        }
+
+        if (properties.supportsProperty(prefix + DELETE_PARALLELISM)) {
+            int deleteParallelism = properties.getIntegerProperty(prefix + DELETE_PARALLELISM);
+            result = result.withDeleteParallelism((int) checkMinimum(adaptorName, prefix + DELETE_PARALLELISM, deleteParallelism, 1));
+        }
+
+        if (properties.supportsProperty(prefix + LIST_PARALLELISM)) {
+            int listParallelism = properties.getIntegerProperty(prefix + LIST_PARALLELISM);
+            result = result.withListParallelism((int) checkMinimum(adaptorName, prefix + LIST_PARALLELISM, listParallelism, 1));
+        }
+
+        long cacheTTL = result.getCacheTTL();
+        int cacheSize = result.getCacheSize();
+
+        if (properties.supportsProperty(prefix + CACHE_TTL)) {
+            cacheTTL = checkMinimum(adaptorName, prefix + CACHE_TTL, properties.getLongProperty(prefix + CACHE_TTL), 0);
+        }
+
+        if (properties.supportsProperty(prefix + CACHE_SIZE)) {
+            cacheSize = (int) checkMinimum(adaptorName, prefix + CACHE_SIZE, properties.getIntegerProperty(prefix + CACHE_SIZE), 1);
+        }
+
+        result = result.withCache(cacheTTL, cacheSize);
+
+        if (properties.supportsProperty(prefix + OPTIMISTIC)) {
+            result = result.withOptimistic(properties.getBooleanProperty(prefix + OPTIMISTIC));
+        }
+
+        return result;
+    }
+
     public abstract FileSystem createFileSystem(String location, Credential credential, Map<String, String> properties)
             throws XenonException;
 }
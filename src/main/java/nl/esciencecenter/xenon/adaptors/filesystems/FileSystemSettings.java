@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+/**
+ * FileSystemSettings contains the settings that all file systems share, such as the buffer size and the number of concurrent transfers, deletes and
+ * listings.
+ *
+ * The settings are immutable. Adaptors obtain them from their properties using {@link FileAdaptor#getFileSystemSettings(String,
+ * nl.esciencecenter.xenon.adaptors.XenonProperties)}, which validates them, and pass them to the {@link nl.esciencecenter.xenon.filesystems.FileSystem}
+ * constructor.
+ */
+public final class FileSystemSettings {
+
+    /** The default buffer size. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The default maximum number of paths of which the attributes are cached. */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final FileSystemSettings DEFAULTS = new FileSystemSettings(DEFAULT_BUFFER_SIZE, 1, false, 1, 1, 0L, DEFAULT_CACHE_SIZE, false);
+
+    private final int bufferSize;
+    private final int copyParallelism;
+    private final boolean copyPipelined;
+    private final int deleteParallelism;
+    private final int listParallelism;
+    private final long cacheTTL;
+    private final int cacheSize;
+    private final boolean optimistic;
+
+    private FileSystemSettings(int bufferSize, int copyParallelism, boolean copyPipelined, int deleteParallelism, int listParallelism, long cacheTTL,
+            int cacheSize, boolean optimistic) {
+        this.bufferSize = bufferSize;
+        this.copyParallelism = copyParallelism;
+        this.copyPipelined = copyPipelined;
+        this.deleteParallelism = deleteParallelism;
+        this.listParallelism = listParallelism;
+        this.cacheTTL = cacheTTL;
+        this.cacheSize = cacheSize;
+        this.optimistic = optimistic;
+    }
+
+    /**
+     * Get the default settings.
+     *
+     * @return the default settings.
+     */
+    public static FileSystemSettings defaults() {
+        return DEFAULTS;
+    }
+
+    private static int checkPositive(String name, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be 1 or larger");
+        }
+        return value;
+    }
+
+    /**
+     * Get the buffer size to use when copying data.
+     *
+     * @return the buffer size in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get a copy of these settings with a different buffer size.
+     *
+     * @param bufferSize
+     *            the buffer size in bytes.
+     * @return the new settings.
+     */
+    public FileSystemSettings withBufferSize(int bufferSize) {
+        return new FileSystemSettings(checkPositive("Buffer size", bufferSize), copyParallelism, copyPipelined, deleteParallelism, listParallelism,
+                cacheTTL, cacheSize, optimistic);
+    }
+
+    /**
+     * Get the number of files to transfer concurrently in a recursive copy.
+     *
+     * @return the number of concurrent transfers.
+     */
+    public int getCopyParallelism() {
+        return copyParallelism;
+    }
+
+    /**
+     * Get a copy of these settings with a different number of concurrent transfers.
+     *
+     * @param copyParallelism
+     *            the number of concurrent transfers.
+     * @return the new settings.
+     */
+    public FileSystemSettings withCopyParallelism(int copyParallelism) {
+        return new FileSystemSettings(bufferSize, checkPositive("Copy parallelism", copyParallelism), copyPipelined, deleteParallelism, listParallelism,
+                cacheTTL, cacheSize, optimistic);
+    }
+
+    /**
+     * Check if a recursive copy starts transferring files while it is still listing the source.
+     *
+     * @return if recursive copies are pipelined.
+     */
+    public boolean isCopyPipelined() {
+        return copyPipelined;
+    }
+
+    /**
+     * Get a copy of these settings with pipelined copies enabled or disabled.
+     *
+     * @param copyPipelined
+     *            if recursive copies are pipelined.
+     * @return the new settings.
+     */
+    public FileSystemSettings withCopyPipelined(boolean copyPipelined) {
+        return new FileSystemSettings(bufferSize, copyParallelism, copyPipelined, deleteParallelism, listParallelism, cacheTTL, cacheSize, optimistic);
+    }
+
+    /**
+     * Get the number of directories to delete concurrently when deleting recursively.
+     *
+     * @return the number of concurrent deletes.
+     */
+    public int getDeleteParallelism() {
+        return deleteParallelism;
+    }
+
+    /**
+     * Get a copy of these settings with a different number of concurrent deletes.
+     *
+     * @param deleteParallelism
+     *            the number of concurrent deletes.
+     * @return the new settings.
+     */
+    public FileSystemSettings withDeleteParallelism(int deleteParallelism) {
+        return new FileSystemSettings(bufferSize, copyParallelism, copyPipelined, checkPositive("Delete parallelism", deleteParallelism), listParallelism,
+                cacheTTL, cacheSize, optimistic);
+    }
+
+    /**
+     * Get the number of directories to read concurrently when listing recursively.
+     *
+     * @return the number of concurrent listings.
+     */
+    public int getListParallelism() {
+        return listParallelism;
+    }
+
+    /**
+     * Get a copy of these settings with a different number of concurrent listings.
+     *
+     * @param listParallelism
+     *            the number of concurrent listings.
+     * @return the new settings.
+     */
+    public FileSystemSettings withListParallelism(int listParallelism) {
+        return new FileSystemSettings(bufferSize, copyParallelism, copyPipelined, deleteParallelism, checkPositive("List parallelism", listParallelism),
+                cacheTTL, cacheSize, optimistic);
+    }
+
+    /**
+     * Get the time for which the attributes of a path are cached.
+     *
+     * @return the time in milliseconds, or 0 if the cache is disabled.
+     */
+    public long getCacheTTL() {
+        return cacheTTL;
+    }
+
+    /**
+     * Get the maximum number of paths of which the attributes are cached.
+     *
+     * @return the maximum number of cached paths.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Get a copy of these settings with a different attribute cache.
+     *
+     * @param cacheTTL
+     *            the time in milliseconds for which attributes are cached, or 0 to disable the cache.
+     * @param cacheSize
+     *            the maximum number of cached paths.
+     * @return the new settings.
+     */
+    public FileSystemSettings withCache(long cacheTTL, int cacheSize) {
+        if (cacheTTL < 0) {
+            throw new IllegalArgumentException("Cache TTL must be 0 or larger");
+        }
+        return new FileSystemSettings(bufferSize, copyParallelism, copyPipelined, deleteParallelism, listParallelism, cacheTTL,
+                checkPositive("Cache size", cacheSize), optimistic);
+    }
+
+    /**
+     * Check if operations are sent to the server without first checking their preconditions.
+     *
+     * @return if operations are optimistic.
+     */
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Get a copy of these settings with optimistic operations enabled or disabled.
+     *
+     * @param optimistic
+     *            if operations are optimistic.
+     * @return the new settings.
+     */
+    public FileSystemSettings withOptimistic(boolean optimistic) {
+        return new FileSystemSettings(bufferSize, copyParallelism, copyPipelined, deleteParallelism, listParallelism, cacheTTL, cacheSize, optimistic);
+    }
+
+    @Override
+    public String toString() {
+        return "FileSystemSettings [bufferSize=" + bufferSize + ", copyParallelism=" + copyParallelism + ", copyPipelined=" + copyPipelined
+                + ", deleteParallelism=" + deleteParallelism + ", listParallelism=" + listParallelism + ", cacheTTL=" + cacheTTL + ", cacheSize=" + cacheSize
+                + ", optimistic=" + optimistic + "]";
+    }
+}
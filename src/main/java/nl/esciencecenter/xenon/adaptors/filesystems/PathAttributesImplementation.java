@@ -26,35 +26,79 @@ import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
 
 /**
  * FileAttributes represents a set of attributes of a path.
+ *
+ * The boolean attributes are kept in a single bit mask and the permissions as POSIX mode bits, so listings of many entries stay small. The permission set
+ * is only created when it is requested. Attributes that are expensive to retrieve can be left to a {@link Resolver}, which is only called when they are
+ * first requested.
  */
 public class PathAttributesImplementation implements PathAttributes {
 
+    /**
+     * Retrieves the attributes of a path that are expensive to determine, such as owner names or access checks, when they are first requested.
+     */
+    public interface Resolver {
+
+        /**
+         * Get the owner of the path.
+         *
+         * @return the owner, or <code>null</code> if it is not known.
+         */
+        String getOwner();
+
+        /**
+         * Get the group of the path.
+         *
+         * @return the group, or <code>null</code> if it is not known.
+         */
+        String getGroup();
+
+        /**
+         * Check if the path is executable by the current user.
+         *
+         * @return if the path is executable.
+         */
+        boolean isExecutable();
+
+        /**
+         * Check if the path is readable by the current user.
+         *
+         * @return if the path is readable.
+         */
+        boolean isReadable();
+
+        /**
+         * Check if the path is writable by the current user.
+         *
+         * @return if the path is writable.
+         */
+        boolean isWritable();
+    }
+
+    private static final int DIRECTORY = 1;
+    private static final int REGULAR = 1 << 1;
+    private static final int SYMBOLIC_LINK = 1 << 2;
+    private static final int OTHER = 1 << 3;
+    private static final int EXECUTABLE = 1 << 4;
+    private static final int READABLE = 1 << 5;
+    private static final int WRITABLE = 1 << 6;
+    private static final int HIDDEN = 1 << 7;
+    private static final int OWNER = 1 << 8;
+    private static final int GROUP = 1 << 9;
+
+    /** The attributes that are retrieved from the resolver. */
+    private static final int RESOLVED = EXECUTABLE | READABLE | WRITABLE | OWNER | GROUP;
+
+    /** No permissions are known. */
+    private static final int NO_PERMISSIONS = -1;
+
     /** The path these attributes belong to */
     private Path path;
 
-    /** Is this a directory ? */
-    private boolean isDirectory;
-
-    /** Is this a regular file ? */
-    private boolean isRegular;
-
-    /** Is this a symbolic link ? */
-    private boolean isSymbolicLink;
-
-    /** Is this an other type of file ? */
-    private boolean isOther;
-
-    /** Is the file executable ? */
-    private boolean executable;
-
-    /** Is the file readable ? */
-    private boolean readable;
-
-    /** Is the file writable ? */
-    private boolean writable;
+    /** The boolean attributes of this file */
+    private int flags;
 
-    /** Is the file hidden ? */
-    private boolean hidden;
+    /** The attributes that still have to be retrieved from the resolver */
+    private int unresolved;
 
     /** The creation time of this file */
     private long creationTime;
@@ -74,14 +118,75 @@ public class PathAttributesImplementation implements PathAttributes {
     /** The group of this file */
     private String group;
 
-    /** The permissions of this file (POSIX only) */
-    private Set<PosixFilePermission> permissions;
+    /** The permissions of this file as POSIX mode bits (POSIX only) */
+    private int permissions = NO_PERMISSIONS;
+
+    /** Retrieves the expensive attributes on demand */
+    private Resolver resolver;
 
     public PathAttributesImplementation() {
         // EMPTY
     }
 
+    private boolean get(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    private void set(int flag, boolean value) {
+        if (value) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+    }
+
+    private void resolve(int flag) {
+        if (resolver != null) {
+            resolveSynchronized(flag);
+        }
+    }
+
+    private synchronized void resolveSynchronized(int flag) {
+
+        if ((unresolved & flag) == 0) {
+            return;
+        }
+
+        switch (flag) {
+        case EXECUTABLE:
+            set(EXECUTABLE, resolver.isExecutable());
+            break;
+        case READABLE:
+            set(READABLE, resolver.isReadable());
+            break;
+        case WRITABLE:
+            set(WRITABLE, resolver.isWritable());
+            break;
+        case OWNER:
+            owner = resolver.getOwner();
+            break;
+        default:
+            group = resolver.getGroup();
+        }
+
+        unresolved &= ~flag;
+    }
+
+    private synchronized void resolved(int flag) {
+        unresolved &= ~flag;
+    }
 
+    /**
+     * Let a resolver retrieve the owner, group and access flags when they are first requested. Attributes that are set explicitly afterwards are not
+     * retrieved.
+     *
+     * @param resolver
+     *            the resolver.
+     */
+    public synchronized void setResolver(Resolver resolver) {
+        this.resolver = resolver;
+        this.unresolved = resolver == null ? 0 : RESOLVED;
+    }
 
     /**
      * Get the path these attributes belong to.
@@ -104,11 +209,11 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers to a directory.
      */
     public boolean isDirectory() {
-        return isDirectory;
+        return get(DIRECTORY);
     }
 
     public void setDirectory(boolean isDirectory) {
-        this.isDirectory = isDirectory;
+        set(DIRECTORY, isDirectory);
     }
 
     /**
@@ -118,11 +223,11 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers to a regular file.
      */
     public boolean isRegular() {
-        return isRegular;
+        return get(REGULAR);
     }
 
     public void setRegular(boolean isRegular) {
-        this.isRegular = isRegular;
+        set(REGULAR, isRegular);
     }
 
     /**
@@ -132,11 +237,11 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers to a symbolic link.
      */
     public boolean isSymbolicLink() {
-        return isSymbolicLink;
+        return get(SYMBOLIC_LINK);
     }
 
     public void setSymbolicLink(boolean isSymbolicLink) {
-        this.isSymbolicLink = isSymbolicLink;
+        set(SYMBOLIC_LINK, isSymbolicLink);
     }
 
     /**
@@ -146,11 +251,11 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path does not refer to a file, link or directory.
      */
     public boolean isOther() {
-        return isOther;
+        return get(OTHER);
     }
 
     public void setOther(boolean isOther) {
-        this.isOther = isOther;
+        set(OTHER, isOther);
     }
 
     /**
@@ -160,11 +265,13 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers an executable file ?
      */
     public boolean isExecutable() {
-        return executable;
+        resolve(EXECUTABLE);
+        return get(EXECUTABLE);
     }
 
     public void setExecutable(boolean executable) {
-        this.executable = executable;
+        resolved(EXECUTABLE);
+        set(EXECUTABLE, executable);
     }
 
 
@@ -175,11 +282,13 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers an readable file ?
      */
     public boolean isReadable() {
-        return readable;
+        resolve(READABLE);
+        return get(READABLE);
     }
 
     public void setReadable(boolean readable) {
-        this.readable = readable;
+        resolved(READABLE);
+        set(READABLE, readable);
     }
 
     /**
@@ -189,11 +298,13 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers a writable file ?
      */
     public boolean isWritable() {
-        return writable;
+        resolve(WRITABLE);
+        return get(WRITABLE);
     }
 
     public void setWritable(boolean writable) {
-        this.writable = writable;
+        resolved(WRITABLE);
+        set(WRITABLE, writable);
     }
 
     /**
@@ -203,11 +314,11 @@ public class PathAttributesImplementation implements PathAttributes {
      *          if the path refers an hidden file ?
      */
     public boolean isHidden() {
-        return hidden;
+        return get(HIDDEN);
     }
 
     public void setHidden(boolean hidden) {
-        this.hidden = hidden;
+        set(HIDDEN, hidden);
     }
 
 
@@ -287,10 +398,12 @@ public class PathAttributesImplementation implements PathAttributes {
      *          If the attribute is not supported by the adaptor.
      */
     public String getOwner() throws AttributeNotSupportedException {
+        resolve(OWNER);
         return owner;
     }
 
     public void setOwner(String owner) {
+        resolved(OWNER);
         this.owner = owner;
     }
 
@@ -304,16 +417,20 @@ public class PathAttributesImplementation implements PathAttributes {
      *          If the attribute is not supported by the adaptor.
      */
     public String getGroup() throws AttributeNotSupportedException {
+        resolve(GROUP);
         return group;
     }
 
     public void setGroup(String group) {
+        resolved(GROUP);
         this.group = group;
     }
 
     /**
      * Get the permissions of this file.
      *
+     * A new set is created for every call.
+     *
      * @return
      *          the permissions of this file.
      *
@@ -322,13 +439,32 @@ public class PathAttributesImplementation implements PathAttributes {
      */
 
     public Set<PosixFilePermission> getPermissions() throws AttributeNotSupportedException {
-        return permissions;
+        return permissions == NO_PERMISSIONS ? null : PosixFileUtils.bitsToPermissions(permissions);
     }
 
     public void setPermissions(Set<PosixFilePermission> permissions) {
-        this.permissions = permissions;
+        this.permissions = permissions == null ? NO_PERMISSIONS : PosixFileUtils.permissionsToBits(permissions);
+    }
+
+    /**
+     * Get the permissions of this file as POSIX mode bits.
+     *
+     * @return
+     *          the permission bits, or <code>-1</code> if the permissions are not known.
+     */
+    public int getPermissionBits() {
+        return permissions;
     }
 
+    /**
+     * Set the permissions of this file from POSIX mode bits. Any file type and special mode bits are ignored.
+     *
+     * @param bits
+     *          the mode bits.
+     */
+    public void setPermissionBits(int bits) {
+        this.permissions = bits & 0777;
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -337,24 +473,25 @@ public class PathAttributesImplementation implements PathAttributes {
 
         PathAttributesImplementation that = (PathAttributesImplementation) o;
         return Objects.equals(path, that.path) &&
-                isDirectory == that.isDirectory &&
-                isRegular == that.isRegular &&
-                isSymbolicLink == that.isSymbolicLink &&
-                isOther == that.isOther;
+                isDirectory() == that.isDirectory() &&
+                isRegular() == that.isRegular() &&
+                isSymbolicLink() == that.isSymbolicLink() &&
+                isOther() == that.isOther();
     }
 
     @Override
     public String toString() {
-        return "PathAttributesImplementation [path=" + path + ", isDirectory=" + isDirectory + ", isRegular="
-                + isRegular + ", isSymbolicLink=" + isSymbolicLink + ", isOther=" + isOther + ", executable="
-                + executable + ", readable=" + readable + ", writable=" + writable + ", hidden=" + hidden
+        // Attributes that have not been resolved yet are not retrieved for this.
+        return "PathAttributesImplementation [path=" + path + ", isDirectory=" + isDirectory() + ", isRegular="
+                + isRegular() + ", isSymbolicLink=" + isSymbolicLink() + ", isOther=" + isOther() + ", executable="
+                + get(EXECUTABLE) + ", readable=" + get(READABLE) + ", writable=" + get(WRITABLE) + ", hidden=" + isHidden()
                 + ", creationTime=" + creationTime + ", lastAccessTime=" + lastAccessTime + ", lastModifiedTime="
                 + lastModifiedTime + ", size=" + size + ", owner=" + owner + ", group=" + group + ", permissions="
-                + permissions + "]";
+                + (permissions == NO_PERMISSIONS ? null : PosixFileUtils.bitsToPermissions(permissions)) + "]";
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(path, isDirectory, isRegular, isSymbolicLink, isOther);
+        return Objects.hash(path, isDirectory(), isRegular(), isSymbolicLink(), isOther());
     }
 }
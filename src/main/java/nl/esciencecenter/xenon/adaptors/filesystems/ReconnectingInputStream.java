@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import nl.esciencecenter.xenon.XenonException;
+
+/**
+ * An InputStream that reopens the underlying stream at the current offset when a read fails, for example because the connection was dropped.
+ *
+ * The stream is reopened at most <code>retries</code> times for a single read, waiting <code>backoff</code> milliseconds before the first attempt and
+ * doubling the wait for every next attempt. If the read still fails, the last exception is thrown. A read that was interrupted, or that failed because the
+ * stream was closed, is not retried.
+ *
+ * Whether reopening helps depends on the opener. The FTP adaptor reads over a new connection and the WebDAV adaptor sends a new request, so both recover
+ * from a dropped data connection. The SFTP adaptor reopens the file on the same SSH session, so it only recovers from errors that leave the session
+ * intact. Once the session is gone, every attempt fails.
+ */
+public class ReconnectingInputStream extends InputStream {
+
+    /**
+     * Opens a stream to the data at a given offset.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open(long offset) throws XenonException;
+    }
+
+    /** The default time to wait before the first attempt to reopen the stream, in milliseconds. */
+    public static final long DEFAULT_BACKOFF = 100;
+
+    private final Opener opener;
+    private final int retries;
+    private final long backoff;
+
+    private volatile InputStream inputStream;
+    private volatile boolean closed = false;
+    private long offset;
+
+    public ReconnectingInputStream(Opener opener, long offset, int retries) throws XenonException {
+        this(opener, offset, retries, DEFAULT_BACKOFF);
+    }
+
+    public ReconnectingInputStream(Opener opener, long offset, int retries, long backoff) throws XenonException {
+
+        if (retries < 0) {
+            throw new IllegalArgumentException("Retries may not be negative");
+        }
+
+        if (backoff < 0) {
+            throw new IllegalArgumentException("Backoff may not be negative");
+        }
+
+        this.opener = opener;
+        this.offset = offset;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.inputStream = opener.open(offset);
+    }
+
+    /**
+     * Returns the offset of the next byte to read.
+     *
+     * @return the current offset.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        int attempt = 0;
+
+        while (true) {
+            try {
+                int n = inputStream.read(b, off, len);
+
+                if (n > 0) {
+                    offset += n;
+                }
+
+                return n;
+            } catch (IOException e) {
+                attempt = reconnect(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Reopen the stream at the current offset after <code>failure</code>. Returns the number of attempts used so far, or throws <code>failure</code> if the
+     * stream could not be reopened within the remaining attempts.
+     */
+    private int reconnect(IOException failure, int attempt) throws IOException {
+
+        // An interrupted read was aborted on purpose, so do not hide it by reconnecting.
+        if (failure instanceof InterruptedIOException) {
+            throw failure;
+        }
+
+        // Another thread may close the stream to abort a blocked read. Reconnecting then would leak a stream.
+        while (attempt < retries && !closed && !Thread.currentThread().isInterrupted()) {
+
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // ignored, the stream is broken anyway.
+            }
+
+            try {
+                Thread.sleep(backoff << Math.min(attempt, 16));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            attempt++;
+
+            if (closed) {
+                break;
+            }
+
+            try {
+                inputStream = opener.open(offset);
+
+                if (closed) {
+                    inputStream.close();
+                    break;
+                }
+
+                return attempt;
+            } catch (XenonException e) {
+                failure.addSuppressed(e);
+            }
+        }
+
+        throw failure;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = inputStream.skip(n);
+        offset += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return inputStream.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        inputStream.close();
+    }
+
+    @Override
+    public String toString() {
+        return inputStream.toString();
+    }
+}
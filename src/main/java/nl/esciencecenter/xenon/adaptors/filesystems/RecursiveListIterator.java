@@ -15,51 +15,106 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 
-import java.util.Iterator;
-import java.util.Stack;
-import java.util.function.Function;
+/**
+ * An iterator over a recursive listing, used when the file system does not support recursive listing or does not implement it as we expect (we also list
+ * directories).
+ *
+ * A directory is listed when the iteration reaches its content, so only the iterators of the directories between the root and the current entry are kept.
+ * A directory is returned before its content. The "." and ".." entries are skipped and symbolic links to directories are not followed.
+ *
+ * The iterators of the directories are closed when they are exhausted, if they are a {@link CloseableIterator}. Closing this iterator closes the iterators
+ * of the directories that are still being listed, which is needed when the iteration is abandoned or fails halfway.
+ */
+public class RecursiveListIterator implements CloseableIterator<PathAttributes> {
+
+    private final Deque<Iterator<PathAttributes>> stack = new ArrayDeque<>();
+    private final Function<Path, Iterator<PathAttributes>> list;
 
-// use this to implement recursive listing in case the system
-// does not support recursive listing or does not implement recursive listing
-// as we expect (we also list directories)
-public class RecursiveListIterator implements Iterator<PathAttributes> {
+    // The next entry to return, or null if it has not been fetched yet.
+    private PathAttributes next;
 
-    final Stack<Iterator<PathAttributes>> stack;
-    final Function<Path,Iterator<PathAttributes>> list;
+    // A directory returned by next() that has not been listed yet.
+    private Path pending;
 
-    public RecursiveListIterator(Function<Path,Iterator<PathAttributes>> list, Path path) {
-        stack = new Stack<>();
+    public RecursiveListIterator(Function<Path, Iterator<PathAttributes>> list, Path path) {
+        this(list, list.apply(path));
+    }
+
+    public RecursiveListIterator(Function<Path, Iterator<PathAttributes>> list, Iterator<PathAttributes> first) {
         this.list = list;
-        Iterator<PathAttributes> it = list.apply(path);
-        stack.push(it);
+        stack.push(first);
+    }
+
+    private static boolean isDotDot(Path path) {
+        String filename = path.getFileNameAsString();
+        return ".".equals(filename) || "..".equals(filename);
     }
 
-    void popEmpties() {
-        while (!stack.empty()) {
-            if (!stack.peek().hasNext()) {
-                stack.pop();
+    @Override
+    public boolean hasNext() {
+
+        if (next != null) {
+            return true;
+        }
+
+        if (pending != null) {
+            Path dir = pending;
+            pending = null;
+            stack.push(list.apply(dir));
+        }
+
+        while (!stack.isEmpty()) {
+            Iterator<PathAttributes> top = stack.peek();
+
+            if (!top.hasNext()) {
+                CloseableIterator.closeIfNeeded(stack.pop());
             } else {
-                return;
+                PathAttributes p = top.next();
+
+                if (!isDotDot(p.getPath())) {
+                    next = p;
+                    return true;
+                }
             }
         }
+
+        return false;
     }
 
     @Override
-    public boolean hasNext() {
-        popEmpties();
-        return !stack.isEmpty();
+    public PathAttributes next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more entries");
+        }
+
+        PathAttributes result = next;
+        next = null;
+
+        if (result.isDirectory() && !result.isSymbolicLink()) {
+            pending = result.getPath();
+        }
+
+        return result;
     }
 
     @Override
-    public PathAttributes next() {
-        PathAttributes nxt = stack.peek().next();
-        if (nxt.isDirectory()) {
-            stack.push(list.apply(nxt.getPath()));
+    public void close() {
+        next = null;
+        pending = null;
+
+        while (!stack.isEmpty()) {
+            CloseableIterator.closeIfNeeded(stack.pop());
         }
-        popEmpties();
-        return nxt;
     }
 }
@@ -28,12 +28,11 @@ import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
-import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
-import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
@@ -60,12 +59,29 @@ public class FtpFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Start transferring files while a recursive copy is still listing the source directories. */
+    public static final String COPY_PIPELINED = PREFIX + "copy.pipelined";
+
+    /** The number of directories to delete concurrently when deleting recursively. */
+    public static final String DELETE_PARALLELISM = PREFIX + "delete.parallelism";
+
+    /** The number of directories to read concurrently when listing recursively. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The time in milliseconds for which the attributes of a path are cached, or 0 to disable the cache. */
+    public static final String CACHE_TTL = PREFIX + "cache.ttl";
+
+    /** The maximum number of paths of which the attributes are cached. */
+    public static final String CACHE_SIZE = PREFIX + "cache.size";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "host[:port][/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
-    private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+    private static final XenonPropertyDescription[] VALID_PROPERTIES = withCommonProperties(PREFIX);
 
     public FtpFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -124,12 +140,7 @@ public class FtpFileAdaptor extends FileAdaptor {
 
         XenonProperties xp = new XenonProperties(VALID_PROPERTIES, properties);
 
-        long bufferSize = xp.getSizeProperty(BUFFER_SIZE);
-
-        if (bufferSize <= 0 || bufferSize >= Integer.MAX_VALUE) {
-            throw new InvalidPropertyException(ADAPTOR_NAME,
-                    "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
-        }
+        FileSystemSettings settings = getFileSystemSettings(ADAPTOR_NAME, xp);
 
         FTPClient ftpClient = connect(location, credential);
 
@@ -148,7 +159,7 @@ public class FtpFileAdaptor extends FileAdaptor {
 
         LOGGER.debug("CWD is {}", cwd);
 
-        return new FtpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, new Path(cwd), (int) bufferSize, ftpClient, credential, this, xp);
+        return new FtpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, new Path(cwd), settings, ftpClient, credential, this, xp);
     }
 
     private String getCurrentWorkingDirectory(FTPClient ftpClient, String location) throws XenonException {
@@ -22,15 +22,18 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPFileFilters;
+import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,10 +41,13 @@ import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
 import nl.esciencecenter.xenon.adaptors.filesystems.TransferClientInputStream;
 import nl.esciencecenter.xenon.adaptors.filesystems.TransferClientOutputStream;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
@@ -55,8 +61,16 @@ public class FtpFileSystem extends FileSystem {
 
     private static final int[] PERMISSION_TYPES = { FTPFile.READ_PERMISSION, FTPFile.WRITE_PERMISSION, FTPFile.EXECUTE_PERMISSION };
 
+    /** The mode bits of the read, write and execute permissions, in the order of PERMISSION_TYPES. */
+    private static final int[] PERMISSION_BITS = { 4, 2, 1 };
+
     private static final int[] USER_TYPES = { FTPFile.USER_ACCESS, FTPFile.GROUP_ACCESS, FTPFile.WORLD_ACCESS };
 
+    /** The shift of the mode bits of the user, group and world, in the order of USER_TYPES. */
+    private static final int[] USER_SHIFTS = { 6, 3, 0 };
+
+    private static final DateTimeFormatter MFMT_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
     private final FTPClient ftpClient;
     private final Credential credential;
     private final FtpFileAdaptor adaptor;
@@ -81,9 +95,9 @@ public class FtpFileSystem extends FileSystem {
         }
     }
 
-    protected FtpFileSystem(String uniqueID, String name, String location, Path entryPath, int bufferSize, FTPClient ftpClient, Credential credential,
-            FtpFileAdaptor adaptor, XenonProperties properties) {
-        super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
+    protected FtpFileSystem(String uniqueID, String name, String location, Path entryPath, FileSystemSettings settings, FTPClient ftpClient,
+            Credential credential, FtpFileAdaptor adaptor, XenonProperties properties) {
+        super(uniqueID, name, location, credential, entryPath, settings, properties);
         this.ftpClient = ftpClient;
         this.credential = credential;
         this.adaptor = adaptor;
@@ -113,54 +127,16 @@ public class FtpFileSystem extends FileSystem {
         return ftpClient.isConnected();
     }
 
-    private HashSet<PosixFilePermission> getPermissions(FTPFile attributes) {
-        HashSet<PosixFilePermission> permissions = new HashSet<>();
-        for (int userType : USER_TYPES) {
-            for (int permissionType : PERMISSION_TYPES) {
-                if (attributes.hasPermission(userType, permissionType)) {
-                    permissions.add(getPosixFilePermission(userType, permissionType));
+    private int getPermissionBits(FTPFile attributes) {
+        int bits = 0;
+        for (int u = 0; u < USER_TYPES.length; u++) {
+            for (int p = 0; p < PERMISSION_TYPES.length; p++) {
+                if (attributes.hasPermission(USER_TYPES[u], PERMISSION_TYPES[p])) {
+                    bits |= PERMISSION_BITS[p] << USER_SHIFTS[u];
                 }
             }
         }
-        return permissions;
-    }
-
-    private PosixFilePermission getPosixFilePermission(int userType, int permissionType) {
-        PosixFilePermission permission = null;
-        if (userType == FTPFile.USER_ACCESS) {
-            if (permissionType == FTPFile.EXECUTE_PERMISSION) {
-                permission = PosixFilePermission.OWNER_EXECUTE;
-            }
-            if (permissionType == FTPFile.WRITE_PERMISSION) {
-                permission = PosixFilePermission.OWNER_WRITE;
-            }
-            if (permissionType == FTPFile.READ_PERMISSION) {
-                permission = PosixFilePermission.OWNER_READ;
-            }
-        }
-        if (userType == FTPFile.GROUP_ACCESS) {
-            if (permissionType == FTPFile.EXECUTE_PERMISSION) {
-                permission = PosixFilePermission.GROUP_EXECUTE;
-            }
-            if (permissionType == FTPFile.WRITE_PERMISSION) {
-                permission = PosixFilePermission.GROUP_WRITE;
-            }
-            if (permissionType == FTPFile.READ_PERMISSION) {
-                permission = PosixFilePermission.GROUP_READ;
-            }
-        }
-        if (userType == FTPFile.WORLD_ACCESS) {
-            if (permissionType == FTPFile.EXECUTE_PERMISSION) {
-                permission = PosixFilePermission.OTHERS_EXECUTE;
-            }
-            if (permissionType == FTPFile.WRITE_PERMISSION) {
-                permission = PosixFilePermission.OTHERS_WRITE;
-            }
-            if (permissionType == FTPFile.READ_PERMISSION) {
-                permission = PosixFilePermission.OTHERS_READ;
-            }
-        }
-        return permission;
+        return bits;
     }
 
     private PathAttributes convertAttributes(Path path, FTPFile attributes) {
@@ -179,13 +155,13 @@ public class FtpFileSystem extends FileSystem {
 
         result.setSize(attributes.getSize());
 
-        Set<PosixFilePermission> permission = getPermissions(attributes);
+        int permission = getPermissionBits(attributes);
 
-        result.setExecutable(permission.contains(PosixFilePermission.OWNER_EXECUTE));
-        result.setReadable(permission.contains(PosixFilePermission.OWNER_READ));
-        result.setWritable(permission.contains(PosixFilePermission.OWNER_WRITE));
+        result.setExecutable((permission & PosixFileUtils.EXEC_OWNER) != 0);
+        result.setReadable((permission & PosixFileUtils.READ_OWNER) != 0);
+        result.setWritable((permission & PosixFileUtils.WRITE_OWNER) != 0);
 
-        result.setPermissions(permission);
+        result.setPermissionBits(permission);
 
         result.setGroup(attributes.getGroup());
         result.setOwner(attributes.getUser());
@@ -228,13 +204,18 @@ public class FtpFileSystem extends FileSystem {
         assertPathNotExists(absTarget);
         assertParentDirectoryExists(absTarget);
 
-        try {
-            ftpClient.rename(absSource.toString(), absTarget.toString());
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to rename " + absSource.toString() + " to " + absTarget.toString(), e);
+        synchronized (ftpClient) {
+            try {
+                ftpClient.rename(absSource.toString(), absTarget.toString());
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to rename " + absSource.toString() + " to " + absTarget.toString(), e);
+            }
+
+            checkClientReply("Failed to rename " + absSource.toString() + " to " + absTarget.toString());
         }
 
-        checkClientReply("Failed to rename " + absSource.toString() + " to " + absTarget.toString());
+        invalidateAttributes(absSource);
+        invalidateAttributes(absTarget);
     }
 
     @Override
@@ -247,13 +228,17 @@ public class FtpFileSystem extends FileSystem {
         assertPathNotExists(absPath);
         assertParentDirectoryExists(absPath);
 
-        try {
-            ftpClient.makeDirectory(absPath.toString());
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
+        synchronized (ftpClient) {
+            try {
+                ftpClient.makeDirectory(absPath.toString());
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
+            }
+
+            checkClientReply("Failed to create directory: " + absPath.toString());
         }
 
-        checkClientReply("Failed to create directory: " + absPath.toString());
+        invalidateAttributes(absPath);
     }
 
     @Override
@@ -265,14 +250,18 @@ public class FtpFileSystem extends FileSystem {
         assertPathNotExists(absPath);
         assertParentDirectoryExists(absPath);
 
-        try {
-            ByteArrayInputStream dummy = new ByteArrayInputStream(new byte[0]);
-            ftpClient.storeFile(absPath.toString(), dummy);
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
+        synchronized (ftpClient) {
+            try {
+                ByteArrayInputStream dummy = new ByteArrayInputStream(new byte[0]);
+                ftpClient.storeFile(absPath.toString(), dummy);
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + absPath.toString(), e);
+            }
+
+            checkClientReply("Failed to create file: " + absPath.toString());
         }
 
-        checkClientReply("Failed to create file: " + absPath.toString());
+        invalidateAttributes(absPath);
     }
 
     @Override
@@ -285,13 +274,15 @@ public class FtpFileSystem extends FileSystem {
 
         assertIsOpen();
 
-        try {
-            ftpClient.removeDirectory(path.toString());
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + path.toString(), e);
-        }
+        synchronized (ftpClient) {
+            try {
+                ftpClient.removeDirectory(path.toString());
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + path.toString(), e);
+            }
 
-        checkClientReply("Failed to delete directory: " + path.toString());
+            checkClientReply("Failed to delete directory: " + path.toString());
+        }
     }
 
     @Override
@@ -299,13 +290,15 @@ public class FtpFileSystem extends FileSystem {
 
         assertIsOpen();
 
-        try {
-            ftpClient.deleteFile(path.toString());
-        } catch (Exception e) {
-            throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + path.toString(), e);
-        }
+        synchronized (ftpClient) {
+            try {
+                ftpClient.deleteFile(path.toString());
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to createDirectory " + path.toString(), e);
+            }
 
-        checkClientReply("Failed to delete file: " + path.toString());
+            checkClientReply("Failed to delete file: " + path.toString());
+        }
     }
 
     @Override
@@ -369,7 +362,15 @@ public class FtpFileSystem extends FileSystem {
         // We cannot always get the FTPFile of the path directly, behavior of
         // FTP servers seems to vary. Instead,
         // we get the listing of the parent directory and extract the
-        // information we need from there.
+        // information we need from there. The working directory of the shared
+        // client is changed temporarily, so this must not be interleaved with
+        // other commands.
+        synchronized (ftpClient) {
+            return getFTPFileInfoFromParent(path);
+        }
+    }
+
+    private FTPFile getFTPFileInfoFromParent(Path path) throws XenonException {
         try {
             Path p = path.getParent();
 
@@ -412,7 +413,13 @@ public class FtpFileSystem extends FileSystem {
         try {
             ArrayList<PathAttributes> result = new ArrayList<>();
 
-            for (FTPFile f : ftpClient.listFiles(path.toString(), FTPFileFilters.NON_NULL)) {
+            FTPFile[] files;
+
+            synchronized (ftpClient) {
+                files = ftpClient.listFiles(path.toString(), FTPFileFilters.NON_NULL);
+            }
+
+            for (FTPFile f : files) {
                 result.add(convertAttributes(path.resolve(f.getName()), f));
             }
 
@@ -422,9 +429,56 @@ public class FtpFileSystem extends FileSystem {
         }
     }
 
+    @Override
+    protected void listDirectory(Path path, DirectoryBatch batch) throws XenonException {
+        assertIsOpen();
+
+        try {
+            FTPFile[] files;
+
+            synchronized (ftpClient) {
+                files = ftpClient.listFiles(path.toString(), FTPFileFilters.NON_NULL);
+            }
+
+            for (FTPFile f : files) {
+                String name = f.getName();
+
+                // Some servers include these in a LIST of the directory.
+                if (".".equals(name) || "..".equals(name)) {
+                    continue;
+                }
+
+                byte type;
+
+                if (f.isSymbolicLink()) {
+                    type = DirectoryBatch.SYMBOLIC_LINK;
+                } else if (f.isDirectory()) {
+                    type = DirectoryBatch.DIRECTORY;
+                } else if (f.isFile()) {
+                    type = DirectoryBatch.REGULAR;
+                } else {
+                    type = DirectoryBatch.OTHER;
+                }
+
+                batch.add(name, type, f.getSize(), f.getTimestamp().getTimeInMillis(), getPermissionBits(f));
+            }
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to retrieve directory listing of " + path, e);
+        }
+    }
+
     @Override
     public InputStream readFromFile(Path path) throws XenonException {
-        LOGGER.debug("newInputStream path = {}", path);
+        return readFromFile(path, 0);
+    }
+
+    @Override
+    public InputStream readFromFile(Path path, long offset) throws XenonException {
+        LOGGER.debug("newInputStream path = {} offset = {}", path, offset);
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset may not be negative");
+        }
 
         assertIsOpen();
         Path absPath = toAbsolutePath(path);
@@ -437,6 +491,11 @@ public class FtpFileSystem extends FileSystem {
         newClient.enterLocalPassiveMode();
 
         try {
+            if (offset > 0) {
+                // Sends a REST command, so the server starts the transfer at the offset.
+                newClient.setRestartOffset(offset);
+            }
+
             InputStream in = newClient.retrieveFileStream(absPath.toString());
 
             checkClientReply(newClient, "Failed to read from path: " + absPath.toString());
@@ -465,6 +524,7 @@ public class FtpFileSystem extends FileSystem {
             newClient.setFileType(FTPClient.BINARY_FILE_TYPE);
             OutputStream out = newClient.storeFileStream(absPath.toString());
             checkClientReply(newClient, "Failed to write to path: " + absPath.toString());
+            invalidateAttributes(absPath);
             return new TransferClientOutputStream(out, new CloseableClient(newClient));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to write to path: " + absPath);
@@ -496,6 +556,7 @@ public class FtpFileSystem extends FileSystem {
                 checkClientReply("Failed to append to path: " + absPath.toString());
             }
 
+            invalidateAttributes(absPath);
             return new TransferClientOutputStream(out, new CloseableClient(newClient));
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to append to path: " + absPath);
@@ -520,4 +581,46 @@ public class FtpFileSystem extends FileSystem {
     public void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) throws XenonException {
         throw new UnsupportedOperationException(getAdaptorName(), "FTP does not support changing permissions.");
     }
+
+    @Override
+    protected long getTimestampResolution() {
+        // A LIST reply shows the modification time in minutes.
+        return 60 * 1000;
+    }
+
+    @Override
+    protected boolean canSetLastModifiedTime() {
+        return true;
+    }
+
+    @Override
+    public void setLastModifiedTime(Path path, long time) throws XenonException {
+        LOGGER.debug("setLastModifiedTime path = {} time = {}", path, time);
+
+        assertIsOpen();
+
+        Path absPath = toAbsolutePath(path);
+        assertPathExists(absPath);
+
+        // MFMT expects the time in UTC, with second precision.
+        String timeval = MFMT_FORMAT.format(Instant.ofEpochMilli(time));
+
+        synchronized (ftpClient) {
+            try {
+                ftpClient.setModificationTime(absPath.toString(), timeval);
+            } catch (Exception e) {
+                throw new XenonException(ADAPTOR_NAME, "Failed to set modification time of " + absPath.toString(), e);
+            }
+
+            int replyCode = ftpClient.getReplyCode();
+
+            if (replyCode == FTPReply.UNRECOGNIZED_COMMAND || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED) {
+                throw new UnsupportedOperationException(ADAPTOR_NAME, "FTP server does not support changing the modification time.");
+            }
+
+            checkClientReply("Failed to set modification time of " + absPath.toString());
+        }
+
+        invalidateAttributes(absPath);
+    }
 }
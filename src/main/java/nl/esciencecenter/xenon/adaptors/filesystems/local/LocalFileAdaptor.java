@@ -23,12 +23,11 @@ import java.nio.file.Files;
 import java.util.Map;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
-import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
-import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
@@ -57,12 +56,29 @@ public class LocalFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Start transferring files while a recursive copy is still listing the source directories. */
+    public static final String COPY_PIPELINED = PREFIX + "copy.pipelined";
+
+    /** The number of directories to delete concurrently when deleting recursively. */
+    public static final String DELETE_PARALLELISM = PREFIX + "delete.parallelism";
+
+    /** The number of directories to read concurrently when listing recursively. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The time in milliseconds for which the attributes of a path are cached, or 0 to disable the cache. */
+    public static final String CACHE_TTL = PREFIX + "cache.ttl";
+
+    /** The maximum number of paths of which the attributes are cached. */
+    public static final String CACHE_SIZE = PREFIX + "cache.size";
+
     /** The locations supported by the adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "(null)", "(empty string)", "[/workdir]", "driveletter:[/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
-    private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+    private static final XenonPropertyDescription[] VALID_PROPERTIES = withCommonProperties(PREFIX);
 
     public LocalFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -112,16 +128,11 @@ public class LocalFileAdaptor extends FileAdaptor {
 
         XenonProperties xp = new XenonProperties(VALID_PROPERTIES, properties);
 
-        long bufferSize = xp.getSizeProperty(BUFFER_SIZE);
-
-        if (bufferSize <= 0 || bufferSize >= Integer.MAX_VALUE) {
-            throw new InvalidPropertyException(ADAPTOR_NAME,
-                    "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
-        }
+        FileSystemSettings settings = getFileSystemSettings(ADAPTOR_NAME, xp);
 
         Path entry = new Path(LocalFileSystemUtils.getLocalSeparator(), path);
         // for Windows remove the drive letter from entry?
 
-        return new LocalFileSystem(getNewUniqueID(), location, new DefaultCredential(), root, entry, (int) bufferSize, xp);
+        return new LocalFileSystem(getNewUniqueID(), location, new DefaultCredential(), root, entry, settings, xp);
     }
 }
@@ -21,37 +21,67 @@ import static nl.esciencecenter.xenon.utils.LocalFileSystemUtils.getLocalRootles
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.CopyCancelledException;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.filesystems.Watch;
+import nl.esciencecenter.xenon.filesystems.WatchOptions;
 import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
 
 public class LocalFileSystem extends FileSystem {
 
+    /** The number of bytes handed to the kernel in a single transfer, and thus the granularity of the copy progress. */
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024L * 1024L;
+
+    /** The attributes read with a single call when the platform supports the "unix" attribute view. */
+    private static final String UNIX_ATTRIBUTES = "unix:mode,uid,gid,size,creationTime,lastAccessTime,lastModifiedTime,isDirectory,isRegularFile,"
+            + "isSymbolicLink,isOther";
+
+    /** The attributes kept in a {@link DirectoryBatch}. */
+    private static final String UNIX_BATCH_ATTRIBUTES = "unix:mode,size,lastModifiedTime,isDirectory,isRegularFile,isSymbolicLink";
+
+    private static final boolean UNIX_VIEW = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
     private final String root;
 
-    protected LocalFileSystem(String uniqueID, String location, Credential credential, String root, Path entryPath, int bufferSize,
+    /** The owner names of the user IDs seen so far. */
+    private final Map<Integer, String> owners = new ConcurrentHashMap<>();
+
+    /** The group names of the group IDs seen so far. */
+    private final Map<Integer, String> groups = new ConcurrentHashMap<>();
+
+    protected LocalFileSystem(String uniqueID, String location, Credential credential, String root, Path entryPath, FileSystemSettings settings,
             XenonProperties properties) {
-        super(uniqueID, ADAPTOR_NAME, location, credential, entryPath, bufferSize, properties);
+        super(uniqueID, ADAPTOR_NAME, location, credential, entryPath, settings, properties);
         this.root = root;
     }
 
@@ -61,7 +91,7 @@ public class LocalFileSystem extends FileSystem {
             throw new IllegalArgumentException("Path may not be null");
         }
 
-        return FileSystems.getDefault().getPath(root, toAbsolutePath(path.normalize()).toString());
+        return FileSystems.getDefault().getPath(root, toAbsolutePath(path).toString());
     }
 
     Set<PosixFilePermission> xenonPermissions(Set<java.nio.file.attribute.PosixFilePermission> permissions) {
@@ -114,14 +144,18 @@ public class LocalFileSystem extends FileSystem {
 
     PathAttributes getLocalFileAttributes(Path p, java.nio.file.Path path) throws XenonException {
         try {
+            boolean isWindows = LocalFileSystemUtils.isWindows();
+
+            if (!isWindows && UNIX_VIEW) {
+                return getUnixFileAttributes(p, path);
+            }
+
             PathAttributesImplementation result = new PathAttributesImplementation();
 
             result.setPath(p);
             result.setExecutable(Files.isExecutable(path));
             result.setReadable(Files.isReadable(path));
-            result.setReadable(Files.isWritable(path));
-
-            boolean isWindows = LocalFileSystemUtils.isWindows();
+            result.setWritable(Files.isWritable(path));
 
             BasicFileAttributes basicAttributes;
 
@@ -166,6 +200,99 @@ public class LocalFileSystem extends FileSystem {
         }
     }
 
+    /*
+     * Reads the attributes of a path with a single call. The owner and group names and the access checks need extra system calls, so these are left
+     * to a resolver and only retrieved when they are requested.
+     */
+    private PathAttributes getUnixFileAttributes(Path p, java.nio.file.Path path) throws IOException {
+
+        Map<String, Object> attributes = Files.readAttributes(path, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+
+        PathAttributesImplementation result = new PathAttributesImplementation();
+
+        result.setPath(p);
+        result.setPermissionBits((Integer) attributes.get("mode"));
+
+        java.nio.file.Path name = path.getFileName();
+        result.setHidden(name != null && name.toString().startsWith("."));
+
+        result.setCreationTime(((FileTime) attributes.get("creationTime")).toMillis());
+        result.setLastAccessTime(((FileTime) attributes.get("lastAccessTime")).toMillis());
+        result.setLastModifiedTime(((FileTime) attributes.get("lastModifiedTime")).toMillis());
+
+        result.setDirectory((Boolean) attributes.get("isDirectory"));
+        result.setRegular((Boolean) attributes.get("isRegularFile"));
+        result.setSymbolicLink((Boolean) attributes.get("isSymbolicLink"));
+        result.setOther((Boolean) attributes.get("isOther"));
+
+        if (result.isRegular()) {
+            result.setSize((Long) attributes.get("size"));
+        }
+
+        result.setResolver(new UnixResolver(path, (Integer) attributes.get("uid"), (Integer) attributes.get("gid")));
+        return result;
+    }
+
+    private class UnixResolver implements PathAttributesImplementation.Resolver {
+
+        private final java.nio.file.Path path;
+        private final int uid;
+        private final int gid;
+
+        UnixResolver(java.nio.file.Path path, int uid, int gid) {
+            this.path = path;
+            this.uid = uid;
+            this.gid = gid;
+        }
+
+        @Override
+        public String getOwner() {
+            String owner = owners.get(uid);
+
+            if (owner == null) {
+                try {
+                    owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName();
+                } catch (IOException e) {
+                    return null;
+                }
+                owners.put(uid, owner);
+            }
+
+            return owner;
+        }
+
+        @Override
+        public String getGroup() {
+            String group = groups.get(gid);
+
+            if (group == null) {
+                try {
+                    group = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS).group().getName();
+                } catch (IOException e) {
+                    return null;
+                }
+                groups.put(gid, group);
+            }
+
+            return group;
+        }
+
+        @Override
+        public boolean isExecutable() {
+            return Files.isExecutable(path);
+        }
+
+        @Override
+        public boolean isReadable() {
+            return Files.isReadable(path);
+        }
+
+        @Override
+        public boolean isWritable() {
+            return Files.isWritable(path);
+        }
+    }
+
     @Override
     public boolean isOpen() throws XenonException {
         return true;
@@ -187,6 +314,8 @@ public class LocalFileSystem extends FileSystem {
 
         try {
             Files.move(javaPath(absSource), javaPath(absTarget));
+            invalidateAttributes(absSource);
+            invalidateAttributes(absTarget);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to move " + absSource + " to " + absTarget, e);
         }
@@ -201,6 +330,7 @@ public class LocalFileSystem extends FileSystem {
 
         try {
             Files.createDirectory(javaPath(absdir));
+            invalidateAttributes(absdir);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create directory " + dir, e);
         }
@@ -215,6 +345,7 @@ public class LocalFileSystem extends FileSystem {
 
         try {
             Files.createFile(javaPath(absFile));
+            invalidateAttributes(absFile);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create file " + absFile, e);
         }
@@ -229,6 +360,7 @@ public class LocalFileSystem extends FileSystem {
 
         try {
             Files.createSymbolicLink(javaPath(absLink), javaPath(path));
+            invalidateAttributes(absLink);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create link " + absLink + " to " + path, e);
         }
@@ -266,6 +398,74 @@ public class LocalFileSystem extends FileSystem {
         }
     }
 
+    @Override
+    protected void listDirectory(Path dir, DirectoryBatch batch) throws XenonException {
+
+        boolean unix = UNIX_VIEW && !LocalFileSystemUtils.isWindows();
+
+        try (DirectoryStream<java.nio.file.Path> s = Files.newDirectoryStream(javaPath(dir))) {
+
+            for (java.nio.file.Path p : s) {
+                String name = p.getFileName().toString();
+
+                if (!unix) {
+                    batch.add(getLocalFileAttributes(dir.resolve(name), p));
+                    continue;
+                }
+
+                Map<String, Object> a = Files.readAttributes(p, UNIX_BATCH_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+
+                byte type;
+
+                if ((Boolean) a.get("isSymbolicLink")) {
+                    type = DirectoryBatch.SYMBOLIC_LINK;
+                } else if ((Boolean) a.get("isDirectory")) {
+                    type = DirectoryBatch.DIRECTORY;
+                } else if ((Boolean) a.get("isRegularFile")) {
+                    type = DirectoryBatch.REGULAR;
+                } else {
+                    type = DirectoryBatch.OTHER;
+                }
+
+                // Like getLocalFileAttributes, which only reports the size of regular files.
+                long size = (Boolean) a.get("isRegularFile") ? (Long) a.get("size") : 0;
+
+                batch.add(name, type, size, ((FileTime) a.get("lastModifiedTime")).toMillis(), (Integer) a.get("mode"));
+            }
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to list directory: " + dir, e);
+        }
+    }
+
+    @Override
+    protected Iterable<PathAttributes> listDirectory(Path dir, String glob) throws XenonException {
+
+        if (glob == null) {
+            return listDirectory(dir);
+        }
+
+        // Let the directory stream skip entries that do not match, so we only read the attributes of the ones that do.
+        try (DirectoryStream<java.nio.file.Path> s = Files.newDirectoryStream(javaPath(dir), glob)) {
+
+            ArrayList<PathAttributes> result = new ArrayList<>();
+
+            for (java.nio.file.Path p : s) {
+                result.add(getLocalFileAttributes(dir.resolve(p.getFileName().toString()), p));
+            }
+
+            return result;
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to list directory: " + dir, e);
+        }
+    }
+
+    @Override
+    protected Watch startWatch(Path dir, WatchOptions options) throws XenonException {
+        LocalWatch result = new LocalWatch(this, dir, options);
+        result.start();
+        return result;
+    }
+
     @Override
     public InputStream readFromFile(Path path) throws XenonException {
 
@@ -279,13 +479,42 @@ public class LocalFileSystem extends FileSystem {
         }
     }
 
+    @Override
+    public InputStream readFromFile(Path path, long offset) throws XenonException {
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset may not be negative");
+        }
+
+        Path absPath = toAbsolutePath(path);
+        assertFileExists(absPath);
+
+        try {
+            SeekableByteChannel channel = Files.newByteChannel(javaPath(absPath), StandardOpenOption.READ);
+
+            try {
+                channel.position(offset);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            return Channels.newInputStream(channel);
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to create InputStream.", e);
+        }
+    }
+
     @Override
     public OutputStream writeToFile(Path path, long size) throws XenonException {
 
         Path absPath = toAbsolutePath(path);
         assertPathNotExists(absPath);
         try {
-            return Files.newOutputStream(javaPath(absPath), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            OutputStream out = Files.newOutputStream(javaPath(absPath), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            invalidateAttributes(absPath);
+            return out;
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create OutputStream.", e);
         }
@@ -303,12 +532,61 @@ public class LocalFileSystem extends FileSystem {
         assertFileExists(absPath);
 
         try {
-            return Files.newOutputStream(javaPath(absPath), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            OutputStream out = Files.newOutputStream(javaPath(absPath), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            invalidateAttributes(absPath);
+            return out;
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create OutputStream.", e);
         }
     }
 
+    /**
+     * Copies the file content directly between two file channels when both files are local, so the kernel can copy the data without passing it through the
+     * JVM. Copies to any other filesystem use a stream copy.
+     */
+    @Override
+    protected void copyFileContent(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        if (!(destinationFS instanceof LocalFileSystem)) {
+            super.copyFileContent(source, attributes, destinationFS, destination, callback);
+            return;
+        }
+
+        LocalFileSystem target = (LocalFileSystem) destinationFS;
+
+        Path absSource = toAbsolutePath(source);
+        Path absTarget = target.toAbsolutePath(destination);
+        target.assertPathNotExists(absTarget);
+
+        try (FileChannel in = FileChannel.open(javaPath(absSource), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target.javaPath(absTarget), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+
+            target.invalidateAttributes(absTarget);
+
+            long size = in.size();
+            long position = 0;
+
+            while (position < size) {
+                long count = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+
+                if (count <= 0) {
+                    // The source file was truncated while we were copying it.
+                    break;
+                }
+
+                position += count;
+                callback.addBytesCopied(count);
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+                }
+            }
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to copy " + absSource + " to " + absTarget, e);
+        }
+    }
+
     @Override
     public PathAttributes getAttributes(Path path) throws XenonException {
         Path absPath = toAbsolutePath(path);
@@ -352,8 +630,34 @@ public class LocalFileSystem extends FileSystem {
         try {
             PosixFileAttributeView view = Files.getFileAttributeView(javaPath(absPath), PosixFileAttributeView.class);
             view.setPermissions(javaPermissions(permissions));
+            invalidateAttributes(absPath);
         } catch (IOException e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to set permissions " + absPath, e);
         }
     }
+
+    @Override
+    protected boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    protected boolean canSetLastModifiedTime() {
+        return true;
+    }
+
+    @Override
+    public void setLastModifiedTime(Path path, long time) throws XenonException {
+
+        Path absPath = toAbsolutePath(path);
+
+        assertPathExists(absPath);
+
+        try {
+            Files.setLastModifiedTime(javaPath(absPath), FileTime.fromMillis(time));
+            invalidateAttributes(absPath);
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to set modification time " + absPath, e);
+        }
+    }
 }
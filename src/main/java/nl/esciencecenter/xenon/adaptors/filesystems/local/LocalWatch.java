@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.local;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static nl.esciencecenter.xenon.adaptors.filesystems.local.LocalFileAdaptor.ADAPTOR_NAME;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+import nl.esciencecenter.xenon.filesystems.Watch;
+import nl.esciencecenter.xenon.filesystems.WatchEvent;
+import nl.esciencecenter.xenon.filesystems.WatchOptions;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * A watch that is notified of changes by a {@link WatchService}.
+ *
+ * A WatchService only watches a single directory, so every subdirectory is registered separately. When a directory is created, its existing entries are
+ * reported as created too, as they may have been created before the directory was registered. Some of them may therefore be reported twice.
+ */
+class LocalWatch extends Watch {
+
+    private final LocalFileSystem fs;
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    LocalWatch(LocalFileSystem fs, Path dir, WatchOptions options) throws XenonException {
+        super(dir, options);
+        this.fs = fs;
+
+        try {
+            this.service = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to create watch service", e);
+        }
+    }
+
+    /**
+     * Register the watched directories and start receiving events.
+     *
+     * @throws XenonException
+     *             If the watched directory could not be registered.
+     */
+    void start() throws XenonException {
+
+        try {
+            register(getPath(), false);
+        } catch (XenonException e) {
+            stop();
+            throw e;
+        }
+
+        new DaemonThreadFactory("Watch." + ADAPTOR_NAME).newThread(this::run).start();
+    }
+
+    private void register(Path dir, boolean report) throws XenonException {
+
+        // Registered while holding the lock, so the key is known before its events are handled.
+        try {
+            synchronized (directories) {
+                directories.put(fs.javaPath(dir).register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+            }
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to watch directory: " + dir, e);
+        }
+
+        if (getOptions().isRecursive()) {
+            for (PathAttributes e : fs.listDirectory(dir)) {
+                if (report) {
+                    deliver(WatchEvent.Kind.CREATED, e.getPath());
+                }
+
+                if (e.isDirectory() && !e.isSymbolicLink()) {
+                    register(e.getPath(), report);
+                }
+            }
+        }
+    }
+
+    private void created(Path path) {
+
+        deliver(WatchEvent.Kind.CREATED, path);
+
+        if (getOptions().isRecursive() && Files.isDirectory(fs.javaPath(path), LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                register(path, true);
+            } catch (XenonException e) {
+                // The directory was deleted again, which is reported separately, or cannot be read, so there is nothing to watch.
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir;
+
+                synchronized (directories) {
+                    dir = directories.get(key);
+                }
+
+                for (java.nio.file.WatchEvent<?> e : key.pollEvents()) {
+
+                    if (e.kind() == OVERFLOW) {
+                        failed(new XenonException(ADAPTOR_NAME, "Too many changes in " + getPath() + ", some events were lost"));
+                        return;
+                    }
+
+                    Path path = dir.resolve(e.context().toString());
+
+                    if (e.kind() == ENTRY_CREATE) {
+                        created(path);
+                    } else if (e.kind() == ENTRY_MODIFY) {
+                        deliver(WatchEvent.Kind.MODIFIED, path);
+                    } else {
+                        deliver(WatchEvent.Kind.DELETED, path);
+                    }
+                }
+
+                if (!key.reset()) {
+                    synchronized (directories) {
+                        directories.remove(key);
+                    }
+
+                    if (dir.equals(getPath())) {
+                        failed(new NoSuchPathException(ADAPTOR_NAME, "Watched directory was deleted: " + dir));
+                        return;
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // The watch was closed.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void stop() throws XenonException {
+        try {
+            service.close();
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to close watch service", e);
+        }
+    }
+}
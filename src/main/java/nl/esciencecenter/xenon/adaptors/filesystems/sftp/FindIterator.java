@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import static nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor.ADAPTOR_NAME;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import org.apache.sshd.client.channel.ChannelExec;
+
+import nl.esciencecenter.xenon.XenonRuntimeException;
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+
+/**
+ * Iterates over the output of <code>find -printf</code> in the format of {@link #FORMAT} while it arrives, so a large tree is never held in memory.
+ *
+ * The command is stopped by closing the exec channel when the iterator is closed. If the output ends, the iterator waits for the exit status of the
+ * command and throws a {@link XenonRuntimeException} if it failed.
+ */
+class FindIterator implements CloseableIterator<PathAttributes> {
+
+    // Type, size, modification and access time, permissions, owner, group and path of every entry. Every field is terminated by a null byte, as neither
+    // a user or group name nor a path can contain one.
+    static final String FORMAT = "%y\\0%s\\0%T@\\0%A@\\0%m\\0%u\\0%g\\0%p\\0";
+
+    private static final int FIELDS = 8;
+
+    private final Path dir;
+    private final InputStream in;
+    private final ChannelExec channel;
+    private final ByteArrayOutputStream err;
+    private final long timeout;
+
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+
+    private final ByteArrayOutputStream field = new ByteArrayOutputStream(256);
+    private final String[] fields = new String[FIELDS];
+    private int count;
+
+    private PathAttributes next;
+    private boolean done;
+    private boolean refused;
+
+    /**
+     * Create an iterator over the output of a <code>find</code> command.
+     *
+     * @param dir
+     *            the directory that is listed.
+     * @param in
+     *            the output of the command.
+     * @param channel
+     *            the channel running the command, or <code>null</code> if the output does not come from a channel.
+     * @param err
+     *            the stream that collects the error output of the command, or <code>null</code>.
+     * @param timeout
+     *            the maximum time in milliseconds to wait for the command to exit once its output ended.
+     */
+    FindIterator(Path dir, InputStream in, ChannelExec channel, ByteArrayOutputStream err, long timeout) {
+        this.dir = dir;
+        this.in = in;
+        this.channel = channel;
+        this.err = err;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Read the first entry. Unlike {@link #hasNext()}, this throws the original exception, so the caller can still fall back to another way of listing.
+     *
+     * @throws IOException
+     *             if the output could not be read or has an unexpected format, or the command failed.
+     */
+    void start() throws IOException {
+        next = read();
+
+        if (next == null) {
+            close();
+        }
+    }
+
+    /**
+     * Returns if the command ended without an exit status or signal, which means the server closed the channel instead of running it.
+     *
+     * @return if the server refused to run the command.
+     */
+    boolean isRefused() {
+        return refused;
+    }
+
+    /**
+     * Read the next entry.
+     *
+     * @return the entry, or <code>null</code> if the output ended and the command succeeded.
+     * @throws IOException
+     *             if the output could not be read or has an unexpected format, or the command failed.
+     */
+    PathAttributes read() throws IOException {
+
+        while (true) {
+            if (position == limit) {
+                int n = in.read(buffer);
+
+                if (n == -1) {
+                    return end();
+                }
+
+                position = 0;
+                limit = n;
+            }
+
+            int i = position;
+
+            while (i < limit && buffer[i] != 0) {
+                i++;
+            }
+
+            field.write(buffer, position, i - position);
+
+            if (i == limit) {
+                position = limit;
+            } else {
+                position = i + 1;
+                fields[count++] = new String(field.toByteArray(), StandardCharsets.UTF_8);
+                field.reset();
+
+                if (count == FIELDS) {
+                    count = 0;
+                    return parseEntry(fields);
+                }
+            }
+        }
+    }
+
+    private PathAttributes end() throws IOException {
+
+        if (count > 0 || field.size() > 0) {
+            throw new IOException("Truncated find output");
+        }
+
+        if (channel == null) {
+            return null;
+        }
+
+        if (!SftpFileSystem.awaitClosed(channel, timeout)) {
+            throw new IOException("find did not finish in time");
+        }
+
+        Integer status = channel.getExitStatus();
+
+        if (status == null) {
+            refused = channel.getExitSignal() == null;
+            throw new IOException("find did not exit normally: " + err);
+        }
+
+        if (status != 0) {
+            throw new IOException("find failed with exit status " + status + ": " + err);
+        }
+
+        return null;
+    }
+
+    static PathAttributes parseEntry(String[] fields) throws IOException {
+
+        if (fields[0].length() != 1) {
+            throw new IOException("Unexpected find output: " + String.join(" ", fields));
+        }
+
+        PathAttributesImplementation result = new PathAttributesImplementation();
+
+        Path path = new Path(fields[7]);
+        char type = fields[0].charAt(0);
+
+        result.setPath(path);
+        result.setDirectory(type == 'd');
+        result.setRegular(type == 'f');
+        result.setSymbolicLink(type == 'l');
+        result.setOther(type != 'd' && type != 'f' && type != 'l');
+
+        int permission;
+
+        try {
+            result.setSize(Long.parseLong(fields[1]));
+            result.setLastModifiedTime((long) (Double.parseDouble(fields[2]) * 1000));
+            result.setLastAccessTime((long) (Double.parseDouble(fields[3]) * 1000));
+            permission = Integer.parseInt(fields[4], 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected find output: " + String.join(" ", fields), e);
+        }
+
+        // find cannot print the creation time, so like an SFTP server that does not report it, we use the modification time instead.
+        result.setCreationTime(result.getLastModifiedTime());
+
+        result.setPermissionBits(permission);
+        result.setExecutable((permission & PosixFileUtils.EXEC_OWNER) != 0);
+        result.setReadable((permission & PosixFileUtils.READ_OWNER) != 0);
+        result.setWritable((permission & PosixFileUtils.WRITE_OWNER) != 0);
+
+        result.setOwner(fields[5]);
+        result.setGroup(fields[6]);
+
+        // assume UNIX-like filesystem
+        result.setHidden(path.getFileNameAsString().startsWith("."));
+
+        return result;
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        if (next == null && !done) {
+            try {
+                next = read();
+            } catch (InterruptedIOException e) {
+                close();
+                throw new XenonRuntimeException(ADAPTOR_NAME, "Listing interrupted", e);
+            } catch (IOException e) {
+                close();
+                throw new XenonRuntimeException(ADAPTOR_NAME, "Failed to list directory " + dir, e);
+            }
+
+            if (next == null) {
+                close();
+            }
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public PathAttributes next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more entries");
+        }
+
+        PathAttributes result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        next = null;
+
+        if (channel != null) {
+            channel.close(true);
+        }
+    }
+}
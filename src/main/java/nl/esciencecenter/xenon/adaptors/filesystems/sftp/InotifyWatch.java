@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+import static nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor.ADAPTOR_NAME;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
+import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.Watch;
+import nl.esciencecenter.xenon.filesystems.WatchEvent;
+import nl.esciencecenter.xenon.filesystems.WatchOptions;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * A watch that runs <code>inotifywait</code> on the server using an exec channel of the SSH connection, and reports the events it prints.
+ *
+ * A file name that contains a newline is reported as two separate paths, as <code>inotifywait</code> separates the events with newlines.
+ */
+class InotifyWatch extends Watch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InotifyWatch.class);
+
+    // Timeout for opening the exec channel.
+    private static final long OPEN_TIMEOUT = 30 * 1000L;
+
+    // Printed to stderr by inotifywait once all directories are watched.
+    private static final String ESTABLISHED = "Watches established.";
+
+    private final ChannelExec channel;
+
+    InotifyWatch(Path dir, WatchOptions options, ChannelExec channel) {
+        super(dir, options);
+        this.channel = channel;
+    }
+
+    /**
+     * Create the command that watches a directory.
+     *
+     * @param dir
+     *            the absolute path of the directory.
+     * @param options
+     *            the options of the watch.
+     * @return the command.
+     */
+    static String command(Path dir, WatchOptions options) {
+        return "inotifywait -m" + (options.isRecursive() ? " -r" : "") + " -e create -e close_write -e attrib -e delete -e move --format "
+                + ScriptingUtils.protectAgainstShellMetas("%e %w%f") + " -- " + ScriptingUtils.protectAgainstShellMetas(dir.toString());
+    }
+
+    /**
+     * Start watching a directory.
+     *
+     * @param connection
+     *            the SSH connection to run the command on.
+     * @param dir
+     *            the absolute path of the directory.
+     * @param options
+     *            the options of the watch.
+     * @return the watch, or <code>null</code> if <code>inotifywait</code> could not be started.
+     */
+    static InotifyWatch start(SSHConnection connection, Path dir, WatchOptions options) {
+
+        String command = command(dir, options);
+
+        LOGGER.debug("start command = {}", command);
+
+        ChannelExec channel = null;
+
+        try {
+            channel = connection.getSession().createExecChannel(command);
+            channel.open().verify(OPEN_TIMEOUT);
+
+            // Wait until all directories are watched, so no changes made after watch() returns are lost.
+            BufferedReader err = new BufferedReader(new InputStreamReader(channel.getInvertedErr(), StandardCharsets.UTF_8));
+            String line = err.readLine();
+
+            while (line != null && !line.startsWith(ESTABLISHED)) {
+                LOGGER.debug("start inotifywait: {}", line);
+                line = err.readLine();
+            }
+
+            if (line == null) {
+                LOGGER.debug("start failed, inotifywait stopped");
+                channel.close(true);
+                return null;
+            }
+
+            InotifyWatch result = new InotifyWatch(dir, options, channel);
+            InputStream out = channel.getInvertedOut();
+            DaemonThreadFactory threads = new DaemonThreadFactory("Watch." + ADAPTOR_NAME);
+
+            threads.newThread(() -> result.read(out)).start();
+
+            // inotifywait keeps printing warnings to stderr, for example when a new subdirectory cannot be watched. Once the SSH window of stderr is full,
+            // the server stops sending stdout as well, so it must be read for as long as the watch runs.
+            threads.newThread(() -> drain(err)).start();
+
+            LOGGER.debug("start OK");
+            return result;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("start failed", e);
+
+            if (channel != null) {
+                channel.close(true);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Read the diagnostics that <code>inotifywait</code> prints to stderr until it stops, and log them.
+     *
+     * @param err
+     *            the stderr of <code>inotifywait</code>.
+     */
+    static void drain(BufferedReader err) {
+        try {
+            String line = err.readLine();
+
+            while (line != null) {
+                LOGGER.debug("inotifywait: {}", line);
+                line = err.readLine();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to read stderr of inotifywait", e);
+        } finally {
+            try {
+                err.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close stderr of inotifywait", e);
+            }
+        }
+    }
+
+    /**
+     * Parse a line printed by <code>inotifywait</code> in the format <code>%e %w%f</code>.
+     *
+     * @param line
+     *            the line to parse.
+     * @return the event, or <code>null</code> if the line does not describe a change to a path below the watched directory.
+     */
+    static WatchEvent parseEvent(String line) {
+
+        int index = line.indexOf(' ');
+
+        if (index <= 0 || index == line.length() - 1) {
+            return null;
+        }
+
+        String events = "," + line.substring(0, index) + ",";
+        Path path = new Path(line.substring(index + 1));
+
+        if (events.contains(",CREATE,") || events.contains(",MOVED_TO,")) {
+            return new WatchEvent(WatchEvent.Kind.CREATED, path);
+        }
+
+        if (events.contains(",DELETE,") || events.contains(",MOVED_FROM,")) {
+            return new WatchEvent(WatchEvent.Kind.DELETED, path);
+        }
+
+        if (events.contains(",CLOSE_WRITE,") || events.contains(",ATTRIB,") || events.contains(",MODIFY,")) {
+            return new WatchEvent(WatchEvent.Kind.MODIFIED, path);
+        }
+
+        return null;
+    }
+
+    /**
+     * Report the events printed by <code>inotifywait</code> until it stops.
+     *
+     * @param in
+     *            the output of <code>inotifywait</code>.
+     */
+    void read(InputStream in) {
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+
+            while (line != null) {
+                WatchEvent e = parseEvent(line);
+
+                if (e != null) {
+                    deliver(e.getKind(), e.getPath());
+                }
+
+                line = reader.readLine();
+            }
+
+            failed(new XenonException(ADAPTOR_NAME, "inotifywait stopped watching " + getPath()));
+        } catch (IOException e) {
+            failed(new XenonException(ADAPTOR_NAME, "Lost connection to inotifywait watching " + getPath(), e));
+        }
+    }
+
+    @Override
+    protected void stop() {
+        // Closing the channel makes inotifywait exit on its next write.
+        if (channel != null) {
+            channel.close(true);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHUtil;
 import nl.esciencecenter.xenon.credentials.CertificateCredential;
@@ -90,11 +91,47 @@ public class SftpFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Start transferring files while a recursive copy is still listing the source directories. */
+    public static final String COPY_PIPELINED = PREFIX + "copy.pipelined";
+
+    /** The number of directories to delete concurrently when deleting recursively. */
+    public static final String DELETE_PARALLELISM = PREFIX + "delete.parallelism";
+
+    /** The number of directories to read concurrently when listing recursively. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The time in milliseconds for which the attributes of a path are cached, or 0 to disable the cache. */
+    public static final String CACHE_TTL = PREFIX + "cache.ttl";
+
+    /** The maximum number of paths of which the attributes are cached. */
+    public static final String CACHE_SIZE = PREFIX + "cache.size";
+
+    /** The number of concurrent reads used to copy a single large file. */
+    public static final String COPY_SEGMENTS = PREFIX + "copy.segments";
+
+    /** The minimal size of a file before it is copied using concurrent reads. */
+    public static final String COPY_SEGMENT_THRESHOLD = PREFIX + "copy.segmentThreshold";
+
+    /** Run recursive deletes, directory creation and permission changes as a single remote command. */
+    public static final String BULK_COMMANDS = PREFIX + "bulkCommands";
+
+    /** List directories recursively by running find on the server. */
+    public static final String LIST_FIND = PREFIX + "list.find";
+
+    /** Watch directories by running inotifywait on the server. */
+    public static final String WATCH_INOTIFY = PREFIX + "watch.inotify";
+
+    /** Only check the preconditions of an operation when the server rejects it. */
+    public static final String OPTIMISTIC = PREFIX + "optimistic";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "host[:port][/workdir]" };
 
     /** List of properties supported by this SSH adaptor */
-    private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
+    private static final XenonPropertyDescription[] VALID_PROPERTIES = withCommonProperties(PREFIX,
             new XenonPropertyDescription(STRICT_HOST_KEY_CHECKING, Type.BOOLEAN, "true", "Enable strict host key checking."),
             new XenonPropertyDescription(LOAD_STANDARD_KNOWN_HOSTS, Type.BOOLEAN, "true", "Load the standard known_hosts file."),
             new XenonPropertyDescription(LOAD_SSH_CONFIG, Type.BOOLEAN, "true", "Load the OpenSSH config file."),
@@ -103,7 +140,18 @@ public class SftpFileAdaptor extends FileAdaptor {
             new XenonPropertyDescription(AGENT_FORWARDING, Type.BOOLEAN, "false", "Use ssh-agent forwarding when setting up a connection."),
             new XenonPropertyDescription(CONNECTION_TIMEOUT, Type.NATURAL, "10000",
                     "The timeout for creating and authenticating connections (in milliseconds)."),
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+            new XenonPropertyDescription(COPY_SEGMENTS, Type.INTEGER, "1",
+                    "The number of concurrent reads, each using its own file handle, used to copy a single large file."),
+            new XenonPropertyDescription(COPY_SEGMENT_THRESHOLD, Type.SIZE, "64M", "The minimal size of a file before it is copied using concurrent reads."),
+            new XenonPropertyDescription(BULK_COMMANDS, Type.BOOLEAN, "false",
+                    "Run recursive deletes, createDirectories and recursive permission changes as a single shell command over an SSH exec channel, "
+                            + "falling back to individual SFTP operations if the command fails."),
+            new XenonPropertyDescription(LIST_FIND, Type.BOOLEAN, "false",
+                    "List directories recursively with a single 'find -printf' command over an SSH exec channel, falling back to SFTP if the command fails."),
+            new XenonPropertyDescription(WATCH_INOTIFY, Type.BOOLEAN, "true",
+                    "Watch directories with 'inotifywait' over an SSH exec channel, falling back to polling if it is not available."),
+            new XenonPropertyDescription(OPTIMISTIC, Type.BOOLEAN, "false",
+                    "Send operations to the server without first checking if the paths exist, and only check this when the server rejects an operation."));
 
     public SftpFileAdaptor() {
         super(ADAPTOR_NAME, ADAPTOR_DESCRIPTION, ADAPTOR_LOCATIONS, VALID_PROPERTIES);
@@ -129,13 +177,25 @@ public class SftpFileAdaptor extends FileAdaptor {
 
         XenonProperties xp = new XenonProperties(VALID_PROPERTIES, properties);
 
-        long bufferSize = xp.getSizeProperty(BUFFER_SIZE);
+        FileSystemSettings settings = getFileSystemSettings(ADAPTOR_NAME, xp);
+
+        int copySegments = xp.getIntegerProperty(COPY_SEGMENTS);
 
-        if (bufferSize <= 0 || bufferSize >= Integer.MAX_VALUE) {
+        if (copySegments <= 0) {
+            throw new InvalidPropertyException(ADAPTOR_NAME, "Invalid value for " + COPY_SEGMENTS + ": " + copySegments + " (must be 1 or larger)");
+        }
+
+        long copySegmentThreshold = xp.getSizeProperty(COPY_SEGMENT_THRESHOLD);
+
+        if (copySegmentThreshold <= 0) {
             throw new InvalidPropertyException(ADAPTOR_NAME,
-                    "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
+                    "Invalid value for " + COPY_SEGMENT_THRESHOLD + ": " + copySegmentThreshold + " (must be 1 or larger)");
         }
 
+        SftpSettings sftpSettings = SftpSettings.defaults().withCopySegments(copySegments, copySegmentThreshold)
+                .withBulkCommands(xp.getBooleanProperty(BULK_COMMANDS)).withFindListing(xp.getBooleanProperty(LIST_FIND))
+                .withInotifyWatch(xp.getBooleanProperty(WATCH_INOTIFY));
+
         boolean loadKnownHosts = xp.getBooleanProperty(LOAD_STANDARD_KNOWN_HOSTS);
         boolean loadSSHConfig = xp.getBooleanProperty(LOAD_SSH_CONFIG);
         boolean strictHostCheck = xp.getBooleanProperty(STRICT_HOST_KEY_CHECKING);
@@ -146,7 +206,7 @@ public class SftpFileAdaptor extends FileAdaptor {
 
         long timeout = xp.getNaturalProperty(CONNECTION_TIMEOUT);
 
-        SSHConnection session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, (int) bufferSize, timeout);
+        SSHConnection session = SSHUtil.connect(ADAPTOR_NAME, client, location, credential, settings.getBufferSize(), timeout);
 
         SftpClient sftpClient = null;
 
@@ -168,7 +228,8 @@ public class SftpFileAdaptor extends FileAdaptor {
             throw e;
         }
 
-        return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, new Path(cwd), (int) bufferSize, session, sftpClient, xp);
+        return new SftpFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, new Path(cwd), settings, sftpSettings, session,
+                sftpClient, xp);
     }
 
     private String getCurrentWorkingDirectory(SftpClient sftpClient, String location) throws XenonException {
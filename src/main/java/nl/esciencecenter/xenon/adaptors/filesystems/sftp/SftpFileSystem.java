@@ -17,52 +17,116 @@ package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
 
 import static nl.esciencecenter.xenon.adaptors.filesystems.sftp.SftpFileAdaptor.ADAPTOR_NAME;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyDataExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyFileExtension;
+import org.apache.sshd.common.channel.ChannelPipedInputStream;
+import org.apache.sshd.common.channel.exception.SshChannelOpenException;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.EndOfFileException;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.adaptors.filesystems.NoSpaceException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.adaptors.filesystems.PermissionDeniedException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
+import nl.esciencecenter.xenon.adaptors.schedulers.ScriptingUtils;
 import nl.esciencecenter.xenon.adaptors.shared.ssh.SSHConnection;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
+import nl.esciencecenter.xenon.filesystems.CopyCancelledException;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
+import nl.esciencecenter.xenon.filesystems.ListOptions;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.filesystems.Watch;
+import nl.esciencecenter.xenon.filesystems.WatchOptions;
+import nl.esciencecenter.xenon.utils.BufferPool;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
 
 public class SftpFileSystem extends FileSystem {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SftpFileSystem.class);
 
+    // Amount of data copied by a single copy-data request, so progress can be reported in between.
+    private static final long SERVER_COPY_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    // Timeout for opening the exec channel of a bulk command.
+    private static final long BULK_COMMAND_TIMEOUT = 30 * 1000L;
+
+    // How long a bulk command may run, and how often we check for an interrupt while it does.
+    private static final long BULK_COMMAND_RUN_TIMEOUT = 10 * 60 * 1000L;
+    private static final long BULK_COMMAND_POLL_INTERVAL = 100L;
+
     private final SftpClient client;
     private final SSHConnection connection;
 
-    protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, int bufferSize, SSHConnection connection,
-            SftpClient client, XenonProperties properties) {
-        super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
+    private final int copySegments;
+    private final long copySegmentThreshold;
+    private final ExecutorService segmentPool;
+
+    // Cleared when the server does not allow us to run commands, so we do not try again for every operation.
+    private volatile boolean bulkCommands;
+
+    // Cleared when the server does not allow us to run commands, so we do not try again for every listing.
+    private volatile boolean findListing;
+
+    // Cleared when inotifywait cannot be started, so later watches poll right away.
+    private volatile boolean inotifyWatch;
+
+    protected SftpFileSystem(String uniqueID, String name, String location, Credential credential, Path entryPath, FileSystemSettings settings,
+            SftpSettings sftpSettings, SSHConnection connection, SftpClient client, XenonProperties properties) {
+        super(uniqueID, name, location, credential, entryPath, settings, properties);
         this.client = client;
         this.connection = connection;
+        this.copySegments = sftpSettings.getCopySegments();
+        this.copySegmentThreshold = sftpSettings.getCopySegmentThreshold();
+        this.bulkCommands = sftpSettings.useBulkCommands();
+        this.findListing = sftpSettings.useFindListing();
+        this.inotifyWatch = sftpSettings.useInotifyWatch();
+
+        if (this.copySegments > 1) {
+            segmentPool = Executors.newCachedThreadPool(new DaemonThreadFactory("SftpSegmentReader." + uniqueID));
+        } else {
+            segmentPool = null;
+        }
     }
 
     @Override
@@ -78,6 +142,10 @@ public class SftpFileSystem extends FileSystem {
             ex = e;
         }
 
+        if (segmentPool != null) {
+            segmentPool.shutdownNow();
+        }
+
         connection.close();
         super.close();
 
@@ -101,18 +169,26 @@ public class SftpFileSystem extends FileSystem {
         Path absSource = toAbsolutePath(source);
         Path absTarget = toAbsolutePath(target);
 
-        assertPathExists(absSource);
+        if (!isOptimistic() || areSamePaths(absSource, absTarget)) {
+            assertPathExists(absSource);
 
-        if (areSamePaths(absSource, absTarget)) {
-            return;
-        }
+            if (areSamePaths(absSource, absTarget)) {
+                return;
+            }
 
-        assertPathNotExists(absTarget);
-        assertParentDirectoryExists(absTarget);
+            assertNewPath(absTarget);
+        }
 
         try {
+            // An SFTP rename fails if the target exists, so optimistic mode cannot overwrite it.
             client.rename(absSource.toString(), absTarget.toString());
+            invalidateAttributes(absSource);
+            invalidateAttributes(absTarget);
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertPathExists(absSource);
+                assertNewPath(absTarget);
+            }
             throw sftpExceptionToXenonException(e, "Failed to rename path");
         }
 
@@ -125,12 +201,18 @@ public class SftpFileSystem extends FileSystem {
         LOGGER.debug("createDirectory dir = {}", dir);
 
         Path absDir = toAbsolutePath(dir);
-        assertPathNotExists(absDir);
-        assertParentDirectoryExists(absDir);
+
+        if (!isOptimistic()) {
+            assertNewPath(absDir);
+        }
 
         try {
             client.mkdir(absDir.toString());
+            invalidateAttributes(absDir);
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertNewPath(absDir);
+            }
             throw sftpExceptionToXenonException(e, "Failed to mkdir");
         }
 
@@ -141,7 +223,10 @@ public class SftpFileSystem extends FileSystem {
     public void createFile(Path file) throws XenonException {
 
         Path absFile = toAbsolutePath(file);
-        assertPathNotExists(absFile);
+
+        if (!isOptimistic()) {
+            assertPathNotExists(absFile);
+        }
 
         LOGGER.debug("createFile path = {}", absFile);
 
@@ -166,16 +251,464 @@ public class SftpFileSystem extends FileSystem {
     public void createSymbolicLink(Path link, Path path) throws XenonException {
 
         Path absLink = toAbsolutePath(link);
-        assertPathNotExists(absLink);
-        assertParentDirectoryExists(absLink);
+
+        if (!isOptimistic()) {
+            assertNewPath(absLink);
+        }
 
         try {
             client.symLink(absLink.toString(), path.toString());
+            invalidateAttributes(absLink);
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertNewPath(absLink);
+            }
             throw sftpExceptionToXenonException(e, "Cannot create link: " + absLink + " -> " + path);
         }
     }
 
+    /**
+     * Check that a path does not exist yet, but its parent directory does.
+     *
+     * @param path
+     *            the absolute path to check.
+     * @throws XenonException
+     *             if the path exists, the parent directory does not exist, or the check failed.
+     */
+    private void assertNewPath(Path path) throws XenonException {
+        assertPathNotExists(path);
+        assertParentDirectoryExists(path);
+    }
+
+    @Override
+    public void createDirectories(Path dir) throws XenonException {
+
+        Path absDir = toAbsolutePath(dir);
+
+        if (bulkCommands) {
+            assertPathNotExists(absDir);
+
+            if (runBulkCommand("mkdir -p -- " + ScriptingUtils.protectAgainstShellMetas(absDir.toString()))) {
+                invalidateAttributes(absDir);
+                return;
+            }
+        }
+
+        super.createDirectories(absDir);
+    }
+
+    @Override
+    public void delete(Path path, boolean recursive) throws XenonException {
+
+        Path absPath = toAbsolutePath(path);
+
+        if (recursive && bulkCommands) {
+            PathAttributes attributes = getAttributes(absPath);
+
+            if (attributes.isDirectory() && !attributes.isSymbolicLink()
+                    && runBulkCommand("rm -rf -- " + ScriptingUtils.protectAgainstShellMetas(absPath.toString()))) {
+                invalidateAttributes(absPath);
+                return;
+            }
+        }
+
+        super.delete(absPath, recursive);
+    }
+
+    @Override
+    public void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions, boolean recursive) throws XenonException {
+
+        if (permissions == null) {
+            throw new IllegalArgumentException("Permissions is null");
+        }
+
+        Path absPath = toAbsolutePath(path);
+
+        if (recursive && bulkCommands) {
+            PathAttributes attributes = getAttributes(absPath);
+
+            String mode = Integer.toOctalString(PosixFileUtils.permissionsToBits(permissions));
+
+            if (attributes.isDirectory() && !attributes.isSymbolicLink()
+                    && runBulkCommand("chmod -R " + mode + " -- " + ScriptingUtils.protectAgainstShellMetas(absPath.toString()))) {
+                invalidateAttributes(absPath);
+                return;
+            }
+        }
+
+        super.setPosixFilePermissions(absPath, permissions, recursive);
+    }
+
+    /**
+     * Run a shell command on the server using an exec channel of the SSH connection.
+     *
+     * A failing command is not reported as an error, as the caller falls back to the individual SFTP operations which produce a precise exception. Only if
+     * the server refuses to run commands at all, bulk commands are disabled for this file system.
+     *
+     * @param command
+     *            the command to run.
+     * @return if the command ran and returned exit status 0.
+     * @throws XenonException
+     *             if the thread was interrupted, or the command did not finish in time. It may still be running on the server, so falling back is not safe.
+     */
+    boolean runBulkCommand(String command) throws XenonException {
+
+        LOGGER.debug("runBulkCommand command = {}", command);
+
+        try (ChannelExec channel = connection.getSession().createExecChannel(command)) {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+            channel.setOut(new ByteArrayOutputStream());
+            channel.setErr(err);
+            channel.open().verify(BULK_COMMAND_TIMEOUT);
+
+            if (!awaitClosed(channel, BULK_COMMAND_RUN_TIMEOUT)) {
+                channel.close(true);
+                throw new XenonException(ADAPTOR_NAME, "Command did not finish within " + BULK_COMMAND_RUN_TIMEOUT + " ms: " + command);
+            }
+
+            Integer status = channel.getExitStatus();
+
+            if (status == null) {
+                // Without an exit status or signal, the server closed the channel instead of running the command.
+                if (channel.getExitSignal() == null) {
+                    LOGGER.debug("runBulkCommand refused by server, disabling bulk commands err = {}", err);
+                    bulkCommands = false;
+                }
+                return false;
+            }
+
+            LOGGER.debug("runBulkCommand OK status = {} err = {}", status, err);
+
+            return status == 0;
+        } catch (InterruptedIOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Interrupted while running command: " + command, e);
+        } catch (IOException | RuntimeException e) {
+            if (isRefused(e)) {
+                LOGGER.debug("runBulkCommand refused by server, disabling bulk commands", e);
+                bulkCommands = false;
+            } else {
+                LOGGER.debug("runBulkCommand failed", e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Wait until a command channel is closed. Unlike {@link ClientChannel#waitFor(java.util.Collection, long)}, which ignores interrupts, the wait stops
+     * as soon as the thread is interrupted, for example because the copy it is part of was cancelled. The channel is then closed right away.
+     *
+     * @param channel
+     *            the channel to wait for.
+     * @param timeout
+     *            the maximum time to wait in milliseconds.
+     * @return if the channel was closed within the timeout.
+     * @throws InterruptedIOException
+     *             if the thread was interrupted. The interrupt status is kept.
+     */
+    static boolean awaitClosed(ClientChannel channel, long timeout) throws InterruptedIOException {
+
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                channel.close(true);
+                throw new InterruptedIOException("Interrupted while waiting for command");
+            }
+
+            long left = deadline - System.currentTimeMillis();
+
+            if (left <= 0) {
+                return false;
+            }
+
+            if (channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), Math.min(left, BULK_COMMAND_POLL_INTERVAL)).contains(ClientChannelEvent.CLOSED)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns if an exception shows that the server does not allow us to open a channel to run commands on, as opposed to a command or connection that
+     * failed.
+     */
+    static boolean isRefused(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SshChannelOpenException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterable<PathAttributes> list(Path dir, boolean recursive) throws XenonException {
+
+        if (recursive && findListing) {
+            Path absolute = toAbsolutePath(dir);
+            assertDirectoryExists(absolute);
+
+            CloseableIterator<PathAttributes> first = startFindCommand(absolute, "");
+
+            if (first != null) {
+                return new FindListing(absolute, first);
+            }
+        }
+
+        return super.list(dir, recursive);
+    }
+
+    /**
+     * A recursive listing produced by <code>find</code>. Like any recursive listing, it is evaluated lazily and iterating over it again lists the tree again.
+     */
+    private class FindListing implements Iterable<PathAttributes> {
+
+        private final Path dir;
+        private CloseableIterator<PathAttributes> first;
+
+        private FindListing(Path dir, CloseableIterator<PathAttributes> first) {
+            this.dir = dir;
+            this.first = first;
+        }
+
+        @Override
+        public synchronized Iterator<PathAttributes> iterator() {
+
+            CloseableIterator<PathAttributes> result = first;
+            first = null;
+
+            if (result != null) {
+                return result;
+            }
+
+            try {
+                result = findListing ? startFindCommand(dir, "") : null;
+                return result != null ? result : SftpFileSystem.super.list(dir, true).iterator();
+            } catch (XenonException e) {
+                throw new XenonRuntimeException(ADAPTOR_NAME, "Failed to list directory " + dir, e);
+            }
+        }
+    }
+
+    @Override
+    protected void list(Path dir, ArrayList<PathAttributes> list, boolean recursive) throws XenonException {
+
+        if (recursive && findListing) {
+            List<PathAttributes> result = runFindCommand(dir, "");
+
+            if (result != null) {
+                list.addAll(result);
+                return;
+            }
+        }
+
+        super.list(dir, list, recursive);
+    }
+
+    @Override
+    protected void list(Path dir, ListOptions options, ArrayList<PathAttributes> list) throws XenonException {
+
+        if (findListing) {
+            List<PathAttributes> result = runFindCommand(dir, findPredicates(options));
+
+            if (result != null) {
+                // find may return a superset, for example when a time is rounded to seconds, so filter again.
+                for (PathAttributes p : result) {
+                    if (options.matches(p)) {
+                        list.add(p);
+                    }
+                }
+                return;
+            }
+        }
+
+        super.list(dir, options, list);
+    }
+
+    /**
+     * Translate the list options into <code>find</code> predicates. The predicates select at least all matching entries.
+     *
+     * @param options
+     *            the list options.
+     * @return the predicates, each preceded by a space.
+     */
+    static String findPredicates(ListOptions options) {
+
+        StringBuilder result = new StringBuilder();
+
+        if (options.getMaxDepth() != -1) {
+            result.append(" -maxdepth ").append(options.getMaxDepth());
+        }
+
+        if (options.getType() == ListOptions.Type.REGULAR) {
+            result.append(" -type f");
+        } else if (options.getType() == ListOptions.Type.DIRECTORY) {
+            result.append(" -type d");
+        } else if (options.getType() == ListOptions.Type.SYMBOLIC_LINK) {
+            result.append(" -type l");
+        }
+
+        String glob = options.getGlob();
+
+        // find only supports *, ? and [...], so leave other globs to the client.
+        if (glob != null && glob.indexOf('{') < 0) {
+            result.append(" -name ").append(ScriptingUtils.protectAgainstShellMetas(glob));
+        }
+
+        if (options.getMinSize() > 0) {
+            result.append(" -size +").append(options.getMinSize() - 1).append('c');
+        }
+
+        if (options.getMaxSize() < Long.MAX_VALUE) {
+            result.append(" -size -").append(options.getMaxSize() + 1).append('c');
+        }
+
+        if (options.getModifiedAfter() != Long.MIN_VALUE) {
+            result.append(" -newermt @").append(Math.floorDiv(options.getModifiedAfter(), 1000L));
+        }
+
+        if (options.getModifiedBefore() != Long.MAX_VALUE) {
+            result.append(" ! -newermt @").append(Math.floorDiv(options.getModifiedBefore() + 999L, 1000L));
+        }
+
+        return result.toString();
+    }
+
+    @Override
+    protected Watch startWatch(Path dir, WatchOptions options) throws XenonException {
+
+        if (inotifyWatch) {
+            Watch result = startInotifyWatch(dir, options);
+
+            if (result != null) {
+                return result;
+            }
+
+            LOGGER.debug("startWatch inotifywait not available, falling back to polling");
+            inotifyWatch = false;
+        }
+
+        return super.startWatch(dir, options);
+    }
+
+    /**
+     * Start a watch that runs <code>inotifywait</code> on the server.
+     *
+     * @param dir
+     *            the absolute path of the directory to watch.
+     * @param options
+     *            the options of the watch.
+     * @return the watch, or <code>null</code> if <code>inotifywait</code> could not be started.
+     */
+    Watch startInotifyWatch(Path dir, WatchOptions options) {
+        return InotifyWatch.start(connection, dir, options);
+    }
+
+    /**
+     * Start listing a directory tree by running <code>find -printf</code> on the server using an exec channel of the SSH connection.
+     *
+     * The output is parsed while it arrives, and closing the returned iterator stops the command. The first entry is read before this method returns. If
+     * the command fails before that, for example because <code>find</code> does not support <code>-printf</code>, <code>null</code> is returned so the
+     * caller falls back to SFTP, which produces a precise exception. Only if the server refuses to run commands at all, the fast path is disabled for this
+     * file system. A failure after the first entry, for example because a subdirectory cannot be read, is thrown by the iterator.
+     *
+     * @param dir
+     *            the absolute path of the directory to list.
+     * @param predicates
+     *            additional <code>find</code> predicates that select the entries to return, or an empty string to return all entries.
+     * @return the entries below the directory, or <code>null</code> if the command failed.
+     * @throws XenonException
+     *             if the thread was interrupted.
+     */
+    CloseableIterator<PathAttributes> startFindCommand(Path dir, String predicates) throws XenonException {
+
+        String command = "find " + ScriptingUtils.protectAgainstShellMetas(dir.toString()) + " -mindepth 1" + predicates + " -printf "
+                + ScriptingUtils.protectAgainstShellMetas(FindIterator.FORMAT);
+
+        LOGGER.debug("startFindCommand command = {}", command);
+
+        ChannelExec channel = null;
+        FindIterator result = null;
+
+        try {
+            channel = connection.getSession().createExecChannel(command);
+
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+            channel.setErr(err);
+            channel.open().verify(BULK_COMMAND_TIMEOUT);
+
+            InputStream in = channel.getInvertedOut();
+
+            if (in instanceof ChannelPipedInputStream) {
+                // Reading honours interrupts, but by default waits forever for output that may never come.
+                ((ChannelPipedInputStream) in).setTimeout(BULK_COMMAND_RUN_TIMEOUT);
+            }
+
+            result = new FindIterator(dir, in, channel, err, BULK_COMMAND_RUN_TIMEOUT);
+            result.start();
+            return result;
+        } catch (InterruptedIOException e) {
+            if (channel != null) {
+                channel.close(true);
+            }
+            throw new XenonException(ADAPTOR_NAME, "Interrupted while listing: " + dir, e);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close(true);
+            }
+
+            if (isRefused(e) || (result != null && result.isRefused())) {
+                LOGGER.debug("startFindCommand refused by server, disabling find listing", e);
+                findListing = false;
+            } else {
+                LOGGER.debug("startFindCommand failed", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * List a directory tree with {@link #startFindCommand(Path, String)} for a caller that needs all entries at once. Unlike the iterator, this also falls
+     * back when <code>find</code> fails after the first entry.
+     *
+     * @param dir
+     *            the absolute path of the directory to list.
+     * @param predicates
+     *            additional <code>find</code> predicates that select the entries to return, or an empty string to return all entries.
+     * @return the entries below the directory, or <code>null</code> if the command failed.
+     * @throws XenonException
+     *             if the thread was interrupted.
+     */
+    private List<PathAttributes> runFindCommand(Path dir, String predicates) throws XenonException {
+
+        CloseableIterator<PathAttributes> it = startFindCommand(dir, predicates);
+
+        if (it == null) {
+            return null;
+        }
+
+        ArrayList<PathAttributes> result = new ArrayList<>();
+
+        try {
+            while (it.hasNext()) {
+                result.add(it.next());
+            }
+        } catch (XenonRuntimeException e) {
+            if (e.getCause() instanceof InterruptedIOException) {
+                throw new XenonException(ADAPTOR_NAME, "Interrupted while listing: " + dir, e.getCause());
+            }
+            LOGGER.debug("runFindCommand failed", e);
+            return null;
+        } finally {
+            it.close();
+        }
+
+        LOGGER.debug("runFindCommand OK entries = {}", result.size());
+
+        return result;
+    }
+
     @Override
     protected void deleteFile(Path file) throws XenonException {
         try {
@@ -227,8 +760,6 @@ public class SftpFileSystem extends FileSystem {
     protected List<PathAttributes> listDirectory(Path path) throws XenonException {
 
         try {
-            assertDirectoryExists(path);
-
             ArrayList<PathAttributes> result = new ArrayList<>();
 
             for (SftpClient.DirEntry f : client.readDir(path.toString())) {
@@ -241,12 +772,133 @@ public class SftpFileSystem extends FileSystem {
         }
     }
 
+    @Override
+    protected void listDirectory(Path path, DirectoryBatch batch) throws XenonException {
+
+        try {
+            for (SftpClient.DirEntry f : client.readDir(path.toString())) {
+                String name = f.getFilename();
+
+                if (".".equals(name) || "..".equals(name)) {
+                    continue;
+                }
+
+                SftpClient.Attributes a = f.getAttributes();
+
+                byte type;
+
+                if (a.isSymbolicLink()) {
+                    type = DirectoryBatch.SYMBOLIC_LINK;
+                } else if (a.isDirectory()) {
+                    type = DirectoryBatch.DIRECTORY;
+                } else if (a.isRegularFile()) {
+                    type = DirectoryBatch.REGULAR;
+                } else {
+                    type = DirectoryBatch.OTHER;
+                }
+
+                batch.add(name, type, a.getSize(), a.getModifyTime() == null ? 0 : convertTime(a.getModifyTime()), a.getPermissions());
+            }
+        } catch (IOException e) {
+            throw sftpExceptionToXenonException(e, "Failed to list directory " + path);
+        }
+    }
+
+    @Override
+    protected Iterator<PathAttributes> listDirectoryIterator(Path path) {
+        return new DirectoryIterator(path);
+    }
+
+    /**
+     * Iterates over a directory listing while it is read from the server, one batch of entries at a time. The handle is opened when the first entry is needed,
+     * and closed when the listing is exhausted, fails, or the iterator is closed.
+     */
+    private class DirectoryIterator implements CloseableIterator<PathAttributes> {
+
+        private final Path path;
+        private final AtomicReference<Boolean> eol = new AtomicReference<>();
+
+        private SftpClient.CloseableHandle handle;
+        private Iterator<SftpClient.DirEntry> batch = Collections.emptyIterator();
+        private boolean done = false;
+
+        DirectoryIterator(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            batch = Collections.emptyIterator();
+
+            if (handle != null) {
+                try {
+                    handle.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to close directory handle of " + path, e);
+                }
+                handle = null;
+            }
+        }
+
+        private XenonRuntimeException listFailed(IOException e) {
+            close();
+            return new XenonRuntimeException(ADAPTOR_NAME, "Failed to list directory " + path,
+                    sftpExceptionToXenonException(e, "Failed to list directory " + path));
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (handle == null && !done) {
+                try {
+                    handle = client.openDir(path.toString());
+                } catch (IOException e) {
+                    throw listFailed(e);
+                }
+            }
+
+            while (!batch.hasNext() && !done) {
+                List<SftpClient.DirEntry> entries;
+
+                try {
+                    entries = client.readDir(handle, eol);
+                } catch (IOException e) {
+                    throw listFailed(e);
+                }
+
+                // Servers indicate the end of the listing with an EOF status (null), or with the end-of-list flag of newer protocol versions.
+                if (entries == null || Boolean.TRUE.equals(eol.get())) {
+                    close();
+                }
+
+                if (entries != null) {
+                    batch = entries.iterator();
+                }
+            }
+
+            return batch.hasNext();
+        }
+
+        @Override
+        public PathAttributes next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more entries in " + path);
+            }
+
+            SftpClient.DirEntry f = batch.next();
+            return convertAttributes(path.resolve(f.getFilename()), f.getAttributes());
+        }
+    }
+
     @Override
     public InputStream readFromFile(Path path) throws XenonException {
         LOGGER.debug("newInputStream path = {}", path);
 
         Path absPath = toAbsolutePath(path);
 
+        // Also checked in optimistic mode, as a server may allow a directory to be opened for reading.
         assertFileExists(absPath);
 
         InputStream in;
@@ -266,12 +918,21 @@ public class SftpFileSystem extends FileSystem {
     public OutputStream writeToFile(Path path, long size) throws XenonException {
 
         Path absPath = toAbsolutePath(path);
-        assertPathNotExists(absPath);
-        assertParentDirectoryExists(absPath);
+
+        if (!isOptimistic()) {
+            assertNewPath(absPath);
+        }
 
         try {
-            return client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Truncate);
+            // The file is opened immediately, so an exclusive open fails here if the file already exists.
+            SftpClient.OpenMode mode = isOptimistic() ? SftpClient.OpenMode.Exclusive : SftpClient.OpenMode.Truncate;
+            OutputStream out = client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, mode);
+            invalidateAttributes(absPath);
+            return out;
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertNewPath(absPath);
+            }
             throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
         }
     }
@@ -285,15 +946,248 @@ public class SftpFileSystem extends FileSystem {
     public OutputStream appendToFile(Path path) throws XenonException {
 
         Path absPath = toAbsolutePath(path);
-        assertFileExists(absPath);
+
+        if (!isOptimistic()) {
+            assertFileExists(absPath);
+        }
 
         try {
-            return client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append);
+            // Without Create, the open fails if the file does not exist. Directories cannot be opened for writing.
+            OutputStream out = client.write(absPath.toString(), SftpClient.OpenMode.Write, SftpClient.OpenMode.Append);
+            invalidateAttributes(absPath);
+            return out;
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertFileExists(absPath);
+            }
             throw new XenonException(ADAPTOR_NAME, "Failed open stream to write to: " + absPath, e);
         }
     }
 
+    /**
+     * Lets the server copy regular files if the destination is on the same server. The <code>copy-file</code> extension is used if the server supports it,
+     * otherwise the <code>copy-data</code> extension. If neither is supported, the data is copied through the client.
+     */
+    @Override
+    protected boolean copyOnServer(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        if (!attributes.isRegular() || !isSameEndpoint(destinationFS)) {
+            return false;
+        }
+
+        String src = toAbsolutePath(source).toString();
+        String dst = toAbsolutePath(destination).toString();
+
+        CopyFileExtension copyFile = client.getExtension(CopyFileExtension.class);
+
+        if (copyFile != null && copyFile.isSupported()) {
+
+            LOGGER.debug("copyOnServer copy-file source = {} destination = {}", src, dst);
+
+            try {
+                copyFile.copyFile(src, dst, false);
+            } catch (IOException e) {
+                throw sftpExceptionToXenonException(e, "Failed to copy " + src + " to " + dst);
+            }
+
+            callback.addBytesCopied(attributes.getSize());
+            return true;
+        }
+
+        CopyDataExtension copyData = client.getExtension(CopyDataExtension.class);
+
+        if (copyData != null && copyData.isSupported()) {
+
+            LOGGER.debug("copyOnServer copy-data source = {} destination = {}", src, dst);
+
+            try (SftpClient.CloseableHandle in = client.open(src, SftpClient.OpenMode.Read);
+                    SftpClient.CloseableHandle out = client.open(dst, SftpClient.OpenMode.Write, SftpClient.OpenMode.Create, SftpClient.OpenMode.Exclusive)) {
+
+                long size = attributes.getSize();
+
+                // Copy in chunks, so we can report progress and notice cancellation.
+                for (long offset = 0; offset < size; offset += SERVER_COPY_CHUNK_SIZE) {
+                    long length = Math.min(SERVER_COPY_CHUNK_SIZE, size - offset);
+                    copyData.copyData(in, offset, length, out, offset);
+                    callback.addBytesCopied(length);
+
+                    if (callback.isCancelled()) {
+                        throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+                    }
+                }
+            } catch (IOException e) {
+                throw sftpExceptionToXenonException(e, "Failed to copy " + src + " to " + dst);
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies files of at least the segment threshold using several concurrent reads, each on its own file handle. The file is split into blocks of the buffer
+     * size, and block <i>k</i> is read by reader <i>k</i> modulo the number of segments. The blocks are written to the destination in order, so any
+     * destination filesystem can be used. Smaller files use a stream copy.
+     */
+    @Override
+    protected void copyFileContent(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        if (copySegments <= 1 || attributes.getSize() < copySegmentThreshold) {
+            super.copyFileContent(source, attributes, destinationFS, destination, callback);
+            return;
+        }
+
+        LOGGER.debug("copyFileContent segmented source = {} segments = {}", source, copySegments);
+
+        Path absSource = toAbsolutePath(source);
+        long size = attributes.getSize();
+        int blockSize = getBufferSize();
+
+        ArrayList<SegmentReader> readers = new ArrayList<>(copySegments);
+        ArrayList<Future<?>> futures = new ArrayList<>(copySegments);
+
+        try (OutputStream out = destinationFS.writeToFile(destination, size)) {
+
+            for (int i = 0; i < copySegments; i++) {
+                SegmentReader r = new SegmentReader(absSource.toString(), size, blockSize, i);
+                readers.add(r);
+                futures.add(segmentPool.submit(r));
+            }
+
+            long offset = 0;
+            int block = 0;
+
+            while (offset < size) {
+                Segment s = readers.get(block % copySegments).take();
+
+                if (s.error != null) {
+                    throw sftpExceptionToXenonException(s.error, "Failed to read from " + absSource);
+                }
+
+                out.write(s.data, 0, s.length);
+                BufferPool.getShared().release(s.data);
+                callback.addBytesCopied(s.length);
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(ADAPTOR_NAME, "Copy cancelled by user");
+                }
+
+                offset += s.length;
+                block++;
+            }
+        } catch (IOException e) {
+            throw new XenonException(ADAPTOR_NAME, "Segmented copy failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(ADAPTOR_NAME, "Copy interrupted by user");
+        } finally {
+            // Only has an effect if we bailed out early.
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+
+            // Return the buffers the writer did not get to.
+            for (SegmentReader r : readers) {
+                r.drain();
+            }
+        }
+    }
+
+    /**
+     * A block of a file read by a {@link SegmentReader}, or the error that stopped it.
+     */
+    private static class Segment {
+
+        final byte[] data;
+        final int length;
+        final IOException error;
+
+        Segment(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reads every <code>segments</code>-th block of a file, starting at block <code>index</code>, using its own file handle. At most two blocks are read
+     * ahead of the writer.
+     */
+    private class SegmentReader implements Runnable {
+
+        private final String path;
+        private final long size;
+        private final int blockSize;
+        private final int index;
+
+        private final ArrayBlockingQueue<Segment> queue = new ArrayBlockingQueue<>(2);
+
+        SegmentReader(String path, long size, int blockSize, int index) {
+            this.path = path;
+            this.size = size;
+            this.blockSize = blockSize;
+            this.index = index;
+        }
+
+        Segment take() throws InterruptedException {
+            return queue.take();
+        }
+
+        void drain() {
+            for (Segment s = queue.poll(); s != null; s = queue.poll()) {
+                BufferPool.getShared().release(s.data);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                read();
+            } catch (IOException e) {
+                try {
+                    queue.put(new Segment(null, 0, e));
+                } catch (InterruptedException e2) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (InterruptedException e) {
+                // The copy was aborted.
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void read() throws IOException, InterruptedException {
+            try (SftpClient.CloseableHandle handle = client.open(path, SftpClient.OpenMode.Read)) {
+
+                for (long offset = (long) index * blockSize; offset < size; offset += (long) copySegments * blockSize) {
+
+                    int length = (int) Math.min(blockSize, size - offset);
+                    byte[] data = BufferPool.getShared().acquire(length);
+                    int done = 0;
+
+                    try {
+                        while (done < length) {
+                            int n = client.read(handle, offset + done, data, done, length - done);
+
+                            if (n < 0) {
+                                throw new EOFException("File " + path + " was truncated while copying");
+                            }
+
+                            done += n;
+                        }
+
+                        queue.put(new Segment(data, length, null));
+                    } catch (IOException | InterruptedException e) {
+                        BufferPool.getShared().release(data);
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public PathAttributes getAttributes(Path path) throws XenonException {
         Path absPath = toAbsolutePath(path);
@@ -307,7 +1201,11 @@ public class SftpFileSystem extends FileSystem {
         Path absLink = toAbsolutePath(link);
 
         Path result;
-        assertFileIsSymbolicLink(absLink);
+
+        if (!isOptimistic()) {
+            assertFileIsSymbolicLink(absLink);
+        }
+
         try {
             String target = client.readLink(absLink.toString());
 
@@ -318,6 +1216,9 @@ public class SftpFileSystem extends FileSystem {
                 result = new Path(target);
             }
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertFileIsSymbolicLink(absLink);
+            }
             throw sftpExceptionToXenonException(e, "Failed to read link: " + absLink);
         }
 
@@ -335,7 +1236,10 @@ public class SftpFileSystem extends FileSystem {
         }
 
         Path absPath = toAbsolutePath(path);
-        assertPathExists(absPath);
+
+        if (!isOptimistic()) {
+            assertPathExists(absPath);
+        }
 
         try {
             // We need to create a new Attributes object here. SFTP will only
@@ -347,12 +1251,47 @@ public class SftpFileSystem extends FileSystem {
             SftpClient.Attributes a = new SftpClient.Attributes();
             a.setPermissions(PosixFileUtils.permissionsToBits(permissions));
             client.setStat(absPath.toString(), a);
+            invalidateAttributes(absPath);
         } catch (IOException e) {
+            if (isOptimistic()) {
+                assertPathExists(absPath);
+            }
             throw sftpExceptionToXenonException(e, "Failed to set permissions on: " + absPath);
         }
         LOGGER.debug("setPosixFilePermissions OK");
     }
 
+    @Override
+    protected boolean canSetLastModifiedTime() {
+        return true;
+    }
+
+    @Override
+    public void setLastModifiedTime(Path path, long time) throws XenonException {
+        LOGGER.debug("setLastModifiedTime path = {} time = {}", path, time);
+
+        Path absPath = toAbsolutePath(path);
+
+        if (!isOptimistic()) {
+            assertPathExists(absPath);
+        }
+
+        try {
+            // SFTP v3 only sets the access and modification time together, so we set both.
+            FileTime t = FileTime.fromMillis(time);
+            SftpClient.Attributes a = new SftpClient.Attributes();
+            a.setAccessTime(t);
+            a.setModifyTime(t);
+            client.setStat(absPath.toString(), a);
+            invalidateAttributes(absPath);
+        } catch (IOException e) {
+            if (isOptimistic()) {
+                assertPathExists(absPath);
+            }
+            throw sftpExceptionToXenonException(e, "Failed to set modification time on: " + absPath);
+        }
+    }
+
     private static long convertTime(FileTime time) {
         return time.toMillis();
     }
@@ -384,12 +1323,12 @@ public class SftpFileSystem extends FileSystem {
 
         result.setSize(attributes.getSize());
 
-        Set<PosixFilePermission> permission = PosixFileUtils.bitsToPermissions(attributes.getPermissions());
-        result.setPermissions(permission);
+        int permission = attributes.getPermissions();
+        result.setPermissionBits(permission);
 
-        result.setExecutable(permission.contains(PosixFilePermission.OWNER_EXECUTE));
-        result.setReadable(permission.contains(PosixFilePermission.OWNER_READ));
-        result.setWritable(permission.contains(PosixFilePermission.OWNER_WRITE));
+        result.setExecutable((permission & PosixFileUtils.EXEC_OWNER) != 0);
+        result.setReadable((permission & PosixFileUtils.READ_OWNER) != 0);
+        result.setWritable((permission & PosixFileUtils.WRITE_OWNER) != 0);
 
         result.setGroup(attributes.getGroup());
         result.setOwner(attributes.getOwner());
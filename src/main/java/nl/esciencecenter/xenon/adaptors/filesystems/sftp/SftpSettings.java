@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
+
+/**
+ * SftpSettings contains the settings of an {@link SftpFileSystem} that other file systems do not have, such as the number of concurrent reads used to
+ * copy a single large file and the shell commands that may be used.
+ *
+ * The settings are immutable. The {@link SftpFileAdaptor} obtains them from its properties.
+ */
+public final class SftpSettings {
+
+    /** The default minimal size of a file before it is copied using concurrent reads. */
+    public static final long DEFAULT_COPY_SEGMENT_THRESHOLD = 64L * 1024 * 1024;
+
+    private static final SftpSettings DEFAULTS = new SftpSettings(1, DEFAULT_COPY_SEGMENT_THRESHOLD, false, false, true);
+
+    private final int copySegments;
+    private final long copySegmentThreshold;
+    private final boolean bulkCommands;
+    private final boolean findListing;
+    private final boolean inotifyWatch;
+
+    private SftpSettings(int copySegments, long copySegmentThreshold, boolean bulkCommands, boolean findListing, boolean inotifyWatch) {
+        this.copySegments = copySegments;
+        this.copySegmentThreshold = copySegmentThreshold;
+        this.bulkCommands = bulkCommands;
+        this.findListing = findListing;
+        this.inotifyWatch = inotifyWatch;
+    }
+
+    /**
+     * Get the default settings.
+     *
+     * @return the default settings.
+     */
+    public static SftpSettings defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Get the number of concurrent reads used to copy a single large file.
+     *
+     * @return the number of concurrent reads.
+     */
+    public int getCopySegments() {
+        return copySegments;
+    }
+
+    /**
+     * Get the minimal size of a file before it is copied using concurrent reads.
+     *
+     * @return the size in bytes.
+     */
+    public long getCopySegmentThreshold() {
+        return copySegmentThreshold;
+    }
+
+    /**
+     * Get a copy of these settings with a different segmented copy.
+     *
+     * @param copySegments
+     *            the number of concurrent reads used to copy a single large file.
+     * @param copySegmentThreshold
+     *            the minimal size in bytes of a file before it is copied using concurrent reads.
+     * @return the new settings.
+     */
+    public SftpSettings withCopySegments(int copySegments, long copySegmentThreshold) {
+
+        if (copySegments <= 0) {
+            throw new IllegalArgumentException("Copy segments must be 1 or larger");
+        }
+
+        if (copySegmentThreshold <= 0) {
+            throw new IllegalArgumentException("Copy segment threshold must be 1 or larger");
+        }
+
+        return new SftpSettings(copySegments, copySegmentThreshold, bulkCommands, findListing, inotifyWatch);
+    }
+
+    /**
+     * Check if recursive deletes, createDirectories and recursive permission changes are run as a single shell command.
+     *
+     * @return if bulk commands are used.
+     */
+    public boolean useBulkCommands() {
+        return bulkCommands;
+    }
+
+    /**
+     * Get a copy of these settings with bulk commands enabled or disabled.
+     *
+     * @param bulkCommands
+     *            if bulk commands are used.
+     * @return the new settings.
+     */
+    public SftpSettings withBulkCommands(boolean bulkCommands) {
+        return new SftpSettings(copySegments, copySegmentThreshold, bulkCommands, findListing, inotifyWatch);
+    }
+
+    /**
+     * Check if directories are listed recursively with a single <code>find</code> command.
+     *
+     * @return if <code>find</code> is used.
+     */
+    public boolean useFindListing() {
+        return findListing;
+    }
+
+    /**
+     * Get a copy of these settings with <code>find</code> listings enabled or disabled.
+     *
+     * @param findListing
+     *            if <code>find</code> is used.
+     * @return the new settings.
+     */
+    public SftpSettings withFindListing(boolean findListing) {
+        return new SftpSettings(copySegments, copySegmentThreshold, bulkCommands, findListing, inotifyWatch);
+    }
+
+    /**
+     * Check if directories are watched with <code>inotifywait</code>.
+     *
+     * @return if <code>inotifywait</code> is used.
+     */
+    public boolean useInotifyWatch() {
+        return inotifyWatch;
+    }
+
+    /**
+     * Get a copy of these settings with <code>inotifywait</code> watches enabled or disabled.
+     *
+     * @param inotifyWatch
+     *            if <code>inotifywait</code> is used.
+     * @return the new settings.
+     */
+    public SftpSettings withInotifyWatch(boolean inotifyWatch) {
+        return new SftpSettings(copySegments, copySegmentThreshold, bulkCommands, findListing, inotifyWatch);
+    }
+
+    @Override
+    public String toString() {
+        return "SftpSettings [copySegments=" + copySegments + ", copySegmentThreshold=" + copySegmentThreshold + ", bulkCommands=" + bulkCommands
+                + ", findListing=" + findListing + ", inotifyWatch=" + inotifyWatch + "]";
+    }
+}
@@ -28,12 +28,12 @@ import com.github.sardine.SardineFactory;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
-import nl.esciencecenter.xenon.InvalidPropertyException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
@@ -56,12 +56,35 @@ public class WebdavFileAdaptor extends FileAdaptor {
     /** The buffer size to use when copying data. */
     public static final String BUFFER_SIZE = PREFIX + "bufferSize";
 
+    /** The number of files to transfer concurrently in a recursive copy. */
+    public static final String COPY_PARALLELISM = PREFIX + "copy.parallelism";
+
+    /** Start transferring files while a recursive copy is still listing the source directories. */
+    public static final String COPY_PIPELINED = PREFIX + "copy.pipelined";
+
+    /** The number of directories to delete concurrently when deleting recursively. */
+    public static final String DELETE_PARALLELISM = PREFIX + "delete.parallelism";
+
+    /** The number of directories to read concurrently when listing recursively. */
+    public static final String LIST_PARALLELISM = PREFIX + "list.parallelism";
+
+    /** The time in milliseconds for which the attributes of a path are cached, or 0 to disable the cache. */
+    public static final String CACHE_TTL = PREFIX + "cache.ttl";
+
+    /** The maximum number of paths of which the attributes are cached. */
+    public static final String CACHE_SIZE = PREFIX + "cache.size";
+
+    /** List directories recursively with a single PROPFIND request, which buffers the entire tree in memory. */
+    public static final String LIST_DEPTH_INFINITY = PREFIX + "list.depthInfinity";
+
     /** The locations supported by this adaptor */
     private static final String[] ADAPTOR_LOCATIONS = new String[] { "http://host[:port][/workdir]", "https://host[:port][/workdir]" };
 
     /** List of properties supported by this FTP adaptor */
-    private static final XenonPropertyDescription[] VALID_PROPERTIES = new XenonPropertyDescription[] {
-            new XenonPropertyDescription(BUFFER_SIZE, Type.SIZE, "64K", "The buffer size to use when copying files (in bytes).") };
+    private static final XenonPropertyDescription[] VALID_PROPERTIES = withCommonProperties(PREFIX,
+            new XenonPropertyDescription(LIST_DEPTH_INFINITY, Type.BOOLEAN, "false",
+                    "List directories recursively with a single 'Depth: infinity' PROPFIND, falling back to a request per directory if refused. The reply "
+                            + "describes the entire tree, so the listing is buffered in memory instead of being evaluated lazily."));
 
     public static final int OK_CODE = 200;
 
@@ -113,12 +136,7 @@ public class WebdavFileAdaptor extends FileAdaptor {
 
         XenonProperties xp = new XenonProperties(VALID_PROPERTIES, properties);
 
-        long bufferSize = xp.getSizeProperty(BUFFER_SIZE);
-
-        if (bufferSize <= 0 || bufferSize >= Integer.MAX_VALUE) {
-            throw new InvalidPropertyException(ADAPTOR_NAME,
-                    "Invalid value for " + BUFFER_SIZE + ": " + bufferSize + " (must be between 1 and " + Integer.MAX_VALUE + ")");
-        }
+        FileSystemSettings settings = getFileSystemSettings(ADAPTOR_NAME, xp);
 
         URI uri;
 
@@ -151,7 +169,10 @@ public class WebdavFileAdaptor extends FileAdaptor {
             server = server + ":" + port;
         }
 
+        boolean depthInfinity = xp.getBooleanProperty(LIST_DEPTH_INFINITY);
+
         String cwd = uri.getPath();
-        return new WebdavFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, server, new Path(cwd), (int) bufferSize, sardine, xp);
+        return new WebdavFileSystem(getNewUniqueID(), ADAPTOR_NAME, location, credential, server, new Path(cwd), settings,
+                depthInfinity, sardine, xp);
     }
 }
@@ -23,6 +23,8 @@ import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -37,8 +39,11 @@ import com.github.sardine.impl.SardineException;
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.credentials.Credential;
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAttributes;
@@ -51,10 +56,12 @@ public class WebdavFileSystem extends FileSystem {
     class StreamToFileWriter extends Thread {
 
         private final String url;
+        private final Path path;
         private final InputStream in;
 
-        StreamToFileWriter(String url, InputStream in) {
+        StreamToFileWriter(String url, Path path, InputStream in) {
             this.url = url;
+            this.path = path;
             this.in = in;
             setName("WebdavStreamToFileWriter");
             setDaemon(true);
@@ -66,6 +73,9 @@ public class WebdavFileSystem extends FileSystem {
                 client.put(url, in);
             } catch (Exception e) {
 
+            } finally {
+                // The file only changes once the upload is done.
+                invalidateAttributes(path);
             }
         }
     }
@@ -73,11 +83,23 @@ public class WebdavFileSystem extends FileSystem {
     private final Sardine client;
     private final String server;
 
-    protected WebdavFileSystem(String uniqueID, String name, String location, Credential credential, String server, Path entryPath, int bufferSize,
-            Sardine client, XenonProperties properties) {
-        super(uniqueID, name, location, credential, entryPath, bufferSize, properties);
+    // Cleared when the server refuses a Depth: infinity PROPFIND, so we do not try again for every listing.
+    private volatile boolean depthInfinity;
+
+    // Cleared when the server refuses a COPY, so the files of a directory copied through the client do not each try again.
+    private volatile boolean serverCopy = true;
+
+    protected WebdavFileSystem(String uniqueID, String name, String location, Credential credential, String server, Path entryPath,
+            FileSystemSettings settings, Sardine client, XenonProperties properties) {
+        this(uniqueID, name, location, credential, server, entryPath, settings, false, client, properties);
+    }
+
+    protected WebdavFileSystem(String uniqueID, String name, String location, Credential credential, String server, Path entryPath,
+            FileSystemSettings settings, boolean depthInfinity, Sardine client, XenonProperties properties) {
+        super(uniqueID, name, location, credential, entryPath, settings, properties);
         this.client = client;
         this.server = server;
+        this.depthInfinity = depthInfinity;
     }
 
     private String getFilePath(Path path) {
@@ -144,6 +166,131 @@ public class WebdavFileSystem extends FileSystem {
         return result;
     }
 
+    @Override
+    protected void listDirectory(Path path, DirectoryBatch batch) throws XenonException {
+
+        List<DavResource> list = null;
+
+        try {
+            list = client.list(getDirectoryPath(path), 1);
+        } catch (Exception e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to list directory: " + path, e);
+        }
+
+        String dirPath = path.toString() + "/";
+
+        for (DavResource d : list) {
+            // The list also returns the directory itself.
+            if (!dirPath.equals(d.getPath())) {
+                byte type = d.isDirectory() ? DirectoryBatch.DIRECTORY : DirectoryBatch.REGULAR;
+                batch.add(d.getName(), type, d.getContentLength(), d.getModified().getTime(), -1);
+            }
+        }
+    }
+
+    /**
+     * Lists an entire tree with a single <code>Depth: infinity</code> PROPFIND.
+     *
+     * Many servers refuse such requests with <code>403 Forbidden</code> as they can be expensive. In that case <code>null</code> is returned and no further
+     * attempts are made on this file system.
+     */
+    private List<PathAttributes> listTree(Path path) throws XenonException {
+
+        List<DavResource> list;
+
+        try {
+            list = client.list(getDirectoryPath(path), -1);
+        } catch (SardineException e) {
+            if (e.getStatusCode() == HttpStatus.SC_FORBIDDEN) {
+                LOGGER.debug("Depth: infinity listing refused by server, falling back to listing one directory at a time");
+                depthInfinity = false;
+                return null;
+            }
+            throw new XenonException(ADAPTOR_NAME, "Failed to list directory: " + path, e);
+        } catch (Exception e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to list directory: " + path, e);
+        }
+
+        ArrayList<PathAttributes> result = new ArrayList<>(list.size());
+
+        String dirPath = path.toString() + "/";
+
+        for (DavResource d : list) {
+            String p = d.getPath();
+
+            // The list also returns the directory itself, so ensure we don't return it!
+            if (!dirPath.equals(p) && p.startsWith(dirPath)) {
+                if (p.endsWith("/")) {
+                    p = p.substring(0, p.length() - 1);
+                }
+                result.add(getAttributes(new Path(p), d));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Iterable<PathAttributes> list(Path dir, boolean recursive) throws XenonException {
+
+        if (recursive && depthInfinity) {
+            Path absolute = toAbsolutePath(dir);
+            assertDirectoryExists(absolute);
+
+            List<PathAttributes> result = listTree(absolute);
+
+            if (result != null) {
+                cacheAttributes(result);
+                return () -> new TreeIterator(result.iterator());
+            }
+        }
+
+        return super.list(dir, recursive);
+    }
+
+    /**
+     * Iterates over a tree listed with a single PROPFIND. There is nothing to release, but the iterator of a recursive listing is a
+     * {@link CloseableIterator}.
+     */
+    private static class TreeIterator implements CloseableIterator<PathAttributes> {
+
+        private Iterator<PathAttributes> entries;
+
+        private TreeIterator(Iterator<PathAttributes> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public PathAttributes next() {
+            return entries.next();
+        }
+
+        @Override
+        public void close() {
+            entries = Collections.emptyIterator();
+        }
+    }
+
+    @Override
+    protected void list(Path dir, ArrayList<PathAttributes> list, boolean recursive) throws XenonException {
+
+        if (recursive && depthInfinity) {
+            List<PathAttributes> result = listTree(dir);
+
+            if (result != null) {
+                list.addAll(result);
+                return;
+            }
+        }
+
+        super.list(dir, list, recursive);
+    }
+
     @Override
     public boolean isOpen() throws XenonException {
         return true;
@@ -176,12 +323,80 @@ public class WebdavFileSystem extends FileSystem {
             }
         } catch (SardineException e) {
             if (e.getStatusCode() == HttpStatus.SC_MOVED_PERMANENTLY) {
+                invalidateAttributes(absSource);
+                invalidateAttributes(absTarget);
                 return;
             }
             throw new XenonException(ADAPTOR_NAME, "Failed to move from " + absSource + " to " + absTarget, e);
         } catch (Exception e1) {
             throw new XenonException(ADAPTOR_NAME, "Failed to move from " + absSource + " to " + absTarget, e1);
         }
+
+        invalidateAttributes(absSource);
+        invalidateAttributes(absTarget);
+    }
+
+    /**
+     * Lets the server copy files and collections using the WebDAV <code>COPY</code> method if the destination is on the same server. If the server does not
+     * support <code>COPY</code>, the data is copied through the client.
+     *
+     * A collection is copied in a single request, so its files and bytes are only counted afterwards by listing the source, and reported as copied at once.
+     */
+    @Override
+    protected boolean copyOnServer(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        if (!serverCopy || !(attributes.isRegular() || attributes.isDirectory()) || !isSameEndpoint(destinationFS)) {
+            return false;
+        }
+
+        Path absSource = toAbsolutePath(source);
+        Path absTarget = toAbsolutePath(destination);
+
+        LOGGER.debug("copyOnServer source = {} destination = {}", absSource, absTarget);
+
+        try {
+            if (attributes.isDirectory()) {
+                client.copy(getDirectoryPath(absSource), getDirectoryPath(absTarget), false);
+            } else {
+                client.copy(getFilePath(absSource), getFilePath(absTarget), false);
+                callback.addBytesCopied(attributes.getSize());
+            }
+        } catch (SardineException e) {
+            if (e.getStatusCode() == HttpStatus.SC_NOT_IMPLEMENTED || e.getStatusCode() == HttpStatus.SC_METHOD_NOT_ALLOWED) {
+                LOGGER.debug("COPY refused by server, copying through the client from now on");
+                serverCopy = false;
+                return false;
+            }
+            throw new XenonException(ADAPTOR_NAME, "Failed to copy from " + absSource + " to " + absTarget, e);
+        } catch (Exception e) {
+            throw new XenonException(ADAPTOR_NAME, "Failed to copy from " + absSource + " to " + absTarget, e);
+        }
+
+        if (attributes.isDirectory()) {
+            reportCopied(absSource, callback);
+        }
+
+        return true;
+    }
+
+    private void reportCopied(Path dir, CopyCallback callback) throws XenonException {
+        long bytes = 0;
+        long files = 0;
+
+        for (PathAttributes p : list(dir, true)) {
+            if (p.isRegular()) {
+                bytes += p.getSize();
+                files++;
+            }
+        }
+
+        callback.start(bytes, files);
+        callback.addBytesCopied(bytes);
+
+        for (long i = 0; i < files; i++) {
+            callback.fileCopied();
+        }
     }
 
     @Override
@@ -194,6 +409,7 @@ public class WebdavFileSystem extends FileSystem {
 
         try {
             client.createDirectory(getDirectoryPath(absDir));
+            invalidateAttributes(absDir);
         } catch (Exception e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create directory: " + absDir, e);
         }
@@ -209,6 +425,7 @@ public class WebdavFileSystem extends FileSystem {
 
         try {
             client.put(getFilePath(absFile), new byte[0]);
+            invalidateAttributes(absFile);
         } catch (Exception e) {
             throw new XenonException(ADAPTOR_NAME, "Failed to create file: " + absFile, e);
         }
@@ -274,7 +491,8 @@ public class WebdavFileSystem extends FileSystem {
             PipedOutputStream out = new PipedOutputStream(in);
 
             // Create a separate thread here to handle the writing
-            new StreamToFileWriter(getFilePath(absFile), in).start();
+            new StreamToFileWriter(getFilePath(absFile), absFile, in).start();
+            invalidateAttributes(absFile);
 
             return out;
         } catch (Exception e) {
@@ -284,7 +502,7 @@ public class WebdavFileSystem extends FileSystem {
 
     @Override
     public OutputStream appendToFile(Path file) throws XenonException {
-        throw new XenonException(ADAPTOR_NAME, "Appending to file not supported");
+        throw new UnsupportedOperationException(ADAPTOR_NAME, "Appending to file not supported");
     }
 
     @Override
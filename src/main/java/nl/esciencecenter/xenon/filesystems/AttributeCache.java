@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of the attributes of absolute paths, including paths that are known not to exist.
+ *
+ * Entries expire after a fixed time to live. When the cache is full, the least recently used entry is evicted.
+ *
+ * To invalidate everything below a directory without scanning the whole cache, the cached paths are also kept in a tree that maps every directory to its
+ * children. The tree contains the cached paths and their ancestors, and a directory is removed from it once nothing below it is cached.
+ */
+class AttributeCache {
+
+    /**
+     * A cached lookup. The attributes are <code>null</code> if the path does not exist.
+     */
+    static final class Entry {
+
+        final PathAttributes attributes;
+        private final long expires;
+
+        private Entry(PathAttributes attributes, long expires) {
+            this.attributes = attributes;
+            this.expires = expires;
+        }
+    }
+
+    private final long ttl;
+    private final LinkedHashMap<Path, Entry> entries;
+    private final HashMap<Path, Set<Path>> children = new HashMap<>();
+
+    /**
+     * Create an AttributeCache.
+     *
+     * @param ttl
+     *            the time to live of an entry in milliseconds.
+     * @param maxSize
+     *            the maximum number of entries.
+     */
+    AttributeCache(long ttl, int maxSize) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.entries = new LinkedHashMap<Path, AttributeCache.Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, AttributeCache.Entry> eldest) {
+                if (size() > maxSize) {
+                    unlink(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the cached lookup of a path.
+     *
+     * @param path
+     *            the absolute path.
+     * @return the entry, or <code>null</code> if the path is not cached or the entry has expired.
+     */
+    synchronized Entry get(Path path) {
+
+        Entry e = entries.get(path);
+
+        if (e != null && System.nanoTime() - e.expires > 0) {
+            entries.remove(path);
+            unlink(path);
+            return null;
+        }
+
+        return e;
+    }
+
+    /**
+     * Store the attributes of a path.
+     *
+     * @param path
+     *            the absolute path.
+     * @param attributes
+     *            the attributes, or <code>null</code> if the path does not exist.
+     */
+    synchronized void put(Path path, PathAttributes attributes) {
+
+        // Link the path into the tree first, as the put may evict an entry and prune the tree.
+        Path child = path;
+        Path parent = path.getParent();
+
+        while (parent != null && children.computeIfAbsent(parent, p -> new HashSet<>()).add(child)) {
+            child = parent;
+            parent = parent.getParent();
+        }
+
+        entries.put(path, new Entry(attributes, System.nanoTime() + ttl));
+    }
+
+    /**
+     * Remove a path that is no longer cached from the tree, unless something below it is still cached. Its ancestors are removed as well if they are no
+     * longer needed.
+     */
+    private void unlink(Path path) {
+
+        Path current = path;
+
+        while (!children.containsKey(current)) {
+            Path parent = current.getParent();
+            Set<Path> siblings = parent == null ? null : children.get(parent);
+
+            if (siblings == null) {
+                return;
+            }
+
+            siblings.remove(current);
+
+            if (!siblings.isEmpty()) {
+                return;
+            }
+
+            children.remove(parent);
+
+            if (entries.containsKey(parent)) {
+                return;
+            }
+
+            current = parent;
+        }
+    }
+
+    /**
+     * Remove a path, everything below it and its parent, whose modification time and size change with its content.
+     *
+     * @param path
+     *            the absolute path.
+     */
+    synchronized void invalidate(Path path) {
+
+        ArrayDeque<Path> below = new ArrayDeque<>();
+        below.add(path);
+
+        while (!below.isEmpty()) {
+            Path current = below.poll();
+            entries.remove(current);
+
+            Set<Path> c = children.remove(current);
+
+            if (c != null) {
+                below.addAll(c);
+            }
+        }
+
+        unlink(path);
+
+        Path parent = path.getParent();
+
+        if (parent != null && entries.remove(parent) != null) {
+            unlink(parent);
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    synchronized void clear() {
+        entries.clear();
+        children.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of directories in the tree, which only contains the cached paths and their ancestors.
+     */
+    synchronized int treeSize() {
+        return children.size();
+    }
+}
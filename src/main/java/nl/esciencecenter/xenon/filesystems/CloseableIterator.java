@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.Iterator;
+
+/**
+ * An iterator that holds resources on the server, such as the open directory handles of a recursive listing returned by
+ * {@link FileSystem#list(Path, boolean)}.
+ *
+ * The resources are released when the iteration reaches the end or fails. An iteration that is abandoned before that must be closed, otherwise the
+ * resources stay in use until the file system is closed.
+ *
+ * @param <T>
+ *            the type of the elements.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * Release the resources held by this iterator. Afterwards, {@link #hasNext()} returns <code>false</code>. Closing an iterator more than once has no
+     * effect.
+     */
+    @Override
+    void close();
+
+    /**
+     * Close an iterator if it is a {@link CloseableIterator}.
+     *
+     * @param iterator
+     *            the iterator to close.
+     */
+    static void closeIfNeeded(Iterator<?> iterator) {
+        if (iterator instanceof CloseableIterator) {
+            ((CloseableIterator<?>) iterator).close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+/**
+ * A CopyListener is notified of the progress of a copy started with
+ * {@link FileSystem#copy(nl.esciencecenter.xenon.filesystems.Path, FileSystem, nl.esciencecenter.xenon.filesystems.Path, CopyMode, boolean, CopyListener)}.
+ *
+ * This is an alternative to polling {@link FileSystem#getStatus(String)}. The methods are invoked by the threads performing the copy, so they should return
+ * quickly. Exceptions thrown by a listener are ignored.
+ */
+public interface CopyListener {
+
+    /**
+     * The default minimum time between two progress notifications in milliseconds.
+     */
+    long DEFAULT_PROGRESS_INTERVAL = 1000;
+
+    /**
+     * Called while the copy is running. This method is called at most once every {@link #getProgressInterval()} milliseconds.
+     *
+     * @param status
+     *            the current status of the copy.
+     */
+    void progress(CopyStatus status);
+
+    /**
+     * Called once when the copy has completed successfully.
+     *
+     * @param status
+     *            the final status of the copy.
+     */
+    void completed(CopyStatus status);
+
+    /**
+     * Called once when the copy has failed or was cancelled. The exception is available from {@link CopyStatus#getException()}.
+     *
+     * @param status
+     *            the final status of the copy.
+     */
+    void failed(CopyStatus status);
+
+    /**
+     * Get the minimum time between two progress notifications.
+     *
+     * @return the minimum time between two calls to {@link #progress(CopyStatus)} in milliseconds.
+     */
+    default long getProgressInterval() {
+        return DEFAULT_PROGRESS_INTERVAL;
+    }
+}
@@ -18,7 +18,7 @@ package nl.esciencecenter.xenon.filesystems;
 /**
  * CopyOption is an enumeration containing all possible options for copying a file.
  *
- * Note that the <code>CREATE</code>, <code>REPLACE</code> and <code>IGNORE</code> options are mutually exclusive.
+ * Note that the <code>CREATE</code>, <code>REPLACE</code>, <code>IGNORE</code>, <code>SYNC</code> and <code>RESUME</code> options are mutually exclusive.
  */
 public enum CopyMode {
 
@@ -40,5 +40,24 @@ public enum CopyMode {
     /**
      * Skip the copy if the destination file if it already exists.
      */
-    IGNORE
+    IGNORE,
+
+    /**
+     * Only copy files that are new or have changed. Behaves like <code>REPLACE</code>, except that an existing destination file is left untouched if it has
+     * the same size and the same modification time as the source file. The modification times are compared with the resolution of the filesystems, which
+     * is one second or coarser.
+     *
+     * After a file is copied its modification time is set to that of the source file. If the destination filesystem does not support this, an existing
+     * destination file of the same size that is not older than the source file is left untouched instead.
+     */
+    SYNC,
+
+    /**
+     * Continue an earlier copy that did not complete. If the destination file exists, the source is copied starting at the current length of the destination
+     * and appended to it. The tail of the existing destination is first compared to the source. If it does not match, or the destination is larger than the
+     * source, an {@link InvalidResumeTargetException} is thrown. If the destination filesystem does not support appending, the file is copied completely.
+     *
+     * Existing directories are merged as with <code>REPLACE</code>, and existing symbolic links are left untouched.
+     */
+    RESUME
 }
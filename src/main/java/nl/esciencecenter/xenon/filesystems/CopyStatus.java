@@ -86,6 +86,9 @@ public interface CopyStatus {
     /**
      * Get the number of bytes that need to be copied for the entire copy operation.
      *
+     * When a recursive copy is performed by a filesystem that lists and transfers at the same time (see the <code>copy.pipelined</code> property of the
+     * adaptors), this is a running estimate that grows while the source directories are being listed.
+     *
      * @return the number of bytes that need to be copied.
      */
     long bytesToCopy();
@@ -96,4 +99,27 @@ public interface CopyStatus {
      * @return the number of bytes that have been copied.
      */
     long bytesCopied();
+
+    /**
+     * Get the number of files that need to be copied for the entire copy operation.
+     *
+     * Like {@link #bytesToCopy()}, this is a running estimate when the source directories are listed while copying.
+     *
+     * @return the number of files that need to be copied.
+     */
+    long filesToCopy();
+
+    /**
+     * Get the number of files that have been copied.
+     *
+     * @return the number of files that have been copied.
+     */
+    long filesCopied();
+
+    /**
+     * Get the average number of bytes copied per second since the copy started.
+     *
+     * @return the average throughput of the copy in bytes per second.
+     */
+    double bytesPerSecond();
 }
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
+
+/**
+ * DirectoryBatch contains the entries of a single directory in columnar form.
+ *
+ * Instead of a {@link PathAttributes} and {@link Path} per entry, the names of all entries are packed into one character buffer, and their type, size,
+ * modification time and permissions are kept in primitive arrays. This keeps listings of directories with millions of entries small. The entries are read
+ * using a {@link Cursor}, which points to one entry at a time and only creates objects when they are requested.
+ */
+public final class DirectoryBatch {
+
+    /** The type of a regular file. */
+    public static final byte REGULAR = 0;
+
+    /** The type of a directory. */
+    public static final byte DIRECTORY = 1;
+
+    /** The type of a symbolic link. */
+    public static final byte SYMBOLIC_LINK = 2;
+
+    /** The type of anything that is not a regular file, directory or symbolic link. */
+    public static final byte OTHER = 3;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final Path parent;
+
+    private char[] names;
+    private int nameLength;
+
+    /** The end of the name of each entry in <code>names</code>. The name of an entry starts at the end of the previous one. */
+    private int[] ends;
+    private byte[] types;
+    private long[] sizes;
+    private long[] modified;
+    private int[] modes;
+
+    private int count;
+
+    /**
+     * Create an empty DirectoryBatch.
+     *
+     * @param parent
+     *            the directory that contains the entries.
+     */
+    public DirectoryBatch(Path parent) {
+        this(parent, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty DirectoryBatch with room for a number of entries.
+     *
+     * @param parent
+     *            the directory that contains the entries.
+     * @param capacity
+     *            the number of entries to reserve room for.
+     */
+    public DirectoryBatch(Path parent, int capacity) {
+
+        if (parent == null) {
+            throw new IllegalArgumentException("Parent may not be null");
+        }
+
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity may not be negative");
+        }
+
+        this.parent = parent;
+        this.names = new char[capacity * 16];
+        this.ends = new int[capacity];
+        this.types = new byte[capacity];
+        this.sizes = new long[capacity];
+        this.modified = new long[capacity];
+        this.modes = new int[capacity];
+    }
+
+    /**
+     * Get the type of the entry that the attributes describe.
+     *
+     * @param attributes
+     *            the attributes of the entry.
+     * @return the type of the entry.
+     */
+    public static byte type(PathAttributes attributes) {
+        if (attributes.isSymbolicLink()) {
+            return SYMBOLIC_LINK;
+        }
+
+        if (attributes.isDirectory()) {
+            return DIRECTORY;
+        }
+
+        return attributes.isRegular() ? REGULAR : OTHER;
+    }
+
+    private void grow(int extraChars) {
+
+        if (count == ends.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, count * 2);
+            ends = Arrays.copyOf(ends, capacity);
+            types = Arrays.copyOf(types, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            modified = Arrays.copyOf(modified, capacity);
+            modes = Arrays.copyOf(modes, capacity);
+        }
+
+        if (nameLength + extraChars > names.length) {
+            names = Arrays.copyOf(names, Math.max(nameLength + extraChars, names.length * 2));
+        }
+    }
+
+    /**
+     * Add an entry.
+     *
+     * @param name
+     *            the file name of the entry.
+     * @param type
+     *            the type of the entry, {@link #REGULAR}, {@link #DIRECTORY}, {@link #SYMBOLIC_LINK} or {@link #OTHER}.
+     * @param size
+     *            the size of the entry in bytes.
+     * @param lastModified
+     *            the last modification time of the entry in milliseconds.
+     * @param mode
+     *            the POSIX permission bits of the entry, or <code>-1</code> if they are not known.
+     */
+    public void add(String name, byte type, long size, long lastModified, int mode) {
+
+        if (name == null) {
+            throw new IllegalArgumentException("Name may not be null");
+        }
+
+        if (type < REGULAR || type > OTHER) {
+            throw new IllegalArgumentException("Unknown type " + type);
+        }
+
+        grow(name.length());
+
+        name.getChars(0, name.length(), names, nameLength);
+        nameLength += name.length();
+
+        ends[count] = nameLength;
+        types[count] = type;
+        sizes[count] = size;
+        modified[count] = lastModified;
+        modes[count] = mode < 0 ? -1 : mode & 0777;
+        count++;
+    }
+
+    /**
+     * Add an entry using its attributes.
+     *
+     * @param attributes
+     *            the attributes of the entry.
+     */
+    public void add(PathAttributes attributes) {
+        Set<PosixFilePermission> permissions;
+
+        try {
+            permissions = attributes.getPermissions();
+        } catch (AttributeNotSupportedException e) {
+            permissions = null;
+        }
+
+        add(attributes.getPath().getFileNameAsString(), type(attributes), attributes.getSize(), attributes.getLastModifiedTime(),
+                permissions == null ? -1 : PosixFileUtils.permissionsToBits(permissions));
+    }
+
+    /**
+     * Get the directory that contains the entries.
+     *
+     * @return the directory that contains the entries.
+     */
+    public Path getParent() {
+        return parent;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Create a cursor that is positioned before the first entry.
+     *
+     * @return a new cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryBatch [parent=" + parent + ", size=" + count + "]";
+    }
+
+    /**
+     * A Cursor points to one entry of a {@link DirectoryBatch} at a time. Moving it does not create any objects.
+     */
+    public final class Cursor {
+
+        private int index = -1;
+
+        private Cursor() {
+            // Created by DirectoryBatch.cursor()
+        }
+
+        /**
+         * Move to the next entry.
+         *
+         * @return if there is a next entry.
+         */
+        public boolean next() {
+            if (index < count) {
+                index++;
+            }
+            return index < count;
+        }
+
+        /**
+         * Move to an entry.
+         *
+         * @param index
+         *            the index of the entry.
+         */
+        public void moveTo(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of range [0," + count + ")");
+            }
+            this.index = index;
+        }
+
+        /**
+         * Get the index of the current entry.
+         *
+         * @return the index of the current entry.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        private int current() {
+            if (index < 0 || index >= count) {
+                throw new IllegalStateException("Cursor does not point to an entry");
+            }
+            return index;
+        }
+
+        private int start(int i) {
+            return i == 0 ? 0 : ends[i - 1];
+        }
+
+        /**
+         * Get the file name of the current entry.
+         *
+         * @return the file name.
+         */
+        public String getName() {
+            int i = current();
+            return new String(names, start(i), ends[i] - start(i));
+        }
+
+        /**
+         * Append the file name of the current entry to a StringBuilder, without creating a String.
+         *
+         * @param out
+         *            the StringBuilder to append to.
+         * @return <code>out</code>.
+         */
+        public StringBuilder appendName(StringBuilder out) {
+            int i = current();
+            return out.append(names, start(i), ends[i] - start(i));
+        }
+
+        /**
+         * Check if the file name of the current entry is equal to a name, without creating a String.
+         *
+         * @param name
+         *            the name to compare to.
+         * @return if the names are equal.
+         */
+        public boolean nameEquals(String name) {
+            int i = current();
+            int start = start(i);
+            int length = ends[i] - start;
+
+            if (name.length() != length) {
+                return false;
+            }
+
+            for (int c = 0; c < length; c++) {
+                if (names[start + c] != name.charAt(c)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Get the path of the current entry.
+         *
+         * @return the path of the current entry.
+         */
+        public Path getPath() {
+            return parent.resolve(getName());
+        }
+
+        /**
+         * Get the type of the current entry.
+         *
+         * @return {@link #REGULAR}, {@link #DIRECTORY}, {@link #SYMBOLIC_LINK} or {@link #OTHER}.
+         */
+        public byte getType() {
+            return types[current()];
+        }
+
+        /**
+         * Does the current entry refer to a directory ?
+         *
+         * @return if the entry refers to a directory.
+         */
+        public boolean isDirectory() {
+            return getType() == DIRECTORY;
+        }
+
+        /**
+         * Does the current entry refer to a regular file ?
+         *
+         * @return if the entry refers to a regular file.
+         */
+        public boolean isRegular() {
+            return getType() == REGULAR;
+        }
+
+        /**
+         * Does the current entry refer to a symbolic link ?
+         *
+         * @return if the entry refers to a symbolic link.
+         */
+        public boolean isSymbolicLink() {
+            return getType() == SYMBOLIC_LINK;
+        }
+
+        /**
+         * Is the current entry not a file, link or directory ?
+         *
+         * @return if the entry does not refer to a file, link or directory.
+         */
+        public boolean isOther() {
+            return getType() == OTHER;
+        }
+
+        /**
+         * Get the size of the current entry in bytes.
+         *
+         * @return the size of the entry.
+         */
+        public long getSize() {
+            return sizes[current()];
+        }
+
+        /**
+         * Get the last modified time of the current entry.
+         *
+         * @return the last modified time in milliseconds.
+         */
+        public long getLastModifiedTime() {
+            return modified[current()];
+        }
+
+        /**
+         * Get the POSIX permission bits of the current entry.
+         *
+         * @return the permission bits, or <code>-1</code> if they are not known.
+         */
+        public int getPermissionBits() {
+            return modes[current()];
+        }
+
+        /**
+         * Get the permissions of the current entry. A new set is created for every call.
+         *
+         * @return the permissions, or <code>null</code> if they are not known.
+         */
+        public Set<PosixFilePermission> getPermissions() {
+            int mode = getPermissionBits();
+            return mode < 0 ? null : PosixFileUtils.bitsToPermissions(mode);
+        }
+
+        /**
+         * Create the {@link PathAttributes} of the current entry. Only the attributes that are kept in the batch are set.
+         *
+         * @return the attributes of the current entry.
+         */
+        public PathAttributes toPathAttributes() {
+            int i = current();
+
+            PathAttributesImplementation result = new PathAttributesImplementation();
+            result.setPath(getPath());
+            result.setDirectory(types[i] == DIRECTORY);
+            result.setRegular(types[i] == REGULAR);
+            result.setSymbolicLink(types[i] == SYMBOLIC_LINK);
+            result.setOther(types[i] == OTHER);
+            result.setSize(sizes[i]);
+            result.setLastModifiedTime(modified[i]);
+            result.setCreationTime(modified[i]);
+            result.setLastAccessTime(modified[i]);
+
+            if (modes[i] >= 0) {
+                result.setPermissionBits(modes[i]);
+            }
+
+            return result;
+        }
+    }
+}
@@ -18,19 +18,43 @@ package nl.esciencecenter.xenon.filesystems;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
@@ -39,12 +63,17 @@ import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.UnknownPropertyException;
 import nl.esciencecenter.xenon.UnsupportedOperationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.adaptors.AdaptorLoader;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
+import nl.esciencecenter.xenon.adaptors.filesystems.ReconnectingInputStream;
+import nl.esciencecenter.xenon.adaptors.filesystems.RecursiveListIterator;
 import nl.esciencecenter.xenon.credentials.Credential;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.utils.BufferPool;
 import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
 
 /**
@@ -52,6 +81,23 @@ import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
  */
 public abstract class FileSystem implements AutoCloseable {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystem.class);
+
+    /** The number of bytes at the end of an existing destination that are compared to the source before a copy is resumed. */
+    private static final int RESUME_CHECK_SIZE = 64 * 1024;
+
+    /**
+     * The number of times a read from the source of a copy is retried on a reopened stream after a failure. This only helps if {@link #readFromFile(Path,
+     * long)} does not depend on the failed connection, see {@link ReconnectingInputStream}.
+     */
+    private static final int READ_RETRIES = 3;
+
+    // Number of buffers a reader may fill ahead of the writer in an overlapped stream copy.
+    private static final int COPY_RING_SIZE = 4;
+
+    /** The maximum number of finished copies whose status is kept until it is retrieved. */
+    private static final int COPY_HISTORY_SIZE = 1024;
+
     private static FileAdaptor getAdaptorByName(String adaptorName) throws UnknownAdaptorException {
         return AdaptorLoader.getFileAdaptor(adaptorName);
     }
@@ -98,13 +144,24 @@ public abstract class FileSystem implements AutoCloseable {
 
         private final long bytesToCopy;
         private final long bytesCopied;
+        private final long filesToCopy;
+        private final long filesCopied;
+        private final double bytesPerSecond;
 
         public CopyStatusImplementation(String copyIdentifier, String state, long bytesToCopy, long bytesCopied, XenonException exception) {
+            this(copyIdentifier, state, bytesToCopy, bytesCopied, 0, 0, 0.0, exception);
+        }
+
+        public CopyStatusImplementation(String copyIdentifier, String state, long bytesToCopy, long bytesCopied, long filesToCopy, long filesCopied,
+                double bytesPerSecond, XenonException exception) {
             super();
             this.copyIdentifier = copyIdentifier;
             this.state = state;
             this.bytesToCopy = bytesToCopy;
             this.bytesCopied = bytesCopied;
+            this.filesToCopy = filesToCopy;
+            this.filesCopied = filesCopied;
+            this.bytesPerSecond = bytesPerSecond;
             this.exception = exception;
         }
 
@@ -155,6 +212,21 @@ public abstract class FileSystem implements AutoCloseable {
             return bytesCopied;
         }
 
+        @Override
+        public long filesToCopy() {
+            return filesToCopy;
+        }
+
+        @Override
+        public long filesCopied() {
+            return filesCopied;
+        }
+
+        @Override
+        public double bytesPerSecond() {
+            return bytesPerSecond;
+        }
+
         @Override
         public String toString() {
             return "CopyStatus [copyIdentifier=" + copyIdentifier + ", state=" + state + ", exception=" + exception + ", bytesToCopy=" + bytesToCopy
@@ -168,13 +240,13 @@ public abstract class FileSystem implements AutoCloseable {
             if (o == null || getClass() != o.getClass())
                 return false;
             CopyStatusImplementation that = (CopyStatusImplementation) o;
-            return bytesToCopy == that.bytesToCopy && bytesCopied == that.bytesCopied && Objects.equals(copyIdentifier, that.copyIdentifier)
-                    && Objects.equals(state, that.state) && Objects.equals(exception, that.exception);
+            return bytesToCopy == that.bytesToCopy && bytesCopied == that.bytesCopied && filesToCopy == that.filesToCopy && filesCopied == that.filesCopied
+                    && Objects.equals(copyIdentifier, that.copyIdentifier) && Objects.equals(state, that.state) && Objects.equals(exception, that.exception);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(copyIdentifier, state, exception, bytesToCopy, bytesCopied);
+            return Objects.hash(copyIdentifier, state, exception, bytesToCopy, bytesCopied, filesToCopy, filesCopied);
         }
     }
 
@@ -326,55 +398,199 @@ public abstract class FileSystem implements AutoCloseable {
         return create(adaptor, null);
     }
 
-    class CopyCallback {
+    protected class CopyCallback {
+
+        private final String copyIdentifier;
+        private final CopyListener listener;
+        private final long progressInterval;
+
+        // Updated for every chunk by possibly many transfer threads, so these are lock free.
+        private final LongAdder bytesCopied = new LongAdder();
+        private final AtomicLong bytesToCopy = new AtomicLong(0);
+        private final LongAdder filesCopied = new LongAdder();
+        private final AtomicLong filesToCopy = new AtomicLong(0);
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final AtomicLong nextProgress = new AtomicLong(0);
 
-        private long bytesToCopy = 0;
-        private long bytesCopied = 0;
+        private volatile long startTime;
+        private volatile boolean cancelled = false;
+
+        CopyCallback() {
+            this(null, null);
+        }
 
-        private boolean started = false;
-        private boolean cancelled = false;
+        CopyCallback(String copyIdentifier, CopyListener listener) {
+            this.copyIdentifier = copyIdentifier;
+            this.listener = listener;
+            this.progressInterval = listener == null ? 0 : TimeUnit.MILLISECONDS.toNanos(listener.getProgressInterval());
+        }
 
-        synchronized void start(long bytesToCopy) {
-            if (!started) {
-                started = true;
-                this.bytesToCopy = bytesToCopy;
+        public void start(long bytesToCopy, long filesToCopy) {
+            if (started.compareAndSet(false, true)) {
+                this.startTime = System.nanoTime();
+                this.nextProgress.set(startTime + progressInterval);
+                this.bytesToCopy.set(bytesToCopy);
+                this.filesToCopy.set(filesToCopy);
             }
         }
 
-        synchronized boolean isStarted() {
-            return started;
+        boolean isStarted() {
+            return started.get();
         }
 
-        synchronized long getBytesCopied() {
-            return bytesCopied;
+        long getBytesCopied() {
+            return bytesCopied.sum();
         }
 
-        synchronized long getBytesToCopy() {
-            return bytesToCopy;
+        long getBytesToCopy() {
+            return bytesToCopy.get();
+        }
+
+        void addFileToCopy(long bytes) {
+            bytesToCopy.addAndGet(bytes);
+            filesToCopy.incrementAndGet();
+        }
+
+        public void fileCopied() {
+            filesCopied.increment();
         }
 
-        synchronized void addBytesCopied(long bytes) {
-            this.bytesCopied += bytes;
+        public void addBytesCopied(long bytes) {
+            bytesCopied.add(bytes);
+
+            if (listener != null) {
+                maybeReportProgress();
+            }
+        }
+
+        /**
+         * Report the progress to the listener if the progress interval has passed. Only one of the threads that pass the deadline gets to report.
+         */
+        private void maybeReportProgress() {
+            long deadline = nextProgress.get();
+            long now = System.nanoTime();
+
+            if (isStarted() && now - deadline >= 0 && nextProgress.compareAndSet(deadline, now + progressInterval)) {
+                notifyListener(getStatus("RUNNING", null));
+            }
+        }
+
+        void notifyListener(CopyStatus status) {
+            try {
+                if (status.hasException()) {
+                    listener.failed(status);
+                } else if (status.isDone()) {
+                    listener.completed(status);
+                } else {
+                    listener.progress(status);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Copy listener failed", e);
+            }
         }
 
-        synchronized void cancel() {
+        CopyStatus getStatus(String state, XenonException exception) {
+            double seconds = isStarted() ? (System.nanoTime() - startTime) / 1e9 : 0.0;
+            long copied = getBytesCopied();
+
+            return new CopyStatusImplementation(copyIdentifier, state, getBytesToCopy(), copied, filesToCopy.get(), filesCopied.sum(),
+                    seconds > 0 ? copied / seconds : 0.0, exception);
+        }
+
+        void cancel() {
             cancelled = true;
         }
 
-        synchronized boolean isCancelled() {
+        public boolean isCancelled() {
             return cancelled;
         }
     }
 
-    private class PendingCopy {
+    /**
+     * The task that performs a copy. Once the task is done, failed or cancelled, its final status is recorded, the {@link CopyListener} (if any) is notified,
+     * and the future returned by {@link FileSystem#copyAsync(Path, FileSystem, Path, CopyMode, boolean)} is completed.
+     */
+    private class CopyTask extends FutureTask<Void> {
+
+        private final CopyCallback callback;
+        private final boolean keepHistory;
 
-        Future<Void> future;
-        CopyCallback callback;
+        // Always completes normally with the final status, also if the copy failed.
+        private final CompletableFuture<CopyStatus> finalStatus = new CompletableFuture<>();
 
-        public PendingCopy(Future<Void> future, CopyCallback callback) {
-            super();
-            this.future = future;
+        // Completes exceptionally if the copy failed. Cancelling it cancels the copy.
+        private final CompletableFuture<CopyStatus> result = new CompletableFuture<>();
+
+        CopyTask(Callable<Void> callable, CopyCallback callback, boolean keepHistory) {
+            super(callable);
             this.callback = callback;
+            this.keepHistory = keepHistory;
+
+            result.whenComplete((status, ex) -> {
+                if (result.isCancelled()) {
+                    callback.cancel();
+                    cancel(true);
+                }
+            });
+        }
+
+        @Override
+        protected void done() {
+
+            XenonException ex = null;
+            String state = "DONE";
+
+            try {
+                get();
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+
+                if (cause instanceof XenonException) {
+                    ex = (XenonException) cause;
+                } else {
+                    ex = new XenonException(getAdaptorName(), cause.getMessage(), cause);
+                }
+
+                state = "FAILED";
+            } catch (CancellationException ce) {
+                ex = new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                state = "FAILED";
+            } catch (InterruptedException ie) {
+                // Cannot happen, the task is done.
+                Thread.currentThread().interrupt();
+            }
+
+            CopyStatus status = callback.getStatus(state, ex);
+
+            // Add to the history before removing it from the pending copies, so it is always found by a status query.
+            if (keepHistory) {
+                finishedCopies.put(callback.copyIdentifier, status);
+            }
+
+            pendingCopies.remove(callback.copyIdentifier);
+            finalStatus.complete(status);
+
+            if (callback.listener != null) {
+                callback.notifyListener(status);
+            }
+
+            if (ex == null) {
+                result.complete(status);
+            } else {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        CopyStatus awaitFinalStatus() throws XenonException {
+            try {
+                return finalStatus.get();
+            } catch (ExecutionException e) {
+                // Cannot happen, the final status always completes normally.
+                throw new XenonException(getAdaptorName(), e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return callback.getStatus("FAILED", new CopyCancelledException(getAdaptorName(), "Copy interrupted by user"));
+            }
         }
     }
 
@@ -384,17 +600,46 @@ public abstract class FileSystem implements AutoCloseable {
     private final Credential credential;
     private final XenonProperties properties;
     private final ExecutorService pool;
+    private final ExecutorService transferPool;
+    private final ExecutorService readerPool;
+    private final ExecutorService deletePool;
+    private final ExecutorService listPool;
+    private final int listParallelism;
+    private final AttributeCache attributeCache;
 
     private Path workingDirectory;
 
-    private long nextCopyID = 0;
+    private final AtomicLong nextCopyID = new AtomicLong(0);
 
     private int bufferSize;
 
-    private final HashMap<String, PendingCopy> pendingCopies = new HashMap<>();
+    private final int copyParallelism;
+
+    private final boolean pipelinedCopy;
+
+    private final boolean optimistic;
+
+    private final ConcurrentHashMap<String, CopyTask> pendingCopies = new ConcurrentHashMap<>();
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+
+    // The final status of finished copies that have not been queried yet. The oldest entries are evicted, so copies that are never queried do not leak.
+    private final Map<String, CopyStatus> finishedCopies = Collections.synchronizedMap(new LinkedHashMap<String, CopyStatus>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CopyStatus> eldest) {
+            return size() > COPY_HISTORY_SIZE;
+        }
+    });
 
     protected FileSystem(String uniqueID, String adaptor, String location, Credential credential, Path workDirectory, int bufferSize,
             XenonProperties properties) {
+        this(uniqueID, adaptor, location, credential, workDirectory, FileSystemSettings.defaults().withBufferSize(bufferSize), properties);
+    }
+
+    protected FileSystem(String uniqueID, String adaptor, String location, Credential credential, Path workDirectory, FileSystemSettings settings,
+            XenonProperties properties) {
 
         if (uniqueID == null) {
             throw new IllegalArgumentException("Identifier may not be null!");
@@ -416,8 +661,8 @@ public abstract class FileSystem implements AutoCloseable {
             throw new IllegalArgumentException("EntryPath may not be null!");
         }
 
-        if (bufferSize <= 0) {
-            throw new IllegalArgumentException("Buffer size may not be 0 or smaller!");
+        if (settings == null) {
+            throw new IllegalArgumentException("Settings may not be null!");
         }
 
         this.uniqueID = uniqueID;
@@ -426,16 +671,105 @@ public abstract class FileSystem implements AutoCloseable {
         this.credential = credential;
         this.workingDirectory = workDirectory;
         this.properties = properties;
-        this.bufferSize = bufferSize;
+        this.bufferSize = settings.getBufferSize();
+        this.copyParallelism = settings.getCopyParallelism();
+        this.pipelinedCopy = settings.isCopyPipelined();
+        this.optimistic = settings.isOptimistic();
         this.pool = Executors.newFixedThreadPool(1, new DaemonThreadFactory("CopyThread." + uniqueID));
+
+        if (copyParallelism > 1) {
+            this.transferPool = Executors.newFixedThreadPool(copyParallelism, new DaemonThreadFactory("CopyWorker." + uniqueID));
+        } else {
+            this.transferPool = null;
+        }
+
+        this.readerPool = Executors.newCachedThreadPool(new DaemonThreadFactory("CopyReader." + uniqueID));
+
+        int deleteParallelism = settings.getDeleteParallelism();
+
+        if (deleteParallelism > 1) {
+            this.deletePool = Executors.newFixedThreadPool(deleteParallelism, new DaemonThreadFactory("DeleteWorker." + uniqueID));
+        } else {
+            this.deletePool = null;
+        }
+
+        this.listParallelism = settings.getListParallelism();
+
+        if (listParallelism > 1) {
+            this.listPool = Executors.newFixedThreadPool(listParallelism, new DaemonThreadFactory("ListWorker." + uniqueID));
+        } else {
+            this.listPool = null;
+        }
+
+        if (settings.getCacheTTL() > 0) {
+            this.attributeCache = new AttributeCache(settings.getCacheTTL(), settings.getCacheSize());
+        } else {
+            this.attributeCache = null;
+        }
     }
 
     protected int getBufferSize() {
         return bufferSize;
     }
 
-    private synchronized String getNextCopyID() {
-        return "COPY-" + getAdaptorName() + "-" + nextCopyID++;
+    /**
+     * Get the number of files that may be transferred concurrently during a recursive copy.
+     *
+     * @return the number of concurrent file transfers.
+     */
+    protected int getCopyParallelism() {
+        return copyParallelism;
+    }
+
+    /**
+     * Check if operations should be sent to the server without first checking their preconditions.
+     *
+     * In optimistic mode, an adaptor only checks the preconditions of an operation after the server has rejected it, so it can still throw the same
+     * exception as in the default mode. This saves one or more round trips for every successful operation.
+     *
+     * @return if operations are optimistic.
+     */
+    protected boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Check if the data of this FileSystem is accessed over a network.
+     *
+     * Reads from a remote FileSystem are overlapped with writes to the destination of a copy, to hide the latency of the network. Local reads are fast
+     * enough to be done by the writing thread.
+     *
+     * @return if this FileSystem is remote.
+     */
+    protected boolean isRemote() {
+        return true;
+    }
+
+    /**
+     * Check if {@link #setLastModifiedTime(Path, long)} is supported.
+     *
+     * A {@link CopyMode#SYNC} copy sets the modification time of each file it transfers to that of the source, so a file is only considered up to date if
+     * its modification time is equal to that of the source. Otherwise a file is considered up to date if it is not older than the source.
+     *
+     * By default this returns <code>false</code>. Adaptors that override {@link #setLastModifiedTime(Path, long)} should also override this method.
+     *
+     * @return if the modification time of a file can be set.
+     */
+    protected boolean canSetLastModifiedTime() {
+        return false;
+    }
+
+    /**
+     * Get the resolution of the modification times reported by this FileSystem.
+     *
+     * @return the resolution in milliseconds.
+     */
+    protected long getTimestampResolution() {
+        return 1000;
+    }
+
+    private String getNextCopyID() {
+        return "COPY-" + getAdaptorName() + "-" + nextCopyID.getAndIncrement();
     }
 
     /**
@@ -534,8 +868,27 @@ public abstract class FileSystem implements AutoCloseable {
      *             If the FileSystem failed to close or if an I/O error occurred.
      */
     public void close() throws XenonException {
+
+        for (Watch w : new ArrayList<>(watches)) {
+            w.close();
+        }
+
         try {
             pool.shutdownNow();
+
+            if (transferPool != null) {
+                transferPool.shutdownNow();
+            }
+
+            readerPool.shutdownNow();
+
+            if (deletePool != null) {
+                deletePool.shutdownNow();
+            }
+
+            if (listPool != null) {
+                listPool.shutdownNow();
+            }
         } catch (Exception e) {
             throw new XenonException(getAdaptorName(), "Failed to cleanly shutdown copy thread pool");
         }
@@ -607,7 +960,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         Path parent = absolute.getParent();
 
-        if (parent != null && !exists(parent)) {
+        if (parent != null && !checkExists(parent)) {
             // Recursive call
             createDirectories(parent);
         }
@@ -712,23 +1065,153 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertPathExists(absPath);
 
-        if (getAttributes(absPath).isDirectory()) {
-
-            Iterable<PathAttributes> itt = list(absPath, false);
-
-            if (recursive) {
-                for (PathAttributes p : itt) {
-                    delete(p.getPath(), true);
+        try {
+            if (!checkAttributes(absPath).isDirectory()) {
+                deleteFile(absPath);
+            } else if (recursive) {
+                if (deletePool == null) {
+                    deleteTree(absPath);
+                } else {
+                    new TreeDelete().run(absPath);
                 }
             } else {
-                if (itt.iterator().hasNext()) {
+                if (list(absPath, false).iterator().hasNext()) {
                     throw new DirectoryNotEmptyException(getAdaptorName(), "Directory not empty: " + absPath.toString());
                 }
+
+                deleteDirectory(absPath);
             }
+        } finally {
+            // Also after a failure, as part of the tree may have been deleted.
+            invalidateAttributes(absPath);
+        }
+    }
 
-            deleteDirectory(absPath);
-        } else {
-            deleteFile(absPath);
+    private static boolean isTraversableDirectory(PathAttributes attributes) {
+        return attributes.isDirectory() && !attributes.isSymbolicLink();
+    }
+
+    /**
+     * Delete a directory and its content. The attributes returned by the listing are used to decide how to delete each entry, so no entry is checked twice.
+     */
+    private void deleteTree(Path dir) throws XenonException {
+
+        for (PathAttributes p : listDirectory(dir)) {
+            if (isDotDot(p.getPath())) {
+                continue;
+            }
+
+            if (isTraversableDirectory(p)) {
+                deleteTree(p.getPath());
+            } else {
+                deleteFile(p.getPath());
+            }
+        }
+
+        deleteDirectory(dir);
+    }
+
+    /**
+     * Deletes a directory tree using the delete workers.
+     *
+     * Every directory is listed once by a worker, which deletes the files it contains and hands each subdirectory to another worker. Each directory counts
+     * its unfinished children, and is removed by the worker that finishes the last one, so the tree is removed bottom-up. The first failure stops the
+     * delete.
+     */
+    private class TreeDelete {
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private class Node {
+
+            private final Path dir;
+            private final Node parent;
+
+            // The listing of this directory plus the subdirectories that have not been removed yet.
+            private final AtomicInteger pending = new AtomicInteger(1);
+
+            private Node(Path dir, Node parent) {
+                this.dir = dir;
+                this.parent = parent;
+            }
+        }
+
+        private void run(Path dir) throws XenonException {
+
+            submit(new Node(dir, null));
+
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                done.completeExceptionally(e);
+                throw new XenonException(getAdaptorName(), "Delete interrupted: " + dir, e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof XenonException) {
+                    throw (XenonException) cause;
+                }
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+
+                throw new XenonException(getAdaptorName(), "Failed to delete: " + dir, cause);
+            }
+        }
+
+        private void submit(Node node) {
+            try {
+                deletePool.execute(() -> process(node));
+            } catch (RejectedExecutionException e) {
+                done.completeExceptionally(new NotConnectedException(getAdaptorName(), "File system is closed", e));
+            }
+        }
+
+        private void process(Node node) {
+
+            if (done.isDone()) {
+                return;
+            }
+
+            try {
+                for (PathAttributes p : listDirectory(node.dir)) {
+
+                    if (done.isDone()) {
+                        return;
+                    }
+
+                    if (isDotDot(p.getPath())) {
+                        continue;
+                    }
+
+                    if (isTraversableDirectory(p)) {
+                        node.pending.incrementAndGet();
+                        submit(new Node(p.getPath(), node));
+                    } else {
+                        deleteFile(p.getPath());
+                    }
+                }
+
+                finished(node);
+            } catch (XenonException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        private void finished(Node node) throws XenonException {
+
+            Node current = node;
+
+            while (current != null && current.pending.decrementAndGet() == 0) {
+                deleteDirectory(current.dir);
+                current = current.parent;
+            }
+
+            if (current == null) {
+                done.complete(null);
+            }
         }
     }
 
@@ -757,12 +1240,25 @@ public abstract class FileSystem implements AutoCloseable {
      *
      * Symbolic links are not followed.
      *
+     * A recursive listing is evaluated lazily. At most <code>dir</code> itself is listed before this method returns, each subdirectory is listed when the
+     * iteration reaches it, and a directory is returned before its content. Iterating over the result again lists the subdirectories again. As an
+     * {@link Iterator} cannot throw a {@link XenonException}, errors that occur while listing a subdirectory are thrown as a {@link XenonRuntimeException}
+     * with the XenonException as cause.
+     *
+     * The iterator of a recursive listing is a {@link CloseableIterator}, as some adaptors keep a directory handle open on the server for every directory
+     * that is being listed. The handles are released when the iteration reaches the end or fails with an exception thrown by the iterator, but callers that
+     * stop before the end must close the iterator.
+     *
+     * If the adaptor allows more than one concurrent directory read (the <code>list.parallelism</code> property), several subdirectories are read at once
+     * and their entries are returned in the order in which the reads complete.
+     *
      * @param dir
      *            the target directory.
      * @param recursive
      *            should the list recursively traverse the subdirectories ?
      *
-     * @return a {@link List} of {@link PathAttributes} that iterates over all entries in the directory <code>dir</code>.
+     * @return a {@link List} of {@link PathAttributes} that iterates over all entries in the directory <code>dir</code>, or a lazily evaluated
+     *         {@link Iterable} if <code>recursive</code> is set.
      *
      * @throws NoSuchPathException
      *             If a directory does not exists.
@@ -779,45 +1275,539 @@ public abstract class FileSystem implements AutoCloseable {
 
         Path absolute = toAbsolutePath(dir);
 
-        assertDirectoryExists(dir);
+        assertDirectoryExists(absolute);
+
+        if (recursive) {
+            return new RecursiveListing(absolute, listDirectoryIterator(absolute));
+        }
 
         ArrayList<PathAttributes> result = new ArrayList<>();
-        list(absolute, result, recursive);
+        list(absolute, result, false);
+        cacheAttributes(result);
         return result;
     }
 
     /**
-     * Open an existing file and return an {@link InputStream} to read from this file.
-     *
-     * @param file
-     *            the to read.
-     *
-     * @return the {@link InputStream} to read from the file.
-     *
-     * @throws NoSuchPathException
-     *             If the file does not exists.
-     * @throws InvalidPathException
-     *             If the file is not regular file.
-     * @throws NotConnectedException
-     *             If file system is closed.
-     * @throws XenonException
-     *             if an I/O error occurred.
-     * @throws IllegalArgumentException
-     *             If path is null.
+     * A recursive listing that fetches one directory at a time. The listing of the root directory is started in advance, so errors in starting that listing
+     * are reported by {@link FileSystem#list(Path, boolean)} itself.
      */
-    public abstract InputStream readFromFile(Path file) throws XenonException;
+    private class RecursiveListing implements Iterable<PathAttributes> {
 
-    /**
-     * Open a file and return an {@link OutputStream} to write to this file.
-     * <p>
-     *
-     * The size of the file (once all data has been written) must be specified using the <code>size</code> parameter. This is required by some implementations
-     * (typically blob-stores).
-     *
-     * </p>
-     *
-     * @param path
-     *            the target file for the OutputStream.
+        private final Path dir;
+        private Iterator<PathAttributes> first;
+
+        private RecursiveListing(Path dir, Iterator<PathAttributes> first) {
+            this.dir = dir;
+            this.first = first;
+        }
+
+        @Override
+        public synchronized CloseableIterator<PathAttributes> iterator() {
+
+            Iterator<PathAttributes> root = first;
+            first = null;
+
+            if (root == null) {
+                root = listDirectoryUnchecked(dir);
+            }
+
+            CloseableIterator<PathAttributes> result;
+
+            if (listPool != null) {
+                result = new ParallelListIterator(root);
+            } else {
+                result = new RecursiveListIterator(FileSystem.this::listDirectoryUnchecked, root);
+            }
+
+            if (attributeCache == null) {
+                return result;
+            }
+
+            return new CloseableIterator<PathAttributes>() {
+                @Override
+                public boolean hasNext() {
+                    return result.hasNext();
+                }
+
+                @Override
+                public PathAttributes next() {
+                    PathAttributes p = result.next();
+                    attributeCache.put(p.getPath(), p);
+                    return p;
+                }
+
+                @Override
+                public void close() {
+                    result.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * A recursive listing that keeps up to <code>listParallelism</code> directory reads in flight.
+     *
+     * Entries are returned in the order in which the directory reads complete, but a directory is always returned before its content. A subdirectory is
+     * submitted for reading when the iteration reaches it, so the listing never runs more than <code>listParallelism</code> directories ahead of the consumer,
+     * and an abandoned iteration leaves no work behind.
+     */
+    private class ParallelListIterator implements CloseableIterator<PathAttributes> {
+
+        private final CompletionService<List<PathAttributes>> completion = new ExecutorCompletionService<>(listPool);
+        private final ArrayDeque<Path> directories = new ArrayDeque<>();
+
+        private Iterator<PathAttributes> batch;
+        private PathAttributes next;
+        private int inFlight = 0;
+
+        private ParallelListIterator(Iterator<PathAttributes> first) {
+            this.batch = first;
+        }
+
+        private List<PathAttributes> read(Path dir) {
+
+            ArrayList<PathAttributes> result = new ArrayList<>();
+
+            try {
+                for (PathAttributes p : listDirectory(dir)) {
+                    result.add(p);
+                }
+            } catch (XenonException e) {
+                throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory " + dir, e);
+            }
+
+            return result;
+        }
+
+        private void submit() {
+            while (inFlight < listParallelism && !directories.isEmpty()) {
+                Path dir = directories.poll();
+
+                try {
+                    completion.submit(() -> read(dir));
+                } catch (RejectedExecutionException e) {
+                    throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory " + dir,
+                            new NotConnectedException(getAdaptorName(), "File system is closed", e));
+                }
+
+                inFlight++;
+            }
+        }
+
+        private Iterator<PathAttributes> take() {
+            try {
+                Future<List<PathAttributes>> result = completion.take();
+                inFlight--;
+                return result.get().iterator();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XenonRuntimeException(getAdaptorName(), "Listing interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof XenonRuntimeException) {
+                    throw (XenonRuntimeException) e.getCause();
+                }
+                throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory", e.getCause());
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while (next == null) {
+                if (batch.hasNext()) {
+                    PathAttributes p = batch.next();
+
+                    if (!isDotDot(p.getPath())) {
+                        if (p.isDirectory() && !p.isSymbolicLink()) {
+                            directories.add(p.getPath());
+                            submit();
+                        }
+
+                        next = p;
+                    }
+                } else {
+                    submit();
+
+                    if (inFlight == 0) {
+                        return false;
+                    }
+
+                    batch = take();
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public PathAttributes next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more entries");
+            }
+
+            PathAttributes result = next;
+            next = null;
+            return result;
+        }
+
+        /**
+         * Closes the directory that is being returned. The reads in flight fetch the complete listing of their directory, so they do not hold any resources
+         * once they finish.
+         */
+        @Override
+        public void close() {
+            CloseableIterator.closeIfNeeded(batch);
+            batch = Collections.emptyIterator();
+            directories.clear();
+            next = null;
+            inFlight = 0;
+        }
+    }
+
+    private Iterator<PathAttributes> listDirectoryUnchecked(Path dir) {
+        try {
+            return listDirectoryIterator(dir);
+        } catch (XenonException e) {
+            throw new XenonRuntimeException(getAdaptorName(), "Failed to list directory " + dir, e);
+        }
+    }
+
+    /**
+     * List the entries below the directory <code>dir</code> that match the given options.
+     *
+     * The subdirectories are traversed up to the maximum depth of the options, and only the entries that match all filters are returned. Symbolic links are
+     * not followed. Where possible, the filters are evaluated by the server, so entries that do not match are not transferred. The remaining filters are
+     * applied while the listing is received.
+     *
+     * @param dir
+     *            the target directory.
+     * @param options
+     *            the filters to apply.
+     *
+     * @return an {@link Iterable} over the matching entries.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path or options is null.
+     */
+    public Iterable<PathAttributes> list(Path dir, ListOptions options) throws XenonException {
+
+        if (options == null) {
+            throw new IllegalArgumentException("Options may not be null");
+        }
+
+        Path absolute = toAbsolutePath(dir);
+
+        assertDirectoryExists(absolute);
+
+        ArrayList<PathAttributes> result = new ArrayList<>();
+        list(absolute, options, result);
+        cacheAttributes(result);
+        return result;
+    }
+
+    /**
+     * List all entries below the directory <code>dir</code>, using a manifest of an earlier listing to skip the directories that have not changed.
+     *
+     * The modification time of every directory in the tree is compared to the manifest. Directories that have not changed are answered from the manifest,
+     * which only requires their attributes, and which are already known for directories whose parent was listed. The other directories are listed, and the
+     * manifest is updated with their entries. Directories that no longer exist are removed from the manifest.
+     *
+     * Entries that are answered from the manifest only contain their type, size and modification time. Changes that do not alter the modification time of
+     * their directory, such as a file being modified in place, are only seen once that directory is listed again.
+     *
+     * @param dir
+     *            the target directory.
+     * @param manifest
+     *            the manifest of an earlier listing, which may be empty.
+     *
+     * @return the entries below the directory.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path or manifest is null.
+     */
+    public Iterable<PathAttributes> list(Path dir, Manifest manifest) throws XenonException {
+
+        if (manifest == null) {
+            throw new IllegalArgumentException("Manifest may not be null");
+        }
+
+        Path absolute = toAbsolutePath(dir);
+
+        PathAttributes attributes = getAttributes(absolute);
+
+        if (!attributes.isDirectory()) {
+            throw new InvalidPathException(getAdaptorName(), "Was expecting a directory: " + absolute);
+        }
+
+        long started = System.currentTimeMillis();
+
+        ArrayList<PathAttributes> result = new ArrayList<>();
+        HashSet<Path> visited = new HashSet<>();
+
+        // The modification times of the directories whose parent was listed, so they do not have to be retrieved separately.
+        HashMap<Path, Long> known = new HashMap<>();
+        known.put(absolute, attributes.getLastModifiedTime());
+
+        ArrayDeque<Path> pending = new ArrayDeque<>();
+        pending.push(absolute);
+
+        while (!pending.isEmpty()) {
+            Path current = pending.pop();
+
+            try {
+                Long modified = known.remove(current);
+
+                if (modified == null) {
+                    modified = getAttributes(current).getLastModifiedTime();
+                }
+
+                List<PathAttributes> entries = manifest.lookup(current, modified, getTimestampResolution());
+                boolean listed = entries == null;
+
+                if (listed) {
+                    entries = new ArrayList<>();
+
+                    for (PathAttributes p : listDirectory(current)) {
+                        if (!isDotDot(p.getPath())) {
+                            entries.add(p);
+                        }
+                    }
+
+                    manifest.update(current, modified, started, entries);
+                }
+
+                visited.add(current);
+
+                for (PathAttributes p : entries) {
+                    result.add(p);
+
+                    if (isTraversableDirectory(p)) {
+                        pending.push(p.getPath());
+
+                        if (listed) {
+                            known.put(p.getPath(), p.getLastModifiedTime());
+                        }
+                    }
+                }
+            } catch (NoSuchPathException e) {
+                if (current.equals(absolute)) {
+                    throw e;
+                }
+                // Deleted while we were listing its parent.
+            }
+        }
+
+        manifest.retain(absolute, visited);
+        return result;
+    }
+
+    /**
+     * List the entries in the directory <code>dir</code> in columnar form.
+     *
+     * This returns the same entries as a non-recursive {@link #list(Path, boolean)}, but keeps their names, type, size, modification time and permissions in
+     * a {@link DirectoryBatch} instead of creating a {@link PathAttributes} and {@link Path} for every entry. This is intended for very large directories.
+     * The entries are not added to the attribute cache.
+     *
+     * @param dir
+     *            the target directory.
+     *
+     * @return the entries in the directory.
+     *
+     * @throws NoSuchPathException
+     *             If a directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public DirectoryBatch listBatch(Path dir) throws XenonException {
+
+        Path absolute = toAbsolutePath(dir);
+
+        assertDirectoryExists(absolute);
+
+        DirectoryBatch result = new DirectoryBatch(absolute);
+        listDirectory(absolute, result);
+        return result;
+    }
+
+    /**
+     * Watch the directory <code>dir</code> for changes.
+     *
+     * The returned {@link Watch} reports the paths below the directory that are created, modified or deleted after this method returns. Adaptors that can
+     * be notified of changes by the server use this. Other adaptors periodically compare the listings of the watched directories, which only lists the
+     * directories that have changed. The watch must be closed when it is no longer needed.
+     *
+     * @param dir
+     *            the directory to watch.
+     * @param options
+     *            the options of the watch.
+     *
+     * @return the {@link Watch} that reports the changes.
+     *
+     * @throws NoSuchPathException
+     *             If the directory does not exists.
+     * @throws InvalidPathException
+     *             If <code>dir</code> is not a directory.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path or options is null.
+     */
+    public Watch watch(Path dir, WatchOptions options) throws XenonException {
+
+        if (options == null) {
+            throw new IllegalArgumentException("Options may not be null");
+        }
+
+        Path absolute = toAbsolutePath(dir);
+
+        assertDirectoryExists(absolute);
+
+        Watch result = startWatch(absolute, new WatchOptions(options));
+
+        watches.add(result);
+        result.setOwner(this);
+        return result;
+    }
+
+    /**
+     * Start watching a directory. The default implementation polls the directory using {@link #getAttributes(Path)} and {@link #list(Path, boolean)}.
+     *
+     * Adaptors that can be notified of changes by the server should override this method, and call it to fall back to polling.
+     *
+     * @param dir
+     *            the absolute path of an existing directory.
+     * @param options
+     *            the options of the watch.
+     * @return the {@link Watch} that reports the changes.
+     * @throws XenonException
+     *             If the watch could not be started.
+     */
+    protected Watch startWatch(Path dir, WatchOptions options) throws XenonException {
+        PollingWatch result = new PollingWatch(this, dir, options);
+        result.start();
+        return result;
+    }
+
+    void removeWatch(Watch watch) {
+        watches.remove(watch);
+    }
+
+    /**
+     * Open an existing file and return an {@link InputStream} to read from this file.
+     *
+     * @param file
+     *            the to read.
+     *
+     * @return the {@link InputStream} to read from the file.
+     *
+     * @throws NoSuchPathException
+     *             If the file does not exists.
+     * @throws InvalidPathException
+     *             If the file is not regular file.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public abstract InputStream readFromFile(Path file) throws XenonException;
+
+    /**
+     * Open an existing file and return an {@link InputStream} to read from this file, starting at <code>offset</code>.
+     *
+     * By default the stream returned by {@link #readFromFile(Path)} is skipped to the offset. Adaptors override this method if they can start reading at an
+     * offset directly.
+     *
+     * @param file
+     *            the to read.
+     * @param offset
+     *            the offset in the file at which to start reading.
+     *
+     * @return the {@link InputStream} to read from the file.
+     *
+     * @throws NoSuchPathException
+     *             If the file does not exists.
+     * @throws InvalidPathException
+     *             If the file is not regular file.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred, or the file is shorter than <code>offset</code>.
+     * @throws IllegalArgumentException
+     *             If path is null or the offset is negative.
+     */
+    public InputStream readFromFile(Path file, long offset) throws XenonException {
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset may not be negative");
+        }
+
+        InputStream in = readFromFile(file);
+
+        try {
+            long remaining = offset;
+
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+
+                if (skipped <= 0) {
+                    if (in.read() == -1) {
+                        throw new IOException("Unexpected end of file at offset " + (offset - remaining));
+                    }
+                    skipped = 1;
+                }
+
+                remaining -= skipped;
+            }
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw new XenonException(getAdaptorName(), "Failed to read " + file + " from offset " + offset, e);
+        }
+
+        return in;
+    }
+
+    /**
+     * Open a file and return an {@link OutputStream} to write to this file.
+     * <p>
+     *
+     * The size of the file (once all data has been written) must be specified using the <code>size</code> parameter. This is required by some implementations
+     * (typically blob-stores).
+     *
+     * </p>
+     *
+     * @param path
+     *            the target file for the OutputStream.
      * @param size
      *            the size of the file once fully written.
      *
@@ -958,6 +1948,106 @@ public abstract class FileSystem implements AutoCloseable {
      */
     public abstract void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) throws XenonException;
 
+    /**
+     * Sets the POSIX permissions of a path, and if <code>recursive</code> is set, of all content of the path if it is a directory (optional operation).
+     *
+     * Symbolic links inside the directory are not followed and their permissions are not changed. The content of a directory is changed before the
+     * directory itself, so the directory can still be listed while the permissions are changed.
+     *
+     * @param path
+     *            the target path.
+     * @param permissions
+     *            the permissions to set.
+     * @param recursive
+     *            if the permissions of the content of a directory must also be set.
+     *
+     * @throws NoSuchPathException
+     *             If the target path does not exists.
+     * @throws UnsupportedOperationException
+     *             If this FileSystem does not support permissions.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions, boolean recursive) throws XenonException {
+
+        Path absPath = toAbsolutePath(path);
+
+        if (recursive && getAttributes(absPath).isDirectory()) {
+            setPosixFilePermissionsBelow(absPath, permissions);
+        }
+
+        setPosixFilePermissions(absPath, permissions);
+    }
+
+    /**
+     * Sets the permissions of everything below a directory, using the attributes returned by a recursive listing, so no entry is looked up again. Symbolic
+     * links are skipped.
+     *
+     * The listing returns a directory before its content, so the directories are changed afterwards in reverse order. The content of a directory is then
+     * changed before the directory itself, and every directory can still be listed, even if the new permissions do not allow it.
+     */
+    private void setPosixFilePermissionsBelow(Path dir, Set<PosixFilePermission> permissions) throws XenonException {
+
+        ArrayDeque<Path> directories = new ArrayDeque<>();
+        Iterator<PathAttributes> it = list(dir, true).iterator();
+
+        try {
+            while (it.hasNext()) {
+                PathAttributes p = it.next();
+
+                if (p.isSymbolicLink()) {
+                    continue;
+                }
+
+                if (p.isDirectory()) {
+                    directories.push(p.getPath());
+                } else {
+                    setPosixFilePermissions(p.getPath(), permissions);
+                }
+            }
+        } catch (XenonRuntimeException e) {
+            if (e.getCause() instanceof XenonException) {
+                throw (XenonException) e.getCause();
+            }
+            throw e;
+        } finally {
+            CloseableIterator.closeIfNeeded(it);
+        }
+
+        while (!directories.isEmpty()) {
+            setPosixFilePermissions(directories.pop(), permissions);
+        }
+    }
+
+    /**
+     * Sets the last modification time of a path (optional operation).
+     *
+     * Not all filesystems store the modification time with millisecond precision. The time set may therefore be rounded down.
+     *
+     * @param path
+     *            the target path.
+     * @param time
+     *            the modification time to set, in milliseconds since the epoch.
+     *
+     * @throws NoSuchPathException
+     *             If the target path does not exists.
+     * @throws UnsupportedOperationException
+     *             If this FileSystem does not support setting the modification time.
+     * @throws NotConnectedException
+     *             If file system is closed.
+     * @throws XenonException
+     *             if an I/O error occurred.
+     * @throws IllegalArgumentException
+     *             If path is null.
+     */
+    public void setLastModifiedTime(Path path, long time) throws XenonException {
+        throw new UnsupportedOperationException(getAdaptorName(), "Setting the modification time is not supported");
+    }
+
     /**
      * Convert the provided path to an absolute path by (if necessary) resolving a relative path against the working directory of this FileSystem. The resulting
      * path is also normalized.
@@ -1000,26 +2090,207 @@ public abstract class FileSystem implements AutoCloseable {
      */
     protected void streamCopy(InputStream in, OutputStream out, int buffersize, CopyCallback callback) throws IOException, CopyCancelledException {
 
-        byte[] buffer = new byte[buffersize];
+        byte[] buffer = BufferPool.getShared().acquire(buffersize);
 
-        int size = in.read(buffer);
+        try {
+            int size = in.read(buffer, 0, buffersize);
 
-        while (size > 0) {
-            out.write(buffer, 0, size);
+            while (size > 0) {
+                out.write(buffer, 0, size);
 
-            callback.addBytesCopied(size);
+                callback.addBytesCopied(size);
 
-            if (callback.isCancelled()) {
-                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
+
+                size = in.read(buffer, 0, buffersize);
             }
+        } finally {
+            BufferPool.getShared().release(buffer);
+        }
+
+        // Flush the output to ensure all data is written when this method returns.
+        out.flush();
+    }
 
-            size = in.read(buffer);
+    /**
+     * A buffer filled by the reader of an overlapped stream copy, the end of the stream, or the error that stopped the reader.
+     */
+    private static class Chunk {
+
+        static final Chunk END = new Chunk(null, 0, null);
+
+        final byte[] data;
+        final int length;
+        final IOException error;
+
+        Chunk(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Copy data from <code>in</code> to <code>out</code> like {@link #streamCopy(InputStream, OutputStream, int, CopyCallback)}, but read from
+     * <code>in</code> on a separate thread, so reading from the source and writing to the destination overlap.
+     *
+     * The reader fills a ring of at most {@link #COPY_RING_SIZE} buffers that is drained by the calling thread. When the ring is full the reader waits for the
+     * writer to catch up. If the copy fails or is cancelled, <code>in</code> is closed to unblock the reader, and this method only returns once the reader
+     * has stopped and all buffers have been returned to the pool.
+     *
+     * @param in
+     *            the stream to copy the data from.
+     * @param out
+     *            the stream to copy the data to.
+     * @param buffersize
+     *            the buffer size to use for copying.
+     * @param callback
+     *            the callback to report bytes copied to and check cancellation from.
+     * @throws IOException
+     *             if an I/O exception occurred.
+     * @throws CopyCancelledException
+     *             if the copy was cancelled by the user.
+     */
+    protected void overlappedStreamCopy(InputStream in, OutputStream out, int buffersize, CopyCallback callback) throws IOException, CopyCancelledException {
+
+        ArrayBlockingQueue<Chunk> ring = new ArrayBlockingQueue<>(COPY_RING_SIZE);
+        CountDownLatch readerDone = new CountDownLatch(1);
+
+        Future<?> reader = readerPool.submit(() -> {
+            try {
+                readChunks(in, buffersize, ring);
+            } finally {
+                readerDone.countDown();
+            }
+        });
+
+        boolean completed = false;
+
+        try {
+            Chunk chunk = ring.take();
+
+            while (chunk != Chunk.END) {
+
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+
+                try {
+                    out.write(chunk.data, 0, chunk.length);
+                } finally {
+                    BufferPool.getShared().release(chunk.data);
+                }
+
+                callback.addBytesCopied(chunk.length);
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
+
+                chunk = ring.take();
+            }
+
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
+        } finally {
+            if (!completed) {
+                stopReader(in, reader, readerDone);
+            }
+
+            // Return the buffers the writer did not get to.
+            for (Chunk c = ring.poll(); c != null; c = ring.poll()) {
+                BufferPool.getShared().release(c.data);
+            }
         }
 
         // Flush the output to ensure all data is written when this method returns.
         out.flush();
     }
 
+    /**
+     * Stop the reader of an overlapped stream copy that was abandoned by the writer, and wait until it has stopped. A read may not respond to the interrupt,
+     * so <code>in</code> is closed as well.
+     */
+    private static void stopReader(InputStream in, Future<?> reader, CountDownLatch readerDone) {
+
+        reader.cancel(true);
+
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignored, the copy already failed.
+        }
+
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                readerDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void readChunks(InputStream in, int buffersize, BlockingQueue<Chunk> ring) {
+        try {
+            while (true) {
+                byte[] buffer = BufferPool.getShared().acquire(buffersize);
+                int size;
+
+                try {
+                    size = in.read(buffer, 0, buffersize);
+                } catch (IOException e) {
+                    BufferPool.getShared().release(buffer);
+                    ring.put(new Chunk(null, 0, e));
+                    return;
+                } catch (RuntimeException e) {
+                    // The writer must always be woken up, or it would wait forever.
+                    BufferPool.getShared().release(buffer);
+                    ring.put(new Chunk(null, 0, new IOException("Read failed", e)));
+                    return;
+                }
+
+                if (size <= 0) {
+                    BufferPool.getShared().release(buffer);
+                    ring.put(Chunk.END);
+                    return;
+                }
+
+                try {
+                    ring.put(new Chunk(buffer, size, null));
+                } catch (InterruptedException e) {
+                    BufferPool.getShared().release(buffer);
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The writer gave up on the copy.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copy <code>size</code> bytes from <code>in</code> to <code>out</code>. If this FileSystem is remote, data that does not fit in a single buffer is copied
+     * with overlapping reads and writes.
+     */
+    private void copyData(InputStream in, OutputStream out, long size, CopyCallback callback) throws IOException, CopyCancelledException {
+        if (size > bufferSize && isRemote()) {
+            overlappedStreamCopy(in, out, bufferSize, callback);
+        } else {
+            streamCopy(in, out, bufferSize, callback);
+        }
+    }
+
     /**
      * Copy a symbolic link to another file system (optional operation).
      *
@@ -1054,7 +2325,7 @@ public abstract class FileSystem implements AutoCloseable {
      */
     protected void copySymbolicLink(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
 
-        PathAttributes attributes = getAttributes(source);
+        PathAttributes attributes = checkAttributes(source);
 
         if (!attributes.isSymbolicLink()) {
             throw new InvalidPathException(getAdaptorName(), "Source is not a regular file: " + source);
@@ -1062,12 +2333,20 @@ public abstract class FileSystem implements AutoCloseable {
 
         destinationFS.assertParentDirectoryExists(destination);
 
-        if (destinationFS.exists(destination)) {
+        if (destinationFS.checkExists(destination)) {
             switch (mode) {
             case CREATE:
                 throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
             case IGNORE:
+            case RESUME:
                 return;
+            case SYNC:
+                if (destinationFS.getAttributes(destination).isSymbolicLink()
+                        && destinationFS.readSymbolicLink(destination).equals(readSymbolicLink(source))) {
+                    return;
+                }
+                destinationFS.delete(destination, true);
+                break;
             case REPLACE:
                 // continue
                 break;
@@ -1107,7 +2386,7 @@ public abstract class FileSystem implements AutoCloseable {
      */
     protected void copyFile(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
 
-        PathAttributes attributes = getAttributes(source);
+        PathAttributes attributes = checkAttributes(source);
 
         if (!attributes.isRegular()) {
             throw new InvalidPathException(getAdaptorName(), "Source is not a regular file: " + source);
@@ -1115,12 +2394,26 @@ public abstract class FileSystem implements AutoCloseable {
 
         destinationFS.assertParentDirectoryExists(destination);
 
-        if (destinationFS.exists(destination)) {
+        if (destinationFS.checkExists(destination)) {
             switch (mode) {
             case CREATE:
                 throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
             case IGNORE:
                 return;
+            case SYNC:
+                if (isUpToDate(attributes, destinationFS, destinationFS.getAttributes(destination))) {
+                    return;
+                }
+                destinationFS.delete(destination, true);
+                break;
+            case RESUME:
+                PathAttributes target = destinationFS.getAttributes(destination);
+                if (target.isRegular()) {
+                    resumeFile(source, attributes, destinationFS, destination, target.getSize(), callback);
+                    return;
+                }
+                destinationFS.delete(destination, true);
+                break;
             case REPLACE:
                 destinationFS.delete(destination, true);
                 // continue
@@ -1132,12 +2425,192 @@ public abstract class FileSystem implements AutoCloseable {
             throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
         }
 
-        try (InputStream in = readFromFile(source); OutputStream out = destinationFS.writeToFile(destination, attributes.getSize())) {
-            streamCopy(in, out, bufferSize, callback);
+        if (copyOnServer(source, attributes, destinationFS, destination, callback)) {
+            destinationFS.invalidateAttributes(destinationFS.toAbsolutePath(destination));
+        } else {
+            copyFileContent(source, attributes, destinationFS, destination, callback);
+        }
+
+        if (mode == CopyMode.SYNC) {
+            try {
+                destinationFS.setLastModifiedTime(destination, attributes.getLastModifiedTime());
+            } catch (UnsupportedOperationException e) {
+                // The destination now simply is newer than the source, which is also considered up to date.
+            }
+        }
+    }
+
+    /**
+     * Resume copying the regular file <code>source</code> to <code>destination</code>, which already contains the first <code>offset</code> bytes.
+     *
+     * The last {@link #RESUME_CHECK_SIZE} bytes of the existing destination are first compared to the source, so a destination with a corrupted tail is
+     * rejected. The remaining data is then appended to the destination. If the destination filesystem cannot append to files, the file is copied again
+     * completely.
+     */
+    private void resumeFile(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, long offset, CopyCallback callback)
+            throws XenonException {
+
+        if (offset > attributes.getSize()) {
+            throw new InvalidResumeTargetException(getAdaptorName(), "Resume target " + destination + " is larger than source " + source);
+        }
+
+        long checkOffset = Math.max(0, offset - RESUME_CHECK_SIZE);
+
+        if (checksum(this, source, checkOffset, offset) != checksum(destinationFS, destination, checkOffset, offset)) {
+            throw new InvalidResumeTargetException(getAdaptorName(), "Data in resume target " + destination + " does not match source " + source);
+        }
+
+        if (offset == attributes.getSize()) {
+            callback.addBytesCopied(offset);
+            return;
+        }
+
+        if (callback.isCancelled()) {
+            throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+        }
+
+        OutputStream out;
+
+        try {
+            out = destinationFS.appendToFile(destination);
+        } catch (UnsupportedOperationException e) {
+            destinationFS.delete(destination, false);
+            copyFileContent(source, attributes, destinationFS, destination, callback);
+            return;
+        }
+
+        callback.addBytesCopied(offset);
+
+        try (InputStream in = new ReconnectingInputStream(pos -> readFromFile(source, pos), offset, READ_RETRIES); OutputStream o = out) {
+            copyData(in, o, attributes.getSize() - offset, callback);
+        } catch (Exception e) {
+            throw new XenonException(getAdaptorName(), "Stream copy failed", e);
+        }
+    }
+
+    /**
+     * Compute the CRC32 checksum of the bytes from <code>start</code> up to <code>end</code> in <code>file</code> on <code>fs</code>.
+     */
+    private long checksum(FileSystem fs, Path file, long start, long end) throws XenonException {
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = BufferPool.getShared().acquire((int) Math.min(bufferSize, Math.max(1, end - start)));
+        long remaining = end - start;
+
+        try (InputStream in = fs.readFromFile(file, start)) {
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+                if (n == -1) {
+                    throw new InvalidResumeTargetException(getAdaptorName(), "Unexpected end of file while checking " + file);
+                }
+
+                crc.update(buffer, 0, n);
+                remaining -= n;
+            }
+        } catch (IOException e) {
+            throw new XenonException(getAdaptorName(), "Failed to read " + file, e);
+        } finally {
+            BufferPool.getShared().release(buffer);
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Check if <code>destination</code> on <code>destinationFS</code> is an up to date copy of the regular file <code>source</code> for
+     * {@link CopyMode#SYNC}.
+     *
+     * The destination is up to date if it is a regular file of the same size and the same modification time as the source. If the destination cannot take
+     * over the modification time of the source, it is up to date if it is not older than the source. Modification times are compared with the coarsest
+     * resolution of both filesystems.
+     */
+    private boolean isUpToDate(PathAttributes source, FileSystem destinationFS, PathAttributes destination) {
+
+        if (!destination.isRegular() || source.getSize() != destination.getSize()) {
+            return false;
+        }
+
+        long resolution = Math.max(getTimestampResolution(), destinationFS.getTimestampResolution());
+        long sourceTime = source.getLastModifiedTime() / resolution;
+        long destinationTime = destination.getLastModifiedTime() / resolution;
+
+        if (destinationFS.canSetLastModifiedTime()) {
+            return sourceTime == destinationTime;
+        }
+
+        return sourceTime <= destinationTime;
+    }
+
+    /**
+     * Copy the content of the regular file <code>source</code> to the new file <code>destination</code> on <code>destinationFS</code>.
+     *
+     * This is called by {@link #copyFile(Path, FileSystem, Path, CopyMode, CopyCallback)} once the destination has been checked according to the copy mode.
+     * By default the data is copied using {@link #readFromFile(Path)} and {@link #writeToFile(Path, long)}. Adaptors may override this method to use a
+     * faster mechanism when available, as long as the progress is reported to <code>callback</code>.
+     *
+     * @param source
+     *            the source file
+     * @param attributes
+     *            the attributes of the source file
+     * @param destinationFS
+     *            the destination filesystem
+     * @param destination
+     *            the destination file
+     * @param callback
+     *            the callback used to report progress and check for cancellation
+     * @throws XenonException
+     *             If the copy failed
+     */
+    protected void copyFileContent(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+
+        try (InputStream in = new ReconnectingInputStream(pos -> readFromFile(source, pos), 0, READ_RETRIES);
+                OutputStream out = destinationFS.writeToFile(destination, attributes.getSize())) {
+            copyData(in, out, attributes.getSize(), callback);
         } catch (Exception e) {
             throw new XenonException(getAdaptorName(), "Stream copy failed", e);
         }
+    }
+
+    /**
+     * Copy a regular file or a directory to <code>destination</code> without transferring the data through this client (optional operation).
+     *
+     * This operation may be re-implemented by the various implementations of FileSystem to let the server copy the data when the destination is on the same
+     * server, see {@link #isSameEndpoint(FileSystem)}. When <code>source</code> is a directory, its entire content must be copied. This default
+     * implementation returns <code>false</code>, after which the data is copied using
+     * {@link #copyFileContent(Path, PathAttributes, FileSystem, Path, CopyCallback)}, or a recursive copy for directories.
+     *
+     * @param source
+     *            the file or directory to copy.
+     * @param attributes
+     *            the attributes of <code>source</code>.
+     * @param destinationFS
+     *            the destination {@link FileSystem} to copy to.
+     * @param destination
+     *            the destination path on the destination file system, which does not exist yet.
+     * @param callback
+     *            a {@link CopyCallback} used to update the status of the copy, or cancel it while in progress.
+     * @return if the data was copied by the server. If <code>false</code>, the destination has not been created.
+     * @throws XenonException
+     *             If the server failed to copy the data.
+     */
+    protected boolean copyOnServer(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+            throws XenonException {
+        return false;
+    }
 
+    /**
+     * Check if <code>other</code> is connected to the same server as this FileSystem, that is, if it was created by the same adaptor for the same location
+     * using the same credential.
+     *
+     * @param other
+     *            the FileSystem to compare to.
+     * @return if <code>other</code> is connected to the same server.
+     */
+    protected boolean isSameEndpoint(FileSystem other) {
+        return other == this || (getAdaptorName().equals(other.getAdaptorName()) && getLocation().equals(other.getLocation())
+                && getCredential().equals(other.getCredential()));
     }
 
     /**
@@ -1169,7 +2642,9 @@ public abstract class FileSystem implements AutoCloseable {
 
         // if (attributes.isRegular() || attributes.isSymbolicLink()) {
         if (attributes.isRegular()) {
+            callback.start(attributes.getSize(), 1);
             copyFile(source, destinationFS, destination, mode, callback);
+            callback.fileCopied();
             return;
         }
 
@@ -1189,81 +2664,358 @@ public abstract class FileSystem implements AutoCloseable {
         // From here on we know the source is a directory. We should also check the destination type.
         if (destinationFS.exists(destination)) {
 
-            switch (mode) {
-            case CREATE:
-                throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
-            case IGNORE:
+            switch (mode) {
+            case CREATE:
+                throw new PathAlreadyExistsException(getAdaptorName(), "Destination path already exists: " + destination);
+            case IGNORE:
+                return;
+            case REPLACE:
+            case SYNC:
+            case RESUME:
+                // continue
+                break;
+            }
+
+            attributes = destinationFS.getAttributes(destination);
+
+            if (attributes.isRegular() || attributes.isSymbolicLink()) {
+                destinationFS.delete(destination, false);
+                destinationFS.createDirectory(destination);
+            } else if (!attributes.isDirectory()) {
+                throw new InvalidPathException(getAdaptorName(), "Existing destination is not a file, link or directory: " + source);
+            }
+        } else {
+            destinationFS.assertParentDirectoryExists(destination);
+
+            if (copyOnServer(source, attributes, destinationFS, destination, callback)) {
+                destinationFS.invalidateAttributes(destinationFS.toAbsolutePath(destination));
+                return;
+            }
+
+            destinationFS.createDirectory(destination);
+        }
+
+        // We are now sure the target directory exists.
+        copyRecursive(source, destinationFS, destination, mode, callback);
+    }
+
+    private void copyRecursive(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
+
+        if (pipelinedCopy) {
+            copyRecursivePipelined(source, destinationFS, destination, mode, callback);
+            return;
+        }
+
+        long bytesToCopy = 0;
+        long filesToCopy = 0;
+
+        // The listing is traversed twice, so retrieve it once instead of using the lazy recursive listing.
+        ArrayList<PathAttributes> listing = new ArrayList<>();
+        list(source, listing, true);
+        HashMap<Path, PathAttributes> existing = mode == CopyMode.SYNC ? listExisting(destinationFS, destination, destination, true) : null;
+
+        // Create the directories parents first, so the listing order does not matter. The content of directories that are skipped is not copied.
+        ArrayList<Path> directories = new ArrayList<>();
+
+        for (PathAttributes p : listing) {
+            if (p.isDirectory() && !isDotDot(p.getPath())) {
+                directories.add(source.relativize(p.getPath()));
+            }
+        }
+
+        directories.sort((a, b) -> Integer.compare(a.getNameCount(), b.getNameCount()));
+
+        HashSet<Path> skipped = new HashSet<>();
+
+        for (Path rel : directories) {
+
+            if (callback.isCancelled()) {
+                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+            }
+
+            if (skipped.contains(rel.getParent()) || !createDestinationDirectory(destinationFS, destination.resolve(rel), mode)) {
+                skipped.add(rel);
+            }
+        }
+
+        for (PathAttributes p : listing) {
+
+            if (p.isRegular()) {
+                Path rel = source.relativize(p.getPath());
+
+                if (!skipped.contains(rel.getParent()) && needsTransfer(p, rel, destinationFS, existing)) {
+                    bytesToCopy += p.getSize();
+                    filesToCopy++;
+                }
+            }
+        }
+
+        callback.start(bytesToCopy, filesToCopy);
+
+        TransferQueue transfers = new TransferQueue(destinationFS, mode, callback);
+
+        try {
+            for (PathAttributes p : listing) {
+
+                if (callback.isCancelled()) {
+                    throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                }
+
+                if (p.isRegular()) {
+
+                    Path rel = source.relativize(p.getPath());
+
+                    if (!skipped.contains(rel.getParent()) && needsTransfer(p, rel, destinationFS, existing)) {
+                        transfers.transfer(p.getPath(), destination.resolve(rel));
+                    }
+                }
+            }
+
+            transfers.finish();
+        } finally {
+            transfers.abort();
+        }
+    }
+
+    /**
+     * Copy the content of directory <code>source</code> to <code>destination</code> while the source directories are being listed.
+     *
+     * The source tree is listed one directory at a time. Files are handed to the transfers as soon as the directory containing them has been listed, so the
+     * first transfer starts after a single directory listing. As a result, the number of bytes to copy reported by the callback is a running estimate that
+     * grows until the entire tree has been listed.
+     */
+    private void copyRecursivePipelined(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback)
+            throws XenonException {
+
+        callback.start(0, 0);
+
+        ArrayDeque<Path> directories = new ArrayDeque<>();
+        directories.push(source);
+
+        TransferQueue transfers = new TransferQueue(destinationFS, mode, callback);
+
+        try {
+            while (!directories.isEmpty()) {
+
+                Path dir = directories.pop();
+
+                HashMap<Path, PathAttributes> existing = null;
+
+                if (mode == CopyMode.SYNC) {
+                    existing = listExisting(destinationFS, destination.resolve(source.relativize(dir)), destination, false);
+                }
+
+                for (PathAttributes p : listDirectory(dir)) {
+
+                    if (callback.isCancelled()) {
+                        throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                    }
+
+                    if (isDotDot(p.getPath())) {
+                        continue;
+                    }
+
+                    Path src = dir.resolve(p.getPath().getFileNameAsString());
+                    Path dst = destination.resolve(source.relativize(src));
+
+                    if (p.isDirectory()) {
+                        if (createDestinationDirectory(destinationFS, dst, mode)) {
+                            directories.push(src);
+                        }
+                    } else if (p.isRegular() && needsTransfer(p, source.relativize(src), destinationFS, existing)) {
+                        callback.addFileToCopy(p.getSize());
+                        transfers.transfer(src, dst);
+                    }
+                }
+            }
+
+            transfers.finish();
+        } finally {
+            transfers.abort();
+        }
+    }
+
+    /**
+     * List the existing content of <code>dir</code> on the destination of a {@link CopyMode#SYNC} copy. The result is indexed by the path relative to
+     * <code>destination</code>, the root of the copy.
+     */
+    private HashMap<Path, PathAttributes> listExisting(FileSystem destinationFS, Path dir, Path destination, boolean recursive) throws XenonException {
+
+        HashMap<Path, PathAttributes> result = new HashMap<>();
+        Iterator<PathAttributes> it = destinationFS.list(dir, recursive).iterator();
+
+        try {
+            while (it.hasNext()) {
+                PathAttributes p = it.next();
+
+                if (!isDotDot(p.getPath())) {
+                    result.put(destination.relativize(p.getPath()), p);
+                }
+            }
+        } finally {
+            CloseableIterator.closeIfNeeded(it);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if the regular file described by <code>source</code> must be transferred to <code>rel</code> on <code>destinationFS</code>, given the
+     * <code>existing</code> destination content. Without existing content, every file is transferred.
+     */
+    private boolean needsTransfer(PathAttributes source, Path rel, FileSystem destinationFS, HashMap<Path, PathAttributes> existing) {
+
+        if (existing == null) {
+            return true;
+        }
+
+        PathAttributes destination = existing.get(rel);
+        return destination == null || !isUpToDate(source, destinationFS, destination);
+    }
+
+    /**
+     * Create a directory on the destination of a recursive copy. Returns if the content of the source directory should be copied into it.
+     */
+    private boolean createDestinationDirectory(FileSystem destinationFS, Path dst, CopyMode mode) throws XenonException {
+
+        if (!destinationFS.exists(dst)) {
+            destinationFS.createDirectory(dst);
+            return true;
+        }
+
+        if (!destinationFS.getAttributes(dst).isDirectory()) {
+            destinationFS.delete(dst, true);
+            destinationFS.createDirectory(dst);
+            return true;
+        }
+
+        switch (mode) {
+        case CREATE:
+            throw new PathAlreadyExistsException(getAdaptorName(), "Directory already exists: " + dst);
+        case IGNORE:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Hands out the file transfers of a recursive copy.
+     *
+     * When this FileSystem has a single copy worker, each transfer is performed directly by the calling thread. Otherwise the transfers are submitted to the
+     * transfer workers, and at most twice the number of workers of transfers are outstanding at any time. If a transfer fails, or the copy is cancelled, all
+     * outstanding transfers are cancelled by {@link #abort()}, which waits until they have stopped, and the exception is thrown.
+     */
+    private class TransferQueue {
+
+        private final FileSystem destinationFS;
+        private final CopyMode mode;
+        private final CopyCallback callback;
+
+        private final CompletionService<Void> completion;
+        private final HashSet<Future<Void>> pending = new HashSet<>();
+
+        /** The number of transfers that are running, guarded by this queue. */
+        private int running = 0;
+
+        /** Set once the queue has been aborted, guarded by this queue. */
+        private boolean aborted = false;
+
+        TransferQueue(FileSystem destinationFS, CopyMode mode, CopyCallback callback) {
+            this.destinationFS = destinationFS;
+            this.mode = mode;
+            this.callback = callback;
+            this.completion = transferPool == null ? null : new ExecutorCompletionService<>(transferPool);
+        }
+
+        void transfer(Path source, Path destination) throws XenonException {
+
+            if (completion == null) {
+                copyFile(source, destinationFS, destination, mode, callback);
+                callback.fileCopied();
                 return;
-            case REPLACE:
-                // continue
-                break;
             }
 
-            attributes = destinationFS.getAttributes(destination);
+            pending.add(completion.submit(() -> {
 
-            if (attributes.isRegular() || attributes.isSymbolicLink()) {
-                destinationFS.delete(destination, false);
-                destinationFS.createDirectory(destination);
-            } else if (!attributes.isDirectory()) {
-                throw new InvalidPathException(getAdaptorName(), "Existing destination is not a file, link or directory: " + source);
+                synchronized (this) {
+                    if (aborted) {
+                        throw new CopyCancelledException(getAdaptorName(), "Copy aborted");
+                    }
+                    running++;
+                }
+
+                try {
+                    if (callback.isCancelled()) {
+                        throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+                    }
+
+                    copyFile(source, destinationFS, destination, mode, callback);
+                    callback.fileCopied();
+                    return null;
+                } finally {
+                    synchronized (this) {
+                        running--;
+                        notifyAll();
+                    }
+                }
+            }));
+
+            if (pending.size() >= 2 * copyParallelism) {
+                pending.remove(waitForTransfer());
             }
-        } else {
-            destinationFS.createDirectory(destination);
         }
 
-        // We are now sure the target directory exists.
-        copyRecursive(source, destinationFS, destination, mode, callback);
-    }
-
-    private void copyRecursive(Path source, FileSystem destinationFS, Path destination, CopyMode mode, CopyCallback callback) throws XenonException {
-        long bytesToCopy = 0;
-        Iterable<PathAttributes> listing = list(source, true);
+        void finish() throws XenonException {
+            while (!pending.isEmpty()) {
+                pending.remove(waitForTransfer());
+            }
+        }
 
-        for (PathAttributes p : listing) {
+        void abort() {
+            // Only has an effect if we bailed out early.
+            synchronized (this) {
+                aborted = true;
+            }
 
-            if (callback.isCancelled()) {
-                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+            for (Future<Void> f : pending) {
+                f.cancel(true);
             }
 
-            if (p.isDirectory() && !isDotDot(p.getPath())) {
+            // A cancelled future does not wait for its task to stop, so wait until no transfer is writing to the destination anymore.
+            boolean interrupted = false;
 
-                Path rel = source.relativize(p.getPath());
-                Path dst = destination.resolve(rel);
-                if (destinationFS.exists(dst)) {
-                    if (destinationFS.getAttributes(dst).isDirectory()) {
-                        switch (mode) {
-                        case CREATE:
-                            throw new PathAlreadyExistsException(getAdaptorName(), "Directory already exists: " + dst);
-                        case REPLACE:
-                            break; // leave directory
-                        case IGNORE:
-                            return; // ignore subdir
-                        }
-                    } else {
-                        destinationFS.delete(dst, true);
+            synchronized (this) {
+                while (running > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
                     }
-                } else {
-                    destinationFS.createDirectories(dst);
                 }
-            } else if (p.isRegular()) {
-                bytesToCopy += p.getSize();
             }
-        }
-
-        callback.start(bytesToCopy);
-
-        for (PathAttributes p : listing) {
 
-            if (callback.isCancelled()) {
-                throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
+        }
 
-            if (p.isRegular()) {
+        private Future<Void> waitForTransfer() throws XenonException {
+            try {
+                Future<Void> done = completion.take();
+                done.get();
+                return done;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
 
-                Path rel = source.relativize(p.getPath());
-                Path dst = destination.resolve(rel);
+                if (cause instanceof XenonException) {
+                    throw (XenonException) cause;
+                }
 
-                copyFile(p.getPath(), destinationFS, dst, mode, callback);
+                throw new XenonException(getAdaptorName(), "File transfer failed", cause);
             }
         }
     }
@@ -1317,10 +3069,107 @@ public abstract class FileSystem implements AutoCloseable {
      */
     protected abstract Iterable<PathAttributes> listDirectory(Path dir) throws XenonException;
 
+    /**
+     * Returns an iterator over the entries in a single directory, used by recursive listings.
+     *
+     * The default implementation iterates over the result of {@link #listDirectory(Path)}. Adaptors that retrieve a listing in parts may override this
+     * method to return the entries as they arrive. Errors that occur after this method has returned must be thrown as a {@link XenonRuntimeException}.
+     *
+     * @param dir
+     *            the directory to list.
+     * @return an iterator over the entries in the directory.
+     * @throws XenonException
+     *             If the listing could not be started.
+     */
+    protected Iterator<PathAttributes> listDirectoryIterator(Path dir) throws XenonException {
+        return listDirectory(dir).iterator();
+    }
+
+    /**
+     * Returns the entries of a single directory of which the file name may match a glob, used by filtered listings for directories that are not traversed.
+     *
+     * The default implementation returns all entries using {@link #listDirectory(Path)}. Adaptors that can filter on the server may override this method to
+     * skip entries that do not match. The caller checks the glob again, so returning too many entries is allowed.
+     *
+     * @param dir
+     *            the directory to list.
+     * @param glob
+     *            the glob that the file names should match, or <code>null</code> if all entries are needed.
+     * @return the entries in the directory.
+     * @throws XenonException
+     *             If the list could not be retrieved.
+     */
+    protected Iterable<PathAttributes> listDirectory(Path dir, String glob) throws XenonException {
+        return listDirectory(dir);
+    }
+
+    /**
+     * Adds the entries of a single directory to a {@link DirectoryBatch}, used by {@link #listBatch(Path)}.
+     *
+     * The default implementation copies the result of {@link #listDirectory(Path)}. Adaptors should override this method to fill the batch directly from
+     * the listing they receive, so no {@link PathAttributes} are created. The <code>.</code> and <code>..</code> entries must not be added.
+     *
+     * @param dir
+     *            the absolute path of the directory to list.
+     * @param batch
+     *            the batch to which the entries will be added.
+     * @throws XenonException
+     *             If the list could not be retrieved.
+     */
+    protected void listDirectory(Path dir, DirectoryBatch batch) throws XenonException {
+        for (PathAttributes p : listDirectory(dir)) {
+            if (!isDotDot(p.getPath())) {
+                batch.add(p);
+            }
+        }
+    }
+
+    /**
+     * Adds the entries below the directory <code>dir</code> that match the given options to a list.
+     *
+     * This is a generic implementation which relies on <code>listDirectory</code> to provide listings of individual directories and filters the entries on
+     * the client. Adaptors that can evaluate the filters on the server may override this method.
+     *
+     * @param dir
+     *            the absolute path of the directory to list.
+     * @param options
+     *            the filters to apply.
+     * @param list
+     *            the list to which the matching entries will be added.
+     * @throws XenonException
+     *             If the list could not be retrieved.
+     */
+    protected void list(Path dir, ListOptions options, ArrayList<PathAttributes> list) throws XenonException {
+        list(dir, options, 1, list);
+    }
+
+    private void list(Path dir, ListOptions options, int depth, ArrayList<PathAttributes> list) throws XenonException {
+
+        boolean traverse = options.traverse(depth);
+
+        Iterable<PathAttributes> entries = traverse ? listDirectory(dir) : listDirectory(dir, options.getGlob());
+
+        for (PathAttributes p : entries) {
+            if (isDotDot(p.getPath())) {
+                continue;
+            }
+
+            if (options.matches(p)) {
+                list.add(p);
+            }
+
+            if (traverse && isTraversableDirectory(p)) {
+                list(dir.resolve(p.getPath().getFileNameAsString()), options, depth + 1, list);
+            }
+        }
+    }
+
     /**
      * Returns an (optionally recursive) listing of the entries in a directory <code>dir</code>.
      *
-     * This is a generic implementation which relies on <code>listDirectory</code> to provide listings of individual directories.
+     * This is a generic implementation which relies on <code>listDirectory</code> to provide listings of individual directories. If the adaptor allows more
+     * than one concurrent directory read, a recursive listing reads several directories at once and adds their entries in the order in which the reads
+     * complete.
      *
      * @param dir
      *            the directory to list.
@@ -1333,6 +3182,18 @@ public abstract class FileSystem implements AutoCloseable {
      */
     protected void list(Path dir, ArrayList<PathAttributes> list, boolean recursive) throws XenonException {
 
+        if (recursive && listPool != null) {
+            try {
+                new ParallelListIterator(listDirectory(dir).iterator()).forEachRemaining(list::add);
+            } catch (XenonRuntimeException e) {
+                if (e.getCause() instanceof XenonException) {
+                    throw (XenonException) e.getCause();
+                }
+                throw e;
+            }
+            return;
+        }
+
         Iterable<PathAttributes> tmp = listDirectory(dir);
 
         for (PathAttributes p : tmp) {
@@ -1362,6 +3223,44 @@ public abstract class FileSystem implements AutoCloseable {
      * Exceptions that occur during copying will not be thrown by this function, but instead are contained in a {@link CopyStatus} object which can be obtained
      * with {@link FileSystem#getStatus(String)}
      *
+     * The final status of a copy is kept until it is retrieved. Only the status of the last {@value #COPY_HISTORY_SIZE} finished copies is kept, so copies
+     * that are never queried are eventually forgotten.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     *
+     * @return a {@link String} that identifies this copy and be used to inspect its progress.
+     *
+     * @throws IllegalArgumentException
+     *             If source, destinationFS, destination or mode is null.
+     */
+    public String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive) {
+        return copy(source, destinationFS, destination, mode, recursive, null);
+    }
+
+    /**
+     * Asynchronously Copy an existing source path to a target path on a different file system.
+     *
+     * If the source path is a file, it will be copied to the destination file on the target file system.
+     *
+     * If the source path is a directory, it will only be copied if <code>recursive</code> is set to <code>true</code>. Otherwise, an exception will be thrown.
+     * When copying recursively, the directory and its content (both files and subdirectories with content), will be copied to <code>destination</code>.
+     *
+     * Exceptions that occur during copying will not be thrown by this function, but instead are contained in a {@link CopyStatus} object which can be obtained
+     * with {@link FileSystem#getStatus(String)}
+     *
+     * The progress of the copy is pushed to <code>listener</code>, so it does not need to be polled. The listener receives rate limited progress
+     * notifications while the copy is running, and a single completion or failure notification when it ends. The copy must still be forgotten with
+     * {@link FileSystem#getStatus(String)}, {@link FileSystem#waitUntilDone(String, long)} or {@link FileSystem#cancel(String)} once it is done.
+     *
      * @param source
      *            the source path (on this filesystem) to copy from.
      * @param destinationFS
@@ -1372,13 +3271,52 @@ public abstract class FileSystem implements AutoCloseable {
      *            how to react if the destination already exists.
      * @param recursive
      *            if the copy should be recursive.
+     * @param listener
+     *            the listener to notify of the progress of the copy, or <code>null</code>.
      *
      * @return a {@link String} that identifies this copy and be used to inspect its progress.
      *
      * @throws IllegalArgumentException
      *             If source, destinationFS, destination or mode is null.
      */
-    public synchronized String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive) {
+    public String copy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive,
+            final CopyListener listener) {
+        return startCopy(source, destinationFS, destination, mode, recursive, listener, true).callback.copyIdentifier;
+    }
+
+    /**
+     * Asynchronously Copy an existing source path to a target path on a different file system, and return a future for the result.
+     *
+     * This is similar to {@link FileSystem#copy(Path, FileSystem, Path, CopyMode, boolean)}, but instead of an identifier that must be used to query the
+     * status, a {@link CompletableFuture} is returned. This allows many copies to be combined, for example using {@link CompletableFuture#allOf}.
+     *
+     * The future completes with the final {@link CopyStatus} of the copy if it succeeded, or exceptionally with the exception produced by the copy if it
+     * failed. Cancelling the future cancels the copy. The identifier in the status can be used with {@link FileSystem#getStatus(String)} while the copy is
+     * running, but the copy is forgotten as soon as it is done.
+     *
+     * @param source
+     *            the source path (on this filesystem) to copy from.
+     * @param destinationFS
+     *            the destination filesystem to copy to.
+     * @param destination
+     *            the destination path (on the destination filesystem) to copy to.
+     * @param mode
+     *            how to react if the destination already exists.
+     * @param recursive
+     *            if the copy should be recursive.
+     *
+     * @return a {@link CompletableFuture} that completes when the copy is done.
+     *
+     * @throws IllegalArgumentException
+     *             If source, destinationFS, destination or mode is null.
+     */
+    public CompletableFuture<CopyStatus> copyAsync(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode,
+            final boolean recursive) {
+        return startCopy(source, destinationFS, destination, mode, recursive, null, false).result;
+    }
+
+    private CopyTask startCopy(final Path source, final FileSystem destinationFS, final Path destination, final CopyMode mode, final boolean recursive,
+            final CopyListener listener, boolean keepHistory) {
 
         if (source == null) {
             throw new IllegalArgumentException("Source path is null");
@@ -1398,9 +3336,9 @@ public abstract class FileSystem implements AutoCloseable {
 
         String copyID = getNextCopyID();
 
-        final CopyCallback callback = new CopyCallback();
+        final CopyCallback callback = new CopyCallback(copyID, listener);
 
-        Future<Void> future = pool.submit(() -> {
+        CopyTask task = new CopyTask(() -> {
 
             if (Thread.currentThread().isInterrupted()) {
                 throw new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
@@ -1408,10 +3346,11 @@ public abstract class FileSystem implements AutoCloseable {
 
             performCopy(toAbsolutePath(source), destinationFS, toAbsolutePath(destination), mode, recursive, callback);
             return null;
-        });
+        }, callback, keepHistory);
 
-        pendingCopies.put(copyID, new PendingCopy(future, callback));
-        return copyID;
+        pendingCopies.put(copyID, task);
+        pool.execute(task);
+        return task;
     }
 
     /**
@@ -1431,37 +3370,21 @@ public abstract class FileSystem implements AutoCloseable {
      * @throws IllegalArgumentException
      *             If the copyIdentifier is null.
      */
-    public synchronized CopyStatus cancel(String copyIdentifier) throws XenonException {
+    public CopyStatus cancel(String copyIdentifier) throws XenonException {
 
         if (copyIdentifier == null) {
             throw new IllegalArgumentException("Copy identifier may not be null");
         }
-        PendingCopy copy = pendingCopies.remove(copyIdentifier);
 
-        if (copy == null) {
-            throw new NoSuchCopyException(getAdaptorName(), "Copy not found: " + copyIdentifier);
-        }
-
-        copy.callback.cancel();
-        copy.future.cancel(true);
-
-        XenonException ex = null;
-        String state = "DONE";
+        CopyTask copy = pendingCopies.get(copyIdentifier);
 
-        try {
-            copy.future.get();
-        } catch (ExecutionException ee) {
-            ex = new XenonException(getAdaptorName(), ee.getMessage(), ee);
-            state = "FAILED";
-        } catch (CancellationException ce) {
-            ex = new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
-            state = "FAILED";
-        } catch (InterruptedException e) {
-            ex = new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
-            state = "FAILED";
-            Thread.currentThread().interrupt();
+        if (copy != null) {
+            copy.callback.cancel();
+            copy.cancel(true);
+            copy.awaitFinalStatus();
         }
-        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex);
+
+        return forgetCopy(copyIdentifier, copy);
     }
 
     /**
@@ -1502,41 +3425,31 @@ public abstract class FileSystem implements AutoCloseable {
             throw new IllegalArgumentException("Copy identifier may not be null");
         }
 
-        PendingCopy copy = pendingCopies.get(copyIdentifier);
-
-        if (copy == null) {
-            throw new NoSuchCopyException(getAdaptorName(), "Copy not found: " + copyIdentifier);
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout may not be negative");
         }
 
-        XenonException ex = null;
-        String state = "DONE";
-
-        try {
-            copy.future.get(timeout, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            state = "RUNNING";
-        } catch (ExecutionException ee) {
-            Throwable cause = ee.getCause();
-            if (cause instanceof XenonException) {
-                ex = (XenonException) cause;
-            } else {
-                ex = new XenonException(getAdaptorName(), cause.getMessage(), cause);
-            }
-            state = "FAILED";
-        } catch (CancellationException ce) {
-            ex = new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
-            state = "FAILED";
-        } catch (InterruptedException ie) {
-            ex = new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
-            state = "FAILED";
-            Thread.currentThread().interrupt();
-        }
+        CopyTask copy = pendingCopies.get(copyIdentifier);
 
-        if (copy.future.isDone()) {
-            pendingCopies.remove(copyIdentifier);
+        if (copy != null) {
+            try {
+                if (timeout == 0) {
+                    copy.finalStatus.get();
+                } else {
+                    copy.finalStatus.get(timeout, TimeUnit.MILLISECONDS);
+                }
+            } catch (TimeoutException e) {
+                return copy.callback.getStatus("RUNNING", null);
+            } catch (ExecutionException e) {
+                // Cannot happen, the final status always completes normally.
+                throw new XenonException(getAdaptorName(), e.getMessage(), e);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return copy.callback.getStatus("FAILED", new CopyCancelledException(getAdaptorName(), "Copy interrupted by user"));
+            }
         }
 
-        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex);
+        return forgetCopy(copyIdentifier, copy);
     }
 
     /**
@@ -1563,38 +3476,37 @@ public abstract class FileSystem implements AutoCloseable {
             throw new IllegalArgumentException("Copy identifier may not be null");
         }
 
-        PendingCopy copy = pendingCopies.get(copyIdentifier);
+        CopyTask copy = pendingCopies.get(copyIdentifier);
 
-        if (copy == null) {
-            throw new NoSuchCopyException(getAdaptorName(), "Copy not found: " + copyIdentifier);
+        if (copy != null) {
+            if (!copy.isDone()) {
+                return copy.callback.getStatus(copy.callback.isStarted() ? "RUNNING" : "PENDING", null);
+            }
+
+            // The copy has just finished, wait until its final status has been recorded.
+            copy.awaitFinalStatus();
         }
 
-        XenonException ex = null;
-        String state = "PENDING";
+        return forgetCopy(copyIdentifier, copy);
+    }
 
-        if (copy.future.isDone()) {
-            pendingCopies.remove(copyIdentifier);
+    /**
+     * Remove the final status of a finished copy from the history and return it. If <code>copy</code> is not <code>null</code> it must be done, and its
+     * final status is returned if it was not kept in the history.
+     */
+    private CopyStatus forgetCopy(String copyIdentifier, CopyTask copy) throws XenonException {
 
-            // We have either finished, crashed, or cancelled
-            try {
-                copy.future.get();
-                state = "DONE";
-            } catch (ExecutionException ee) {
-                ex = new XenonException(getAdaptorName(), ee.getMessage(), ee);
-                state = "FAILED";
-            } catch (CancellationException ce) {
-                ex = new CopyCancelledException(getAdaptorName(), "Copy cancelled by user");
-                state = "FAILED";
-            } catch (InterruptedException ie) {
-                ex = new CopyCancelledException(getAdaptorName(), "Copy interrupted by user");
-                state = "FAILED";
-                Thread.currentThread().interrupt();
-            }
-        } else if (copy.callback.isStarted()) {
-            state = "RUNNING";
+        CopyStatus status = finishedCopies.remove(copyIdentifier);
+
+        if (status == null && copy != null && !copy.keepHistory) {
+            status = copy.awaitFinalStatus();
+        }
+
+        if (status == null) {
+            throw new NoSuchCopyException(getAdaptorName(), "Copy not found: " + copyIdentifier);
         }
 
-        return new CopyStatusImplementation(copyIdentifier, state, copy.callback.getBytesToCopy(), copy.callback.getBytesCopied(), ex);
+        return status;
     }
 
     protected void assertNotNull(Path path) {
@@ -1603,11 +3515,96 @@ public abstract class FileSystem implements AutoCloseable {
         }
     }
 
+    /**
+     * Removes a path, everything below it and its parent from the attribute cache. Adaptors must call this after every operation that changes a path.
+     *
+     * @param path
+     *            the absolute path that was changed.
+     */
+    protected void invalidateAttributes(Path path) {
+        if (attributeCache != null) {
+            attributeCache.invalidate(path);
+        }
+    }
+
+    /**
+     * Stores the attributes returned by a listing in the attribute cache, if it is enabled.
+     *
+     * @param entries
+     *            the attributes returned by the listing.
+     * @return <code>entries</code>
+     */
+    protected Iterable<PathAttributes> cacheAttributes(Iterable<PathAttributes> entries) {
+
+        if (attributeCache != null) {
+            for (PathAttributes p : entries) {
+                attributeCache.put(p.getPath(), p);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Checks if a path exists, using the attribute cache if it is enabled. Only negative results are cached, as {@link #exists(Path)} does not return the
+     * attributes.
+     */
+    private boolean checkExists(Path path) throws XenonException {
+
+        if (attributeCache == null) {
+            return exists(path);
+        }
+
+        Path absPath = toAbsolutePath(path);
+        AttributeCache.Entry e = attributeCache.get(absPath);
+
+        if (e != null) {
+            return e.attributes != null;
+        }
+
+        boolean result = exists(absPath);
+
+        if (!result) {
+            attributeCache.put(absPath, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the attributes of a path, using the attribute cache if it is enabled.
+     */
+    private PathAttributes checkAttributes(Path path) throws XenonException {
+
+        if (attributeCache == null) {
+            return getAttributes(path);
+        }
+
+        Path absPath = toAbsolutePath(path);
+        AttributeCache.Entry e = attributeCache.get(absPath);
+
+        if (e != null) {
+            if (e.attributes == null) {
+                throw new NoSuchPathException(getAdaptorName(), "Path does not exist: " + absPath);
+            }
+            return e.attributes;
+        }
+
+        try {
+            PathAttributes result = getAttributes(absPath);
+            attributeCache.put(absPath, result);
+            return result;
+        } catch (NoSuchPathException ex) {
+            attributeCache.put(absPath, null);
+            throw ex;
+        }
+    }
+
     protected void assertPathExists(Path path) throws XenonException {
 
         assertNotNull(path);
 
-        if (!exists(path)) {
+        if (!checkExists(path)) {
             throw new NoSuchPathException(getAdaptorName(), "Path does not exist: " + path);
         }
     }
@@ -1616,7 +3613,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (exists(path)) {
+        if (checkExists(path)) {
             throw new PathAlreadyExistsException(getAdaptorName(), "Path already exists: " + path);
         }
     }
@@ -1625,9 +3622,9 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (exists(path)) {
+        if (checkExists(path)) {
 
-            PathAttributes a = getAttributes(path);
+            PathAttributes a = checkAttributes(path);
             if (a.isDirectory()) {
                 throw new InvalidPathException(getAdaptorName(), "Was expecting a regular file, but got a directory: " + path.toString());
             }
@@ -1638,7 +3635,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        if (!getAttributes(path).isRegular()) {
+        if (!checkAttributes(path).isRegular()) {
             throw new InvalidPathException(getAdaptorName(), "Path is not a file: " + path);
         }
     }
@@ -1647,7 +3644,7 @@ public abstract class FileSystem implements AutoCloseable {
 
         assertNotNull(path);
 
-        PathAttributes a = getAttributes(path);
+        PathAttributes a = checkAttributes(path);
 
         if (a == null) {
             throw new InvalidPathException(getAdaptorName(), "Path failed to produce attributes: " + path);
@@ -1659,12 +3656,17 @@ public abstract class FileSystem implements AutoCloseable {
     }
 
     protected void assertFileExists(Path file) throws XenonException {
-        assertPathExists(file);
+        if (attributeCache == null) {
+            assertPathExists(file);
+        }
+        // With a cache, getting the attributes also checks if the file exists.
         assertPathIsFile(file);
     }
 
     protected void assertDirectoryExists(Path dir) throws XenonException {
-        assertPathExists(dir);
+        if (attributeCache == null) {
+            assertPathExists(dir);
+        }
         assertPathIsDirectory(dir);
     }
 
@@ -1681,7 +3683,7 @@ public abstract class FileSystem implements AutoCloseable {
     protected void assertFileIsSymbolicLink(Path link) throws XenonException {
         assertNotNull(link);
         assertPathExists(link);
-        if (!getAttributes(link).isSymbolicLink()) {
+        if (!checkAttributes(link).isSymbolicLink()) {
             throw new InvalidPathException(getAdaptorName(), "Not a symbolic link: " + link);
         }
     }
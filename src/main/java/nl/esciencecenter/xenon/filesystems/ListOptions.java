@@ -0,0 +1,423 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.regex.Pattern;
+
+/**
+ * ListOptions describes which entries should be returned by {@link FileSystem#list(Path, ListOptions)}.
+ *
+ * All filters are applied to the entries themselves, not to the directories that are traversed to find them. A directory that does not match is therefore
+ * still traversed, as long as the maximum depth has not been reached. By default, all entries of the entire tree are returned.
+ *
+ * Adaptors push the filters down to the server where they can, so entries that do not match are not transferred.
+ */
+public class ListOptions {
+
+    /**
+     * The types of entry that can be selected.
+     */
+    public enum Type {
+        /** Regular files. */
+        REGULAR,
+        /** Directories. */
+        DIRECTORY,
+        /** Symbolic links. */
+        SYMBOLIC_LINK,
+        /** Anything else, such as devices or pipes. */
+        OTHER
+    }
+
+    /** The glob that the file name must match. */
+    private String glob = null;
+
+    /** The glob translated to a regular expression. */
+    private Pattern pattern = null;
+
+    /** The type of entry to return. */
+    private Type type = null;
+
+    /** The maximum depth of the traversal. */
+    private int maxDepth = -1;
+
+    /** The minimum size in bytes. */
+    private long minSize = 0;
+
+    /** The maximum size in bytes. */
+    private long maxSize = Long.MAX_VALUE;
+
+    /** The modification time after which an entry must have been modified. */
+    private long modifiedAfter = Long.MIN_VALUE;
+
+    /** The modification time before which an entry must have been modified. */
+    private long modifiedBefore = Long.MAX_VALUE;
+
+    /**
+     * Create a ListOptions that selects all entries of the entire tree.
+     */
+    public ListOptions() {
+        // nothing
+    }
+
+    /**
+     * Create a ListOptions by copying an existing one.
+     *
+     * @param original
+     *            ListOptions to copy
+     */
+    public ListOptions(ListOptions original) {
+        glob = original.glob;
+        pattern = original.pattern;
+        type = original.type;
+        maxDepth = original.maxDepth;
+        minSize = original.minSize;
+        maxSize = original.maxSize;
+        modifiedAfter = original.modifiedAfter;
+        modifiedBefore = original.modifiedBefore;
+    }
+
+    /**
+     * Get the glob that the file name must match.
+     *
+     * @return the glob, or <code>null</code> if any name is accepted.
+     */
+    public String getGlob() {
+        return glob;
+    }
+
+    /**
+     * Set the glob that the file name (the last element of the path) must match, for example <code>*.nc</code>.
+     *
+     * The glob uses the syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}, but is matched against the name as a string, so any name a
+     * server returns can be matched, whatever the local file system of the client. Globs that only use <code>*</code>, <code>?</code> and
+     * <code>[...]</code> can be evaluated by most servers.
+     *
+     * @param glob
+     *            the glob, or <code>null</code> to accept any name.
+     * @throws IllegalArgumentException
+     *             If the glob is invalid.
+     */
+    public void setGlob(String glob) {
+        this.pattern = glob == null ? null : Pattern.compile(toRegex(glob), Pattern.DOTALL);
+        this.glob = glob;
+    }
+
+    /**
+     * Translate a glob into a regular expression. The names are matched as strings, so they do not have to be valid paths on the local file system.
+     */
+    private static String toRegex(String glob) {
+
+        StringBuilder result = new StringBuilder("^");
+        boolean inGroup = false;
+        int i = 0;
+
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+
+            switch (c) {
+            case '\\':
+                if (i == glob.length()) {
+                    throw new IllegalArgumentException("No character to escape in glob: " + glob);
+                }
+                escape(result, glob.charAt(i++));
+                break;
+            case '*':
+                if (i < glob.length() && glob.charAt(i) == '*') {
+                    result.append(".*");
+                    i++;
+                } else {
+                    result.append("[^/]*");
+                }
+                break;
+            case '?':
+                result.append("[^/]");
+                break;
+            case '[':
+                i = appendClass(result, glob, i);
+                break;
+            case '{':
+                if (inGroup) {
+                    throw new IllegalArgumentException("Cannot nest groups in glob: " + glob);
+                }
+                result.append("(?:(?:");
+                inGroup = true;
+                break;
+            case '}':
+                if (inGroup) {
+                    result.append("))");
+                    inGroup = false;
+                } else {
+                    escape(result, c);
+                }
+                break;
+            case ',':
+                result.append(inGroup ? ")|(?:" : ",");
+                break;
+            default:
+                escape(result, c);
+            }
+        }
+
+        if (inGroup) {
+            throw new IllegalArgumentException("Missing '}' in glob: " + glob);
+        }
+
+        return result.append('$').toString();
+    }
+
+    /**
+     * Append the bracket expression that starts at index <code>i</code>, just after the <code>[</code>, and return the index just after its
+     * <code>]</code>.
+     */
+    private static int appendClass(StringBuilder result, String glob, int i) {
+
+        result.append("[[^/]&&[");
+
+        if (i < glob.length() && glob.charAt(i) == '!') {
+            result.append('^');
+            i++;
+        } else if (i < glob.length() && glob.charAt(i) == '^') {
+            result.append("\\^");
+            i++;
+        }
+
+        boolean first = true;
+
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+
+            if (c == ']' && !first) {
+                result.append("]]");
+                return i;
+            }
+
+            if (c == '-' && !first && i < glob.length() && glob.charAt(i) != ']') {
+                result.append('-');
+            } else if (c == '\\' || c == '[' || c == ']' || c == '&' || c == '^' || c == '-') {
+                result.append('\\').append(c);
+            } else {
+                result.append(c);
+            }
+
+            first = false;
+        }
+
+        throw new IllegalArgumentException("Missing ']' in glob: " + glob);
+    }
+
+    private static void escape(StringBuilder result, char c) {
+        if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+            result.append('\\');
+        }
+        result.append(c);
+    }
+
+    /**
+     * Get the type of entry to return.
+     *
+     * @return the type, or <code>null</code> if entries of any type are returned.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Set the type of entry to return.
+     *
+     * @param type
+     *            the type, or <code>null</code> to return entries of any type.
+     */
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Get the maximum depth of the traversal.
+     *
+     * @return the maximum depth, or <code>-1</code> if the entire tree is traversed.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Set the maximum depth of the traversal. A depth of <code>1</code> only returns the entries of the directory itself, a depth of <code>2</code> also
+     * returns the entries of its subdirectories, etc.
+     *
+     * @param maxDepth
+     *            the maximum depth, or <code>-1</code> to traverse the entire tree.
+     * @throws IllegalArgumentException
+     *             If the depth is <code>0</code> or less than <code>-1</code>.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth == 0 || maxDepth < -1) {
+            throw new IllegalArgumentException("Invalid maximum depth: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Get the minimum size of the entries to return.
+     *
+     * @return the minimum size in bytes.
+     */
+    public long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Set the minimum size of the entries to return (inclusive).
+     *
+     * @param minSize
+     *            the minimum size in bytes.
+     */
+    public void setMinSize(long minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Get the maximum size of the entries to return.
+     *
+     * @return the maximum size in bytes.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum size of the entries to return (inclusive).
+     *
+     * @param maxSize
+     *            the maximum size in bytes.
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the time after which the entries must have been modified.
+     *
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getModifiedAfter() {
+        return modifiedAfter;
+    }
+
+    /**
+     * Only return entries that were modified after the given time (exclusive).
+     *
+     * @param modifiedAfter
+     *            the time in milliseconds since the epoch.
+     */
+    public void setModifiedAfter(long modifiedAfter) {
+        this.modifiedAfter = modifiedAfter;
+    }
+
+    /**
+     * Get the time before which the entries must have been modified.
+     *
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getModifiedBefore() {
+        return modifiedBefore;
+    }
+
+    /**
+     * Only return entries that were modified before the given time (exclusive).
+     *
+     * @param modifiedBefore
+     *            the time in milliseconds since the epoch.
+     */
+    public void setModifiedBefore(long modifiedBefore) {
+        this.modifiedBefore = modifiedBefore;
+    }
+
+    /**
+     * Check if a directory at the given depth should be traversed. The entries of the listed directory itself are at depth 1.
+     *
+     * @param depth
+     *            the depth of the directory.
+     * @return if the directory should be traversed.
+     */
+    public boolean traverse(int depth) {
+        return maxDepth == -1 || depth < maxDepth;
+    }
+
+    /**
+     * Check if the name of an entry matches the glob.
+     *
+     * @param name
+     *            the file name of the entry.
+     * @return if the name matches.
+     */
+    public boolean matchesName(String name) {
+        return pattern == null || pattern.matcher(name).matches();
+    }
+
+    /**
+     * Check if an entry matches all filters, except for the maximum depth.
+     *
+     * @param attributes
+     *            the attributes of the entry.
+     * @return if the entry matches.
+     */
+    public boolean matches(PathAttributes attributes) {
+
+        if (type != null) {
+            switch (type) {
+            case REGULAR:
+                if (!attributes.isRegular()) {
+                    return false;
+                }
+                break;
+            case DIRECTORY:
+                if (!attributes.isDirectory()) {
+                    return false;
+                }
+                break;
+            case SYMBOLIC_LINK:
+                if (!attributes.isSymbolicLink()) {
+                    return false;
+                }
+                break;
+            default:
+                if (!attributes.isOther()) {
+                    return false;
+                }
+            }
+        }
+
+        long size = attributes.getSize();
+
+        if (size < minSize || size > maxSize) {
+            return false;
+        }
+
+        long modified = attributes.getLastModifiedTime();
+
+        if (modified <= modifiedAfter || modified >= modifiedBefore) {
+            return false;
+        }
+
+        return matchesName(attributes.getPath().getFileNameAsString());
+    }
+
+    @Override
+    public String toString() {
+        return "ListOptions [glob=" + glob + ", type=" + type + ", maxDepth=" + maxDepth + ", minSize=" + minSize + ", maxSize=" + maxSize
+                + ", modifiedAfter=" + modifiedAfter + ", modifiedBefore=" + modifiedBefore + "]";
+    }
+}
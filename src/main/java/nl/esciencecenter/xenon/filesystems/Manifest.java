@@ -0,0 +1,315 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+
+/**
+ * Manifest is an index of the directories of a tree, as used by {@link FileSystem#list(Path, Manifest)}.
+ *
+ * For every directory, the index stores its modification time and the name, type, size and modification time of its entries. A later listing answers a
+ * directory whose modification time has not changed from the index instead of listing it again. The index can be stored in a compact binary form with
+ * {@link #write(OutputStream)}, so it can be reused by a later run.
+ *
+ * A Manifest is not thread-safe.
+ */
+public class Manifest {
+
+    // Identifies the binary form, followed by its version.
+    private static final int MAGIC = 0x58454e4d;
+    private static final int VERSION = 1;
+
+    // Allowance in milliseconds for the difference between the clock of the client, which records when a directory was listed, and the clock of the server,
+    // which sets its modification time.
+    private static final long CLOCK_SKEW = 2000;
+
+    private static final byte REGULAR = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte SYMBOLIC_LINK = 2;
+    private static final byte OTHER = 3;
+
+    /**
+     * An entry of an indexed directory.
+     */
+    private static final class Entry {
+
+        final String name;
+        final byte type;
+        final long size;
+        final long modified;
+
+        Entry(String name, byte type, long size, long modified) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * An indexed directory.
+     */
+    private static final class Directory {
+
+        final long modified;
+        final long listed;
+        final Entry[] entries;
+
+        Directory(long modified, long listed, Entry[] entries) {
+            this.modified = modified;
+            this.listed = listed;
+            this.entries = entries;
+        }
+    }
+
+    private final HashMap<Path, Directory> directories = new HashMap<>();
+
+    /**
+     * Create an empty Manifest.
+     */
+    public Manifest() {
+        // nothing
+    }
+
+    /**
+     * Get the number of indexed directories.
+     *
+     * @return the number of directories.
+     */
+    public int size() {
+        return directories.size();
+    }
+
+    /**
+     * Remove all directories from the index.
+     */
+    public void clear() {
+        directories.clear();
+    }
+
+    /**
+     * Get the entries of a directory from the index.
+     *
+     * Entries from the index only contain their type, size and modification time.
+     *
+     * The server truncates modification times to its timestamp resolution, so a change made after the listing, but within the same interval as the change
+     * before it, does not alter the modification time. The index is therefore only trusted if the listing started after the end of that interval, allowing
+     * for some difference between the clocks of the client and the server. With a coarse resolution, such as the minutes of FTP, a directory modified less
+     * than a minute before it was listed is listed again.
+     *
+     * @param dir
+     *            the absolute path of the directory.
+     * @param modified
+     *            the current modification time of the directory.
+     * @param resolution
+     *            the resolution of the modification times of the server in milliseconds.
+     * @return the entries, or <code>null</code> if the directory is not indexed, has changed or may have changed after it was indexed.
+     */
+    List<PathAttributes> lookup(Path dir, long modified, long resolution) {
+
+        Directory d = directories.get(dir);
+
+        if (d == null || d.modified != modified || modified + resolution + CLOCK_SKEW > d.listed) {
+            return null;
+        }
+
+        ArrayList<PathAttributes> result = new ArrayList<>(d.entries.length);
+
+        for (Entry e : d.entries) {
+            PathAttributesImplementation a = new PathAttributesImplementation();
+            a.setPath(dir.resolve(e.name));
+            a.setRegular(e.type == REGULAR);
+            a.setDirectory(e.type == DIRECTORY);
+            a.setSymbolicLink(e.type == SYMBOLIC_LINK);
+            a.setOther(e.type == OTHER);
+            a.setSize(e.size);
+            a.setLastModifiedTime(e.modified);
+            a.setHidden(e.name.startsWith("."));
+            result.add(a);
+        }
+
+        return result;
+    }
+
+    /**
+     * Store the entries of a directory in the index.
+     *
+     * @param dir
+     *            the absolute path of the directory.
+     * @param modified
+     *            the modification time of the directory before it was listed.
+     * @param listed
+     *            the time at which the listing started.
+     * @param entries
+     *            the entries of the directory.
+     */
+    void update(Path dir, long modified, long listed, List<PathAttributes> entries) {
+
+        Entry[] result = new Entry[entries.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            PathAttributes a = entries.get(i);
+            result[i] = new Entry(a.getPath().getFileNameAsString(), type(a), a.getSize(), a.getLastModifiedTime());
+        }
+
+        directories.put(dir, new Directory(modified, listed, result));
+    }
+
+    /**
+     * Remove the directories below <code>dir</code> that no longer exist.
+     *
+     * @param dir
+     *            the absolute path of the listed directory.
+     * @param visited
+     *            the directories that were found by the listing.
+     */
+    void retain(Path dir, Set<Path> visited) {
+
+        Iterator<Path> it = directories.keySet().iterator();
+
+        while (it.hasNext()) {
+            Path p = it.next();
+
+            if (p.startsWith(dir) && !visited.contains(p)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static byte type(PathAttributes a) {
+        if (a.isSymbolicLink()) {
+            return SYMBOLIC_LINK;
+        }
+
+        if (a.isDirectory()) {
+            return DIRECTORY;
+        }
+
+        return a.isRegular() ? REGULAR : OTHER;
+    }
+
+    /**
+     * Write the index in its binary form.
+     *
+     * @param out
+     *            the stream to write to, which is not closed.
+     * @throws IOException
+     *             If the index could not be written.
+     */
+    public void write(OutputStream out) throws IOException {
+
+        GZIPOutputStream zip = new GZIPOutputStream(out, 64 * 1024);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(zip, 64 * 1024));
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(directories.size());
+
+        for (Map.Entry<Path, Directory> d : directories.entrySet()) {
+            data.writeUTF(d.getKey().toString());
+            data.writeLong(d.getValue().modified);
+            data.writeLong(d.getValue().listed);
+            data.writeInt(d.getValue().entries.length);
+
+            for (Entry e : d.getValue().entries) {
+                data.writeUTF(e.name);
+                data.writeByte(e.type);
+                data.writeLong(e.size);
+                data.writeLong(e.modified);
+            }
+        }
+
+        data.flush();
+        zip.finish();
+    }
+
+    /**
+     * Read an index in the binary form written by {@link #write(OutputStream)}.
+     *
+     * @param in
+     *            the stream to read from, which is not closed.
+     * @return the index.
+     * @throws IOException
+     *             If the index could not be read or is not a valid index.
+     */
+    public static Manifest read(InputStream in) throws IOException {
+
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024));
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a manifest");
+        }
+
+        int version = data.readInt();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported manifest version: " + version);
+        }
+
+        Manifest result = new Manifest();
+
+        int count = data.readInt();
+
+        if (count < 0) {
+            throw new IOException("Invalid directory count in manifest: " + count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Path dir = new Path(data.readUTF());
+            long modified = data.readLong();
+            long listed = data.readLong();
+
+            int size = data.readInt();
+
+            if (size < 0) {
+                throw new IOException("Invalid directory size in manifest: " + size);
+            }
+
+            Entry[] entries = new Entry[size];
+
+            for (int j = 0; j < entries.length; j++) {
+                String name = data.readUTF();
+                byte type = data.readByte();
+
+                if (type < REGULAR || type > OTHER) {
+                    throw new IOException("Invalid entry type in manifest: " + type);
+                }
+
+                entries[j] = new Entry(name, type, data.readLong(), data.readLong());
+            }
+
+            result.directories.put(dir, new Directory(modified, listed, entries));
+        }
+
+        return result;
+    }
+}
@@ -17,17 +17,18 @@ package nl.esciencecenter.xenon.filesystems;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 
 /**
  * Path contains a sequence of path elements separated by a separator.
  *
  * It is designed to be immutable.
  *
+ * Internally, a Path only stores its last element and a reference to its parent, so paths that are resolved against the same directory share all elements
+ * of that directory. The String form and hash code are computed once, when first needed.
+ *
  * @version 1.0
  * @since 1.0
  */
@@ -36,24 +37,40 @@ public class Path implements Iterable<Path> {
     /** The default separator to use. */
     public static final char DEFAULT_SEPARATOR = '/';
 
-    /** The path elements in this path */
-    private final List<String> elements;
+    /** The path without the last element, or <code>null</code> if this path has less than two elements */
+    private final Path parent;
+
+    /** The last element in this path, or <code>null</code> if this path is empty */
+    private final String name;
+
+    /** The number of elements in this path */
+    private final int count;
 
     /** The separator used in this path */
     private final char separator;
 
     /** Does path start with / ? **/
-    private boolean isAbsolute;
+    private final boolean isAbsolute;
+
+    /** The String form of this path, once it has been created */
+    private String string;
+
+    /** The hash code of the elements of this path, or 0 if it has not been computed yet */
+    private int elementsHash;
 
     /** Estimate of path element String length. */
     private static final int PATH_ELEMENT_LENGTH = 25;
 
     private class PathIterator implements Iterator<Path> {
-        private int index = 1;
+
+        /** All sub paths of this path, from short to long. */
+        private final Path[] paths = prefixes();
+
+        private int index = 0;
 
         @Override
         public boolean hasNext() {
-            return index <= elements.size();
+            return index < paths.length;
         }
 
         @Override
@@ -62,7 +79,7 @@ public class Path implements Iterable<Path> {
                 throw new NoSuchElementException("No more elements available!");
             }
 
-            return subpath(0, index++);
+            return paths[index++];
         }
 
         @Override
@@ -75,7 +92,7 @@ public class Path implements Iterable<Path> {
      * Create a new empty Path using the default separator.
      */
     public Path() {
-        this(DEFAULT_SEPARATOR, false, new ArrayList<String>(0));
+        this(DEFAULT_SEPARATOR, false, null, null);
     }
 
     /**
@@ -103,21 +120,11 @@ public class Path implements Iterable<Path> {
      *            the path to parse
      */
     public Path(char separator, String path) {
+        this(split(separator, path), separator, path != null && !path.isEmpty() && path.charAt(0) == separator);
 
-        this.separator = separator;
-
-        if (path == null || path.isEmpty()) {
-            this.isAbsolute = false;
-            this.elements = new ArrayList<>(0);
-        } else {
-            this.isAbsolute = (path.indexOf(separator) == 0);
-            StringTokenizer tok = new StringTokenizer(path, "" + separator);
-
-            this.elements = new ArrayList<>(tok.countTokens());
-
-            while (tok.hasMoreTokens()) {
-                this.elements.add(tok.nextToken());
-            }
+        // Reuse the parsed String if it is exactly how this path would be printed.
+        if (path != null && path.length() == length()) {
+            this.string = path;
         }
     }
 
@@ -182,9 +189,31 @@ public class Path implements Iterable<Path> {
      *            the path elements to use.
      */
     public Path(char separator, boolean isAbsolute, List<String> elements) {
+        this(checkForNullAndSeparator(separator, elements).toArray(new String[0]), separator, isAbsolute);
+    }
+
+    /*
+     * Create a path from elements that have already been checked.
+     */
+    private Path(String[] elements, char separator, boolean isAbsolute) {
+        this(separator, isAbsolute, chain(null, separator, isAbsolute, elements, 0, elements.length - 1),
+                elements.length == 0 ? null : elements[elements.length - 1]);
+    }
+
+    /*
+     * Create a path that consists of the elements of parent followed by name. The parent must use the same separator and absoluteness, and may not be empty.
+     */
+    private Path(char separator, boolean isAbsolute, Path parent, String name) {
         this.separator = separator;
         this.isAbsolute = isAbsolute;
-        this.elements = checkForNullAndSeparator(separator, elements);
+        this.parent = parent;
+        this.name = name;
+
+        if (name == null) {
+            count = 0;
+        } else {
+            count = parent == null ? 1 : parent.count + 1;
+        }
     }
 
     protected static List<String> checkForNullAndSeparator(char separator, List<String> elements) {
@@ -196,19 +225,160 @@ public class Path implements Iterable<Path> {
         }
 
         for (String s : elements) {
-            if (s == null) {
-                throw new IllegalArgumentException("Path elements list contains null");
+            checkElement(separator, s);
+            result.add(s);
+        }
+
+        return result;
+    }
+
+    private static void checkElement(char separator, String s) {
+        if (s == null) {
+            throw new IllegalArgumentException("Path elements list contains null");
+        }
+
+        if (s.isEmpty()) {
+            throw new IllegalArgumentException("Path elements list contains an empty element");
+        }
+
+        if (s.indexOf(separator) != -1) {
+            throw new IllegalArgumentException("Path element " + s + " contains separator '" + separator + "'");
+        }
+    }
+
+    private static String[] split(char separator, String path) {
+
+        if (path == null || path.isEmpty()) {
+            return new String[0];
+        }
+
+        ArrayList<String> result = new ArrayList<>();
+
+        int start = 0;
+
+        while (start < path.length()) {
+            int end = path.indexOf(separator, start);
+
+            if (end == -1) {
+                end = path.length();
+            }
+
+            if (end > start) {
+                result.add(path.substring(start, end));
             }
 
-            if (s.isEmpty()) {
-                throw new IllegalArgumentException("Path elements list contains an empty element");
+            start = end + 1;
+        }
+
+        return result.toArray(new String[result.size()]);
+    }
+
+    /*
+     * Appends elements[from] to elements[to-1] to base, which may be null. Returns base if no elements are appended.
+     */
+    private static Path chain(Path base, char separator, boolean isAbsolute, String[] elements, int from, int to) {
+
+        Path result = base;
+
+        for (int i = from; i < to; i++) {
+            result = new Path(separator, isAbsolute, result, elements[i]);
+        }
+
+        return result;
+    }
+
+    /*
+     * Returns a path that consists of base, which may be null, followed by elements[from] and up.
+     */
+    private static Path append(Path base, char separator, boolean isAbsolute, String[] elements, int from) {
+
+        Path result = chain(base, separator, isAbsolute, elements, from, elements.length);
+
+        if (result == null) {
+            return new Path(separator, isAbsolute, null, null);
+        }
+
+        return result;
+    }
+
+    /*
+     * Returns the elements of this path.
+     */
+    private String[] elements() {
+        String[] result = new String[count];
+
+        Path current = this;
+
+        for (int i = count - 1; i >= 0; i--) {
+            result[i] = current.name;
+            current = current.parent;
+        }
+
+        return result;
+    }
+
+    /*
+     * Returns the paths formed by the first 1 to count elements of this path.
+     */
+    private Path[] prefixes() {
+        Path[] result = new Path[count];
+
+        Path current = this;
+
+        for (int i = count - 1; i >= 0; i--) {
+            result[i] = current;
+            current = current.parent;
+        }
+
+        return result;
+    }
+
+    /*
+     * Returns the path formed by the first n elements of this path, where 0 < n <= count.
+     */
+    private Path prefix(int n) {
+        Path current = this;
+
+        for (int i = count; i > n; i--) {
+            current = current.parent;
+        }
+
+        return current;
+    }
+
+    /*
+     * Compares the last n elements of a and b.
+     */
+    private static boolean sameElements(Path a, Path b, int n) {
+        for (int i = 0; i < n && a != b; i++) {
+            if (!a.name.equals(b.name)) {
+                return false;
             }
+            a = a.parent;
+            b = b.parent;
+        }
 
-            if (s.indexOf(separator) != -1) {
-                throw new IllegalArgumentException("Path element " + s + " contains separator '" + separator + "'");
+        return true;
+    }
+
+    private boolean hasDotElement() {
+        for (Path current = this; current != null && current.name != null; current = current.parent) {
+            if (".".equals(current.name) || "..".equals(current.name)) {
+                return true;
             }
+        }
 
-            result.add(s);
+        return false;
+    }
+
+    /*
+     * The length of the String form of this path.
+     */
+    private int length() {
+        int result = isAbsolute ? 1 : 0;
+
+        for (Path current = this; current != null && current.name != null; current = current.parent) {
+            result += current.name.length() + (current.parent == null ? 0 : 1);
         }
 
         return result;
@@ -226,7 +396,7 @@ public class Path implements Iterable<Path> {
             return null;
         }
 
-        return new Path(separator, getFileNameAsString());
+        return new Path(separator, false, null, name);
     }
 
     /**
@@ -237,11 +407,7 @@ public class Path implements Iterable<Path> {
      * @return the resulting file name or <code>null</code>.
      */
     public String getFileNameAsString() {
-        if (isEmpty()) {
-            return null;
-        }
-
-        return elements.get(elements.size() - 1);
+        return name;
     }
 
     /**
@@ -261,11 +427,7 @@ public class Path implements Iterable<Path> {
      * @return a Path representing this Paths parent.
      */
     public Path getParent() {
-        if (isEmpty() || elements.size() == 1) {
-            return null;
-        }
-
-        return new Path(separator, isAbsolute, elements.subList(0, elements.size() - 1));
+        return parent;
     }
 
     /**
@@ -274,7 +436,7 @@ public class Path implements Iterable<Path> {
      * @return the number of elements in the Path, or 0 if this path is empty.
      */
     public int getNameCount() {
-        return elements.size();
+        return count;
     }
 
     /**
@@ -289,8 +451,12 @@ public class Path implements Iterable<Path> {
      *             If the index is negative or greater or equal to the number of elements in the path.
      */
     public Path getName(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+
         boolean alsoAbsolute = (index == 0 && isAbsolute);
-        return new Path(separator, alsoAbsolute, Collections.singletonList(elements.get(index)));
+        return new Path(separator, alsoAbsolute, null, prefix(index + 1).name);
     }
 
     /**
@@ -312,8 +478,26 @@ public class Path implements Iterable<Path> {
         if (beginIndex == endIndex) {
             throw new IllegalArgumentException("beginIndex " + beginIndex + " equal to endIndex " + endIndex);
         }
-        boolean alsoAbsolute = beginIndex == 0 && isAbsolute;
-        return new Path(separator, alsoAbsolute, elements.subList(beginIndex, endIndex));
+
+        if (beginIndex < 0) {
+            throw new IndexOutOfBoundsException("beginIndex = " + beginIndex);
+        }
+
+        if (endIndex > count) {
+            throw new IndexOutOfBoundsException("endIndex = " + endIndex);
+        }
+
+        if (beginIndex > endIndex) {
+            throw new IllegalArgumentException("beginIndex(" + beginIndex + ") > endIndex(" + endIndex + ")");
+        }
+
+        Path end = prefix(endIndex);
+
+        if (beginIndex == 0) {
+            return end;
+        }
+
+        return append(null, separator, false, end.elements(), beginIndex);
     }
 
     /**
@@ -331,7 +515,11 @@ public class Path implements Iterable<Path> {
      * @return If this Path start with the name elements in the other Path and has the same absoluteness.
      */
     public boolean startsWith(Path other) {
-        return other.isAbsolute == isAbsolute && other.elements.size() <= elements.size() && elements.subList(0, other.elements.size()).equals(other.elements);
+        if (other.isAbsolute != isAbsolute || other.count > count) {
+            return false;
+        }
+
+        return other.count == 0 || sameElements(prefix(other.count), other, other.count);
     }
 
     /**
@@ -349,9 +537,8 @@ public class Path implements Iterable<Path> {
         if (other.isAbsolute) {
             return equals(other);
         }
-        int offset = elements.size() - other.elements.size();
 
-        return other.elements.size() <= elements.size() && this.elements.subList(offset, elements.size()).equals(other.elements);
+        return other.count <= count && sameElements(this, other, other.count);
     }
 
     /**
@@ -399,10 +586,15 @@ public class Path implements Iterable<Path> {
             return this;
         }
 
-        ArrayList<String> tmp = new ArrayList<>(elements.size() + other.elements.size());
-        tmp.addAll(elements);
-        tmp.addAll(other.elements);
-        return new Path(separator, isAbsolute, tmp);
+        String[] tmp = other.elements();
+
+        if (other.separator != separator) {
+            for (String s : tmp) {
+                checkElement(separator, s);
+            }
+        }
+
+        return append(isEmpty() ? null : this, separator, isAbsolute, tmp, 0);
     }
 
     /**
@@ -421,6 +613,11 @@ public class Path implements Iterable<Path> {
             return this;
         }
 
+        // A single element, such as an entry of a directory listing, is appended without parsing.
+        if (other.indexOf(separator) == -1) {
+            return new Path(separator, isAbsolute, isEmpty() ? null : this, other);
+        }
+
         return resolve(new Path(separator, other));
     }
 
@@ -430,7 +627,7 @@ public class Path implements Iterable<Path> {
      * @return If this Path is empty.
      */
     public boolean isEmpty() {
-        return elements.isEmpty();
+        return count == 0;
     }
 
     /**
@@ -480,20 +677,21 @@ public class Path implements Iterable<Path> {
             return other;
         }
 
-        List<String> normalized = normalize().elements;
-        List<String> normalizedOther = other.normalize().elements;
+        // Both return the path itself when there is nothing to normalize.
+        Path normalized = normalize();
+        Path normalizedOther = other.normalize();
 
         // The source may not be longer that target
-        if (normalized.size() > normalizedOther.size()) {
+        if (normalized.count > normalizedOther.count) {
             throw new IllegalArgumentException("Cannot relativize " + other + " to " + this);
         }
 
         // Source and target must have the same start.
-        if (!normalizedOther.subList(0, normalized.size()).equals(normalized)) {
+        if (normalized.count > 0 && !sameElements(normalizedOther.prefix(normalized.count), normalized, normalized.count)) {
             throw new IllegalArgumentException("Cannot relativize " + other + " to " + this);
         }
 
-        return new Path(separator, false, normalizedOther.subList(normalized.size(), normalizedOther.size()));
+        return append(null, separator, false, normalizedOther.elements(), normalized.count);
     }
 
     /**
@@ -507,38 +705,6 @@ public class Path implements Iterable<Path> {
         return new PathIterator();
     }
 
-    /**
-     * Return a <code>String</code> representation of this Path interpreted as a relative path.
-     *
-     * A relative path does not start with a separator.
-     *
-     * @return a String representation of this Path interpreted as a relative path.
-     */
-    private String getRelativePath() {
-        StringBuilder tmp = new StringBuilder(elements.size() * PATH_ELEMENT_LENGTH);
-
-        String sep = "";
-
-        for (String element : elements) {
-            tmp.append(sep);
-            tmp.append(element);
-            sep = String.valueOf(separator);
-        }
-
-        return tmp.toString();
-    }
-
-    /**
-     * Return a <code>String</code> representation of this Path interpreted as an absolute path.
-     *
-     * An absolute path starts with a separator.
-     *
-     * @return a String representation of this path interpreted as an absolute path.
-     */
-    private String getAbsolutePath() {
-        return separator + getRelativePath();
-    }
-
     /**
      * Normalize this Path by removing as many redundant path elements as possible.
      *
@@ -549,11 +715,11 @@ public class Path implements Iterable<Path> {
      * @return the normalize path.
      */
     public Path normalize() {
-        if (isEmpty()) {
+        if (isEmpty() || !hasDotElement()) {
             return this;
         }
 
-        ArrayList<String> stack = new ArrayList<>(elements);
+        ArrayList<String> stack = new ArrayList<>(Arrays.asList(elements()));
 
         boolean change = true;
 
@@ -581,7 +747,25 @@ public class Path implements Iterable<Path> {
             }
         }
 
-        return new Path(separator, isAbsolute, stack);
+        return new Path(stack.toArray(new String[stack.size()]), separator, isAbsolute);
+    }
+
+    /*
+     * The hash code of the list of elements, as computed by List.hashCode().
+     */
+    private int elementsHash() {
+        if (count == 0) {
+            return 1;
+        }
+
+        int h = elementsHash;
+
+        if (h == 0) {
+            h = 31 * (parent == null ? 1 : parent.elementsHash()) + name.hashCode();
+            elementsHash = h;
+        }
+
+        return h;
     }
 
     /* Generated */
@@ -589,7 +773,7 @@ public class Path implements Iterable<Path> {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + elements.hashCode();
+        result = prime * result + elementsHash();
         result = prime * result + separator;
         return result;
     }
@@ -605,17 +789,51 @@ public class Path implements Iterable<Path> {
         }
 
         Path other = (Path) obj;
-        return isAbsolute == other.isAbsolute && separator == other.separator && elements.equals(other.elements);
+
+        if (isAbsolute != other.isAbsolute || separator != other.separator || count != other.count) {
+            return false;
+        }
+
+        if (elementsHash != 0 && other.elementsHash != 0 && elementsHash != other.elementsHash) {
+            return false;
+        }
+
+        return sameElements(this, other, count);
     }
 
     @Override
     public String toString() {
 
+        String result = string;
+
+        if (result == null) {
+            if (parent != null && parent.string != null) {
+                result = parent.string + separator + name;
+            } else {
+                result = buildString();
+            }
+            string = result;
+        }
+
+        return result;
+    }
+
+    private String buildString() {
+        StringBuilder tmp = new StringBuilder(count * PATH_ELEMENT_LENGTH);
+
         if (isAbsolute) {
-            return getAbsolutePath();
-        } else {
-            return getRelativePath();
+            tmp.append(separator);
         }
+
+        String sep = "";
+
+        for (String element : elements()) {
+            tmp.append(sep);
+            tmp.append(element);
+            sep = String.valueOf(separator);
+        }
+
+        return tmp.toString();
     }
 
     public boolean isAbsolute() {
@@ -623,10 +841,18 @@ public class Path implements Iterable<Path> {
     }
 
     public Path toRelativePath() {
-        return new Path(separator, false, elements);
+        if (!isAbsolute) {
+            return this;
+        }
+
+        return new Path(elements(), separator, false);
     }
 
     public Path toAbsolutePath() {
-        return new Path(separator, true, elements);
+        if (isAbsolute) {
+            return this;
+        }
+
+        return new Path(elements(), separator, true);
     }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.utils.DaemonThreadFactory;
+
+/**
+ * A watch that periodically compares the listings of the watched directories.
+ *
+ * Unless modifications are detected, a poll only retrieves the attributes of every watched directory, and lists only the directories whose modification
+ * time has changed. Such a directory is listed once more in the next poll, so changes made in the same second as the listing are not missed on servers that
+ * report times in seconds.
+ */
+class PollingWatch extends Watch {
+
+    /**
+     * The state of an entry of a watched directory, copied from its attributes.
+     */
+    private static final class Entry {
+
+        final Path path;
+        final boolean directory;
+        final long modified;
+        final long size;
+
+        Entry(PathAttributes attributes) {
+            this.path = attributes.getPath();
+            this.directory = attributes.isDirectory() && !attributes.isSymbolicLink();
+            this.modified = attributes.getLastModifiedTime();
+            this.size = attributes.getSize();
+        }
+    }
+
+    /**
+     * The state of a watched directory.
+     */
+    private static final class Directory {
+
+        long modified;
+        boolean changed = false;
+        Map<Path, Entry> entries;
+
+        Directory(long modified, Map<Path, Entry> entries) {
+            this.modified = modified;
+            this.entries = entries;
+        }
+    }
+
+    private final FileSystem fs;
+
+    // Parents are always added before their subdirectories, so a deleted tree is removed by its parent before its subdirectories are polled.
+    private final LinkedHashMap<Path, Directory> directories = new LinkedHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    PollingWatch(FileSystem fs, Path dir, WatchOptions options) {
+        super(dir, options);
+        this.fs = fs;
+    }
+
+    /**
+     * List the watched directories and start polling.
+     *
+     * @throws XenonException
+     *             If the watched directory could not be listed.
+     */
+    void start() throws XenonException {
+        scan(getPath(), fs.getAttributes(getPath()).getLastModifiedTime(), false);
+
+        long interval = getOptions().getPollInterval();
+
+        executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Watch." + fs.getAdaptorName()));
+        executor.scheduleWithFixedDelay(this::pollOnce, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private Map<Path, Entry> read(Path dir) throws XenonException {
+
+        Iterable<PathAttributes> entries;
+
+        try {
+            entries = fs.listDirectory(dir);
+        } catch (NoSuchPathException e) {
+            throw e;
+        } catch (XenonException e) {
+            // Not every adaptor reports a missing directory as such.
+            if (!fs.exists(dir)) {
+                throw new NoSuchPathException(fs.getAdaptorName(), "Directory was deleted: " + dir, e);
+            }
+            throw e;
+        }
+
+        LinkedHashMap<Path, Entry> result = new LinkedHashMap<>();
+
+        for (PathAttributes e : entries) {
+            if (!fs.isDotDot(e.getPath())) {
+                result.put(e.getPath(), new Entry(e));
+            }
+        }
+
+        return result;
+    }
+
+    private void scan(Path dir, long modified, boolean report) throws XenonException {
+
+        Map<Path, Entry> entries;
+
+        try {
+            entries = read(dir);
+        } catch (NoSuchPathException e) {
+            if (report) {
+                // Deleted again before we got to it.
+                return;
+            }
+            throw e;
+        }
+
+        directories.put(dir, new Directory(modified, entries));
+
+        for (Entry e : entries.values()) {
+            if (report) {
+                deliver(WatchEvent.Kind.CREATED, e.path);
+            }
+
+            if (getOptions().isRecursive() && e.directory) {
+                scan(e.path, e.modified, report);
+            }
+        }
+    }
+
+    /**
+     * Poll all watched directories once. Called by the executor, but may also be called directly.
+     */
+    void pollOnce() {
+        try {
+            for (Path dir : new ArrayList<>(directories.keySet())) {
+                Directory d = directories.get(dir);
+
+                // Removed while polling its parent.
+                if (d != null) {
+                    poll(dir, d);
+                }
+            }
+        } catch (XenonException | RuntimeException e) {
+            failed(e instanceof XenonException ? (XenonException) e : new XenonException(fs.getAdaptorName(), "Watch failed", e));
+        }
+    }
+
+    private void poll(Path dir, Directory d) throws XenonException {
+
+        try {
+            if (!getOptions().getDetectModifications()) {
+                long modified = fs.getAttributes(dir).getLastModifiedTime();
+                boolean relist = modified != d.modified || d.changed;
+
+                d.changed = modified != d.modified;
+                d.modified = modified;
+
+                if (!relist) {
+                    return;
+                }
+            }
+
+            compare(dir, d);
+        } catch (NoSuchPathException e) {
+            if (dir.equals(getPath())) {
+                throw e;
+            }
+            // A deleted subdirectory is reported when its parent is listed.
+        }
+    }
+
+    private void compare(Path dir, Directory d) throws XenonException {
+
+        Map<Path, Entry> current = read(dir);
+        Map<Path, Entry> previous = d.entries;
+
+        d.entries = current;
+
+        for (Entry e : previous.values()) {
+            if (!current.containsKey(e.path)) {
+                deleted(e);
+            }
+        }
+
+        for (Entry e : current.values()) {
+            Entry old = previous.get(e.path);
+
+            if (old == null) {
+                created(e);
+            } else if (old.directory != e.directory) {
+                deleted(old);
+                created(e);
+            } else if (!e.directory && (old.modified != e.modified || old.size != e.size)) {
+                deliver(WatchEvent.Kind.MODIFIED, e.path);
+            }
+        }
+    }
+
+    private void created(Entry e) throws XenonException {
+
+        deliver(WatchEvent.Kind.CREATED, e.path);
+
+        if (getOptions().isRecursive() && e.directory) {
+            scan(e.path, e.modified, true);
+        }
+    }
+
+    private void deleted(Entry e) {
+
+        if (e.directory) {
+            Directory d = directories.remove(e.path);
+
+            if (d != null) {
+                for (Entry child : d.entries.values()) {
+                    deleted(child);
+                }
+            }
+        }
+
+        deliver(WatchEvent.Kind.DELETED, e.path);
+    }
+
+    @Override
+    protected void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
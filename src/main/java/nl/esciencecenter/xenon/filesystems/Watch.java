@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nl.esciencecenter.xenon.XenonException;
+
+/**
+ * Watch reports the changes below a directory, as returned by {@link FileSystem#watch(Path, WatchOptions)}.
+ *
+ * The changes are detected in the background, and queued until they are retrieved with {@link #poll(long)}. A watch must be closed when it is no longer
+ * needed. It is also closed when its {@link FileSystem} is closed.
+ */
+public abstract class Watch implements AutoCloseable {
+
+    private final Path path;
+    private final WatchOptions options;
+
+    private final ArrayList<WatchEvent> events = new ArrayList<>();
+
+    private XenonException exception;
+    private boolean closed = false;
+
+    // The file system that closes this watch when it is closed itself.
+    private FileSystem owner;
+
+    /**
+     * Create a Watch.
+     *
+     * @param path
+     *            the absolute path of the watched directory.
+     * @param options
+     *            the options of the watch.
+     */
+    protected Watch(Path path, WatchOptions options) {
+        this.path = path;
+        this.options = options;
+    }
+
+    /**
+     * Get the watched directory.
+     *
+     * @return the absolute path of the watched directory.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the options of this watch.
+     *
+     * @return the options.
+     */
+    public WatchOptions getOptions() {
+        return options;
+    }
+
+    synchronized void setOwner(FileSystem owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Queue an event. Events are ignored once the watch is closed.
+     *
+     * @param kind
+     *            the kind of change.
+     * @param path
+     *            the absolute path that was changed.
+     */
+    protected synchronized void deliver(WatchEvent.Kind kind, Path path) {
+        if (!closed) {
+            events.add(new WatchEvent(kind, path));
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop the watch because of an error. The error is thrown by {@link #poll(long)} after the queued events have been retrieved.
+     *
+     * @param e
+     *            the error that stopped the watch.
+     */
+    protected void failed(XenonException e) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            exception = e;
+        }
+
+        try {
+            close();
+        } catch (XenonException ignored) {
+            // The watch has already failed.
+        }
+    }
+
+    /**
+     * Retrieve the queued events, waiting for at most <code>timeout</code> milliseconds until there is at least one.
+     *
+     * @param timeout
+     *            the maximum time to wait in milliseconds, or 0 to return immediately.
+     * @return the events in the order in which they were detected, which is empty if no events arrived in time or the watch is closed.
+     * @throws XenonException
+     *             If the watch was stopped by an error, for example because the watched directory was deleted.
+     */
+    public synchronized List<WatchEvent> poll(long timeout) throws XenonException {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        try {
+            while (events.isEmpty() && !closed) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+                if (left <= 0) {
+                    break;
+                }
+
+                wait(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (events.isEmpty() && exception != null) {
+            throw exception;
+        }
+
+        ArrayList<WatchEvent> result = new ArrayList<>(events);
+        events.clear();
+        return result;
+    }
+
+    /**
+     * Check if the watch is still detecting changes.
+     *
+     * @return if the watch is open.
+     */
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Stop detecting changes. The events that are already queued can still be retrieved.
+     *
+     * @throws XenonException
+     *             If the watch could not be stopped cleanly.
+     */
+    @Override
+    public void close() throws XenonException {
+
+        FileSystem fs;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            fs = owner;
+            notifyAll();
+        }
+
+        if (fs != null) {
+            fs.removeWatch(this);
+        }
+
+        stop();
+    }
+
+    /**
+     * Release the resources of the watch. Called once, when the watch is closed.
+     *
+     * @throws XenonException
+     *             If the resources could not be released cleanly.
+     */
+    protected abstract void stop() throws XenonException;
+
+    @Override
+    public String toString() {
+        return "Watch [path=" + path + ", options=" + options + "]";
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+/**
+ * WatchEvent describes a change to a path below a watched directory.
+ */
+public class WatchEvent {
+
+    /**
+     * The kinds of change that can be reported.
+     */
+    public enum Kind {
+        /** The path was created, or renamed to this path. */
+        CREATED,
+        /** The content or attributes of the path were changed. */
+        MODIFIED,
+        /** The path was deleted, or renamed to another path. */
+        DELETED
+    }
+
+    private final Kind kind;
+    private final Path path;
+
+    /**
+     * Create a WatchEvent.
+     *
+     * @param kind
+     *            the kind of change.
+     * @param path
+     *            the absolute path that was changed.
+     */
+    public WatchEvent(Kind kind, Path path) {
+        this.kind = kind;
+        this.path = path;
+    }
+
+    /**
+     * Get the kind of change.
+     *
+     * @return the kind of change.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Get the path that was changed.
+     *
+     * @return the absolute path.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        WatchEvent other = (WatchEvent) o;
+        return kind == other.kind && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * kind.hashCode() + path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "WatchEvent [kind=" + kind + ", path=" + path + "]";
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+/**
+ * WatchOptions describes how {@link FileSystem#watch(Path, WatchOptions)} watches a directory.
+ *
+ * Adaptors that can be notified of changes by the server ignore the poll interval. Other adaptors list the watched directories at the poll interval, and
+ * report the differences between consecutive listings.
+ */
+public class WatchOptions {
+
+    /** The default poll interval in milliseconds. */
+    public static final long DEFAULT_POLL_INTERVAL = 5000;
+
+    /** Watch the subdirectories too. */
+    private boolean recursive = true;
+
+    /** The time between two polls in milliseconds. */
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    /** List every directory in every poll. */
+    private boolean detectModifications = false;
+
+    /**
+     * Create a WatchOptions that watches the entire tree by polling every {@link #DEFAULT_POLL_INTERVAL} milliseconds.
+     */
+    public WatchOptions() {
+        // nothing
+    }
+
+    /**
+     * Create a WatchOptions by copying an existing one.
+     *
+     * @param original
+     *            WatchOptions to copy
+     */
+    public WatchOptions(WatchOptions original) {
+        recursive = original.recursive;
+        pollInterval = original.pollInterval;
+        detectModifications = original.detectModifications;
+    }
+
+    /**
+     * Check if the subdirectories are watched too.
+     *
+     * @return if the subdirectories are watched.
+     */
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Set if the subdirectories are watched too, including those that are created while watching.
+     *
+     * @param recursive
+     *            if the subdirectories should be watched.
+     */
+    public void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    /**
+     * Get the time between two polls.
+     *
+     * @return the poll interval in milliseconds.
+     */
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Set the time between two polls.
+     *
+     * @param pollInterval
+     *            the poll interval in milliseconds.
+     * @throws IllegalArgumentException
+     *             If the interval is 0 or less.
+     */
+    public void setPollInterval(long pollInterval) {
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException("Invalid poll interval: " + pollInterval);
+        }
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Check if every directory is listed in every poll.
+     *
+     * @return if every directory is listed in every poll.
+     */
+    public boolean getDetectModifications() {
+        return detectModifications;
+    }
+
+    /**
+     * Set if every directory is listed in every poll.
+     *
+     * By default, a poll only retrieves the attributes of the watched directories, and only lists the directories whose modification time has changed.
+     * This detects files that are created, deleted or renamed, but not files that are modified in place, as that does not change the modification time of
+     * their directory. When set, every directory is listed in every poll so these modifications are reported too, at the cost of transferring all listings.
+     *
+     * Adaptors that are notified of changes by the server always report modifications.
+     *
+     * @param detectModifications
+     *            if every directory should be listed in every poll.
+     */
+    public void setDetectModifications(boolean detectModifications) {
+        this.detectModifications = detectModifications;
+    }
+
+    @Override
+    public String toString() {
+        return "WatchOptions [recursive=" + recursive + ", pollInterval=" + pollInterval + ", detectModifications=" + detectModifications + "]";
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe pool of byte buffers, used to avoid allocating a new buffer for every file that is copied.
+ *
+ * Buffers are grouped in size classes of powers of two, starting at {@link #MIN_BUFFER_SIZE}. A request is served from the smallest class that fits, so the
+ * returned buffer may be larger than requested.
+ *
+ * The total size of the buffers of the pool, both idle and in use, is bounded by its limit. When the limit is reached, {@link #acquire(int)} does not
+ * block, as a caller may already hold other buffers that are only released once it gets this one. Instead, it returns a buffer that is not part of the
+ * pool. Such a buffer, a buffer larger than {@link #MAX_BUFFER_SIZE}, and a buffer that does not fit in the pool when it is released, are left to the
+ * garbage collector. The limit therefore bounds the memory held by the pool, but not the peak memory used for buffers, which also depends on the callers,
+ * for example on the number of concurrent transfers.
+ */
+public class BufferPool {
+
+    /** The smallest size class of the pool. */
+    public static final int MIN_BUFFER_SIZE = 4 * 1024;
+
+    /** The largest size class of the pool. Larger buffers are allocated, but never pooled. */
+    public static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+
+    /** The limit of the pool shared by all file systems. */
+    public static final long DEFAULT_LIMIT = 64L * 1024 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+
+    // Must be initialized after the size class constants above.
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_LIMIT);
+
+    private final long limit;
+
+    // The total size of the buffers of the pool, and of those that are idle.
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong pooled = new AtomicLong(0);
+
+    // The number of buffers of the pool that are in use, per size class.
+    private final AtomicIntegerArray inUse;
+
+    private final ConcurrentLinkedQueue<byte[]>[] free;
+
+    /**
+     * Returns the pool shared by all file systems.
+     *
+     * @return the shared pool.
+     */
+    public static BufferPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Create a new BufferPool.
+     *
+     * @param limit
+     *            the maximum total size in bytes of the buffers of the pool, both idle and in use.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public BufferPool(long limit) {
+
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit may not be negative!");
+        }
+
+        this.limit = limit;
+
+        inUse = new AtomicIntegerArray(CLASSES);
+        free = new ConcurrentLinkedQueue[CLASSES];
+
+        for (int i = 0; i < CLASSES; i++) {
+            free[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Returns the index of the smallest size class that can hold <code>size</code> bytes, or -1 if the size is too large to be pooled.
+     */
+    private static int sizeClass(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+
+        if (size > MAX_BUFFER_SIZE) {
+            return -1;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Get a buffer of at least <code>size</code> bytes from the pool. The content of the buffer is undefined.
+     *
+     * @param size
+     *            the minimum size of the buffer.
+     * @return a buffer of at least <code>size</code> bytes.
+     */
+    public byte[] acquire(int size) {
+
+        if (size < 0) {
+            throw new IllegalArgumentException("Size may not be negative!");
+        }
+
+        int index = sizeClass(size);
+
+        if (index < 0) {
+            return new byte[size];
+        }
+
+        byte[] buffer = free[index].poll();
+
+        if (buffer != null) {
+            pooled.addAndGet(-buffer.length);
+        } else {
+            buffer = new byte[MIN_BUFFER_SIZE << index];
+
+            if (!reserve(buffer.length)) {
+                // Not part of the pool, so it does not count towards the limit.
+                return buffer;
+            }
+        }
+
+        inUse.incrementAndGet(index);
+        return buffer;
+    }
+
+    /**
+     * Add <code>size</code> bytes to the total size of the pool, unless that would exceed the limit.
+     */
+    private boolean reserve(int size) {
+
+        long current;
+
+        do {
+            current = total.get();
+
+            if (current + size > limit) {
+                return false;
+            }
+        } while (!total.compareAndSet(current, current + size));
+
+        return true;
+    }
+
+    /**
+     * Decrement the number of buffers of a size class in use, unless it is 0.
+     */
+    private boolean returned(int index) {
+
+        int current;
+
+        do {
+            current = inUse.get(index);
+
+            if (current == 0) {
+                return false;
+            }
+        } while (!inUse.compareAndSet(index, current, current - 1));
+
+        return true;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer may not be used by the caller afterwards.
+     *
+     * @param buffer
+     *            the buffer to return, may be <code>null</code>.
+     */
+    public void release(byte[] buffer) {
+
+        if (buffer == null) {
+            return;
+        }
+
+        int index = sizeClass(buffer.length);
+
+        // Only buffers handed out by acquire have exactly the size of their class.
+        if (index < 0 || buffer.length != MIN_BUFFER_SIZE << index) {
+            return;
+        }
+
+        // The buffers of a size class are interchangeable, so only their number is tracked. A buffer that is not part of the pool takes the place of one
+        // that is, or joins the pool if it fits.
+        if (!returned(index) && !reserve(buffer.length)) {
+            return;
+        }
+
+        pooled.addAndGet(buffer.length);
+        free[index].offer(buffer);
+    }
+
+    /**
+     * Returns the total size of the idle buffers currently kept by the pool.
+     *
+     * @return the number of bytes in the pool.
+     */
+    public long getPooledBytes() {
+        return pooled.get();
+    }
+
+    /**
+     * Returns the total size of the buffers of the pool, both idle and in use.
+     *
+     * @return the number of bytes held by the pool.
+     */
+    public long getTotalBytes() {
+        return total.get();
+    }
+
+    /**
+     * Returns the maximum total size of the buffers of the pool, both idle and in use. Buffers handed out when the limit is reached are not part of the
+     * pool, so this does not limit the peak memory used for buffers.
+     *
+     * @return the limit of the pool in bytes.
+     */
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.InvalidPropertyException;
+import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonPropertyDescription;
+import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
+import nl.esciencecenter.xenon.adaptors.XenonProperties;
+
+public class FileSystemSettingsTest {
+
+    private static final String PREFIX = FileAdaptor.ADAPTORS_PREFIX + "test.";
+
+    private static XenonProperties properties(String... keyValues) throws XenonException {
+        HashMap<String, String> p = new HashMap<>();
+
+        for (int i = 0; i < keyValues.length; i += 2) {
+            p.put(PREFIX + keyValues[i], keyValues[i + 1]);
+        }
+
+        XenonPropertyDescription optimistic = new XenonPropertyDescription(PREFIX + "optimistic", Type.BOOLEAN, "false", "test");
+        return new XenonProperties(FileAdaptor.withCommonProperties(PREFIX, optimistic), p);
+    }
+
+    @Test
+    public void test_nullPropertiesGivesDefaults() throws XenonException {
+        FileSystemSettings s = FileAdaptor.getFileSystemSettings("test", null);
+        assertEquals(FileSystemSettings.DEFAULT_BUFFER_SIZE, s.getBufferSize());
+        assertEquals(1, s.getCopyParallelism());
+        assertEquals(0, s.getCacheTTL());
+        assertFalse(s.isOptimistic());
+    }
+
+    @Test
+    public void test_defaultsMatchDescriptions() throws XenonException {
+        FileSystemSettings s = FileAdaptor.getFileSystemSettings("test", properties());
+        assertEquals(FileSystemSettings.DEFAULT_BUFFER_SIZE, s.getBufferSize());
+        assertEquals(1, s.getCopyParallelism());
+        assertFalse(s.isCopyPipelined());
+        assertEquals(1, s.getDeleteParallelism());
+        assertEquals(1, s.getListParallelism());
+        assertEquals(0, s.getCacheTTL());
+        assertEquals(FileSystemSettings.DEFAULT_CACHE_SIZE, s.getCacheSize());
+        assertFalse(s.isOptimistic());
+    }
+
+    @Test
+    public void test_readsAllProperties() throws XenonException {
+        FileSystemSettings s = FileAdaptor.getFileSystemSettings("test", properties("bufferSize", "1K", "copy.parallelism", "2", "copy.pipelined", "true",
+                "delete.parallelism", "3", "list.parallelism", "4", "cache.ttl", "5000", "cache.size", "6", "optimistic", "true"));
+        assertEquals(1024, s.getBufferSize());
+        assertEquals(2, s.getCopyParallelism());
+        assertTrue(s.isCopyPipelined());
+        assertEquals(3, s.getDeleteParallelism());
+        assertEquals(4, s.getListParallelism());
+        assertEquals(5000, s.getCacheTTL());
+        assertEquals(6, s.getCacheSize());
+        assertTrue(s.isOptimistic());
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_invalidBufferSize() throws XenonException {
+        FileAdaptor.getFileSystemSettings("test", properties("bufferSize", "0"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_invalidCopyParallelism() throws XenonException {
+        FileAdaptor.getFileSystemSettings("test", properties("copy.parallelism", "0"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_invalidDeleteParallelism() throws XenonException {
+        FileAdaptor.getFileSystemSettings("test", properties("delete.parallelism", "-1"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_invalidListParallelism() throws XenonException {
+        FileAdaptor.getFileSystemSettings("test", properties("list.parallelism", "0"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_invalidCacheTTL() throws XenonException {
+        FileAdaptor.getFileSystemSettings("test", properties("cache.ttl", "-1"));
+    }
+
+    @Test(expected = InvalidPropertyException.class)
+    public void test_invalidCacheSize() throws XenonException {
+        FileAdaptor.getFileSystemSettings("test", properties("cache.size", "0"));
+    }
+
+    @Test
+    public void test_withCopiesOnlyChangeOneSetting() {
+        FileSystemSettings a = FileSystemSettings.defaults();
+        FileSystemSettings b = a.withCopyParallelism(8);
+        assertEquals(1, a.getCopyParallelism());
+        assertEquals(8, b.getCopyParallelism());
+        assertEquals(a.getBufferSize(), b.getBufferSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_withInvalidBufferSize() {
+        FileSystemSettings.defaults().withBufferSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_withInvalidCacheTTL() {
+        FileSystemSettings.defaults().withCache(-1, 10);
+    }
+}
@@ -232,4 +232,94 @@ public class PathAttributesTest {
         PathAttributesImplementation a = new PathAttributesImplementation();
         assertFalse(a.equals(null));
     }
+
+    @Test
+    public void test_permissionBits() throws Exception {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPermissionBits(0100754);
+        assertEquals(0754, a.getPermissionBits());
+        assertEquals(PosixFileUtils.bitsToPermissions(0754), a.getPermissions());
+    }
+
+    @Test
+    public void test_permissionBits_unset() throws Exception {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        assertEquals(-1, a.getPermissionBits());
+        assertNull(a.getPermissions());
+    }
+
+    @Test
+    public void test_permissions_copy() throws Exception {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPermissionBits(0700);
+        a.getPermissions().clear();
+        assertEquals(PosixFileUtils.bitsToPermissions(0700), a.getPermissions());
+    }
+
+    private static class CountingResolver implements PathAttributesImplementation.Resolver {
+
+        int calls;
+
+        @Override
+        public String getOwner() {
+            calls++;
+            return "aap";
+        }
+
+        @Override
+        public String getGroup() {
+            calls++;
+            return "noot";
+        }
+
+        @Override
+        public boolean isExecutable() {
+            calls++;
+            return true;
+        }
+
+        @Override
+        public boolean isReadable() {
+            calls++;
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            calls++;
+            return true;
+        }
+    }
+
+    @Test
+    public void test_resolver_lazy() throws Exception {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        CountingResolver r = new CountingResolver();
+        a.setResolver(r);
+
+        assertEquals(0, r.calls);
+        assertEquals("aap", a.getOwner());
+        assertEquals("aap", a.getOwner());
+        assertEquals(1, r.calls);
+
+        assertEquals("noot", a.getGroup());
+        assertTrue(a.isExecutable());
+        assertTrue(a.isReadable());
+        assertTrue(a.isWritable());
+        assertTrue(a.isWritable());
+        assertEquals(5, r.calls);
+    }
+
+    @Test
+    public void test_resolver_overridden() throws Exception {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        CountingResolver r = new CountingResolver();
+        a.setResolver(r);
+        a.setOwner("mies");
+        a.setWritable(false);
+
+        assertEquals("mies", a.getOwner());
+        assertFalse(a.isWritable());
+        assertEquals(0, r.calls);
+    }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.XenonException;
+
+public class ReconnectingInputStreamTest {
+
+    private static final byte[] DATA = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+    /**
+     * Returns the data from an offset, but fails after <code>failAfter</code> bytes.
+     */
+    class FailingInputStream extends InputStream {
+
+        private final ByteArrayInputStream in;
+        private int failAfter;
+
+        FailingInputStream(long offset, int failAfter) {
+            this.in = new ByteArrayInputStream(DATA, (int) offset, DATA.length - (int) offset);
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (failAfter-- <= 0) {
+                throw new IOException("Connection lost");
+            }
+            return in.read();
+        }
+    }
+
+    class Opener implements ReconnectingInputStream.Opener {
+
+        final List<Long> offsets = new ArrayList<>();
+        final int failAfter;
+
+        Opener(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public InputStream open(long offset) throws XenonException {
+            offsets.add(offset);
+            return new FailingInputStream(offset, failAfter);
+        }
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int b = in.read();
+
+        while (b != -1) {
+            out.write(b);
+            b = in.read();
+        }
+
+        return out.toByteArray();
+    }
+
+    @Test
+    public void test_readNoFailure() throws Exception {
+        Opener opener = new Opener(Integer.MAX_VALUE);
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 3)) {
+            assertArrayEquals(DATA, readAll(in));
+            assertEquals(DATA.length, in.getOffset());
+        }
+
+        assertEquals(1, opener.offsets.size());
+    }
+
+    @Test
+    public void test_readReconnects() throws Exception {
+        Opener opener = new Opener(4);
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 1)) {
+            assertArrayEquals(DATA, readAll(in));
+        }
+
+        // Every stream fails after 4 bytes, so we reconnect at offset 4 and 8.
+        assertEquals(3, opener.offsets.size());
+        assertEquals(Long.valueOf(4), opener.offsets.get(1));
+        assertEquals(Long.valueOf(8), opener.offsets.get(2));
+    }
+
+    @Test
+    public void test_readAtOffset() throws Exception {
+        Opener opener = new Opener(Integer.MAX_VALUE);
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 6, 1)) {
+            assertArrayEquals(new byte[] { 6, 7, 8, 9 }, readAll(in));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void test_readRetriesExhausted() throws Exception {
+        Opener opener = new Opener(0);
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 2)) {
+            in.read();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void test_readReopenFails() throws Exception {
+        ReconnectingInputStream.Opener opener = offset -> {
+            if (offset > 0) {
+                throw new XenonException("TEST", "Cannot connect");
+            }
+            return new FailingInputStream(offset, 2);
+        };
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 2)) {
+            readAll(in);
+        }
+    }
+
+    @Test
+    public void test_readAfterCloseDoesNotReconnect() throws Exception {
+        Opener opener = new Opener(0);
+
+        ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 3);
+        in.close();
+
+        try {
+            in.read();
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, opener.offsets.size());
+    }
+
+    @Test
+    public void test_interruptedReadDoesNotReconnect() throws Exception {
+        List<Long> offsets = new ArrayList<>();
+
+        ReconnectingInputStream.Opener opener = offset -> {
+            offsets.add(offset);
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new InterruptedIOException("Interrupted");
+                }
+            };
+        };
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 3, 0)) {
+            in.read();
+        } catch (InterruptedIOException e) {
+            // expected
+        }
+
+        assertEquals(1, offsets.size());
+    }
+
+    @Test
+    public void test_readWhileInterruptedDoesNotReconnect() throws Exception {
+        Opener opener = new Opener(0);
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 3, 0)) {
+            Thread.currentThread().interrupt();
+            in.read();
+        } catch (IOException e) {
+            // expected
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        assertEquals(1, opener.offsets.size());
+    }
+
+    @Test
+    public void test_readBacksOff() throws Exception {
+        Opener opener = new Opener(0);
+
+        long start = System.nanoTime();
+
+        try (ReconnectingInputStream in = new ReconnectingInputStream(opener, 0, 3, 20)) {
+            in.read();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // Waits 20, 40 and 80 ms before the three attempts.
+        assertEquals(4, opener.offsets.size());
+        assertTrue(System.nanoTime() - start >= 140 * 1000 * 1000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negativeBackoff() throws Exception {
+        new ReconnectingInputStream(offset -> new ByteArrayInputStream(DATA), 0, 1, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negativeRetries() throws Exception {
+        new ReconnectingInputStream(offset -> new ByteArrayInputStream(DATA), 0, -1);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.adaptors.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+
+public class RecursiveListIteratorTest {
+
+    private final HashMap<Path, List<PathAttributes>> tree = new HashMap<>();
+    private final List<Path> listed = new ArrayList<>();
+    private final List<Path> closed = new ArrayList<>();
+
+    private PathAttributes entry(String path, boolean directory, boolean link) {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path(path));
+        a.setDirectory(directory);
+        a.setRegular(!directory);
+        a.setSymbolicLink(link);
+        return a;
+    }
+
+    private Iterator<PathAttributes> list(Path dir) {
+        listed.add(dir);
+        return tree.get(dir).iterator();
+    }
+
+    private Iterator<PathAttributes> listCloseable(Path dir) {
+        Iterator<PathAttributes> it = list(dir);
+
+        return new CloseableIterator<PathAttributes>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public PathAttributes next() {
+                return it.next();
+            }
+
+            @Override
+            public void close() {
+                closed.add(dir);
+            }
+        };
+    }
+
+    private List<String> iterate(Path root) {
+        ArrayList<String> result = new ArrayList<>();
+        Iterator<PathAttributes> it = new RecursiveListIterator(this::list, root);
+
+        while (it.hasNext()) {
+            result.add(it.next().getPath().toString());
+        }
+
+        return result;
+    }
+
+    @Test
+    public void test_depthFirst() {
+        tree.put(new Path("/a"), Arrays.asList(entry("/a/b", true, false), entry("/a/f0", false, false)));
+        tree.put(new Path("/a/b"), Arrays.asList(entry("/a/b/f1", false, false)));
+
+        assertEquals(Arrays.asList("/a/b", "/a/b/f1", "/a/f0"), iterate(new Path("/a")));
+    }
+
+    @Test
+    public void test_skipsDotDot() {
+        tree.put(new Path("/a"), Arrays.asList(entry("/a/.", true, false), entry("/a/..", true, false), entry("/a/f0", false, false)));
+
+        assertEquals(Arrays.asList("/a/f0"), iterate(new Path("/a")));
+    }
+
+    @Test
+    public void test_doesNotFollowLinks() {
+        tree.put(new Path("/a"), Arrays.asList(entry("/a/link", true, true)));
+
+        assertEquals(Arrays.asList("/a/link"), iterate(new Path("/a")));
+        assertEquals(1, listed.size());
+    }
+
+    @Test
+    public void test_listsLazily() {
+        tree.put(new Path("/a"), Arrays.asList(entry("/a/b", true, false), entry("/a/c", true, false)));
+        tree.put(new Path("/a/b"), new ArrayList<>());
+        tree.put(new Path("/a/c"), new ArrayList<>());
+
+        Iterator<PathAttributes> it = new RecursiveListIterator(this::list, new Path("/a"));
+        assertEquals(new Path("/a/b"), it.next().getPath());
+        assertEquals(1, listed.size());
+
+        assertEquals(new Path("/a/c"), it.next().getPath());
+        assertEquals(2, listed.size());
+
+        assertFalse(it.hasNext());
+        assertEquals(3, listed.size());
+    }
+
+    @Test
+    public void test_closesExhaustedDirectories() {
+        tree.put(new Path("/a"), Arrays.asList(entry("/a/b", true, false), entry("/a/f0", false, false)));
+        tree.put(new Path("/a/b"), Arrays.asList(entry("/a/b/f1", false, false)));
+
+        Iterator<PathAttributes> it = new RecursiveListIterator(this::listCloseable, new Path("/a"));
+
+        while (it.hasNext()) {
+            it.next();
+        }
+
+        assertEquals(Arrays.asList(new Path("/a/b"), new Path("/a")), closed);
+    }
+
+    @Test
+    public void test_closeClosesOpenDirectories() {
+        tree.put(new Path("/a"), Arrays.asList(entry("/a/b", true, false), entry("/a/f0", false, false)));
+        tree.put(new Path("/a/b"), Arrays.asList(entry("/a/b/f1", false, false)));
+
+        RecursiveListIterator it = new RecursiveListIterator(this::listCloseable, new Path("/a"));
+        assertEquals(new Path("/a/b"), it.next().getPath());
+        assertEquals(new Path("/a/b/f1"), it.next().getPath());
+
+        it.close();
+
+        assertEquals(Arrays.asList(new Path("/a/b"), new Path("/a")), closed);
+        assertFalse(it.hasNext());
+        assertEquals(2, listed.size());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void test_nextWhenEmpty() {
+        tree.put(new Path("/a"), new ArrayList<>());
+        new RecursiveListIterator(this::list, new Path("/a")).next();
+    }
+}
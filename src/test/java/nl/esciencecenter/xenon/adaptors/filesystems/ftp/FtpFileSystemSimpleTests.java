@@ -15,13 +15,30 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems.ftp;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileFilter;
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.credentials.CredentialMap;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
+import nl.esciencecenter.xenon.filesystems.ListOptions;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
 
 public class FtpFileSystemSimpleTests {
 
@@ -44,4 +61,98 @@ public class FtpFileSystemSimpleTests {
     public void test_location_empty() throws XenonException {
         new FtpFileAdaptor().createFileSystem("", new PasswordCredential("aap", "noot".toCharArray()), null);
     }
+
+    private static FTPFile file(String name, int type, long size) {
+        FTPFile f = new FTPFile();
+        f.setName(name);
+        f.setType(type);
+        f.setSize(size);
+        f.setTimestamp(Calendar.getInstance());
+        return f;
+    }
+
+    @Test
+    public void test_listBatchSkipsDotDot() throws XenonException {
+        // A server that includes the current and parent directory in a LIST.
+        FTPClient client = new FTPClient() {
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public FTPFile[] listFiles(String pathname, FTPFileFilter filter) {
+                return new FTPFile[] { file(".", FTPFile.DIRECTORY_TYPE, 0), file("..", FTPFile.DIRECTORY_TYPE, 0), file("a", FTPFile.FILE_TYPE, 42) };
+            }
+        };
+
+        FtpFileSystem f = new FtpFileSystem("0", "ftp", "localhost", new Path("/"), FileSystemSettings.defaults(), client, new DefaultCredential(), null,
+                null);
+
+        DirectoryBatch b = new DirectoryBatch(new Path("/dir"));
+        f.listDirectory(new Path("/dir"), b);
+
+        assertEquals(1, b.size());
+
+        DirectoryBatch.Cursor c = b.cursor();
+        assertTrue(c.next());
+        assertEquals("a", c.getName());
+        assertEquals(42, c.getSize());
+    }
+
+    @Test
+    public void test_listGlobFiltersOnClient() throws XenonException {
+        ArrayList<String> listed = new ArrayList<>();
+
+        // An ls-style server, which would list the contents of sub.nc for "LIST /dir/*.nc", and hide .a.nc.
+        FTPClient client = new FTPClient() {
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public String printWorkingDirectory() {
+                return "/";
+            }
+
+            @Override
+            public boolean changeWorkingDirectory(String pathname) {
+                return true;
+            }
+
+            @Override
+            public FTPFile[] listFiles() {
+                return new FTPFile[] { file("dir", FTPFile.DIRECTORY_TYPE, 0) };
+            }
+
+            @Override
+            public FTPFile[] listFiles(String pathname, FTPFileFilter filter) {
+                listed.add(pathname);
+
+                if (!"/dir".equals(pathname)) {
+                    return new FTPFile[] { file("x", FTPFile.FILE_TYPE, 1) };
+                }
+
+                return new FTPFile[] { file(".a.nc", FTPFile.FILE_TYPE, 1), file("b.nc", FTPFile.FILE_TYPE, 1), file("c.txt", FTPFile.FILE_TYPE, 1),
+                        file("sub.nc", FTPFile.DIRECTORY_TYPE, 0) };
+            }
+        };
+
+        FtpFileSystem f = new FtpFileSystem("0", "ftp", "localhost", new Path("/"), FileSystemSettings.defaults(), client, new DefaultCredential(), null,
+                null);
+
+        ListOptions o = new ListOptions();
+        o.setGlob("*.nc");
+        o.setMaxDepth(1);
+
+        HashSet<Path> result = new HashSet<>();
+
+        for (PathAttributes p : f.list(new Path("/dir"), o)) {
+            result.add(p.getPath());
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/dir/.a.nc"), new Path("/dir/b.nc"), new Path("/dir/sub.nc"))), result);
+        assertEquals(Arrays.asList("/dir"), listed);
+    }
 }
@@ -16,18 +16,47 @@
 package nl.esciencecenter.xenon.adaptors.filesystems.local;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
+import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
+import nl.esciencecenter.xenon.filesystems.ListOptions;
 import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
+import nl.esciencecenter.xenon.filesystems.Watch;
+import nl.esciencecenter.xenon.filesystems.WatchEvent;
+import nl.esciencecenter.xenon.filesystems.WatchOptions;
+import nl.esciencecenter.xenon.utils.LocalFileSystemUtils;
 
 public class LocalFileSystemSimpleTest {
 
+    private static final FileSystemSettings SETTINGS = FileSystemSettings.defaults().withBufferSize(4096);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // @Test(expected = XenonException.class)
     // public void test_getLocalRoot_fails() throws XenonException {
     // LocalFileSystem f = new LocalFileSystem("test", "/", "/", new Path("/"), null);
@@ -50,15 +79,183 @@ public class LocalFileSystemSimpleTest {
 
     @Test
     public void test_xenonPermissions_null() throws XenonException {
-        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path("/"), 4096, null)) {
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path("/"), SETTINGS, null)) {
             assertNull(f.xenonPermissions(null));
         }
     }
 
     @Test
     public void test_javaPermissions_null() throws XenonException {
-        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path("/"), 4096, null)) {
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path("/"), SETTINGS, null)) {
             assertEquals(new HashSet<java.nio.file.attribute.PosixFilePermission>(0), f.javaPermissions(null));
         }
     }
+
+    @Test
+    public void test_getAttributes_unix() throws XenonException, IOException {
+
+        assumeFalse(LocalFileSystemUtils.isWindows());
+
+        File dir = folder.newFolder();
+        java.nio.file.Path file = new File(dir, ".hidden").toPath();
+        Files.write(file, new byte[42]);
+        Files.setPosixFilePermissions(file, java.nio.file.attribute.PosixFilePermissions.fromString("rw-r-----"));
+
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path(dir.getAbsolutePath()), SETTINGS, null)) {
+
+            PathAttributes a = f.getAttributes(new Path(".hidden"));
+
+            assertTrue(a.isRegular());
+            assertFalse(a.isDirectory());
+            assertTrue(a.isHidden());
+            assertEquals(42, a.getSize());
+            assertEquals(PosixFileUtils.bitsToPermissions(0640), a.getPermissions());
+            assertEquals(Files.getLastModifiedTime(file).toMillis(), a.getLastModifiedTime());
+            assertEquals(Files.getOwner(file).getName(), a.getOwner());
+            assertEquals(Files.readAttributes(file, PosixFileAttributes.class).group().getName(), a.getGroup());
+            assertTrue(a.isReadable());
+            assertTrue(a.isWritable());
+            assertFalse(a.isExecutable());
+        }
+    }
+
+    @Test
+    public void test_listBatch() throws XenonException, IOException {
+
+        File dir = folder.newFolder();
+        Files.write(new File(dir, "file").toPath(), new byte[42]);
+        new File(dir, "sub").mkdir();
+        Files.createSymbolicLink(new File(dir, "link").toPath(), new File(dir, "file").toPath());
+        Files.createSymbolicLink(new File(dir, "dirlink").toPath(), new File(dir, "sub").toPath());
+
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path(dir.getAbsolutePath()), SETTINGS, null)) {
+
+            DirectoryBatch b = f.listBatch(new Path(dir.getAbsolutePath()));
+            assertEquals(4, b.size());
+
+            HashMap<Path, PathAttributes> listed = new HashMap<>();
+
+            for (PathAttributes a : f.list(new Path(dir.getAbsolutePath()), false)) {
+                listed.put(a.getPath(), a);
+            }
+
+            DirectoryBatch.Cursor c = b.cursor();
+
+            while (c.next()) {
+                PathAttributes a = listed.get(c.getPath());
+
+                // The batch must describe every entry exactly as list() does, also the size of links and directories.
+                assertEquals(a.isDirectory(), c.isDirectory());
+                assertEquals(a.isRegular(), c.isRegular());
+                assertEquals(a.isSymbolicLink(), c.isSymbolicLink());
+                assertEquals(c.getPath().toString(), a.getSize(), c.getSize());
+                assertEquals(a.getLastModifiedTime(), c.getLastModifiedTime());
+                assertEquals(a.getPermissions(), c.getPermissions());
+            }
+        }
+    }
+
+    @Test
+    public void test_copyFileLocalToLocal() throws XenonException, IOException {
+
+        // Larger than a single transfer chunk, so the progress is reported more than once.
+        byte[] data = new byte[9 * 1024 * 1024 + 17];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+
+        File dir = folder.newFolder();
+        Files.write(new File(dir, "source").toPath(), data);
+
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path(dir.getAbsolutePath()), SETTINGS, null)) {
+
+            String h = f.copy(new Path("source"), f, new Path("target"), CopyMode.CREATE, false);
+            CopyStatus s = f.waitUntilDone(h, 60 * 1000);
+
+            assertTrue(s.isDone());
+            assertFalse(s.hasException());
+            assertEquals(data.length, s.bytesCopied());
+            assertArrayEquals(data, Files.readAllBytes(new File(dir, "target").toPath()));
+        }
+    }
+
+    @Test
+    public void test_listWithGlob() throws XenonException, IOException {
+
+        File dir = folder.newFolder();
+        new File(dir, "sub").mkdir();
+        new File(dir, "a.nc").createNewFile();
+        new File(dir, "b.txt").createNewFile();
+        new File(dir, "sub/c.nc").createNewFile();
+        new File(dir, "sub/d.txt").createNewFile();
+
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", new Path(dir.getAbsolutePath()), SETTINGS, null)) {
+
+            ListOptions o = new ListOptions();
+            o.setGlob("*.nc");
+
+            HashSet<Path> result = new HashSet<>();
+
+            for (PathAttributes p : f.list(new Path(dir.getAbsolutePath()), o)) {
+                result.add(p.getPath());
+            }
+
+            Path root = new Path(dir.getAbsolutePath());
+            assertEquals(new HashSet<>(Arrays.asList(root.resolve("a.nc"), root.resolve("sub/c.nc"))), result);
+
+            // The last level is filtered by the directory stream.
+            HashSet<Path> leaf = new HashSet<>();
+
+            for (PathAttributes p : f.listDirectory(root.resolve("sub"), "*.nc")) {
+                leaf.add(p.getPath());
+            }
+
+            assertEquals(new HashSet<>(Arrays.asList(root.resolve("sub/c.nc"))), leaf);
+        }
+    }
+
+    private void awaitEvents(Watch w, WatchEvent... expected) throws XenonException {
+
+        HashSet<WatchEvent> received = new HashSet<>();
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (System.currentTimeMillis() < deadline) {
+            List<WatchEvent> events = w.poll(1000);
+            received.addAll(events);
+
+            if (received.containsAll(Arrays.asList(expected))) {
+                return;
+            }
+        }
+
+        throw new AssertionError("Expected " + Arrays.toString(expected) + " but received " + received);
+    }
+
+    @Test
+    public void test_watch() throws XenonException, IOException {
+
+        File dir = folder.newFolder();
+        Path root = new Path(dir.getAbsolutePath());
+
+        try (LocalFileSystem f = new LocalFileSystem("test", "/", new DefaultCredential(), "/", root, SETTINGS, null)) {
+
+            Watch w = f.watch(root, new WatchOptions());
+
+            // The file in the new directory is reported, even if it is created before the directory is registered.
+            new File(dir, "sub").mkdir();
+            new File(dir, "sub/a").createNewFile();
+
+            awaitEvents(w, new WatchEvent(WatchEvent.Kind.CREATED, root.resolve("sub")), new WatchEvent(WatchEvent.Kind.CREATED, root.resolve("sub/a")));
+
+            Files.write(new File(dir, "sub/a").toPath(), new byte[] { 42 });
+            awaitEvents(w, new WatchEvent(WatchEvent.Kind.MODIFIED, root.resolve("sub/a")));
+
+            new File(dir, "sub/a").delete();
+            awaitEvents(w, new WatchEvent(WatchEvent.Kind.DELETED, root.resolve("sub/a")));
+
+            f.close();
+            assertFalse(w.isOpen());
+        }
+    }
 }
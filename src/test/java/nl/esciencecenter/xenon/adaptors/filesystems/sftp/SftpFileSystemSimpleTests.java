@@ -15,11 +15,38 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems.sftp;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyDataExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyFileExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.SftpClientExtension;
+import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.channel.exception.SshChannelOpenException;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.junit.Test;
@@ -27,20 +54,35 @@ import org.junit.Test;
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.filesystems.EndOfFileException;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.adaptors.filesystems.NoSpaceException;
 import nl.esciencecenter.xenon.adaptors.filesystems.PermissionDeniedException;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
+import nl.esciencecenter.xenon.filesystems.DirectoryBatch;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
+import nl.esciencecenter.xenon.filesystems.ListOptions;
+import nl.esciencecenter.xenon.filesystems.MockFileSystem;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
 import nl.esciencecenter.xenon.filesystems.PathAlreadyExistsException;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
 import nl.esciencecenter.xenon.filesystems.PosixFilePermission;
+import nl.esciencecenter.xenon.filesystems.Watch;
+import nl.esciencecenter.xenon.filesystems.WatchEvent;
+import nl.esciencecenter.xenon.filesystems.WatchOptions;
 
 public class SftpFileSystemSimpleTests {
 
+    private static final FileSystemSettings SETTINGS = FileSystemSettings.defaults().withBufferSize(4096);
+
     private IOException generateSftpException(int status) {
         return new SftpException(status, "This is a test");
     }
@@ -330,4 +372,1109 @@ public class SftpFileSystemSimpleTests {
         f.writeToFile(new Path("/home/xenon/file"));
     }
 
+    /**
+     * Serves a single regular file, optionally failing reads from a given offset.
+     */
+    class FileClient extends MockSftpClient {
+
+        final byte[] data;
+        final long failAt;
+
+        FileClient(byte[] data, long failAt) {
+            this.data = data;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Attributes lstat(String path) throws IOException {
+            Attributes a = new Attributes();
+            a.setType(SftpConstants.SSH_FILEXFER_TYPE_REGULAR);
+            a.setPermissions(SftpConstants.S_IFREG | 0644);
+            a.setSize(data.length);
+            return a;
+        }
+
+        @Override
+        public CloseableHandle open(String path, Collection<OpenMode> options) throws IOException {
+            return new CloseableHandle(path, new byte[] { 1 }) {
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public int read(Handle handle, long fileOffset, byte[] dst, int dstOffset, int len, AtomicReference<Boolean> eofSignalled) throws IOException {
+
+            if (fileOffset >= failAt) {
+                throw new SftpException(SftpConstants.SSH_FX_FAILURE, "This is a test");
+            }
+
+            if (fileOffset >= data.length) {
+                return -1;
+            }
+
+            // Return short reads, to check that blocks are read completely.
+            int n = (int) Math.min(Math.min(len, 1000), data.length - fileOffset);
+            System.arraycopy(data, (int) fileOffset, dst, dstOffset, n);
+            return n;
+        }
+    }
+
+    private CopyStatus copySegmented(byte[] data, long failAt, MockFileSystem target) throws XenonException {
+        FileClient client = new FileClient(data, failAt);
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults().withCopySegments(3, 1), new MockSSHConnection(client), client, null)) {
+
+            String h = f.copy(new Path("/home/xenon/file"), target, new Path("/test/file"), CopyMode.CREATE, false);
+            return f.waitUntilDone(h, 5 * 1000);
+        }
+    }
+
+    @Test
+    public void test_copySegmented() throws XenonException {
+        byte[] data = new byte[10 * 4096 + 100];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 253);
+        }
+
+        MockFileSystem target = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+        CopyStatus s = copySegmented(data, Long.MAX_VALUE, target);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(data.length, s.bytesCopied());
+        assertArrayEquals(data, target.getData(new Path("/test/file")));
+    }
+
+    @Test
+    public void test_copySegmentedReadFails() throws XenonException {
+        MockFileSystem target = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+        CopyStatus s = copySegmented(new byte[10 * 4096], 5 * 4096, target);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+    }
+
+    /**
+     * Serves /home/xenon/file, and offers the copy-file or copy-data extension.
+     */
+    class ServerCopyClient extends FileClient {
+
+        final boolean copyFileSupported;
+        final boolean copyDataSupported;
+        final ArrayList<String> copies = new ArrayList<>();
+
+        ServerCopyClient(boolean copyFileSupported, boolean copyDataSupported) {
+            super(new byte[] { 1, 2, 3 }, Long.MAX_VALUE);
+            this.copyFileSupported = copyFileSupported;
+            this.copyDataSupported = copyDataSupported;
+        }
+
+        @Override
+        public Attributes lstat(String path) throws IOException {
+            if (path.equals("/home/xenon")) {
+                Attributes a = new Attributes();
+                a.setType(SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY);
+                a.setPermissions(SftpConstants.S_IFDIR | 0755);
+                return a;
+            }
+
+            if (path.equals("/home/xenon/file")) {
+                return super.lstat(path);
+            }
+
+            throw new SftpException(SftpConstants.SSH_FX_NO_SUCH_FILE, "No such file");
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <E extends SftpClientExtension> E getExtension(Class<? extends E> extensionType) {
+
+            if (extensionType == CopyFileExtension.class) {
+                return (E) new CopyFileExtension() {
+                    @Override
+                    public void copyFile(String src, String dst, boolean overwriteDestination) {
+                        copies.add("copy-file " + src + " " + dst);
+                    }
+
+                    @Override
+                    public SftpClient getClient() {
+                        return ServerCopyClient.this;
+                    }
+
+                    @Override
+                    public String getName() {
+                        return "copy-file";
+                    }
+
+                    @Override
+                    public boolean isSupported() {
+                        return copyFileSupported;
+                    }
+                };
+            }
+
+            if (extensionType == CopyDataExtension.class) {
+                return (E) new CopyDataExtension() {
+                    @Override
+                    public void copyData(Handle readHandle, long readOffset, long readLength, Handle writeHandle, long writeOffset) {
+                        copies.add("copy-data " + readOffset + " " + readLength + " " + writeOffset);
+                    }
+
+                    @Override
+                    public SftpClient getClient() {
+                        return ServerCopyClient.this;
+                    }
+
+                    @Override
+                    public String getName() {
+                        return "copy-data";
+                    }
+
+                    @Override
+                    public boolean isSupported() {
+                        return copyDataSupported;
+                    }
+                };
+            }
+
+            return null;
+        }
+    }
+
+    private CopyStatus copyOnServer(ServerCopyClient client) throws XenonException {
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+
+            String h = f.copy(new Path("/home/xenon/file"), f, new Path("/home/xenon/copy"), CopyMode.CREATE, false);
+            return f.waitUntilDone(h, 5 * 1000);
+        }
+    }
+
+    @Test
+    public void test_copyOnServerCopyFile() throws XenonException {
+        ServerCopyClient client = new ServerCopyClient(true, true);
+        CopyStatus s = copyOnServer(client);
+
+        assertFalse(s.hasException());
+        assertEquals(3, s.bytesCopied());
+        assertEquals(1, client.copies.size());
+        assertEquals("copy-file /home/xenon/file /home/xenon/copy", client.copies.get(0));
+    }
+
+    @Test
+    public void test_copyOnServerCopyData() throws XenonException {
+        ServerCopyClient client = new ServerCopyClient(false, true);
+        CopyStatus s = copyOnServer(client);
+
+        assertFalse(s.hasException());
+        assertEquals(3, s.bytesCopied());
+        assertEquals(1, client.copies.size());
+        assertEquals("copy-data 0 3 0", client.copies.get(0));
+    }
+
+    @Test
+    public void test_copyOnServerNotSupported() throws XenonException {
+        ServerCopyClient client = new ServerCopyClient(false, false);
+
+        // Falls back to a stream copy, which fails as the mock client cannot write.
+        CopyStatus s = copyOnServer(client);
+
+        assertTrue(s.hasException());
+        assertTrue(client.copies.isEmpty());
+    }
+
+    /**
+     * Serves the directories /home/xenon and /home/xenon/dir.
+     */
+    class BulkClient extends MockSftpClient {
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+        @Override
+        public Attributes lstat(String path) throws IOException {
+            if (path.equals("/home/xenon") || path.equals("/home/xenon/dir")) {
+                Attributes a = new Attributes();
+                a.setType(SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY);
+                a.setPermissions(SftpConstants.S_IFDIR | 0755);
+                return a;
+            }
+
+            throw new SftpException(SftpConstants.SSH_FX_NO_SUCH_FILE, "No such file");
+        }
+    }
+
+    /**
+     * Records the bulk commands instead of running them.
+     */
+    class BulkFileSystem extends SftpFileSystem {
+
+        final boolean succeed;
+        final ArrayList<String> commands = new ArrayList<>();
+
+        BulkFileSystem(boolean succeed) {
+            this(new BulkClient(), succeed);
+        }
+
+        private BulkFileSystem(BulkClient client, boolean succeed) {
+            super("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                    SftpSettings.defaults().withBulkCommands(true), new MockSSHConnection(client), client, null);
+            this.succeed = succeed;
+        }
+
+        @Override
+        boolean runBulkCommand(String command) {
+            commands.add(command);
+            return succeed;
+        }
+    }
+
+    @Test
+    public void test_bulkDelete() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(true)) {
+            f.delete(new Path("dir"), true);
+            assertEquals(1, f.commands.size());
+            assertEquals("rm -rf -- '/home/xenon/dir'", f.commands.get(0));
+        }
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_bulkDeleteFallback() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(false)) {
+            // The command fails, so we fall back to listing the directory, which the mock client refuses.
+            f.delete(new Path("dir"), true);
+        }
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_bulkDeleteDoesNotExist() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(true)) {
+            f.delete(new Path("noot"), true);
+        }
+    }
+
+    @Test
+    public void test_bulkCreateDirectories() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(true)) {
+            f.createDirectories(new Path("aap/noot"));
+            assertEquals(1, f.commands.size());
+            assertEquals("mkdir -p -- '/home/xenon/aap/noot'", f.commands.get(0));
+        }
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_bulkCreateDirectoriesExists() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(true)) {
+            f.createDirectories(new Path("dir"));
+        }
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_bulkCreateDirectoriesFallback() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(false)) {
+            // The command fails, so we fall back to mkdir, which the mock client refuses.
+            f.createDirectories(new Path("aap"));
+        }
+    }
+
+    @Test
+    public void test_bulkSetPosixFilePermissions() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(true)) {
+            f.setPosixFilePermissions(new Path("dir"), EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                    PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.GROUP_READ, PosixFilePermission.OTHERS_READ), true);
+            assertEquals(1, f.commands.size());
+            assertEquals("chmod -R 744 -- '/home/xenon/dir'", f.commands.get(0));
+        }
+    }
+
+    /**
+     * A channel that closes after <code>waits</code> calls to waitFor, or never if it is negative, and records if it was closed by us.
+     */
+    private ClientChannel channel(int waits, AtomicReference<Boolean> closed) {
+        int[] count = new int[1];
+
+        return (ClientChannel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ClientChannel.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "waitFor":
+                return waits >= 0 && ++count[0] > waits ? EnumSet.of(ClientChannelEvent.CLOSED) : Collections.emptySet();
+            case "close":
+                closed.set(true);
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @Test
+    public void test_awaitClosed() throws IOException {
+        AtomicReference<Boolean> closed = new AtomicReference<>(false);
+        assertTrue(SftpFileSystem.awaitClosed(channel(3, closed), 10000));
+        assertFalse(closed.get());
+    }
+
+    @Test
+    public void test_awaitClosedTimeout() throws IOException {
+        AtomicReference<Boolean> closed = new AtomicReference<>(false);
+        assertFalse(SftpFileSystem.awaitClosed(channel(-1, closed), 300));
+    }
+
+    @Test
+    public void test_awaitClosedInterrupted() throws IOException {
+        AtomicReference<Boolean> closed = new AtomicReference<>(false);
+
+        Thread.currentThread().interrupt();
+
+        try {
+            SftpFileSystem.awaitClosed(channel(-1, closed), 10000);
+            throw new AssertionError("Expected InterruptedIOException");
+        } catch (InterruptedIOException e) {
+            // The interrupt is kept for the caller, and the command is not left running.
+            assertTrue(Thread.interrupted());
+            assertTrue(closed.get());
+        }
+    }
+
+    @Test
+    public void test_isRefused() {
+        assertTrue(SftpFileSystem.isRefused(new SshException("Failed to open", new SshChannelOpenException(1, 1, "Refused"))));
+        assertFalse(SftpFileSystem.isRefused(new SshException("Connection reset")));
+        assertFalse(SftpFileSystem.isRefused(new IOException("Broken pipe")));
+    }
+
+    @Test
+    public void test_bulkQuotesPath() throws XenonException {
+        try (BulkFileSystem f = new BulkFileSystem(true)) {
+            f.createDirectories(new Path("it's here"));
+            assertEquals("mkdir -p -- '/home/xenon/it'\\''s here'", f.commands.get(0));
+        }
+    }
+
+    /**
+     * Serves /home/xenon/dir in two batches, containing the files a and b and the directory sub with the file c.
+     */
+    class DirClient extends BulkClient {
+
+        final ArrayList<String> reads = new ArrayList<>();
+        final HashMap<String, ArrayDeque<List<DirEntry>>> batches = new HashMap<>();
+        int open = 0;
+
+        DirClient() {
+            ArrayDeque<List<DirEntry>> dir = new ArrayDeque<>();
+            dir.add(Arrays.asList(entry("a", false), entry("sub", true)));
+            dir.add(Arrays.asList(entry("b", false)));
+            batches.put("/home/xenon/dir", dir);
+
+            ArrayDeque<List<DirEntry>> sub = new ArrayDeque<>();
+            sub.add(Arrays.asList(entry(".", true), entry("..", true), entry("c", false)));
+            batches.put("/home/xenon/dir/sub", sub);
+        }
+
+        private DirEntry entry(String name, boolean directory) {
+            Attributes a = new Attributes();
+            a.setType(directory ? SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY : SftpConstants.SSH_FILEXFER_TYPE_REGULAR);
+            a.setPermissions(directory ? SftpConstants.S_IFDIR | 0755 : SftpConstants.S_IFREG | 0644);
+            return new DirEntry(name, name, a);
+        }
+
+        @Override
+        public CloseableHandle openDir(String path) throws IOException {
+            open++;
+            return new CloseableHandle(path, new byte[] { 1 }) {
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                    open--;
+                }
+            };
+        }
+
+        @Override
+        public List<DirEntry> readDir(Handle handle, AtomicReference<Boolean> eolIndicator) throws IOException {
+            reads.add(handle.getPath());
+
+            ArrayDeque<List<DirEntry>> b = batches.get(handle.getPath());
+
+            if (b == null) {
+                throw new SftpException(SftpConstants.SSH_FX_FAILURE, "This is a test");
+            }
+
+            return b.poll();
+        }
+
+        @Override
+        public Iterable<DirEntry> readDir(String path) throws IOException {
+            ArrayList<DirEntry> result = new ArrayList<>();
+
+            try (CloseableHandle h = openDir(path)) {
+                List<DirEntry> batch = readDir(h, null);
+
+                while (batch != null) {
+                    result.addAll(batch);
+                    batch = readDir(h, null);
+                }
+            }
+
+            return result;
+        }
+    }
+
+    @Test
+    public void test_listBatch() throws XenonException {
+        DirClient client = new DirClient();
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+
+            DirectoryBatch b = new DirectoryBatch(new Path("/home/xenon/dir/sub"));
+            f.listDirectory(new Path("/home/xenon/dir/sub"), b);
+
+            // The . and .. entries are skipped.
+            assertEquals(1, b.size());
+
+            DirectoryBatch.Cursor c = b.cursor();
+            assertTrue(c.next());
+            assertEquals("c", c.getName());
+            assertTrue(c.isRegular());
+            assertEquals(0644, c.getPermissionBits());
+        }
+    }
+
+    @Test
+    public void test_listRecursiveStreams() throws XenonException {
+        DirClient client = new DirClient();
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+
+            Iterator<PathAttributes> it = f.list(new Path("dir"), true).iterator();
+
+            // Nothing has been opened so far, so an iterator that is never used does not leak a handle.
+            assertTrue(client.reads.isEmpty());
+            assertEquals(0, client.open);
+
+            assertEquals(new Path("/home/xenon/dir/a"), it.next().getPath());
+            assertEquals(1, client.reads.size());
+            assertEquals(1, client.open);
+
+            ArrayList<Path> result = new ArrayList<>();
+
+            while (it.hasNext()) {
+                result.add(it.next().getPath());
+            }
+
+            assertEquals(Arrays.asList(new Path("/home/xenon/dir/sub"), new Path("/home/xenon/dir/sub/c"), new Path("/home/xenon/dir/b")), result);
+            assertEquals(0, client.open);
+        }
+    }
+
+    @Test
+    public void test_listRecursiveStreamClose() throws XenonException {
+        DirClient client = new DirClient();
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+
+            Iterator<PathAttributes> it = f.list(new Path("dir"), true).iterator();
+
+            // Stop in the subdirectory, while the handles of both directories are open.
+            assertEquals(new Path("/home/xenon/dir/a"), it.next().getPath());
+            assertEquals(new Path("/home/xenon/dir/sub"), it.next().getPath());
+            assertTrue(it.hasNext());
+            assertEquals(2, client.open);
+
+            ((CloseableIterator<PathAttributes>) it).close();
+
+            assertEquals(0, client.open);
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void test_listRecursiveStreamFailsClose() throws XenonException {
+        DirClient client = new DirClient();
+        client.batches.remove("/home/xenon/dir/sub");
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+
+            Iterator<PathAttributes> it = f.list(new Path("dir"), true).iterator();
+
+            try {
+                while (it.hasNext()) {
+                    it.next();
+                }
+                throw new AssertionError("Expected XenonRuntimeException");
+            } catch (XenonRuntimeException e) {
+                // The failing subdirectory closed its own handle, but the root directory is still being listed.
+                assertEquals(1, client.open);
+            }
+
+            ((CloseableIterator<PathAttributes>) it).close();
+            assertEquals(0, client.open);
+        }
+    }
+
+    @Test(expected = XenonRuntimeException.class)
+    public void test_listRecursiveStreamFails() throws XenonException {
+        DirClient client = new DirClient();
+        client.batches.remove("/home/xenon/dir/sub");
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+
+            for (PathAttributes p : f.list(new Path("dir"), true)) {
+                assertTrue(p.getPath().startsWith(new Path("/home/xenon/dir")));
+            }
+        }
+    }
+
+    /**
+     * Creates the output of find for entries written with a space between the fields, and only the path containing spaces.
+     */
+    private static String findOutput(String... entries) {
+        StringBuilder result = new StringBuilder();
+
+        for (String e : entries) {
+            result.append(String.join("\0", e.split(" ", 8))).append('\0');
+        }
+
+        return result.toString();
+    }
+
+    private static FindIterator findIterator(String out) {
+        return new FindIterator(new Path("/home/xenon/dir"), new ByteArrayInputStream(out.getBytes(StandardCharsets.UTF_8)), null, null, 0);
+    }
+
+    private static List<PathAttributes> parseFindOutput(String out) throws IOException {
+        FindIterator it = findIterator(out);
+        ArrayList<PathAttributes> result = new ArrayList<>();
+
+        for (PathAttributes p = it.read(); p != null; p = it.read()) {
+            result.add(p);
+        }
+
+        return result;
+    }
+
+    @Test
+    public void test_parseFindOutput() throws IOException, XenonException {
+        String out = findOutput("d 4096 1500000000.5 1500000001.0000000000 755 xenon users /home/xenon/dir/sub",
+                "f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/a file", "l 1 1500000004.0 1500000005.0 777 root root /home/xenon/dir/.link");
+
+        List<PathAttributes> result = parseFindOutput(out);
+
+        assertEquals(3, result.size());
+
+        PathAttributes dir = result.get(0);
+        assertEquals(new Path("/home/xenon/dir/sub"), dir.getPath());
+        assertTrue(dir.isDirectory());
+        assertEquals(1500000000500L, dir.getLastModifiedTime());
+        assertEquals(1500000001000L, dir.getLastAccessTime());
+        assertEquals(1500000000500L, dir.getCreationTime());
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE,
+                PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_EXECUTE),
+                dir.getPermissions());
+
+        PathAttributes file = result.get(1);
+        assertEquals(new Path("/home/xenon/dir/a file"), file.getPath());
+        assertTrue(file.isRegular());
+        assertEquals(3, file.getSize());
+        assertEquals("xenon", file.getOwner());
+        assertEquals("users", file.getGroup());
+        assertFalse(file.isExecutable());
+
+        PathAttributes link = result.get(2);
+        assertTrue(link.isSymbolicLink());
+        assertTrue(link.isHidden());
+        assertEquals("root", link.getOwner());
+    }
+
+    @Test
+    public void test_parseFindOutputSpaceInOwner() throws IOException, XenonException {
+        // Every field ends with a null byte, so names with spaces do not shift the fields that follow.
+        String out = "f\0" + "3\0" + "1500000002.0\0" + "1500000003.0\0" + "640\0" + "jan de vries\0" + "domain users\0" + "/home/xenon/dir/a b\0";
+
+        List<PathAttributes> result = parseFindOutput(out);
+
+        assertEquals(1, result.size());
+        assertEquals("jan de vries", result.get(0).getOwner());
+        assertEquals("domain users", result.get(0).getGroup());
+        assertEquals(new Path("/home/xenon/dir/a b"), result.get(0).getPath());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_parseFindOutputTruncated() throws IOException {
+        String out = findOutput("f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/a") + "f\0" + "3\0" + "15000";
+        parseFindOutput(out);
+    }
+
+    @Test(expected = IOException.class)
+    public void test_parseFindOutputGarbage() throws IOException {
+        parseFindOutput(findOutput("f three 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/a"));
+    }
+
+    @Test(expected = XenonRuntimeException.class)
+    public void test_findIteratorTruncated() {
+        Iterator<PathAttributes> it = findIterator(findOutput("f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/a") + "f\0");
+
+        assertTrue(it.hasNext());
+        it.next();
+        it.hasNext();
+    }
+
+    /**
+     * Returns the entries of a fixed find output, or <code>null</code> to mimic a failing find command. Every read of the output returns at most one byte,
+     * and the number of bytes read is counted in <code>read</code>.
+     */
+    class FindFileSystem extends SftpFileSystem {
+
+        final String output;
+        final ArrayList<Path> commands = new ArrayList<>();
+        final ArrayList<String> predicates = new ArrayList<>();
+        int read;
+
+        FindFileSystem(DirClient client, String output) {
+            super("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                    SftpSettings.defaults().withFindListing(true), new MockSSHConnection(client), client, null);
+            this.output = output;
+        }
+
+        @Override
+        CloseableIterator<PathAttributes> startFindCommand(Path dir, String predicates) throws XenonException {
+            commands.add(dir);
+            this.predicates.add(predicates);
+
+            if (output == null) {
+                return null;
+            }
+
+            ByteArrayInputStream in = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    int n = super.read(b, off, Math.min(len, 1));
+                    read += Math.max(n, 0);
+                    return n;
+                }
+            };
+
+            FindIterator result = new FindIterator(dir, in, null, null, 0);
+
+            try {
+                result.start();
+            } catch (IOException e) {
+                throw new XenonException("TEST", "Unexpected find output", e);
+            }
+
+            return result;
+        }
+    }
+
+    @Test
+    public void test_listRecursiveFind() throws XenonException, IOException {
+        String listing = findOutput("f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/a");
+
+        DirClient client = new DirClient();
+
+        try (FindFileSystem f = new FindFileSystem(client, listing)) {
+            ArrayList<Path> result = new ArrayList<>();
+
+            for (PathAttributes p : f.list(new Path("dir"), true)) {
+                result.add(p.getPath());
+            }
+
+            assertEquals(Arrays.asList(new Path("/home/xenon/dir/a")), result);
+            assertEquals(Arrays.asList(new Path("/home/xenon/dir")), f.commands);
+            assertTrue(client.reads.isEmpty());
+        }
+    }
+
+    @Test
+    public void test_listRecursiveFindStreams() throws XenonException {
+        String listing = findOutput("d 4096 1500000000.0 1500000001.0 755 xenon users /home/xenon/dir/sub",
+                "f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/sub/a", "f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/b");
+
+        DirClient client = new DirClient();
+
+        try (FindFileSystem f = new FindFileSystem(client, listing)) {
+            Iterable<PathAttributes> entries = f.list(new Path("dir"), true);
+            Iterator<PathAttributes> it = entries.iterator();
+
+            // Only the first entry was read, the rest of the output is read while iterating.
+            assertTrue(it instanceof CloseableIterator);
+            assertEquals(new Path("/home/xenon/dir/sub"), it.next().getPath());
+            assertTrue(f.read < listing.length());
+
+            ((CloseableIterator<PathAttributes>) it).close();
+            assertFalse(it.hasNext());
+
+            // Iterating again runs find again.
+            int count = 0;
+
+            for (PathAttributes p : entries) {
+                count++;
+            }
+
+            assertEquals(3, count);
+            assertEquals(2, f.commands.size());
+        }
+    }
+
+    @Test
+    public void test_listRecursiveFindFallback() throws XenonException {
+        DirClient client = new DirClient();
+
+        try (FindFileSystem f = new FindFileSystem(client, null)) {
+            ArrayList<Path> result = new ArrayList<>();
+
+            for (PathAttributes p : f.list(new Path("dir"), true)) {
+                result.add(p.getPath());
+            }
+
+            assertEquals(4, result.size());
+            assertEquals(1, f.commands.size());
+        }
+    }
+
+    @Test
+    public void test_listRecursiveFindFailureKeepsFindListing() throws XenonException {
+        DirClient client = new DirClient();
+        ArrayList<Path> commands = new ArrayList<>();
+
+        // The mock connection has no session, so running find fails, but the server did not refuse to run it.
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults().withFindListing(true), new MockSSHConnection(client), client, null) {
+            @Override
+            CloseableIterator<PathAttributes> startFindCommand(Path dir, String predicates) throws XenonException {
+                commands.add(dir);
+                return super.startFindCommand(dir, predicates);
+            }
+        }) {
+            int count = 0;
+
+            for (PathAttributes p : f.list(new Path("dir"), true)) {
+                count++;
+            }
+
+            assertEquals(4, count);
+
+            // The next listing tries find again. The mock client has no entries left, so only the command is checked.
+            f.list(new Path("dir"), true);
+            assertEquals(2, commands.size());
+        }
+    }
+
+    @Test
+    public void test_findPredicatesNone() {
+        assertEquals("", SftpFileSystem.findPredicates(new ListOptions()));
+    }
+
+    @Test
+    public void test_findPredicates() {
+        ListOptions o = new ListOptions();
+        o.setMaxDepth(2);
+        o.setType(ListOptions.Type.REGULAR);
+        o.setGlob("*.nc");
+        o.setMinSize(10);
+        o.setMaxSize(20);
+        o.setModifiedAfter(1500000000500L);
+        o.setModifiedBefore(1600000000500L);
+
+        assertEquals(" -maxdepth 2 -type f -name '*.nc' -size +9c -size -21c -newermt @1500000000 ! -newermt @1600000001", SftpFileSystem.findPredicates(o));
+    }
+
+    @Test
+    public void test_findPredicatesGlobOnClient() {
+        ListOptions o = new ListOptions();
+        o.setGlob("*.{nc,h5}");
+        o.setType(ListOptions.Type.OTHER);
+
+        assertEquals("", SftpFileSystem.findPredicates(o));
+    }
+
+    @Test
+    public void test_listOptionsFind() throws XenonException, IOException {
+        String listing = findOutput("f 3 1500000002.0 1500000003.0 640 xenon users /home/xenon/dir/a.nc",
+                "f 3 1500000000.0 1500000003.0 640 xenon users /home/xenon/dir/b.nc");
+
+        DirClient client = new DirClient();
+
+        try (FindFileSystem f = new FindFileSystem(client, listing)) {
+            ListOptions o = new ListOptions();
+            o.setGlob("*.nc");
+            o.setModifiedAfter(1500000001000L);
+
+            ArrayList<Path> result = new ArrayList<>();
+
+            for (PathAttributes p : f.list(new Path("dir"), o)) {
+                result.add(p.getPath());
+            }
+
+            // b.nc is returned by find, which only has a resolution of seconds here, but removed by the client.
+            assertEquals(Arrays.asList(new Path("/home/xenon/dir/a.nc")), result);
+            assertEquals(Arrays.asList(" -name '*.nc' -newermt @1500000001"), f.predicates);
+            assertTrue(client.reads.isEmpty());
+        }
+    }
+
+    @Test
+    public void test_listOptionsFindFallback() throws XenonException {
+        DirClient client = new DirClient();
+
+        try (FindFileSystem f = new FindFileSystem(client, null)) {
+            ListOptions o = new ListOptions();
+            o.setType(ListOptions.Type.REGULAR);
+
+            ArrayList<Path> result = new ArrayList<>();
+
+            for (PathAttributes p : f.list(new Path("dir"), o)) {
+                result.add(p.getPath());
+            }
+
+            assertEquals(new HashSet<>(Arrays.asList(new Path("/home/xenon/dir/a"), new Path("/home/xenon/dir/b"), new Path("/home/xenon/dir/sub/c"))),
+                    new HashSet<>(result));
+        }
+    }
+
+    /**
+     * Counts the lstat calls, and creates or renames anything below /home/xenon that does not exist yet. Like many servers, it returns a generic failure
+     * if the path already exists.
+     */
+    class OptimisticClient extends BulkClient {
+
+        int lookups = 0;
+        final ArrayList<String> created = new ArrayList<>();
+
+        @Override
+        public Attributes lstat(String path) throws IOException {
+            lookups++;
+            return super.lstat(path);
+        }
+
+        private void create(String path) throws IOException {
+            if (path.equals("/home/xenon/dir")) {
+                throw new SftpException(SftpConstants.SSH_FX_FAILURE, "Failure");
+            }
+
+            if (!path.startsWith("/home/xenon/") || path.indexOf('/', "/home/xenon/".length()) != -1) {
+                throw new SftpException(SftpConstants.SSH_FX_NO_SUCH_FILE, "No such file");
+            }
+
+            created.add(path);
+        }
+
+        @Override
+        public void mkdir(String path) throws IOException {
+            create(path);
+        }
+
+        @Override
+        public void rename(String oldPath, String newPath, Collection<CopyMode> options) throws IOException {
+            // Fails if the source does not exist, without counting as a lookup by the file system.
+            super.lstat(oldPath);
+            create(newPath);
+        }
+    }
+
+    private SftpFileSystem createOptimisticFileSystem(MockSftpClient client) throws XenonException {
+        return new SftpFileSystem("ID", SftpFileAdaptor.ADAPTOR_NAME, "localhost", new DefaultCredential(), new Path("/home/xenon"),
+                SETTINGS.withOptimistic(true), SftpSettings.defaults(), new MockSSHConnection(client), client, null);
+    }
+
+    @Test
+    public void test_optimisticCreateDirectory() throws XenonException {
+        OptimisticClient client = new OptimisticClient();
+
+        try (SftpFileSystem f = createOptimisticFileSystem(client)) {
+            f.createDirectory(new Path("aap"));
+            assertEquals(Arrays.asList("/home/xenon/aap"), client.created);
+            assertEquals(0, client.lookups);
+        }
+    }
+
+    @Test
+    public void test_pessimisticCreateDirectory() throws XenonException {
+        OptimisticClient client = new OptimisticClient();
+
+        try (SftpFileSystem f = new SftpFileSystem("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                SftpSettings.defaults(), new MockSSHConnection(client), client, null)) {
+            f.createDirectory(new Path("aap"));
+            assertEquals(Arrays.asList("/home/xenon/aap"), client.created);
+            // One lookup for the directory, and two for its parent.
+            assertEquals(3, client.lookups);
+        }
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_optimisticCreateDirectoryExists() throws XenonException {
+        try (SftpFileSystem f = createOptimisticFileSystem(new OptimisticClient())) {
+            f.createDirectory(new Path("dir"));
+        }
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_optimisticCreateDirectoryNoParent() throws XenonException {
+        try (SftpFileSystem f = createOptimisticFileSystem(new OptimisticClient())) {
+            f.createDirectory(new Path("aap/noot"));
+        }
+    }
+
+    @Test
+    public void test_optimisticRename() throws XenonException {
+        OptimisticClient client = new OptimisticClient();
+
+        try (SftpFileSystem f = createOptimisticFileSystem(client)) {
+            f.rename(new Path("dir"), new Path("aap"));
+            assertEquals(Arrays.asList("/home/xenon/aap"), client.created);
+            assertEquals(0, client.lookups);
+        }
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_optimisticRenameSourceDoesNotExist() throws XenonException {
+        try (SftpFileSystem f = createOptimisticFileSystem(new OptimisticClient())) {
+            f.rename(new Path("noot"), new Path("aap"));
+        }
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_optimisticRenameSamePathDoesNotExist() throws XenonException {
+        try (SftpFileSystem f = createOptimisticFileSystem(new OptimisticClient())) {
+            f.rename(new Path("noot"), new Path("noot"));
+        }
+    }
+
+    @Test(expected = PathAlreadyExistsException.class)
+    public void test_optimisticRenameTargetExists() throws XenonException {
+        try (SftpFileSystem f = createOptimisticFileSystem(new OptimisticClient())) {
+            f.rename(new Path("/home/xenon"), new Path("dir"));
+        }
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_optimisticSetLastModifiedTimeDoesNotExist() throws XenonException {
+        try (SftpFileSystem f = createOptimisticFileSystem(new OptimisticClient())) {
+            f.setLastModifiedTime(new Path("noot"), 0);
+        }
+    }
+
+    @Test
+    public void test_inotifyCommand() {
+        WatchOptions o = new WatchOptions();
+        assertEquals("inotifywait -m -r -e create -e close_write -e attrib -e delete -e move --format '%e %w%f' -- '/home/xenon/it'\\''s here'",
+                InotifyWatch.command(new Path("/home/xenon/it's here"), o));
+
+        o.setRecursive(false);
+        assertEquals("inotifywait -m -e create -e close_write -e attrib -e delete -e move --format '%e %w%f' -- '/home/xenon'",
+                InotifyWatch.command(new Path("/home/xenon"), o));
+    }
+
+    @Test
+    public void test_inotifyParseEvent() {
+        assertEquals(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/home/xenon/a b")), InotifyWatch.parseEvent("CREATE /home/xenon/a b"));
+        assertEquals(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/home/xenon/dir")), InotifyWatch.parseEvent("MOVED_TO,ISDIR /home/xenon/dir"));
+        assertEquals(new WatchEvent(WatchEvent.Kind.MODIFIED, new Path("/home/xenon/a")), InotifyWatch.parseEvent("CLOSE_WRITE,CLOSE /home/xenon/a"));
+        assertEquals(new WatchEvent(WatchEvent.Kind.MODIFIED, new Path("/home/xenon/a")), InotifyWatch.parseEvent("ATTRIB /home/xenon/a"));
+        assertEquals(new WatchEvent(WatchEvent.Kind.DELETED, new Path("/home/xenon/a")), InotifyWatch.parseEvent("DELETE /home/xenon/a"));
+        assertEquals(new WatchEvent(WatchEvent.Kind.DELETED, new Path("/home/xenon/a")), InotifyWatch.parseEvent("MOVED_FROM /home/xenon/a"));
+        assertEquals(null, InotifyWatch.parseEvent("DELETE_SELF /home/xenon/"));
+        assertEquals(null, InotifyWatch.parseEvent("garbage"));
+    }
+
+    @Test
+    public void test_inotifyDrain() {
+        StringBuilder b = new StringBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+            b.append("Couldn't watch /home/xenon/dir").append(i).append(": Permission denied\n");
+        }
+
+        AtomicReference<Boolean> closed = new AtomicReference<>(false);
+        ByteArrayInputStream in = new ByteArrayInputStream(b.toString().getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        InotifyWatch.drain(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+
+        assertEquals(0, in.available());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void test_inotifyRead() throws XenonException {
+        InotifyWatch w = new InotifyWatch(new Path("/home/xenon"), new WatchOptions(), null);
+
+        w.read(new ByteArrayInputStream("CREATE /home/xenon/a\nIGNORED /home/xenon/\nDELETE /home/xenon/a\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(Arrays.asList(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/home/xenon/a")),
+                new WatchEvent(WatchEvent.Kind.DELETED, new Path("/home/xenon/a"))), w.poll(0));
+
+        // The output ended, so inotifywait stopped.
+        assertFalse(w.isOpen());
+
+        try {
+            w.poll(0);
+            throw new AssertionError("Expected an exception");
+        } catch (XenonException e) {
+            assertTrue(e.getMessage().contains("inotifywait stopped"));
+        }
+    }
+
+    /**
+     * Records the attempts to start inotifywait, which is not available.
+     */
+    class WatchFileSystem extends SftpFileSystem {
+
+        int attempts = 0;
+
+        WatchFileSystem(MockSftpClient client) {
+            super("ID", "TEST", "localhost", new DefaultCredential(), new Path("/home/xenon"), SETTINGS,
+                    SftpSettings.defaults().withInotifyWatch(true), new MockSSHConnection(client), client, null);
+        }
+
+        @Override
+        Watch startInotifyWatch(Path dir, WatchOptions options) {
+            attempts++;
+            return null;
+        }
+    }
+
+    @Test
+    public void test_watchFallsBackToPolling() throws XenonException {
+        try (WatchFileSystem f = new WatchFileSystem(new DirClient())) {
+            WatchOptions o = new WatchOptions();
+            o.setPollInterval(60 * 60 * 1000);
+
+            try (Watch w = f.watch(new Path("dir"), o)) {
+                assertFalse(w instanceof InotifyWatch);
+                assertEquals(new Path("/home/xenon/dir"), w.getPath());
+            }
+
+            // Not tried again.
+            f.watch(new Path("dir"), o).close();
+            assertEquals(1, f.attempts);
+        }
+    }
 }
@@ -15,16 +15,47 @@
  */
 package nl.esciencecenter.xenon.adaptors.filesystems.webdav;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
+import com.github.sardine.DavResource;
+import com.github.sardine.Sardine;
+import com.github.sardine.impl.SardineException;
+
 import nl.esciencecenter.xenon.InvalidCredentialException;
 import nl.esciencecenter.xenon.InvalidLocationException;
 import nl.esciencecenter.xenon.XenonException;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileSystemSettings;
 import nl.esciencecenter.xenon.credentials.CredentialMap;
+import nl.esciencecenter.xenon.credentials.DefaultCredential;
 import nl.esciencecenter.xenon.credentials.PasswordCredential;
+import nl.esciencecenter.xenon.filesystems.CloseableIterator;
+import nl.esciencecenter.xenon.filesystems.CopyMode;
+import nl.esciencecenter.xenon.filesystems.CopyStatus;
+import nl.esciencecenter.xenon.filesystems.Path;
+import nl.esciencecenter.xenon.filesystems.PathAttributes;
 
 public class WebdavFileSystemSimpleTests {
 
+    private static final FileSystemSettings SETTINGS = FileSystemSettings.defaults().withBufferSize(4096);
+
     @Test(expected = InvalidCredentialException.class)
     public void test_invalid_credential_type() throws XenonException {
         new WebdavFileAdaptor().createFileSystem("localhost", new CredentialMap(), null);
@@ -44,4 +75,257 @@ public class WebdavFileSystemSimpleTests {
     public void test_location_empty() throws XenonException {
         new WebdavFileAdaptor().createFileSystem("", new PasswordCredential("aap", "noot".toCharArray()), null);
     }
+
+    private static final String SERVER = "http://localhost";
+
+    // The tree served by the mock client. Collections end with a slash.
+    private static final List<String> TREE = Arrays.asList("/dav/dir/", "/dav/dir/a", "/dav/dir/sub/", "/dav/dir/sub/b");
+
+    private static DavResource resource(String href) {
+        try {
+            String type = href.endsWith("/") ? "httpd/unix-directory" : "text/plain";
+            return new DavResource(href, new Date(0), new Date(0), type, 1L, null, null, null, null, null, Collections.emptyMap()) {
+            };
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // The number of listings of a single resource, which is how the mock client is asked for attributes.
+    private final AtomicInteger stats = new AtomicInteger();
+
+    private Sardine client(List<Integer> depths, boolean forbidden) {
+        return client(depths, forbidden, 0, new ArrayList<>());
+    }
+
+    /**
+     * Creates a Sardine client serving a copy of {@link #TREE}, which records the depth of every listing. If <code>forbidden</code> is set, a Depth: infinity
+     * listing is refused. Listings of a single resource are only counted in {@link #stats}. A <code>COPY</code> fails with <code>copyStatus</code> unless it
+     * is 0. Every <code>COPY</code>, <code>MKCOL</code> and <code>PUT</code> is recorded in <code>calls</code>.
+     */
+    private Sardine client(List<Integer> depths, boolean forbidden, int copyStatus, List<String> calls) {
+        List<String> tree = new CopyOnWriteArrayList<>(TREE);
+        tree.add("/dav/");
+
+        return (Sardine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Sardine.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "exists":
+                return tree.contains(((String) args[0]).substring(SERVER.length()));
+            case "copy":
+                String from = ((String) args[0]).substring(SERVER.length());
+                String to = ((String) args[1]).substring(SERVER.length());
+                calls.add("COPY " + from + " " + to);
+
+                if (copyStatus != 0) {
+                    throw new SardineException("Copy failed", copyStatus, "Copy failed");
+                }
+
+                for (String p : tree) {
+                    if (p.startsWith(from)) {
+                        tree.add(to + p.substring(from.length()));
+                    }
+                }
+                return null;
+            case "createDirectory":
+                String dir = ((String) args[0]).substring(SERVER.length());
+                calls.add("MKCOL " + dir);
+                tree.add(dir);
+                return null;
+            case "put":
+                String file = ((String) args[0]).substring(SERVER.length());
+                calls.add("PUT " + file);
+                tree.add(file);
+
+                if (args[1] instanceof InputStream) {
+                    while (((InputStream) args[1]).read() >= 0) {
+                        // discard
+                    }
+                }
+                return null;
+            case "get":
+                return new ByteArrayInputStream(new byte[1]);
+            case "list":
+                String href = ((String) args[0]).substring(SERVER.length());
+                int depth = (Integer) args[1];
+
+                if (depth == 0) {
+                    // Attributes of a single resource.
+                    stats.incrementAndGet();
+                    String d = href.endsWith("/") ? href : href + "/";
+                    return Collections.singletonList(resource(tree.contains(d) ? d : href));
+                }
+
+                depths.add(depth);
+
+                if (depth < 0 && forbidden) {
+                    throw new SardineException("Forbidden", 403, "Forbidden");
+                }
+
+                List<DavResource> result = new ArrayList<>();
+
+                for (String p : tree) {
+                    String rest = p.startsWith(href) ? p.substring(href.length()) : null;
+
+                    if (rest != null && (depth < 0 || rest.replaceAll("/$", "").indexOf('/') < 0)) {
+                        result.add(resource(p));
+                    }
+                }
+                return result;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private HashSet<Path> listRecursive(WebdavFileSystem f) throws XenonException {
+        HashSet<Path> result = new HashSet<>();
+
+        for (PathAttributes p : f.list(new Path("/dav/dir"), true)) {
+            result.add(p.getPath());
+        }
+
+        return result;
+    }
+
+    private static final HashSet<Path> EXPECTED = new HashSet<>(Arrays.asList(new Path("/dav/dir/a"), new Path("/dav/dir/sub"), new Path("/dav/dir/sub/b")));
+
+    @Test
+    public void test_listDepthInfinity() throws XenonException {
+        ArrayList<Integer> depths = new ArrayList<>();
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS, true,
+                client(depths, false), null);
+
+        assertEquals(EXPECTED, listRecursive(f));
+        assertEquals(Arrays.asList(-1), depths);
+    }
+
+    private WebdavFileSystem cachedFileSystem() {
+        return new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS.withCache(60000, 100), true,
+                client(new ArrayList<>(), false), null);
+    }
+
+    @Test
+    public void test_listDepthInfinityCloseableAndCached() throws XenonException {
+        WebdavFileSystem f = cachedFileSystem();
+
+        stats.set(0);
+        copy(f, "/dav/dir/sub/b", "/dav/copy");
+        int uncached = stats.get();
+
+        f = cachedFileSystem();
+
+        Iterator<PathAttributes> it = f.list(new Path("/dav/dir"), true).iterator();
+
+        assertTrue(it instanceof CloseableIterator);
+        assertTrue(it.hasNext());
+
+        ((CloseableIterator<PathAttributes>) it).close();
+        assertFalse(it.hasNext());
+
+        // The attributes of the source were cached by the listing, so the copy does not ask the server for them.
+        stats.set(0);
+        copy(f, "/dav/dir/sub/b", "/dav/copy");
+        assertEquals(uncached - 1, stats.get());
+    }
+
+    @Test
+    public void test_listDepthInfinityForbidden() throws XenonException {
+        ArrayList<Integer> depths = new ArrayList<>();
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS, true,
+                client(depths, true), null);
+
+        assertEquals(EXPECTED, listRecursive(f));
+        assertEquals(Arrays.asList(-1, 1, 1), depths);
+
+        // The server refused once, so the next listing does not try again.
+        depths.clear();
+        assertEquals(EXPECTED, listRecursive(f));
+        assertEquals(Arrays.asList(1, 1), depths);
+    }
+
+    @Test
+    public void test_listDepthInfinityDisabledByDefault() throws XenonException {
+        ArrayList<Integer> depths = new ArrayList<>();
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS,
+                client(depths, false), null);
+
+        assertEquals(EXPECTED, listRecursive(f));
+        assertEquals(Arrays.asList(1, 1), depths);
+    }
+
+    @Test(expected = nl.esciencecenter.xenon.UnsupportedOperationException.class)
+    public void test_setLastModifiedTimeUnsupported() throws XenonException {
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS,
+                client(new ArrayList<>(), false), null);
+
+        // WebDAV does not override the default, which refuses the operation.
+        f.setLastModifiedTime(new Path("/dav/dir/a"), 1000);
+    }
+
+    private CopyStatus copy(WebdavFileSystem f, String source, String destination) throws XenonException {
+        String id = f.copy(new Path(source), f, new Path(destination), CopyMode.CREATE, true);
+        return f.waitUntilDone(id, 10000);
+    }
+
+    @Test
+    public void test_copyDirectoryOnServer() throws XenonException {
+        ArrayList<String> calls = new ArrayList<>();
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS,
+                client(new ArrayList<>(), false, 0, calls), null);
+
+        CopyStatus status = copy(f, "/dav/dir", "/dav/copy");
+
+        assertTrue(status.isDone());
+        assertFalse(status.hasException());
+        assertEquals(Arrays.asList("COPY /dav/dir/ /dav/copy/"), calls);
+
+        // The collection was copied in a single request, but the status still shows what it contained.
+        assertEquals(2, status.filesToCopy());
+        assertEquals(2, status.filesCopied());
+        assertEquals(2, status.bytesToCopy());
+        assertEquals(2, status.bytesCopied());
+    }
+
+    @Test
+    public void test_copyFileOnServer() throws XenonException {
+        ArrayList<String> calls = new ArrayList<>();
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS,
+                client(new ArrayList<>(), false, 0, calls), null);
+
+        CopyStatus status = copy(f, "/dav/dir/a", "/dav/copy");
+
+        assertTrue(status.isDone());
+        assertFalse(status.hasException());
+        assertEquals(Arrays.asList("COPY /dav/dir/a /dav/copy"), calls);
+        assertEquals(1, status.filesCopied());
+        assertEquals(1, status.bytesCopied());
+    }
+
+    private void assertCopyFallback(int copyStatus) throws XenonException {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        WebdavFileSystem f = new WebdavFileSystem("0", "webdav", "localhost", new DefaultCredential(), SERVER, new Path("/dav"), SETTINGS,
+                client(new ArrayList<>(), false, copyStatus, calls), null);
+
+        CopyStatus status = copy(f, "/dav/dir", "/dav/copy");
+
+        assertTrue(status.isDone());
+        assertFalse(status.hasException());
+
+        // The server refused the COPY, so the client created the collections and copied the files itself, without asking the server again.
+        assertEquals(Arrays.asList("COPY /dav/dir/ /dav/copy/", "MKCOL /dav/copy/", "MKCOL /dav/copy/sub/"), calls.subList(0, 3));
+        assertEquals(1, calls.stream().filter(c -> c.startsWith("COPY")).count());
+        assertEquals(2, status.filesToCopy());
+        assertEquals(2, status.filesCopied());
+        assertEquals(2, status.bytesCopied());
+    }
+
+    @Test
+    public void test_copyNotImplementedFallsBack() throws XenonException {
+        assertCopyFallback(501);
+    }
+
+    @Test
+    public void test_copyNotAllowedFallsBack() throws XenonException {
+        assertCopyFallback(405);
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+
+public class AttributeCacheTest {
+
+    private PathAttributes attributes(String path, boolean directory) {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path(path));
+        a.setDirectory(directory);
+        a.setRegular(!directory);
+        return a;
+    }
+
+    @Test
+    public void test_negative() {
+        AttributeCache c = new AttributeCache(60 * 1000, 10);
+        c.put(new Path("/aap"), null);
+
+        AttributeCache.Entry e = c.get(new Path("/aap"));
+        assertNotNull(e);
+        assertNull(e.attributes);
+        assertNull(c.get(new Path("/noot")));
+    }
+
+    @Test
+    public void test_evictsLeastRecentlyUsed() {
+        AttributeCache c = new AttributeCache(60 * 1000, 2);
+        c.put(new Path("/aap"), attributes("/aap", false));
+        c.put(new Path("/noot"), attributes("/noot", false));
+        c.get(new Path("/aap"));
+        c.put(new Path("/mies"), attributes("/mies", false));
+
+        assertEquals(2, c.size());
+        assertNotNull(c.get(new Path("/aap")));
+        assertNull(c.get(new Path("/noot")));
+    }
+
+    @Test
+    public void test_expires() throws InterruptedException {
+        AttributeCache c = new AttributeCache(1, 10);
+        c.put(new Path("/aap"), attributes("/aap", false));
+        Thread.sleep(10);
+
+        assertNull(c.get(new Path("/aap")));
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void test_invalidateFile() {
+        AttributeCache c = new AttributeCache(60 * 1000, 10);
+        c.put(new Path("/aap"), attributes("/aap", true));
+        c.put(new Path("/aap/noot"), attributes("/aap/noot", false));
+        c.put(new Path("/mies"), attributes("/mies", false));
+
+        c.invalidate(new Path("/aap/noot"));
+
+        // The parent is removed as well, as its modification time changed.
+        assertNull(c.get(new Path("/aap/noot")));
+        assertNull(c.get(new Path("/aap")));
+        assertNotNull(c.get(new Path("/mies")));
+    }
+
+    @Test
+    public void test_invalidateDirectory() {
+        AttributeCache c = new AttributeCache(60 * 1000, 10);
+        c.put(new Path("/aap"), attributes("/aap", true));
+        c.put(new Path("/aap/noot"), attributes("/aap/noot", true));
+        c.put(new Path("/aap/noot/mies"), null);
+        c.put(new Path("/aapje"), attributes("/aapje", false));
+
+        c.invalidate(new Path("/aap"));
+
+        assertNull(c.get(new Path("/aap/noot")));
+        assertNull(c.get(new Path("/aap/noot/mies")));
+        assertNotNull(c.get(new Path("/aapje")));
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public void test_invalidateDirectoryNotCached() {
+        AttributeCache c = new AttributeCache(60 * 1000, 10);
+        c.put(new Path("/aap/noot/mies"), attributes("/aap/noot/mies", false));
+        c.put(new Path("/aapje"), attributes("/aapje", false));
+
+        // Neither /aap nor /aap/noot is cached, but everything below /aap is still found.
+        c.invalidate(new Path("/aap"));
+
+        assertNull(c.get(new Path("/aap/noot/mies")));
+        assertNotNull(c.get(new Path("/aapje")));
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public void test_invalidatePrunesTree() {
+        AttributeCache c = new AttributeCache(60 * 1000, 10);
+        c.put(new Path("/aap/noot/mies"), attributes("/aap/noot/mies", false));
+        c.put(new Path("/aap/noot/wim"), attributes("/aap/noot/wim", false));
+
+        c.invalidate(new Path("/aap/noot/mies"));
+        assertNotNull(c.get(new Path("/aap/noot/wim")));
+        assertTrue(c.treeSize() > 0);
+
+        c.invalidate(new Path("/aap/noot/wim"));
+        assertEquals(0, c.size());
+        assertEquals(0, c.treeSize());
+    }
+
+    @Test
+    public void test_evictionPrunesTree() {
+        AttributeCache c = new AttributeCache(60 * 1000, 2);
+
+        for (int i = 0; i < 100; i++) {
+            c.put(new Path("/dir" + i + "/file"), attributes("/dir" + i + "/file", false));
+        }
+
+        assertEquals(2, c.size());
+        assertNotNull(c.get(new Path("/dir99/file")));
+
+        // Only the directories of the two cached files remain in the tree.
+        assertEquals(2, c.treeSize());
+    }
+
+    @Test
+    public void test_expiryPrunesTree() throws InterruptedException {
+        AttributeCache c = new AttributeCache(1, 10);
+        c.put(new Path("/aap/noot"), attributes("/aap/noot", false));
+        Thread.sleep(10);
+
+        assertNull(c.get(new Path("/aap/noot")));
+        assertEquals(0, c.treeSize());
+    }
+
+    @Test
+    public void test_clear() {
+        AttributeCache c = new AttributeCache(60 * 1000, 10);
+        c.put(new Path("/aap"), attributes("/aap", true));
+        c.clear();
+        assertEquals(0, c.size());
+    }
+}
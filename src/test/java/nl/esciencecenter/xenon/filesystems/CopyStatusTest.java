@@ -50,6 +50,14 @@ public class CopyStatusTest {
         assertEquals(31, s.bytesCopied());
     }
 
+    @Test
+    public void test_throughput() {
+        CopyStatus s = new FileSystem.CopyStatusImplementation("ID", "TEST_STATE", 42, 31, 5, 3, 1.5, null);
+        assertEquals(5, s.filesToCopy());
+        assertEquals(3, s.filesCopied());
+        assertEquals(1.5, s.bytesPerSecond(), 0.0);
+    }
+
     @Test
     public void test_hasException_null_false() {
         CopyStatus s = new FileSystem.CopyStatusImplementation("ID", "TEST_STATE", 42, 31, null);
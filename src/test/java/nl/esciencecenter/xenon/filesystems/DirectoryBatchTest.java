@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+import nl.esciencecenter.xenon.adaptors.filesystems.PosixFileUtils;
+
+public class DirectoryBatchTest {
+
+    @Test
+    public void test_empty() {
+        DirectoryBatch b = new DirectoryBatch(new Path("/aap"));
+        assertEquals(0, b.size());
+        assertEquals(new Path("/aap"), b.getParent());
+        assertFalse(b.cursor().next());
+    }
+
+    @Test
+    public void test_cursor() {
+        DirectoryBatch b = new DirectoryBatch(new Path("/aap"), 1);
+        b.add("noot", DirectoryBatch.REGULAR, 42, 1000, 0100644);
+        b.add("mies", DirectoryBatch.DIRECTORY, 0, 2000, -1);
+
+        DirectoryBatch.Cursor c = b.cursor();
+
+        assertTrue(c.next());
+        assertEquals("noot", c.getName());
+        assertEquals(new Path("/aap/noot"), c.getPath());
+        assertTrue(c.isRegular());
+        assertEquals(42, c.getSize());
+        assertEquals(1000, c.getLastModifiedTime());
+        assertEquals(0644, c.getPermissionBits());
+        assertEquals(PosixFileUtils.bitsToPermissions(0644), c.getPermissions());
+
+        assertTrue(c.next());
+        assertEquals("mies", c.getName());
+        assertTrue(c.isDirectory());
+        assertEquals(-1, c.getPermissionBits());
+        assertNull(c.getPermissions());
+
+        assertFalse(c.next());
+        assertFalse(c.next());
+    }
+
+    @Test
+    public void test_grows() {
+        DirectoryBatch b = new DirectoryBatch(new Path("/aap"), 0);
+
+        for (int i = 0; i < 1000; i++) {
+            b.add("file" + i, DirectoryBatch.REGULAR, i, i, 0600);
+        }
+
+        assertEquals(1000, b.size());
+
+        DirectoryBatch.Cursor c = b.cursor();
+        c.moveTo(567);
+        assertEquals("file567", c.getName());
+        assertEquals(567, c.getSize());
+        assertEquals(567, c.getIndex());
+    }
+
+    @Test
+    public void test_nameEquals() {
+        DirectoryBatch b = new DirectoryBatch(new Path("/aap"));
+        b.add("noot", DirectoryBatch.REGULAR, 0, 0, -1);
+
+        DirectoryBatch.Cursor c = b.cursor();
+        c.next();
+
+        assertTrue(c.nameEquals("noot"));
+        assertFalse(c.nameEquals("noo"));
+        assertFalse(c.nameEquals("mies"));
+        assertEquals("/aap/noot", c.appendName(new StringBuilder("/aap/")).toString());
+    }
+
+    @Test
+    public void test_addAttributes() throws Exception {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path("/aap/noot"));
+        a.setSymbolicLink(true);
+        a.setLastModifiedTime(3000);
+        a.setPermissionBits(0777);
+
+        DirectoryBatch b = new DirectoryBatch(new Path("/aap"));
+        b.add(a);
+
+        DirectoryBatch.Cursor c = b.cursor();
+        c.next();
+
+        PathAttributes p = c.toPathAttributes();
+        assertEquals(new Path("/aap/noot"), p.getPath());
+        assertTrue(p.isSymbolicLink());
+        assertEquals(3000, p.getLastModifiedTime());
+        assertEquals(PosixFileUtils.bitsToPermissions(0777), p.getPermissions());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_cursorBeforeFirst() {
+        DirectoryBatch b = new DirectoryBatch(new Path("/aap"));
+        b.add("noot", DirectoryBatch.REGULAR, 0, 0, -1);
+        b.cursor().getName();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void test_moveToOutOfRange() {
+        new DirectoryBatch(new Path("/aap")).cursor().moveTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknownType() {
+        new DirectoryBatch(new Path("/aap")).add("noot", (byte) 7, 0, 0, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_nullParent() {
+        new DirectoryBatch(null);
+    }
+}
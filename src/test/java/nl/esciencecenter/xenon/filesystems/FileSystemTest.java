@@ -21,21 +21,34 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import nl.esciencecenter.xenon.UnknownAdaptorException;
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.XenonPropertyDescription;
+import nl.esciencecenter.xenon.XenonRuntimeException;
 import nl.esciencecenter.xenon.XenonPropertyDescription.Type;
+import nl.esciencecenter.xenon.adaptors.NotConnectedException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 
@@ -355,6 +368,68 @@ public class FileSystemTest {
         assertFalse(f.exists(new Path("/test/aap")));
     }
 
+    @Test
+    public void test_setPosixFilePermissionsRecursive() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        Path test = entry.resolve("aap");
+        f.createDirectories(test.resolve("noot"));
+        f.createFile(test.resolve("noot/file0"));
+        f.createFile(test.resolve("file1"));
+
+        Set<PosixFilePermission> perms = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_EXECUTE);
+        f.setPosixFilePermissions(test, perms, true);
+
+        assertEquals(perms, f.getAttributes(test).getPermissions());
+        assertEquals(perms, f.getAttributes(test.resolve("noot")).getPermissions());
+        assertEquals(perms, f.getAttributes(test.resolve("noot/file0")).getPermissions());
+        assertEquals(perms, f.getAttributes(test.resolve("file1")).getPermissions());
+    }
+
+    @Test
+    public void test_setPosixFilePermissionsRecursiveUsesListing() throws XenonException {
+        Path entry = new Path("/test");
+        ArrayList<Path> lookups = new ArrayList<>();
+
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry) {
+            @Override
+            public synchronized PathAttributes getAttributes(Path path) throws XenonException {
+                lookups.add(toAbsolutePath(path));
+                return super.getAttributes(path);
+            }
+        };
+
+        Path test = entry.resolve("aap");
+        f.createDirectories(test.resolve("noot"));
+        f.createFile(test.resolve("noot/file0"));
+        f.createFile(test.resolve("file1"));
+
+        lookups.clear();
+        f.setPosixFilePermissions(test, EnumSet.of(PosixFilePermission.OWNER_READ), true);
+
+        // Only the top directory is looked up, the type of the entries below it comes from the listing.
+        assertFalse(lookups.contains(test.resolve("noot")));
+        assertFalse(lookups.contains(test.resolve("file1")));
+        assertFalse(lookups.contains(test.resolve("noot/file0")));
+    }
+
+    @Test
+    public void test_setPosixFilePermissionsNotRecursive() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST", "MEM", entry);
+
+        Path test = entry.resolve("aap");
+        f.createDirectories(test);
+        f.createFile(test.resolve("file0"));
+
+        Set<PosixFilePermission> perms = EnumSet.of(PosixFilePermission.OWNER_READ);
+        f.setPosixFilePermissions(test, perms, false);
+
+        assertEquals(perms, f.getAttributes(test).getPermissions());
+        assertFalse(perms.equals(f.getAttributes(test.resolve("file0")).getPermissions()));
+    }
+
     @Test
     public void test_deleteDirectories() throws XenonException {
         Path entry = new Path("/test");
@@ -1249,175 +1324,1832 @@ public class FileSystemTest {
         assertTrue(Arrays.equals(data1, f1.getData(new Path("/test/aap/noot/file1"))));
     }
 
-    // getStatus
     @Test(expected = IllegalArgumentException.class)
-    public void test_getStatusFailsNull() throws XenonException {
-        Path entry = new Path("/test");
-        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
-        f.getStatus(null);
+    public void test_constructorParallelismZero() throws XenonException {
+        new MockFileSystem("0", "TEST0", "MEM", new Path("/test"), 0, null);
     }
 
-    @Test(expected = NoSuchCopyException.class)
-    public void test_getStatusFailsWrongType() throws XenonException {
+    @Test
+    public void test_copyDirParallelOK() throws XenonException {
         Path entry = new Path("/test");
-        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
-        f.getStatus("AAP");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, 4, null);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createDirectory(new Path("/test/aap/noot"));
+
+        for (int i = 0; i < 50; i++) {
+            Path file = new Path("/test/aap/" + (i % 2 == 0 ? "" : "noot/") + "file" + i);
+            f0.createFile(file);
+            f0.addData(file, new byte[] { (byte) i, 42 });
+        }
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(100, s.bytesCopied());
+
+        for (int i = 0; i < 50; i++) {
+            Path file = new Path("/test/aap/" + (i % 2 == 0 ? "" : "noot/") + "file" + i);
+            assertTrue(Arrays.equals(new byte[] { (byte) i, 42 }, f1.getData(file)));
+        }
     }
 
     @Test
-    public void test_getStatusFails() throws XenonException {
+    public void test_copyDirParallelFailsTransfer() throws XenonException {
         Path entry = new Path("/test");
-        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
 
-        Path file = new Path("/test/file");
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, 4, null);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
 
-        f.ensureFile(file);
-        f.addData(file, new byte[] { 42 });
+        f0.createDirectory(new Path("/test/aap"));
 
-        Path target = new Path("/test/target");
-        String ID = f.copy(file, f, target, CopyMode.REPLACE, false);
+        for (int i = 0; i < 10; i++) {
+            Path file = new Path("/test/aap/file" + i);
+            f0.createFile(file);
 
-        CopyStatus status = f.getStatus(ID);
+            // file7 has no content, so the transfer reading it will fail
+            if (i != 7) {
+                f0.addData(file, new byte[] { (byte) i });
+            }
+        }
 
-        while (!status.isDone()) {
-            try {
-                Thread.sleep(50);
-            } catch (Exception e) {
-                // ignore
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+        assertThat(s.getException(), instanceOf(XenonException.class));
+    }
+
+    @Test
+    public void test_copyDirParallelFailsWaitsForTransfers() throws XenonException {
+        Path entry = new Path("/test");
+
+        AtomicBoolean finished = new AtomicBoolean(false);
+        CountDownLatch started = new CountDownLatch(1);
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, 4, null) {
+            @Override
+            public InputStream readFromFile(Path file) throws XenonException {
+                if (!file.getFileNameAsString().equals("slow")) {
+                    // Only fail once the slow transfer is running.
+                    try {
+                        started.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.readFromFile(file);
+                }
+
+                started.countDown();
+
+                return new InputStream() {
+                    private boolean done = false;
+
+                    @Override
+                    public int read() {
+                        if (done) {
+                            return -1;
+                        }
+
+                        // Ignores the interrupt of the cancelled transfer, like a blocking network read would.
+                        long end = System.currentTimeMillis() + 500;
+
+                        while (System.currentTimeMillis() < end) {
+                            try {
+                                Thread.sleep(10);
+                            } catch (InterruptedException e) {
+                                // ignored
+                            }
+                        }
+
+                        done = true;
+                        return 42;
+                    }
+
+                    @Override
+                    public void close() {
+                        finished.set(true);
+                    }
+                };
             }
+        };
 
-            status = f.getStatus(ID);
-        }
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
 
-        assertTrue(f.exists(target));
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createFile(new Path("/test/aap/slow"));
+        f0.addData(new Path("/test/aap/slow"), new byte[] { 42 });
 
-        byte[] data = f.getData(target);
+        // has no content, so the transfer reading it will fail
+        f0.createFile(new Path("/test/aap/broken"));
 
-        assertNotNull(data);
-        assertEquals(1, data.length);
-        assertEquals(42, data[0]);
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+        assertTrue(finished.get());
     }
 
-    // cancel
+    private XenonProperties pipelinedProperties() throws XenonException {
+        HashMap<String, String> p = new HashMap<>();
+        p.put("xenon.adaptors.filesystems.TEST0.copy.pipelined", "true");
 
-    @Test(expected = IllegalArgumentException.class)
-    public void test_cancelFailsNull() throws XenonException {
-        Path entry = new Path("/test");
-        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
-        f.cancel(null);
+        XenonPropertyDescription d = new XenonPropertyDescription("xenon.adaptors.filesystems.TEST0.copy.pipelined", Type.BOOLEAN, "false", "test");
+        return new XenonProperties(new XenonPropertyDescription[] { d }, p);
     }
 
-    @Test(expected = NoSuchCopyException.class)
-    public void test_cancelFailsWrongType() throws XenonException {
-        Path entry = new Path("/test");
-        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
-        f.cancel("AAP");
+    private void addPipelinedFiles(MockFileSystem f0) throws XenonException {
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createDirectory(new Path("/test/aap/noot"));
+        f0.createDirectory(new Path("/test/aap/noot/mies"));
+
+        for (int i = 0; i < 30; i++) {
+            Path file = new Path("/test/aap/" + (i % 3 == 0 ? "" : (i % 3 == 1 ? "noot/" : "noot/mies/")) + "file" + i);
+
+            PathAttributesImplementation a = new PathAttributesImplementation();
+            a.setPath(file);
+            a.setRegular(true);
+            a.setSize(3);
+
+            f0.addAttributes(file, a);
+            f0.addData(file, new byte[] { (byte) i, 42, 42 });
+        }
     }
 
-    private void sleep(long delay) {
-        try {
-            Thread.sleep(delay);
-        } catch (Exception e) {
-            // ignore
+    private void checkPipelinedFiles(MockFileSystem f1) throws XenonException {
+        for (int i = 0; i < 30; i++) {
+            Path file = new Path("/test/aap/" + (i % 3 == 0 ? "" : (i % 3 == 1 ? "noot/" : "noot/mies/")) + "file" + i);
+            assertTrue(Arrays.equals(new byte[] { (byte) i, 42, 42 }, f1.getData(file)));
         }
     }
 
     @Test
-    public void test_cancelAfterDelay() throws XenonException {
+    public void test_copyDirPipelinedOK() throws XenonException {
         Path entry = new Path("/test");
 
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, pipelinedProperties());
         MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
 
-        Path f = new Path("/test/aap");
+        addPipelinedFiles(f0);
 
-        f0.createFile(f);
-        f0.addInputStream(f, new DelayInputStream(10000));
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
 
-        f1.createFile(f);
-        f1.addOutputStream(f, new CountIgnoreOutputStream());
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(90, s.bytesToCopy());
+        assertEquals(90, s.bytesCopied());
+        assertTrue(f1.exists(new Path("/test/aap/noot/mies")));
 
-        String h = f0.copy(f, f1, f, CopyMode.REPLACE, false);
+        checkPipelinedFiles(f1);
+    }
 
-        sleep(1000);
+    @Test
+    public void test_copyDirPipelinedParallelOK() throws XenonException {
+        Path entry = new Path("/test");
 
-        // cancel -- the copy should have started already, but should need 9
-        // seconds more
-        CopyStatus s = f0.cancel(h);
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, 4, pipelinedProperties());
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addPipelinedFiles(f0);
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
 
         assertTrue(s.isDone());
-        assertTrue(s.hasException());
-        assertTrue(s.getException() instanceof XenonException);
+        assertFalse(s.hasException());
+        assertEquals(90, s.bytesToCopy());
+        assertEquals(90, s.bytesCopied());
+
+        checkPipelinedFiles(f1);
     }
 
-    @Test(expected = NoSuchCopyException.class)
-    public void test_cancelAfterDone() throws XenonException {
+    @Test
+    public void test_copyDirReplaceFileWithSubdirectory() throws XenonException {
         Path entry = new Path("/test");
 
         MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
         MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
 
-        Path f = new Path("/test/aap");
+        addPipelinedFiles(f0);
 
-        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+        f1.createDirectories(new Path("/test/aap/noot"));
+        f1.createDirectory(new Path("/test/aap/wim"));
+        f1.createFile(new Path("/test/aap/noot/mies"));
 
-        f0.createFile(f);
-        f0.addData(f, data);
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.REPLACE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
 
-        String h = f0.copy(f, f1, f, CopyMode.CREATE, false);
+        // Same as the pipelined copy: noot is merged, the mies file is replaced by a directory, and wim is left alone.
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertTrue(f1.getAttributes(new Path("/test/aap/noot/mies")).isDirectory());
+        assertTrue(f1.exists(new Path("/test/aap/wim")));
 
-        CopyStatus s = f0.waitUntilDone(h, 1000);
+        checkPipelinedFiles(f1);
+    }
+
+    @Test
+    public void test_copyDirPipelinedReplace() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry, pipelinedProperties());
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addPipelinedFiles(f0);
+
+        f1.createDirectories(new Path("/test/aap/noot"));
+        f1.createDirectory(new Path("/test/aap/wim"));
+        f1.createFile(new Path("/test/aap/noot/mies"));
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.REPLACE, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
 
+        // The existing noot directory is merged, the mies file is replaced by a directory, and wim is left alone.
         assertTrue(s.isDone());
         assertFalse(s.hasException());
+        assertTrue(f1.getAttributes(new Path("/test/aap/noot/mies")).isDirectory());
+        assertTrue(f1.exists(new Path("/test/aap/wim")));
 
-        // cancel -- the copy is already done -- show throw exception
-        CopyStatus s2 = f0.cancel(h);
+        checkPipelinedFiles(f1);
     }
 
-    @Test
-    public void test_properties() throws Exception {
-        HashMap<String, String> p = new HashMap<>();
-        p.put("aap", "noot");
+    private void addFile(MockFileSystem fs, String path, byte[] data, long time) throws XenonException {
+        Path file = new Path(path);
 
-        XenonPropertyDescription d = new XenonPropertyDescription("aap", Type.STRING, "empty", "test");
-        XenonProperties prop = new XenonProperties(new XenonPropertyDescription[] { d }, p);
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(file);
+        a.setRegular(true);
+        a.setSize(data.length);
+        a.setLastModifiedTime(time);
 
-        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"), prop);
-        assertEquals(p, f.getProperties());
+        fs.addAttributes(file, a);
+        fs.addData(file, data);
+    }
+
+    private void copyDirSync(MockFileSystem f0) throws XenonException {
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        f0.createDirectory(new Path("/test/aap"));
+        f0.createDirectory(new Path("/test/aap/noot"));
+
+        addFile(f0, "/test/aap/file0", new byte[] { 1, 2 }, 5000);
+        addFile(f0, "/test/aap/noot/file1", new byte[] { 1, 2, 3, 4 }, 5000);
+        addFile(f0, "/test/aap/noot/file2", new byte[] { 1, 2, 3 }, 5000);
+        addFile(f0, "/test/aap/noot/file3", new byte[] { 1, 2, 3, 4, 5, 6 }, 5000);
+
+        f1.createDirectory(new Path("/test/aap"));
+        f1.createDirectory(new Path("/test/aap/noot"));
+
+        // same size and time (up to the second), so up to date
+        addFile(f1, "/test/aap/file0", new byte[] { 9, 9 }, 5999);
+        // same size, but older
+        addFile(f1, "/test/aap/noot/file1", new byte[] { 9, 9, 9, 9 }, 4000);
+        // same time, but different size
+        addFile(f1, "/test/aap/noot/file2", new byte[] { 9 }, 5000);
+
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.SYNC, true);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(13, s.bytesToCopy());
+        assertEquals(13, s.bytesCopied());
 
+        assertTrue(Arrays.equals(new byte[] { 9, 9 }, f1.getData(new Path("/test/aap/file0"))));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3, 4 }, f1.getData(new Path("/test/aap/noot/file1"))));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, f1.getData(new Path("/test/aap/noot/file2"))));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3, 4, 5, 6 }, f1.getData(new Path("/test/aap/noot/file3"))));
+
+        assertEquals(5000, f1.getAttributes(new Path("/test/aap/noot/file1")).getLastModifiedTime());
+        assertEquals(5000, f1.getAttributes(new Path("/test/aap/noot/file3")).getLastModifiedTime());
     }
 
     @Test
-    public void test_equalsTrueSelf() throws Exception {
-        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
-        assertTrue(f.equals(f));
+    public void test_copyDirSync() throws XenonException {
+        copyDirSync(new MockFileSystem("0", "TEST0", "MEM", new Path("/test")));
     }
 
     @Test
-    public void test_equalsTrueSameID() throws Exception {
-        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
-        MockFileSystem f1 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
-        assertTrue(f0.equals(f1));
+    public void test_copyDirSyncPipelined() throws XenonException {
+        copyDirSync(new MockFileSystem("0", "TEST0", "MEM", new Path("/test"), pipelinedProperties()));
     }
 
     @Test
-    public void test_equalsFalseNull() throws Exception {
-        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
-        assertFalse(f.equals(null));
+    public void test_copyFileSyncUpToDate() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 9, 9 }, 5400);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.SYNC, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(0, s.bytesCopied());
+        assertTrue(Arrays.equals(new byte[] { 9, 9 }, f1.getData(new Path("/test/file0"))));
     }
 
     @Test
-    public void test_equalsFalseWrongType() throws Exception {
-        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
-        assertFalse(f.equals("hello"));
+    public void test_copyFileSyncNewerDestination() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 9, 9 }, 6000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.SYNC, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        // The destination could have been given the modification time of the source, so a different time means it has changed.
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(2, s.bytesCopied());
+        assertTrue(Arrays.equals(new byte[] { 1, 2 }, f1.getData(new Path("/test/file0"))));
+        assertEquals(5000, f1.getAttributes(new Path("/test/file0")).getLastModifiedTime());
     }
 
     @Test
-    public void test_autoclose() throws Exception {
-        try (MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"))) {
-            String dummy = f.getAdaptorName();
-        }
+    public void test_copyFileSyncNewerDestinationCannotSetTime() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry) {
+            @Override
+            protected boolean canSetLastModifiedTime() {
+                return false;
+            }
+        };
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 9, 9 }, 6000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.SYNC, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(0, s.bytesCopied());
+        assertTrue(Arrays.equals(new byte[] { 9, 9 }, f1.getData(new Path("/test/file0"))));
+    }
+
+    @Test
+    public void test_copyFileSyncCoarseTimestamps() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry) {
+            @Override
+            protected long getTimestampResolution() {
+                return 60 * 1000;
+            }
+        };
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2 }, 125 * 1000);
+        addFile(f1, "/test/file0", new byte[] { 9, 9 }, 120 * 1000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.SYNC, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        // The destination only reports whole minutes, so it is up to date.
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(0, s.bytesCopied());
     }
 
+    @Test
+    public void test_copyFileResume() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.RESUME, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(8, s.bytesCopied());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, f1.getData(new Path("/test/file0"))));
+    }
+
+    @Test
+    public void test_copyFileResumeComplete() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.RESUME, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, f1.getData(new Path("/test/file0"))));
+    }
+
+    @Test
+    public void test_copyFileResumeCorruptTail() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 1, 2, 42 }, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.RESUME, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+        assertThat(s.getException(), instanceOf(InvalidResumeTargetException.class));
+    }
+
+    @Test
+    public void test_copyFileResumeTargetLarger() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2 }, 5000);
+        addFile(f1, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.RESUME, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+        assertThat(s.getException(), instanceOf(InvalidResumeTargetException.class));
+    }
+
+    @Test
+    public void test_readFromFileOffset() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3, 4, 5 }, 5000);
+
+        try (InputStream in = f0.readFromFile(new Path("/test/file0"), 3)) {
+            assertEquals(4, in.read());
+            assertEquals(5, in.read());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test(expected = XenonException.class)
+    public void test_readFromFileOffsetBeyondEnd() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3, 4, 5 }, 5000);
+        f0.readFromFile(new Path("/test/file0"), 6);
+    }
+
+    @Test
+    public void test_copyFileOverlapped() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        // Spans several buffers, so the reads and writes overlap.
+        byte[] data = new byte[10 * 4096 + 123];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+
+        addFile(f0, "/test/file0", data, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+        assertEquals(data.length, s.bytesCopied());
+        assertTrue(Arrays.equals(data, f1.getData(new Path("/test/file0"))));
+    }
+
+    @Test
+    public void test_copyFileOverlappedReadFails() throws XenonException {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        addFile(f0, "/test/file0", new byte[100000], 5000);
+
+        f0.addInputStream(new Path("/test/file0"), new InputStream() {
+            int bytes = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (bytes++ >= 8192) {
+                    throw new IOException("Connection lost");
+                }
+                return 42;
+            }
+        });
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+    }
+
+    @Test
+    public void test_copyFileOverlappedCancelStopsReader() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        addFile(f0, "/test/file0", new byte[100000], 5000);
+
+        CountDownLatch closed = new CountDownLatch(1);
+        AtomicInteger reading = new AtomicInteger(0);
+
+        // Stalls after a few buffers, in a read that does not respond to an interrupt, until the stream is closed.
+        f0.addInputStream(new Path("/test/file0"), new InputStream() {
+            int bytes = 0;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                reading.incrementAndGet();
+
+                try {
+                    return super.read(b, off, len);
+                } finally {
+                    reading.decrementAndGet();
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (bytes++ >= 3 * 4096) {
+                    while (closed.getCount() > 0) {
+                        try {
+                            closed.await();
+                        } catch (InterruptedException e) {
+                            // ignored, like a blocked socket read.
+                        }
+                    }
+                    throw new IOException("Stream closed");
+                }
+                return 42;
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        });
+
+        // The destination is closed once the copy of the data has returned, so the reader must have stopped by then.
+        CountDownLatch written = new CountDownLatch(1);
+        AtomicInteger readingWhenWritten = new AtomicInteger(-1);
+
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test")) {
+            @Override
+            public OutputStream writeToFile(Path file, long size) {
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        // discard
+                    }
+
+                    @Override
+                    public void close() {
+                        readingWhenWritten.set(reading.get());
+                        written.countDown();
+                    }
+                };
+            }
+        };
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false);
+
+        while (f0.getStatus(h).bytesCopied() < 4096) {
+            Thread.sleep(10);
+        }
+
+        f0.cancel(h);
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        assertEquals(0, closed.getCount());
+        assertEquals(0, readingWhenWritten.get());
+    }
+
+    class RecordingCopyListener implements CopyListener {
+
+        final List<CopyStatus> progress = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        CopyStatus completed;
+        CopyStatus failed;
+
+        @Override
+        public synchronized void progress(CopyStatus status) {
+            progress.add(status);
+        }
+
+        @Override
+        public synchronized void completed(CopyStatus status) {
+            completed = status;
+            done.countDown();
+        }
+
+        @Override
+        public synchronized void failed(CopyStatus status) {
+            failed = status;
+            done.countDown();
+        }
+
+        @Override
+        public long getProgressInterval() {
+            return 0;
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void test_copyListenerCompleted() throws Exception {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        addPipelinedFiles(f0);
+
+        RecordingCopyListener listener = new RecordingCopyListener();
+        String h = f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true, listener);
+
+        listener.await();
+
+        synchronized (listener) {
+            assertEquals(null, listener.failed);
+            assertEquals(h, listener.completed.getCopyIdentifier());
+            assertEquals("DONE", listener.completed.getState());
+            assertEquals(90, listener.completed.bytesCopied());
+            assertEquals(30, listener.completed.filesToCopy());
+            assertEquals(30, listener.completed.filesCopied());
+            assertFalse(listener.progress.isEmpty());
+            assertTrue(listener.progress.get(0).isRunning());
+        }
+
+        checkPipelinedFiles(f1);
+    }
+
+    @Test
+    public void test_copyListenerFailed() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        RecordingCopyListener listener = new RecordingCopyListener();
+        f0.copy(new Path("/test/aap"), f1, new Path("/test/aap"), CopyMode.CREATE, true, listener);
+
+        listener.await();
+
+        synchronized (listener) {
+            assertEquals(null, listener.completed);
+            assertTrue(listener.failed.isDone());
+            assertThat(listener.failed.getException(), instanceOf(NoSuchPathException.class));
+        }
+    }
+
+    @Test
+    public void test_copyListenerCancelled() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        Path f = new Path("/test/aap");
+
+        f0.createFile(f);
+        f0.addInputStream(f, new DelayInputStream(10000));
+
+        RecordingCopyListener listener = new RecordingCopyListener();
+        String h = f0.copy(f, f1, f, CopyMode.CREATE, false, listener);
+
+        sleep(500);
+        f0.cancel(h);
+
+        listener.await();
+
+        synchronized (listener) {
+            assertEquals(null, listener.completed);
+            assertThat(listener.failed.getException(), instanceOf(CopyCancelledException.class));
+        }
+    }
+
+    @Test
+    public void test_copyAsync() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+        addFile(f0, "/test/file1", new byte[] { 4, 5 }, 5000);
+
+        CompletableFuture<CopyStatus> c0 = f0.copyAsync(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false);
+        CompletableFuture<CopyStatus> c1 = f0.copyAsync(new Path("/test/file1"), f1, new Path("/test/file1"), CopyMode.CREATE, false);
+
+        CompletableFuture.allOf(c0, c1).get(5, TimeUnit.SECONDS);
+
+        assertEquals("DONE", c0.get().getState());
+        assertEquals(3, c0.get().bytesCopied());
+        assertEquals(2, c1.get().bytesCopied());
+        assertTrue(Arrays.equals(new byte[] { 4, 5 }, f1.getData(new Path("/test/file1"))));
+    }
+
+    @Test
+    public void test_copyAsyncFails() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        CompletableFuture<CopyStatus> c = f0.copyAsync(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false);
+
+        try {
+            c.get(5, TimeUnit.SECONDS);
+            fail("Expected copy to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(NoSuchPathException.class));
+        }
+    }
+
+    @Test
+    public void test_copyAsyncCancel() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        Path f = new Path("/test/aap");
+
+        f0.createFile(f);
+        f0.addInputStream(f, new DelayInputStream(10000));
+
+        RecordingCopyListener listener = new RecordingCopyListener();
+        String h = f0.copy(f, f1, f, CopyMode.CREATE, false, listener);
+
+        CompletableFuture<CopyStatus> c = f0.copyAsync(f, f1, new Path("/test/noot"), CopyMode.CREATE, false);
+
+        // Cancels the second copy before it starts, the first one keeps running.
+        assertTrue(c.cancel(true));
+
+        f0.cancel(h);
+        listener.await();
+
+        // The copy thread must still be usable.
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+        CopyStatus s = f0.copyAsync(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, s.bytesCopied());
+        assertFalse(f1.exists(new Path("/test/noot")));
+    }
+
+    @Test
+    public void test_copyHistoryEvicted() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+
+        ArrayList<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 1100; i++) {
+            ids.add(f0.copy(new Path("/test/file0"), f1, new Path("/test/file" + i), CopyMode.REPLACE, false));
+        }
+
+        // The copies are performed in order, so all others are done after this one.
+        f0.copyAsync(new Path("/test/file0"), f1, new Path("/test/last"), CopyMode.REPLACE, false).get(30, TimeUnit.SECONDS);
+
+        assertTrue(f0.getStatus(ids.get(ids.size() - 1)).isDone());
+
+        try {
+            f0.getStatus(ids.get(0));
+            fail("Expected status of the oldest copy to be evicted");
+        } catch (NoSuchCopyException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_isSameEndpoint() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+
+        assertTrue(f0.isSameEndpoint(f0));
+        assertTrue(f0.isSameEndpoint(new MockFileSystem("1", "TEST0", "MEM", entry)));
+        assertFalse(f0.isSameEndpoint(new MockFileSystem("2", "TEST1", "MEM", entry)));
+        assertFalse(f0.isSameEndpoint(new MockFileSystem("3", "TEST0", "OTHER", entry)));
+    }
+
+    /**
+     * Copies regular files within the same endpoint without a stream copy.
+     */
+    class ServerCopyFileSystem extends MockFileSystem {
+
+        final List<Path> copied = new ArrayList<>();
+
+        ServerCopyFileSystem(String uniqueID, String name, String location, Path entryPath) throws XenonException {
+            super(uniqueID, name, location, entryPath);
+        }
+
+        @Override
+        protected boolean copyOnServer(Path source, PathAttributes attributes, FileSystem destinationFS, Path destination, CopyCallback callback)
+                throws XenonException {
+
+            if (!attributes.isRegular() || !isSameEndpoint(destinationFS)) {
+                return false;
+            }
+
+            copied.add(destination);
+            destinationFS.createFile(destination);
+            ((MockFileSystem) destinationFS).addData(destination, getData(source));
+            return true;
+        }
+    }
+
+    @Test
+    public void test_copyOnServer() throws XenonException {
+        ServerCopyFileSystem f0 = new ServerCopyFileSystem("0", "TEST0", "MEM", new Path("/test"));
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f0, new Path("/test/file1"), CopyMode.CREATE, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertFalse(s.hasException());
+        assertEquals(1, f0.copied.size());
+        assertEquals(new Path("/test/file1"), f0.copied.get(0));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, f0.getData(new Path("/test/file1"))));
+    }
+
+    @Test
+    public void test_copyOnServerOtherEndpoint() throws XenonException {
+        ServerCopyFileSystem f0 = new ServerCopyFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", new Path("/test"));
+
+        addFile(f0, "/test/file0", new byte[] { 1, 2, 3 }, 5000);
+
+        String h = f0.copy(new Path("/test/file0"), f1, new Path("/test/file0"), CopyMode.CREATE, false);
+        CopyStatus s = f0.waitUntilDone(h, 5 * 1000);
+
+        assertFalse(s.hasException());
+        assertTrue(f0.copied.isEmpty());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, f1.getData(new Path("/test/file0"))));
+    }
+
+    // getStatus
+    @Test(expected = IllegalArgumentException.class)
+    public void test_getStatusFailsNull() throws XenonException {
+        Path entry = new Path("/test");
+        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
+        f.getStatus(null);
+    }
+
+    @Test(expected = NoSuchCopyException.class)
+    public void test_getStatusFailsWrongType() throws XenonException {
+        Path entry = new Path("/test");
+        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
+        f.getStatus("AAP");
+    }
+
+    @Test
+    public void test_getStatusFails() throws XenonException {
+        Path entry = new Path("/test");
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
+
+        Path file = new Path("/test/file");
+
+        f.ensureFile(file);
+        f.addData(file, new byte[] { 42 });
+
+        Path target = new Path("/test/target");
+        String ID = f.copy(file, f, target, CopyMode.REPLACE, false);
+
+        CopyStatus status = f.getStatus(ID);
+
+        while (!status.isDone()) {
+            try {
+                Thread.sleep(50);
+            } catch (Exception e) {
+                // ignore
+            }
+
+            status = f.getStatus(ID);
+        }
+
+        assertTrue(f.exists(target));
+
+        byte[] data = f.getData(target);
+
+        assertNotNull(data);
+        assertEquals(1, data.length);
+        assertEquals(42, data[0]);
+    }
+
+    // cancel
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_cancelFailsNull() throws XenonException {
+        Path entry = new Path("/test");
+        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
+        f.cancel(null);
+    }
+
+    @Test(expected = NoSuchCopyException.class)
+    public void test_cancelFailsWrongType() throws XenonException {
+        Path entry = new Path("/test");
+        FileSystem f = new MockFileSystem("0", "TEST0", "MEM", entry);
+        f.cancel("AAP");
+    }
+
+    private void sleep(long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    @Test
+    public void test_cancelAfterDelay() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        f0.createFile(f);
+        f0.addInputStream(f, new DelayInputStream(10000));
+
+        f1.createFile(f);
+        f1.addOutputStream(f, new CountIgnoreOutputStream());
+
+        String h = f0.copy(f, f1, f, CopyMode.REPLACE, false);
+
+        sleep(1000);
+
+        // cancel -- the copy should have started already, but should need 9
+        // seconds more
+        CopyStatus s = f0.cancel(h);
+
+        assertTrue(s.isDone());
+        assertTrue(s.hasException());
+        assertTrue(s.getException() instanceof XenonException);
+    }
+
+    @Test(expected = NoSuchCopyException.class)
+    public void test_cancelAfterDone() throws XenonException {
+        Path entry = new Path("/test");
+
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", entry);
+        MockFileSystem f1 = new MockFileSystem("1", "TEST1", "MEM", entry);
+
+        Path f = new Path("/test/aap");
+
+        byte[] data = new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+        f0.createFile(f);
+        f0.addData(f, data);
+
+        String h = f0.copy(f, f1, f, CopyMode.CREATE, false);
+
+        CopyStatus s = f0.waitUntilDone(h, 1000);
+
+        assertTrue(s.isDone());
+        assertFalse(s.hasException());
+
+        // cancel -- the copy is already done -- show throw exception
+        CopyStatus s2 = f0.cancel(h);
+    }
+
+    @Test
+    public void test_properties() throws Exception {
+        HashMap<String, String> p = new HashMap<>();
+        p.put("aap", "noot");
+
+        XenonPropertyDescription d = new XenonPropertyDescription("aap", Type.STRING, "empty", "test");
+        XenonProperties prop = new XenonProperties(new XenonPropertyDescription[] { d }, p);
+
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"), prop);
+        assertEquals(p, f.getProperties());
+
+    }
+
+    @Test
+    public void test_equalsTrueSelf() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        assertTrue(f.equals(f));
+    }
+
+    @Test
+    public void test_equalsTrueSameID() throws Exception {
+        MockFileSystem f0 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        MockFileSystem f1 = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        assertTrue(f0.equals(f1));
+    }
+
+    @Test
+    public void test_equalsFalseNull() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        assertFalse(f.equals(null));
+    }
+
+    @Test
+    public void test_equalsFalseWrongType() throws Exception {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        assertFalse(f.equals("hello"));
+    }
+
+    @Test
+    public void test_autoclose() throws Exception {
+        try (MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"))) {
+            String dummy = f.getAdaptorName();
+        }
+    }
+
+
+    private XenonProperties deleteProperties(int parallelism) throws XenonException {
+        HashMap<String, String> p = new HashMap<>();
+        p.put("xenon.adaptors.filesystems.TEST0.delete.parallelism", Integer.toString(parallelism));
+
+        XenonPropertyDescription d = new XenonPropertyDescription("xenon.adaptors.filesystems.TEST0.delete.parallelism", Type.INTEGER, "1", "test");
+        return new XenonProperties(new XenonPropertyDescription[] { d }, p);
+    }
+
+    /**
+     * Counts the attribute lookups and listings, and fails to delete a single file.
+     */
+    class CountingFileSystem extends MockFileSystem {
+
+        final AtomicInteger attributes = new AtomicInteger(0);
+        final AtomicInteger listings = new AtomicInteger(0);
+        final Path failOn;
+
+        CountingFileSystem(int parallelism, Path failOn) throws XenonException {
+            super("0", "TEST0", "MEM", new Path("/test"), deleteProperties(parallelism));
+            this.failOn = failOn;
+        }
+
+        @Override
+        public synchronized PathAttributes getAttributes(Path path) throws XenonException {
+            attributes.incrementAndGet();
+            return super.getAttributes(path);
+        }
+
+        @Override
+        protected synchronized List<PathAttributes> listDirectory(Path dir) throws XenonException {
+            listings.incrementAndGet();
+            return super.listDirectory(dir);
+        }
+
+        @Override
+        protected synchronized void deleteFile(Path file) throws XenonException {
+            if (file.equals(failOn)) {
+                throw new XenonException("TEST0", "Failed to delete " + file);
+            }
+            super.deleteFile(file);
+        }
+    }
+
+    @Test
+    public void test_deleteRecursiveSinglePass() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(1, null);
+        addPipelinedFiles(f);
+
+        f.delete(new Path("/test/aap"), true);
+
+        assertFalse(f.exists(new Path("/test/aap")));
+        assertEquals(1, f.attributes.get());
+        assertEquals(3, f.listings.get());
+    }
+
+    @Test
+    public void test_deleteRecursiveParallel() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(4, null);
+        addPipelinedFiles(f);
+
+        f.delete(new Path("/test/aap"), true);
+
+        assertFalse(f.exists(new Path("/test/aap")));
+        assertTrue(f.exists(new Path("/test")));
+        assertEquals(1, f.attributes.get());
+        assertEquals(3, f.listings.get());
+        f.close();
+    }
+
+    @Test
+    public void test_deleteRecursiveParallelFails() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(4, new Path("/test/aap/noot/mies/file2"));
+        addPipelinedFiles(f);
+
+        try {
+            f.delete(new Path("/test/aap"), true);
+            fail("Expected delete to fail");
+        } catch (XenonException e) {
+            assertEquals("TEST0 adaptor: Failed to delete /test/aap/noot/mies/file2", e.getMessage());
+        }
+
+        // The directories above the file that could not be deleted remain.
+        assertTrue(f.exists(new Path("/test/aap/noot/mies/file2")));
+        assertTrue(f.exists(new Path("/test/aap")));
+        f.close();
+    }
+
+    @Test(expected = NotConnectedException.class)
+    public void test_deleteRecursiveParallelClosed() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(4, null);
+        addPipelinedFiles(f);
+        f.close();
+        f.delete(new Path("/test/aap"), true);
+    }
+
+    @Test
+    public void test_listRecursiveLazy() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(1, null);
+        addPipelinedFiles(f);
+
+        Iterable<PathAttributes> listing = f.list(new Path("/test/aap"), true);
+        assertEquals(1, f.listings.get());
+
+        Iterator<PathAttributes> it = listing.iterator();
+        int count = 0;
+
+        while (it.hasNext()) {
+            PathAttributes p = it.next();
+            count++;
+
+            // A directory is listed when its content is reached.
+            if (p.getPath().equals(new Path("/test/aap/noot"))) {
+                assertTrue(f.listings.get() < 3);
+            }
+        }
+
+        // 2 directories and 30 files
+        assertEquals(32, count);
+        assertEquals(3, f.listings.get());
+
+        // Iterating again lists all directories again.
+        int again = 0;
+
+        for (PathAttributes p : listing) {
+            again++;
+        }
+
+        assertEquals(32, again);
+        assertEquals(6, f.listings.get());
+    }
+
+    @Test
+    public void test_listRecursiveFails() throws XenonException {
+        CountingFileSystem f = new CountingFileSystem(1, null) {
+            @Override
+            protected synchronized List<PathAttributes> listDirectory(Path dir) throws XenonException {
+                if (dir.equals(new Path("/test/aap/noot/mies"))) {
+                    throw new XenonException("TEST0", "Cannot list " + dir);
+                }
+                return super.listDirectory(dir);
+            }
+        };
+
+        addPipelinedFiles(f);
+
+        try {
+            for (PathAttributes p : f.list(new Path("/test/aap"), true)) {
+                assertTrue(p.getPath().startsWith(new Path("/test/aap")));
+            }
+            fail("Expected listing to fail");
+        } catch (XenonRuntimeException e) {
+            assertThat(e.getCause(), instanceOf(XenonException.class));
+        }
+    }
+
+    /**
+     * Takes 20 ms for every directory read, and records the maximum number of concurrent reads. Listing the directory failOn fails.
+     */
+    class SlowListFileSystem extends MockFileSystem {
+
+        final AtomicInteger current = new AtomicInteger(0);
+        final AtomicInteger max = new AtomicInteger(0);
+        final Path failOn;
+
+        SlowListFileSystem(int parallelism, Path failOn) throws XenonException {
+            super("0", "TEST0", "MEM", new Path("/test"), listProperties(parallelism));
+            this.failOn = failOn;
+
+            for (int i = 0; i < 8; i++) {
+                createDirectories(new Path("/test/aap/dir" + i + "/sub"));
+                createFile(new Path("/test/aap/dir" + i + "/file0"));
+                createFile(new Path("/test/aap/dir" + i + "/sub/file1"));
+            }
+        }
+
+        @Override
+        protected List<PathAttributes> listDirectory(Path dir) throws XenonException {
+
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+
+            try {
+                sleep(20);
+
+                if (dir.equals(failOn)) {
+                    throw new XenonException("TEST0", "Cannot list " + dir);
+                }
+
+                return super.listDirectory(dir);
+            } finally {
+                current.decrementAndGet();
+            }
+        }
+    }
+
+    private XenonProperties listProperties(int parallelism) throws XenonException {
+        HashMap<String, String> p = new HashMap<>();
+        p.put("xenon.adaptors.filesystems.TEST0.list.parallelism", Integer.toString(parallelism));
+
+        XenonPropertyDescription d = new XenonPropertyDescription("xenon.adaptors.filesystems.TEST0.list.parallelism", Type.INTEGER, "1", "test");
+        return new XenonProperties(new XenonPropertyDescription[] { d }, p);
+    }
+
+    private List<Path> listPaths(FileSystem f, Path dir) throws XenonException {
+        ArrayList<Path> result = new ArrayList<>();
+
+        for (PathAttributes p : f.list(dir, true)) {
+            result.add(p.getPath());
+        }
+
+        return result;
+    }
+
+    @Test
+    public void test_listRecursiveParallel() throws XenonException {
+        SlowListFileSystem f = new SlowListFileSystem(4, null);
+        List<Path> result = listPaths(f, new Path("/test/aap"));
+
+        SlowListFileSystem expected = new SlowListFileSystem(1, null);
+        List<Path> sequential = listPaths(expected, new Path("/test/aap"));
+
+        assertEquals(32, result.size());
+        assertEquals(new HashSet<>(sequential), new HashSet<>(result));
+
+        // Every directory is returned before its content.
+        for (int i = 0; i < 8; i++) {
+            assertTrue(result.indexOf(new Path("/test/aap/dir" + i)) < result.indexOf(new Path("/test/aap/dir" + i + "/sub")));
+            assertTrue(result.indexOf(new Path("/test/aap/dir" + i + "/sub")) < result.indexOf(new Path("/test/aap/dir" + i + "/sub/file1")));
+        }
+
+        assertTrue(f.max.get() > 1);
+        assertTrue(f.max.get() <= 4);
+        assertEquals(1, expected.max.get());
+        f.close();
+    }
+
+    @Test
+    public void test_listRecursiveParallelIntoList() throws XenonException {
+        SlowListFileSystem f = new SlowListFileSystem(4, null);
+
+        ArrayList<PathAttributes> result = new ArrayList<>();
+        f.list(new Path("/test/aap"), result, true);
+
+        assertEquals(32, result.size());
+        f.close();
+    }
+
+    @Test(expected = XenonRuntimeException.class)
+    public void test_listRecursiveParallelFails() throws XenonException {
+        SlowListFileSystem f = new SlowListFileSystem(4, new Path("/test/aap/dir3/sub"));
+        listPaths(f, new Path("/test/aap"));
+    }
+
+    @Test
+    public void test_listRecursiveParallelIntoListFails() throws XenonException {
+        SlowListFileSystem f = new SlowListFileSystem(4, new Path("/test/aap/dir3/sub"));
+
+        try {
+            f.list(new Path("/test/aap"), new ArrayList<>(), true);
+            fail("Expected listing to fail");
+        } catch (XenonException e) {
+            assertEquals("TEST0 adaptor: Cannot list /test/aap/dir3/sub", e.getMessage());
+        }
+
+        f.close();
+    }
+
+    private MockFileSystem listOptionsFileSystem() throws XenonException {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        f.createDirectories(new Path("/test/aap/dir/sub"));
+
+        String[] files = { "/test/aap/a.nc", "/test/aap/b.txt", "/test/aap/dir/c.nc", "/test/aap/dir/sub/d.nc" };
+
+        for (int i = 0; i < files.length; i++) {
+            f.createFile(new Path(files[i]));
+            PathAttributesImplementation a = (PathAttributesImplementation) f.getAttributes(new Path(files[i]));
+            a.setSize(i * 100);
+            a.setLastModifiedTime(i * 1000);
+        }
+
+        return f;
+    }
+
+    private Set<Path> listPaths(FileSystem f, Path dir, ListOptions options) throws XenonException {
+        HashSet<Path> result = new HashSet<>();
+
+        for (PathAttributes p : f.list(dir, options)) {
+            result.add(p.getPath());
+        }
+
+        return result;
+    }
+
+    @Test
+    public void test_listOptionsGlob() throws XenonException {
+        MockFileSystem f = listOptionsFileSystem();
+        ListOptions o = new ListOptions();
+        o.setGlob("*.nc");
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test/aap/a.nc"), new Path("/test/aap/dir/c.nc"), new Path("/test/aap/dir/sub/d.nc"))),
+                listPaths(f, new Path("aap"), o));
+    }
+
+    @Test
+    public void test_listOptionsMaxDepth() throws XenonException {
+        MockFileSystem f = listOptionsFileSystem();
+        ListOptions o = new ListOptions();
+        o.setGlob("*.nc");
+        o.setMaxDepth(2);
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test/aap/a.nc"), new Path("/test/aap/dir/c.nc"))), listPaths(f, new Path("aap"), o));
+    }
+
+    @Test
+    public void test_listOptionsType() throws XenonException {
+        MockFileSystem f = listOptionsFileSystem();
+        ListOptions o = new ListOptions();
+        o.setType(ListOptions.Type.DIRECTORY);
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test/aap/dir"), new Path("/test/aap/dir/sub"))), listPaths(f, new Path("aap"), o));
+    }
+
+    @Test
+    public void test_listOptionsSizeAndTime() throws XenonException {
+        MockFileSystem f = listOptionsFileSystem();
+        ListOptions o = new ListOptions();
+        o.setType(ListOptions.Type.REGULAR);
+        o.setMinSize(100);
+        o.setModifiedBefore(3000);
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test/aap/b.txt"), new Path("/test/aap/dir/c.nc"))), listPaths(f, new Path("aap"), o));
+    }
+
+    @Test
+    public void test_listOptionsGlobOnLastLevel() throws XenonException {
+        ArrayList<String> globs = new ArrayList<>();
+
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test")) {
+            @Override
+            protected Iterable<PathAttributes> listDirectory(Path dir, String glob) throws XenonException {
+                globs.add(dir + " " + glob);
+                return super.listDirectory(dir, glob);
+            }
+        };
+
+        f.createDirectories(new Path("/test/aap/dir/sub"));
+        f.createFile(new Path("/test/aap/dir/c.nc"));
+
+        ListOptions o = new ListOptions();
+        o.setGlob("*.nc");
+        o.setMaxDepth(2);
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test/aap/dir/c.nc"))), listPaths(f, new Path("aap"), o));
+
+        // Only the directories that are not traversed any further may be filtered by the adaptor.
+        assertEquals(Arrays.asList("/test/aap/dir *.nc"), globs);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_listOptionsNull() throws XenonException {
+        MockFileSystem f = listOptionsFileSystem();
+        f.list(new Path("aap"), (ListOptions) null);
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_listOptionsNotDirectory() throws XenonException {
+        MockFileSystem f = listOptionsFileSystem();
+        f.list(new Path("aap/a.nc"), new ListOptions());
+    }
+
+    private XenonProperties cacheProperties(long ttl) throws XenonException {
+        HashMap<String, String> p = new HashMap<>();
+        p.put("xenon.adaptors.filesystems.TEST0.cache.ttl", Long.toString(ttl));
+
+        XenonPropertyDescription d = new XenonPropertyDescription("xenon.adaptors.filesystems.TEST0.cache.ttl", Type.LONG, "0", "test");
+        return new XenonProperties(new XenonPropertyDescription[] { d }, p);
+    }
+
+    /**
+     * Counts the number of times the existence or attributes of a path are retrieved.
+     */
+    class CachingFileSystem extends MockFileSystem {
+
+        final AtomicInteger lookups = new AtomicInteger(0);
+
+        CachingFileSystem(long ttl) throws XenonException {
+            super("0", "TEST0", "MEM", new Path("/test"), cacheProperties(ttl));
+            createDirectories(new Path("/test/aap/noot"));
+            createFile(new Path("/test/aap/noot/file0"));
+            lookups.set(0);
+        }
+
+        @Override
+        public boolean exists(Path path) throws XenonException {
+            lookups.incrementAndGet();
+            return super.exists(path);
+        }
+
+        @Override
+        public synchronized PathAttributes getAttributes(Path path) throws XenonException {
+            lookups.incrementAndGet();
+            return super.getAttributes(path);
+        }
+    }
+
+    private void checkNewFile(FileSystem f, Path file) throws XenonException {
+        f.assertPathNotExists(file);
+        f.assertParentDirectoryExists(file);
+    }
+
+    @Test
+    public void test_attributeCacheDisabled() throws XenonException {
+        CachingFileSystem f = new CachingFileSystem(0);
+
+        checkNewFile(f, new Path("/test/aap/file1"));
+        checkNewFile(f, new Path("/test/aap/file1"));
+
+        assertEquals(6, f.lookups.get());
+    }
+
+    @Test
+    public void test_attributeCacheAvoidsLookups() throws XenonException {
+        CachingFileSystem f = new CachingFileSystem(60 * 1000);
+
+        checkNewFile(f, new Path("/test/aap/file1"));
+        assertEquals(2, f.lookups.get());
+
+        // Both the missing file and its parent are now cached.
+        checkNewFile(f, new Path("/test/aap/file1"));
+        assertEquals(2, f.lookups.get());
+    }
+
+    @Test
+    public void test_attributeCacheInvalidatedByCreate() throws XenonException {
+        CachingFileSystem f = new CachingFileSystem(60 * 1000);
+
+        f.assertPathNotExists(new Path("/test/aap/file1"));
+        f.createFile(new Path("/test/aap/file1"));
+        f.assertFileExists(new Path("/test/aap/file1"));
+    }
+
+    @Test
+    public void test_attributeCacheInvalidatedByDelete() throws XenonException {
+        CachingFileSystem f = new CachingFileSystem(60 * 1000);
+
+        f.assertFileExists(new Path("/test/aap/noot/file0"));
+        f.delete(new Path("/test/aap"), true);
+        f.assertPathNotExists(new Path("/test/aap/noot/file0"));
+        f.assertPathNotExists(new Path("/test/aap"));
+    }
+
+    @Test
+    public void test_attributeCacheFilledFromListing() throws XenonException {
+        CachingFileSystem f = new CachingFileSystem(60 * 1000);
+
+        for (PathAttributes p : f.list(new Path("/test/aap"), true)) {
+            assertTrue(p.getPath().startsWith(new Path("/test/aap")));
+        }
+
+        int before = f.lookups.get();
+
+        f.assertDirectoryExists(new Path("/test/aap/noot"));
+        f.assertFileExists(new Path("/test/aap/noot/file0"));
+
+        assertEquals(before, f.lookups.get());
+    }
+
+    @Test
+    public void test_attributeCacheExpires() throws XenonException {
+        CachingFileSystem f = new CachingFileSystem(1);
+
+        f.assertDirectoryExists(new Path("/test/aap"));
+        sleep(10);
+        f.assertDirectoryExists(new Path("/test/aap"));
+
+        assertEquals(2, f.lookups.get());
+    }
+
+    private MockFileSystem watchFileSystem() throws XenonException {
+        MockFileSystem f = new MockFileSystem("0", "TEST0", "MEM", new Path("/test"));
+        f.createDirectories(new Path("/test/aap/noot"));
+        f.createFile(new Path("/test/aap/file0"));
+        return f;
+    }
+
+    private PollingWatch pollingWatch(MockFileSystem f, boolean detectModifications) throws XenonException {
+        WatchOptions o = new WatchOptions();
+        // Never poll in the background, the tests poll explicitly.
+        o.setPollInterval(TimeUnit.HOURS.toMillis(1));
+        o.setDetectModifications(detectModifications);
+        return (PollingWatch) f.watch(new Path("/test"), o);
+    }
+
+    @Test
+    public void test_watchReportsCreated() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        f.createFile(new Path("/test/aap/noot/file1"));
+        f.setLastModifiedTime(new Path("/test/aap/noot"), 1000);
+        w.pollOnce();
+
+        assertEquals(Arrays.asList(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/aap/noot/file1"))), w.poll(0));
+    }
+
+    @Test
+    public void test_watchSkipsUnchangedDirectories() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        // The modification time of the directory does not change, so it is not listed.
+        f.createFile(new Path("/test/aap/noot/file1"));
+        w.pollOnce();
+
+        assertTrue(w.poll(0).isEmpty());
+    }
+
+    @Test
+    public void test_watchRelistsChangedDirectoryTwice() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        f.setLastModifiedTime(new Path("/test/aap/noot"), 1000);
+        w.pollOnce();
+
+        // Created in the same second as the previous listing, so the modification time does not change.
+        f.createFile(new Path("/test/aap/noot/file1"));
+        w.pollOnce();
+
+        assertEquals(Arrays.asList(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/aap/noot/file1"))), w.poll(0));
+    }
+
+    @Test
+    public void test_watchReportsCreatedTree() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        f.createDirectories(new Path("/test/mies/wim"));
+        f.createFile(new Path("/test/mies/file2"));
+        f.setLastModifiedTime(new Path("/test"), 1000);
+        w.pollOnce();
+
+        assertEquals(new HashSet<>(Arrays.asList(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/mies")),
+                new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/mies/wim")), new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/mies/file2")))),
+                new HashSet<>(w.poll(0)));
+
+        // The new directories are watched too.
+        f.createFile(new Path("/test/mies/wim/file3"));
+        f.setLastModifiedTime(new Path("/test/mies/wim"), 1000);
+        w.pollOnce();
+
+        assertEquals(Arrays.asList(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/mies/wim/file3"))), w.poll(0));
+    }
+
+    @Test
+    public void test_watchReportsDeletedTree() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        f.delete(new Path("/test/aap"), true);
+        f.setLastModifiedTime(new Path("/test"), 1000);
+        w.pollOnce();
+
+        List<WatchEvent> events = w.poll(0);
+
+        assertEquals(new HashSet<>(Arrays.asList(new WatchEvent(WatchEvent.Kind.DELETED, new Path("/test/aap/noot")),
+                new WatchEvent(WatchEvent.Kind.DELETED, new Path("/test/aap/file0")))), new HashSet<>(events.subList(0, 2)));
+        assertEquals(new WatchEvent(WatchEvent.Kind.DELETED, new Path("/test/aap")), events.get(2));
+    }
+
+    @Test
+    public void test_watchDetectModifications() throws XenonException, IOException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, true);
+
+        try (OutputStream out = f.appendToFile(new Path("/test/aap/file0"))) {
+            out.write(42);
+        }
+        f.setLastModifiedTime(new Path("/test/aap/file0"), 1000);
+        w.pollOnce();
+
+        assertEquals(Arrays.asList(new WatchEvent(WatchEvent.Kind.MODIFIED, new Path("/test/aap/file0"))), w.poll(0));
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_watchDirectoryDeleted() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        f.delete(new Path("/test"), true);
+        w.pollOnce();
+
+        assertFalse(w.isOpen());
+        w.poll(0);
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_watchFile() throws XenonException {
+        watchFileSystem().watch(new Path("/test/aap/file0"), new WatchOptions());
+    }
+
+    @Test
+    public void test_watchClosedWithFileSystem() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+        PollingWatch w = pollingWatch(f, false);
+
+        f.close();
+
+        assertFalse(w.isOpen());
+        assertTrue(w.poll(0).isEmpty());
+    }
+
+    @Test
+    public void test_watchPollsInBackground() throws XenonException {
+        MockFileSystem f = watchFileSystem();
+
+        WatchOptions o = new WatchOptions();
+        o.setPollInterval(10);
+
+        try (Watch w = f.watch(new Path("/test"), o)) {
+            f.createFile(new Path("/test/file1"));
+            f.setLastModifiedTime(new Path("/test"), 1000);
+
+            assertEquals(Arrays.asList(new WatchEvent(WatchEvent.Kind.CREATED, new Path("/test/file1"))), w.poll(10000));
+        }
+    }
+
+    /**
+     * Records which directories are listed.
+     */
+    class ManifestFileSystem extends MockFileSystem {
+
+        final ArrayList<Path> listed = new ArrayList<>();
+
+        ManifestFileSystem() throws XenonException {
+            super("0", "TEST0", "MEM", new Path("/test"));
+            createDirectories(new Path("/test/aap/noot"));
+            createFile(new Path("/test/aap/file0"));
+            createFile(new Path("/test/aap/noot/file1"));
+        }
+
+        @Override
+        protected synchronized List<PathAttributes> listDirectory(Path dir) throws XenonException {
+            listed.add(dir);
+            return super.listDirectory(dir);
+        }
+    }
+
+    private Set<Path> paths(Iterable<PathAttributes> entries) {
+        HashSet<Path> result = new HashSet<>();
+
+        for (PathAttributes p : entries) {
+            result.add(p.getPath());
+        }
+
+        return result;
+    }
+
+    @Test
+    public void test_listBatch() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem();
+
+        DirectoryBatch b = f.listBatch(new Path("aap"));
+        assertEquals(new Path("/test/aap"), b.getParent());
+
+        HashSet<Path> result = new HashSet<>();
+        DirectoryBatch.Cursor c = b.cursor();
+
+        while (c.next()) {
+            result.add(c.getPath());
+            assertEquals(c.getName().equals("noot"), c.isDirectory());
+        }
+
+        assertEquals(paths(f.list(new Path("/test/aap"), false)), result);
+    }
+
+    @Test(expected = NoSuchPathException.class)
+    public void test_listBatchMissing() throws XenonException {
+        new ManifestFileSystem().listBatch(new Path("/test/mies"));
+    }
+
+    @Test
+    public void test_manifestListsTree() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem();
+        Manifest m = new Manifest();
+
+        Set<Path> result = paths(f.list(new Path("/test"), m));
+
+        assertEquals(paths(f.list(new Path("/test"), true)), result);
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test"), new Path("/test/aap"), new Path("/test/aap/noot"))), new HashSet<>(f.listed));
+        assertEquals(3, m.size());
+    }
+
+    @Test
+    public void test_manifestSkipsUnchangedDirectories() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem();
+        Manifest m = new Manifest();
+
+        Set<Path> first = paths(f.list(new Path("/test"), m));
+        f.listed.clear();
+
+        assertEquals(first, paths(f.list(new Path("/test"), m)));
+        assertTrue(f.listed.isEmpty());
+    }
+
+    @Test
+    public void test_manifestRelistsChangedDirectory() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem();
+        Manifest m = new Manifest();
+
+        f.list(new Path("/test"), m);
+        f.listed.clear();
+
+        f.createFile(new Path("/test/aap/noot/file2"));
+        f.setLastModifiedTime(new Path("/test/aap/noot"), 1000);
+
+        assertTrue(paths(f.list(new Path("/test"), m)).contains(new Path("/test/aap/noot/file2")));
+        assertEquals(Arrays.asList(new Path("/test/aap/noot")), f.listed);
+    }
+
+    @Test
+    public void test_manifestRemovesDeletedDirectory() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem();
+        Manifest m = new Manifest();
+
+        f.list(new Path("/test"), m);
+
+        f.delete(new Path("/test/aap/noot"), true);
+        f.setLastModifiedTime(new Path("/test/aap"), 1000);
+
+        assertEquals(new HashSet<>(Arrays.asList(new Path("/test/aap"), new Path("/test/aap/file0"))), paths(f.list(new Path("/test"), m)));
+        assertEquals(2, m.size());
+    }
+
+    @Test
+    public void test_manifestCoarseTimestamps() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem() {
+            @Override
+            protected long getTimestampResolution() {
+                return 60 * 1000;
+            }
+        };
+
+        // With a resolution of a minute, a change made right after the listing may leave this modification time unchanged.
+        f.setLastModifiedTime(new Path("/test/aap"), System.currentTimeMillis() - 30 * 1000);
+
+        Manifest m = new Manifest();
+        f.list(new Path("/test"), m);
+        f.listed.clear();
+
+        f.list(new Path("/test"), m);
+        assertEquals(Arrays.asList(new Path("/test/aap")), f.listed);
+    }
+
+    @Test
+    public void test_manifestFineTimestamps() throws XenonException {
+        ManifestFileSystem f = new ManifestFileSystem();
+        f.setLastModifiedTime(new Path("/test/aap"), System.currentTimeMillis() - 30 * 1000);
+
+        Manifest m = new Manifest();
+        f.list(new Path("/test"), m);
+        f.listed.clear();
+
+        f.list(new Path("/test"), m);
+        assertTrue(f.listed.isEmpty());
+    }
+
+    @Test(expected = InvalidPathException.class)
+    public void test_manifestFile() throws XenonException {
+        new ManifestFileSystem().list(new Path("/test/aap/file0"), new Manifest());
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+
+public class ListOptionsTest {
+
+    private PathAttributesImplementation file(String path, long size, long modified) {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path(path));
+        a.setRegular(true);
+        a.setSize(size);
+        a.setLastModifiedTime(modified);
+        return a;
+    }
+
+    @Test
+    public void test_defaultMatchesAll() {
+        ListOptions o = new ListOptions();
+        assertNull(o.getGlob());
+        assertNull(o.getType());
+        assertEquals(-1, o.getMaxDepth());
+        assertTrue(o.traverse(1000));
+        assertTrue(o.matches(file("/aap/noot", 0, 0)));
+    }
+
+    @Test
+    public void test_glob() {
+        ListOptions o = new ListOptions();
+        o.setGlob("*.nc");
+        assertTrue(o.matches(file("/aap/noot.nc", 0, 0)));
+        assertFalse(o.matches(file("/aap/noot.txt", 0, 0)));
+    }
+
+    @Test
+    public void test_globOnlyMatchesFileName() {
+        ListOptions o = new ListOptions();
+        o.setGlob("aap*");
+        assertFalse(o.matches(file("/aap/noot", 0, 0)));
+        assertTrue(o.matchesName("aap.nc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_globInvalid() {
+        new ListOptions().setGlob("[aap");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_globUnterminatedGroup() {
+        new ListOptions().setGlob("{aap,noot");
+    }
+
+    @Test
+    public void test_globRemoteNames() {
+        ListOptions o = new ListOptions();
+        o.setGlob("*");
+
+        // Names that are not valid paths on every client, or that contain a separator of the client.
+        assertTrue(o.matchesName("a:b"));
+        assertTrue(o.matchesName("a*b?<c>|"));
+        assertTrue(o.matchesName("a\\b"));
+        assertTrue(o.matchesName(".hidden"));
+
+        o.setGlob("a\\*b");
+        assertTrue(o.matchesName("a*b"));
+        assertFalse(o.matchesName("axb"));
+    }
+
+    @Test
+    public void test_globSyntax() {
+        ListOptions o = new ListOptions();
+
+        o.setGlob("data.{nc,h5}");
+        assertTrue(o.matchesName("data.nc"));
+        assertTrue(o.matchesName("data.h5"));
+        assertFalse(o.matchesName("data.txt"));
+
+        o.setGlob("file[0-9]?.txt");
+        assertTrue(o.matchesName("file1a.txt"));
+        assertFalse(o.matchesName("filea1.txt"));
+        assertFalse(o.matchesName("file1.txt"));
+
+        o.setGlob("[!a-c]*");
+        assertTrue(o.matchesName("d"));
+        assertFalse(o.matchesName("b"));
+
+        o.setGlob("a(b)+c.$");
+        assertTrue(o.matchesName("a(b)+c.$"));
+        assertFalse(o.matchesName("abbc.$"));
+    }
+
+    @Test
+    public void test_type() {
+        ListOptions o = new ListOptions();
+        o.setType(ListOptions.Type.DIRECTORY);
+        assertFalse(o.matches(file("/aap/noot", 0, 0)));
+
+        o.setType(ListOptions.Type.REGULAR);
+        assertTrue(o.matches(file("/aap/noot", 0, 0)));
+
+        o.setType(ListOptions.Type.OTHER);
+        assertFalse(o.matches(file("/aap/noot", 0, 0)));
+    }
+
+    @Test
+    public void test_size() {
+        ListOptions o = new ListOptions();
+        o.setMinSize(10);
+        o.setMaxSize(20);
+        assertFalse(o.matches(file("/aap", 9, 0)));
+        assertTrue(o.matches(file("/aap", 10, 0)));
+        assertTrue(o.matches(file("/aap", 20, 0)));
+        assertFalse(o.matches(file("/aap", 21, 0)));
+    }
+
+    @Test
+    public void test_modified() {
+        ListOptions o = new ListOptions();
+        o.setModifiedAfter(1000);
+        o.setModifiedBefore(2000);
+        assertFalse(o.matches(file("/aap", 0, 1000)));
+        assertTrue(o.matches(file("/aap", 0, 1001)));
+        assertTrue(o.matches(file("/aap", 0, 1999)));
+        assertFalse(o.matches(file("/aap", 0, 2000)));
+    }
+
+    @Test
+    public void test_maxDepth() {
+        ListOptions o = new ListOptions();
+        o.setMaxDepth(2);
+        assertTrue(o.traverse(1));
+        assertFalse(o.traverse(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_maxDepthZero() {
+        new ListOptions().setMaxDepth(0);
+    }
+
+    @Test
+    public void test_copy() {
+        ListOptions o = new ListOptions();
+        o.setGlob("*.nc");
+        o.setType(ListOptions.Type.REGULAR);
+        o.setMaxDepth(3);
+        o.setMinSize(1);
+        o.setMaxSize(2);
+        o.setModifiedAfter(3);
+        o.setModifiedBefore(4);
+
+        ListOptions c = new ListOptions(o);
+        assertEquals(o.toString(), c.toString());
+        assertFalse(c.matches(file("/aap.txt", 1, 3)));
+    }
+}
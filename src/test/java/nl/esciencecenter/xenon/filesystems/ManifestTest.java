@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
+
+public class ManifestTest {
+
+    private PathAttributesImplementation entry(String path, boolean directory, long size, long modified) {
+        PathAttributesImplementation a = new PathAttributesImplementation();
+        a.setPath(new Path(path));
+        a.setDirectory(directory);
+        a.setRegular(!directory);
+        a.setSize(size);
+        a.setLastModifiedTime(modified);
+        return a;
+    }
+
+    private Manifest manifest() {
+        Manifest m = new Manifest();
+        m.update(new Path("/aap"), 1000, 10000, Arrays.asList(entry("/aap/noot", true, 0, 2000), entry("/aap/.mies", false, 42, 3000)));
+        return m;
+    }
+
+    @Test
+    public void test_lookup() {
+        List<PathAttributes> result = manifest().lookup(new Path("/aap"), 1000, 1000);
+
+        assertEquals(2, result.size());
+        assertEquals(new Path("/aap/noot"), result.get(0).getPath());
+        assertTrue(result.get(0).isDirectory());
+        assertEquals(new Path("/aap/.mies"), result.get(1).getPath());
+        assertTrue(result.get(1).isRegular());
+        assertTrue(result.get(1).isHidden());
+        assertEquals(42, result.get(1).getSize());
+        assertEquals(3000, result.get(1).getLastModifiedTime());
+    }
+
+    @Test
+    public void test_lookupChanged() {
+        assertNull(manifest().lookup(new Path("/aap"), 1001, 1000));
+    }
+
+    @Test
+    public void test_lookupUnknown() {
+        assertNull(manifest().lookup(new Path("/noot"), 1000, 1000));
+    }
+
+    @Test
+    public void test_lookupModifiedJustBeforeListing() {
+        Manifest m = new Manifest();
+        m.update(new Path("/aap"), 9000, 10000, Arrays.asList(entry("/aap/noot", false, 0, 0)));
+
+        // The directory may have changed again in the same second as the listing.
+        assertNull(m.lookup(new Path("/aap"), 9000, 1000));
+    }
+
+    @Test
+    public void test_lookupCoarseResolution() {
+        Manifest m = new Manifest();
+        m.update(new Path("/aap"), 60000, 100000, Arrays.asList(entry("/aap/noot", false, 0, 0)));
+
+        // Listed 40 seconds after the last change, which is safe for a server that stores seconds.
+        assertNotNull(m.lookup(new Path("/aap"), 60000, 1000));
+
+        // An FTP server only stores minutes, so a change later in the same minute would not have altered the modification time.
+        assertNull(m.lookup(new Path("/aap"), 60000, 60000));
+
+        // Once the listing started after that minute (and the allowance for clock skew), the index is trusted again.
+        m.update(new Path("/aap"), 60000, 122000, Arrays.asList(entry("/aap/noot", false, 0, 0)));
+        assertNotNull(m.lookup(new Path("/aap"), 60000, 60000));
+    }
+
+    @Test
+    public void test_writeRead() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest().write(out);
+
+        Manifest m = Manifest.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(1, m.size());
+        assertEquals(manifest().lookup(new Path("/aap"), 1000, 1000).toString(), m.lookup(new Path("/aap"), 1000, 1000).toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_readInvalid() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+            zip.write(new byte[] { 1, 2, 3, 4 });
+        }
+
+        Manifest.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -28,6 +28,7 @@ import java.util.Set;
 
 import nl.esciencecenter.xenon.XenonException;
 import nl.esciencecenter.xenon.adaptors.XenonProperties;
+import nl.esciencecenter.xenon.adaptors.filesystems.FileAdaptor;
 import nl.esciencecenter.xenon.adaptors.filesystems.PathAttributesImplementation;
 import nl.esciencecenter.xenon.credentials.DefaultCredential;
 
@@ -299,12 +300,17 @@ public class MockFileSystem extends FileSystem {
 
     private DirEntry root;
 
-    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, XenonProperties p) throws XenonException {
-        super(uniqueID, name, location, new DefaultCredential(), entryPath, 4096, p);
+    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, int copyParallelism, XenonProperties p) throws XenonException {
+        super(uniqueID, name, location, new DefaultCredential(), entryPath,
+                FileAdaptor.getFileSystemSettings(name, p).withBufferSize(4096).withCopyParallelism(copyParallelism), p);
         root = new DirEntry("", getDirAttributes(new Path("/")));
         ensureDirectories(entryPath);
     }
 
+    public MockFileSystem(String uniqueID, String name, String location, Path entryPath, XenonProperties p) throws XenonException {
+        this(uniqueID, name, location, entryPath, 1, p);
+    }
+
     public MockFileSystem(String uniqueID, String name, String location, Path entryPath) throws XenonException {
         this(uniqueID, name, location, entryPath, null);
     }
@@ -478,12 +484,14 @@ public class MockFileSystem extends FileSystem {
     public synchronized void createDirectory(Path dir) throws XenonException {
         dir = toAbsolutePath(dir);
         getDirEntry(dir.getParent()).addDir(dir.getFileNameAsString(), getDirAttributes(dir));
+        invalidateAttributes(dir);
     }
 
     @Override
     public synchronized void createFile(Path file) throws XenonException {
         file = toAbsolutePath(file);
         getDirEntry(file.getParent()).addFile(file.getFileNameAsString(), getFileAttributes(file));
+        invalidateAttributes(file);
     }
 
     @Override
@@ -524,8 +532,17 @@ public class MockFileSystem extends FileSystem {
     }
 
     @Override
-    public OutputStream appendToFile(Path file) throws XenonException {
-        throw new XenonException("TEST", "Not implemented");
+    public synchronized OutputStream appendToFile(Path file) throws XenonException {
+        FileEntry entry = getFileEntry(toAbsolutePath(file));
+        invalidateAttributes(toAbsolutePath(file));
+
+        FileEntryOutputStream out = new FileEntryOutputStream(entry);
+
+        if (entry.getData() != null) {
+            out.out.write(entry.getData(), 0, entry.getData().length);
+        }
+
+        return out;
     }
 
     @Override
@@ -539,8 +556,22 @@ public class MockFileSystem extends FileSystem {
     }
 
     @Override
-    public void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) throws XenonException {
-        throw new XenonException("TEST", "Not implemented");
+    public synchronized void setPosixFilePermissions(Path path, Set<PosixFilePermission> permissions) throws XenonException {
+        PathAttributesImplementation a = (PathAttributesImplementation) getEntry(toAbsolutePath(path)).getAttributes();
+        a.setPermissions(permissions);
+        invalidateAttributes(toAbsolutePath(path));
+    }
+
+    @Override
+    protected boolean canSetLastModifiedTime() {
+        return true;
+    }
+
+    @Override
+    public synchronized void setLastModifiedTime(Path path, long time) throws XenonException {
+        PathAttributesImplementation a = (PathAttributesImplementation) getEntry(toAbsolutePath(path)).getAttributes();
+        a.setLastModifiedTime(time);
+        invalidateAttributes(toAbsolutePath(path));
     }
 
     @Override
@@ -18,6 +18,7 @@ package nl.esciencecenter.xenon.filesystems;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -961,4 +962,56 @@ public class PathTest {
         assertEquals(s, q.toString());
     }
 
+    @Test
+    public void testResolveSharesParent() {
+        Path p = new Path("/aap/noot");
+        Path q = p.resolve("mies");
+        assertSame(p, q.getParent());
+        assertEquals("/aap/noot/mies", q.toString());
+    }
+
+    @Test
+    public void testToStringCached() {
+        Path p = new Path("/aap").resolve("noot");
+        assertSame(p.toString(), p.toString());
+    }
+
+    @Test
+    public void testToStringReusesParsedString() {
+        String s = "/aap/noot";
+        assertSame(s, new Path(s).toString());
+        assertEquals("/aap/noot", new Path("//aap//noot/").toString());
+    }
+
+    @Test
+    public void testHashCodeIndependentOfConstruction() {
+        Path p = new Path("/aap").resolve("noot").resolve("mies");
+        Path q = new Path(true, "aap", "noot", "mies");
+        assertEquals(p, q);
+        assertEquals(p.hashCode(), q.hashCode());
+        assertEquals(p.hashCode(), new Path("/aap/noot/mies").hashCode());
+    }
+
+    @Test
+    public void testNormalizeReturnsSameWhenNormal() {
+        Path p = new Path("/aap/noot");
+        assertSame(p, p.normalize());
+    }
+
+    @Test
+    public void testSubpathFromStartSharesPath() {
+        Path p = new Path("/aap/noot/mies");
+        assertSame(p.getParent(), p.subpath(0, 2));
+    }
+
+    @Test
+    public void testRelativizeEqual() {
+        Path p = new Path("/aap/noot");
+        assertTrue(p.relativize(new Path("/aap/noot")).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResolveOtherSeparatorFails() {
+        new Path('/', "/aap").resolve(new Path('\\', "noot/mies"));
+    }
 }
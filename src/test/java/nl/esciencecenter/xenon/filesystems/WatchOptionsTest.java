@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.filesystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WatchOptionsTest {
+
+    @Test
+    public void test_default() {
+        WatchOptions o = new WatchOptions();
+        assertTrue(o.isRecursive());
+        assertFalse(o.getDetectModifications());
+        assertEquals(WatchOptions.DEFAULT_POLL_INTERVAL, o.getPollInterval());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_pollIntervalZero() {
+        new WatchOptions().setPollInterval(0);
+    }
+
+    @Test
+    public void test_copy() {
+        WatchOptions o = new WatchOptions();
+        o.setRecursive(false);
+        o.setPollInterval(42);
+        o.setDetectModifications(true);
+
+        WatchOptions c = new WatchOptions(o);
+        assertEquals(o.toString(), c.toString());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.esciencecenter.xenon.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void test_acquireRoundsUp() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquire(1).length);
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquire(BufferPool.MIN_BUFFER_SIZE).length);
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, pool.acquire(BufferPool.MIN_BUFFER_SIZE + 1).length);
+        assertEquals(64 * 1024, pool.acquire(40000).length);
+    }
+
+    @Test
+    public void test_acquireTooLarge() {
+        BufferPool pool = new BufferPool(Long.MAX_VALUE);
+        byte[] b = pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, b.length);
+
+        pool.release(b);
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_releaseReuses() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] b = pool.acquire(10000);
+
+        pool.release(b);
+        assertEquals(b.length, pool.getPooledBytes());
+
+        assertSame(b, pool.acquire(10000));
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_releaseOtherSizeClass() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] b = pool.acquire(10000);
+        pool.release(b);
+
+        assertNotSame(b, pool.acquire(100));
+    }
+
+    @Test
+    public void test_releaseForeignBuffer() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        pool.release(new byte[10000]);
+        pool.release(null);
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void test_limit() {
+        BufferPool pool = new BufferPool(2 * BufferPool.MIN_BUFFER_SIZE);
+        byte[] a = pool.acquire(1);
+        byte[] b = pool.acquire(1);
+        byte[] c = pool.acquire(1);
+
+        // The third buffer is not part of the pool, so the buffers in use do not exceed the limit.
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, pool.getTotalBytes());
+        assertEquals(0, pool.getPooledBytes());
+
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, pool.getPooledBytes());
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, pool.getTotalBytes());
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, pool.getLimit());
+    }
+
+    @Test
+    public void test_limitAcrossSizeClasses() {
+        BufferPool pool = new BufferPool(3 * BufferPool.MIN_BUFFER_SIZE);
+        byte[] a = pool.acquire(2 * BufferPool.MIN_BUFFER_SIZE);
+        byte[] b = pool.acquire(2 * BufferPool.MIN_BUFFER_SIZE);
+        byte[] c = pool.acquire(1);
+
+        assertEquals(3 * BufferPool.MIN_BUFFER_SIZE, pool.getTotalBytes());
+
+        // Returning the buffer that is not part of the pool takes the place of the one in use, the pool does not grow.
+        pool.release(b);
+        pool.release(a);
+        pool.release(c);
+
+        assertEquals(3 * BufferPool.MIN_BUFFER_SIZE, pool.getTotalBytes());
+        assertEquals(3 * BufferPool.MIN_BUFFER_SIZE, pool.getPooledBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negativeLimit() {
+        new BufferPool(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_negativeSize() {
+        new BufferPool(1024).acquire(-1);
+    }
+}
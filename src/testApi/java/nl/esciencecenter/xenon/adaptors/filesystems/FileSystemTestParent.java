@@ -44,6 +44,7 @@ import nl.esciencecenter.xenon.filesystems.CopyStatus;
 import nl.esciencecenter.xenon.filesystems.DirectoryNotEmptyException;
 import nl.esciencecenter.xenon.filesystems.FileSystem;
 import nl.esciencecenter.xenon.filesystems.InvalidPathException;
+import nl.esciencecenter.xenon.filesystems.InvalidResumeTargetException;
 import nl.esciencecenter.xenon.filesystems.NoSuchCopyException;
 import nl.esciencecenter.xenon.filesystems.NoSuchPathException;
 import nl.esciencecenter.xenon.filesystems.Path;
@@ -1016,6 +1017,50 @@ public abstract class FileSystemTestParent extends FileSystemTestInfrastructure
         assertContents(file1, data2);
     }
 
+    @Test
+    public void test_copy_existingTarget_sync_changed() throws Throwable {
+        byte[] data = "Hello World!".getBytes();
+        byte[] data2 = "Something else!".getBytes();
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, data);
+        Path file1 = createTestFile(testDir, data2);
+        copySync(file0, file1, CopyMode.SYNC, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test
+    public void test_copy_existingTarget_sync_upToDate() throws Throwable {
+        byte[] data = "Hello World!".getBytes();
+        byte[] data2 = "Hello Xenon!".getBytes();
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, data);
+        // Same size and created later, so considered up to date
+        Path file1 = createTestFile(testDir, data2);
+        copySync(file0, file1, CopyMode.SYNC, false);
+        assertContents(file1, data2);
+    }
+
+    @Test
+    public void test_copy_existingTarget_resume() throws Throwable {
+        byte[] data = "Hello World!".getBytes();
+        byte[] data2 = "Hello".getBytes();
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, data);
+        Path file1 = createTestFile(testDir, data2);
+        copySync(file0, file1, CopyMode.RESUME, false);
+        assertSameContents(file0, file1);
+    }
+
+    @Test(expected = InvalidResumeTargetException.class)
+    public void test_copy_existingTarget_resumeCorrupt_throws() throws Throwable {
+        byte[] data = "Hello World!".getBytes();
+        byte[] data2 = "Hallo".getBytes();
+        generateAndCreateTestDir();
+        Path file0 = createTestFile(testDir, data);
+        Path file1 = createTestFile(testDir, data2);
+        copySync(file0, file1, CopyMode.RESUME, false);
+    }
+
     @Test
     public void test_copy() throws Throwable {
         byte[] data = "Hello World!".getBytes();